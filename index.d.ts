@@ -58,6 +58,168 @@ export interface AudioInputConfiguration {
   // is available.
   fileUrl?: string;
 
+  // How the audio data is transferred from the native layer (Android only).
+  // For convenience, use the audioinput.DATA_ENCODING constants to set this parameter:
+  // -JSON - The samples are sent as a JSON array string (default).
+  // -BASE64 - The samples are sent as Base64 encoded little-endian PCM, which is much smaller
+  //  and faster to decode. Requires typed array support.
+  // -FLOAT32 - The samples are normalized natively and sent as Base64 encoded little-endian
+  //  32 bit floats, which are delivered as a Float32Array. Requires typed array support.
+  dataEncoding?: string;
+
+  // The format of the file written when fileUrl is set (Android only, other platforms always write WAV).
+  // The file is encoded while recording, so stop() doesn't take longer for compressed formats.
+  // For convenience, use the audioinput.FILE_FORMAT constants to set this parameter:
+  // -WAV - Uncompressed PCM (default).
+  // -FLAC - Lossless compression, typically about half the size of WAV.
+  // -AAC - Lossy AAC-LC in an MPEG-4 (.m4a) container, encoded by the device.
+  fileFormat?: string;
+
+  // Resample the captured audio natively to this rate before it is sent to the web layer or
+  // written to a file, which reduces the amount of data crossing the bridge (Android only).
+  // Defaults to sampleRate.
+  outputSampleRate?: number;
+
+  // Mix stereo down to mono natively before the audio is sent or written (Android only).
+  // Defaults to channels.
+  outputChannels?: number;
+
+  // Hold back silent chunks natively instead of sending them (Android only). Silence is detected
+  // from the level and zero-crossing rate of each chunk. While silent, an audioinputsilence event
+  // with the duration of the silence so far is fired every vadSilenceInterval ms.
+  vad?: boolean;
+
+  // Level in dBFS above which audio counts as speech.
+  vadThreshold?: number;
+
+  // How many dB the level may drop below vadThreshold before speech ends.
+  vadHysteresis?: number;
+
+  // Milliseconds of audio before the start of speech that are sent along with it.
+  vadPreRoll?: number;
+
+  // Milliseconds of audio after the end of speech that are still sent.
+  vadHangover?: number;
+
+  // Interval in ms of the audioinputsilence events, 0 to disable them.
+  vadSilenceInterval?: number;
+
+  // When recording to a file with vad enabled, leave the silence out of the file.
+  vadSkipSilence?: boolean;
+
+  // Fire audioinputlevels events with the RMS and peak level (0-1) and the number of clipped samples this many
+  // times per second (Android only). 0 disables metering.
+  meteringRate?: number;
+
+  // Also include a magnitude spectrum in dBFS of the most recent spectrumSize samples, as a Float32Array of
+  // spectrumSize / 2 frequency bins. Must be a power of two, or 0 for no spectrum.
+  spectrumSize?: number;
+
+  // Only fire audioinputlevels events and don't send any audio data, for instance to drive a level meter.
+  meteringOnly?: boolean;
+
+  // Compute log-mel spectrogram (audioinput.FEATURES.LOG_MEL) or MFCC (audioinput.FEATURES.MFCC) frames
+  // natively (Android only) and fire audioinputfeatures events with them, e.g. for a wake-word model. A frame
+  // covers featureWindow ms of audio and one is taken every featureHop ms; they are sent in batches of
+  // featureBatch frames as a Float32Array of frames rows of size values, with the index of the first frame.
+  // The power spectrum goes through melBands triangular filters on the HTK mel scale from melMinFrequency to
+  // melMaxFrequency Hz (0 for half the sample rate); log-mel values are natural logs, and MFCCs the first
+  // mfccCount coefficients of their orthonormal DCT-II. featuresOnly sends no audio data.
+  features?: string;
+  featureWindow?: number;
+  featureHop?: number;
+  melBands?: number;
+  mfccCount?: number;
+  melMinFrequency?: number;
+  melMaxFrequency?: number;
+  featureBatch?: number;
+  featuresOnly?: boolean;
+
+  // Gather chunks natively for up to this many ms and send them to JS together (Android only), which makes
+  // far fewer calls over the bridge when bufferSize is small. Each audioinput event then holds the data of
+  // several chunks. Batches are made larger automatically while the app can't keep up. 0 disables batching.
+  batchLatency?: number;
+
+  // Send a batch as soon as it holds this many chunks.
+  maxBatchChunks?: number;
+
+  // Tolerance in ms of the gap detection (Android only). Each audioinput event carries the sequence number of its
+  // first chunk, the position of its first frame since capture started and the time that frame was captured, in ms
+  // since the epoch, taken from AudioRecord.getTimestamp where the device supports it. When audio is lost,
+  // e.g. because the app fell behind, an audioinputgap event tells where and how much, and framePosition skips it.
+  // Without device timestamps the loss is estimated from the read timings instead.
+  gapTolerance?: number;
+
+  // Keep this many seconds of the latest audio in native memory, in the output format (Android only). Use
+  // audioinput.snapshot(seconds, fileUrl, onComplete) to save it as a WAV file while capture continues.
+  // 0 disables the ring buffer.
+  ringBufferSeconds?: number;
+
+  // When recording to fileUrl, also send the audio data as when no fileUrl is given (Android only), so that
+  // it can be streamed and saved at the same time. The file, the data sent, the levels and the ring buffer are
+  // each fed separately, so one that falls behind doesn't hold up the others.
+  streamWhileRecording?: boolean;
+
+  // Capture with as little delay as possible (Android only): the capture thread runs at urgent audio priority
+  // and reads one burst of the device's audio pipeline at a time, at the device's native sample rate, which is
+  // then converted to sampleRate natively. bufferSize no longer sets the chunk size, so combine this with
+  // batchLatency to limit the number of events. The recording buffer grows when audio gets lost.
+  // getStats() reports the latency from capture to delivery.
+  lowLatency?: boolean;
+
+  // Record WAV files in segments (Android only): a new file is started after segmentDuration seconds of audio
+  // or segmentSize bytes, whichever comes first, 0 for no limit. For a fileUrl of rec.wav the files are rec-001.wav,
+  // rec-002.wav and so on, listed in the "segments" of the audioinputfinished event. A segment being written
+  // is named rec-001.wav.part until it is complete, initialize() repairs those left by the app being killed.
+  segmentDuration?: number;
+  segmentSize?: number;
+
+  // Every this many seconds of audio, complete the header of the WAV file being written and sync it to
+  // storage (Android only), so that no more audio than this is lost if the app gets killed. 0 to only do it at the end.
+  checkpointInterval?: number;
+
+  // Build the waveform peaks of a WAV recording while it is written (Android only), in a .peaks file next to it,
+  // so that audioinput.getWavPeaks() can draw it at any zoom level right after stop. This is done by the thread
+  // that writes the file, not the one capturing.
+  peakIndex?: boolean;
+
+  // Process the audio natively before it is streamed, recorded, metered or gated (Android only), instead of in
+  // JavaScript. The stages run in this order, each only when enabled:
+  // -highPassFrequency - Remove DC offset and rumble below this frequency in Hz, e.g. 80. 0 to disable.
+  // -noiseGate - Mute the audio while its level stays below noiseGateThreshold (dBFS).
+  // -agc - Bring the RMS level towards agcTarget (dBFS), with at most agcMaxGain dB of gain.
+  // -limiter - Keep peaks below limiterCeiling (dBFS) without clipping.
+  highPassFrequency?: number;
+  noiseGate?: boolean;
+  noiseGateThreshold?: number;
+  agc?: boolean;
+  agcTarget?: number;
+  agcMaxGain?: number;
+  limiter?: boolean;
+  limiterCeiling?: number;
+
+  // Serve the captured audio on 127.0.0.1 (Android only), so that it can be read with fetch() or a WebSocket,
+  // e.g. in a worker, instead of arriving as audioinput events through the plugin bridge. The URLs, which
+  // include a random token, are passed to the callback of initialize() as streamUrl and webSocketUrl. The
+  // stream is raw 16 bit little-endian PCM, the X-Audio-Sample-Rate and X-Audio-Channels response headers tell
+  // its format; a WebSocket gets a binary message per chunk. One client is served at a time, and chunks are
+  // dropped rather than held up when it reads too slowly. streamServerPort picks the port, 0 for any free one.
+  // Apps that don't allow cleartext traffic need to allow it for 127.0.0.1 in their network security config.
+  streamServer?: boolean;
+  streamServerPort?: number;
+
+  // Upload the captured audio to this URL while it is recorded (Android only), in segments of
+  // uploadSegmentSize bytes that are POSTed one after the other as soon as they are complete. Each request
+  // carries the raw 16 bit little-endian PCM of one segment with the X-Upload-Id, X-Upload-Offset (in bytes)
+  // and X-Upload-Crc32 headers, plus X-Audio-Sample-Rate and X-Audio-Channels; once the recording has ended
+  // and every segment was accepted, a request without a body has X-Upload-Complete: true and X-Upload-Length.
+  // Segments are spooled in the app's files, retried with backoff until the server answers 2xx, and resumed
+  // after the app is restarted, so the server should accept a segment again at an offset it already has.
+  // uploadHeaders adds headers to every request, e.g. { Authorization: 'Bearer ...' }.
+  uploadUrl?: string;
+  uploadSegmentSize?: number;
+  uploadHeaders?: { [name: string]: string };
+
   // Optional onError callback. Is called with error message string as parameter.
   onError?: Function;
 
@@ -72,6 +234,24 @@ declare interface AudioInput {
     PCM_8BIT: string;
   }
 
+  DATA_ENCODING: {
+    JSON: string;
+    BASE64: string;
+    FLOAT32: string;
+  }
+
+  FILE_FORMAT: {
+    WAV: string;
+    FLAC: string;
+    AAC: string;
+  }
+
+  FEATURES: {
+    NONE: string;
+    LOG_MEL: string;
+    MFCC: string;
+  }
+
   CHANNELS: {
     MONO: number;
     STEREO: number;
@@ -102,6 +282,19 @@ declare interface AudioInput {
   getMicrophonePermission(onComplete: any): void;
   start(cfg: AudioInputConfiguration): void;
   stop(onStopped: any): void;
+  getStats(onComplete: (stats: any) => void): void;
+  snapshot(seconds: number, fileUrl: string | null, onComplete: (result: string | ArrayBuffer) => void): void;
+  getWavInfo(fileUrl: string, onComplete: (info: { sampleRate: number, channels: number, frames: number, duration: number }) => void): void;
+  getWavPeaks(fileUrl: string, startFrame: number, endFrame: number | null, count: number, onComplete: (peaks: Int16Array) => void): void;
+  getWavSamples(fileUrl: string, startFrame: number, frameCount: number, onComplete: (samples: Int16Array) => void): void;
+  processWav(fileUrl: string, outputUrl: string, options: { trimThreshold?: number, trimPadding?: number, normalize?: number,
+    outputFormat?: string, outputSampleRate?: number }, onProgress?: (fraction: number) => void,
+    onComplete?: (result: any) => void): void;
+  cancelProcessing(onComplete?: any): void;
+  prepare(cfg: AudioInputConfiguration, onComplete: any): void;
+  pause(onComplete?: any): void;
+  resume(onComplete?: any): void;
+  release(onComplete?: any): void;
   connect(audioNode: any): void;
   disconnect(): void;
   getAudioContext(): AudioContext;
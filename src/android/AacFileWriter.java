@@ -0,0 +1,257 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes 16 bit PCM to AAC-LC in an MPEG-4 (.m4a) container with the device's MediaCodec encoder,
+ * feeding it as the samples arrive.
+ *
+ * The encoder and muxer are only created by the first write() or close(), so that all of their use is on the
+ * thread that writes, as MediaCodec and MediaMuxer expect; construction only takes the settings. The muxer is
+ * started with the first encoded frame. A recording without any can't be a valid MPEG-4 file, so close() then
+ * deletes what the muxer created and fails.
+ */
+public class AacFileWriter implements AudioFileWriter {
+
+	public static final int DEFAULT_BIT_RATE = 64000;
+
+	private static final long TIMEOUT_US = 10000;
+
+	private final File file;
+	private final int sampleRate;
+	private final int channels;
+	private final int bitRate;
+	private final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+
+	private boolean opened = false;
+	private MediaCodec codec = null;
+	private MediaMuxer muxer = null;
+	private MediaFormat outputFormat = null;
+	private ByteBuffer sampleBuffer = ByteBuffer.allocate(0);
+	private long framesQueued = 0;
+	private int track = -1;
+
+	public AacFileWriter(File file, int sampleRate, int channels, int bitRate) {
+		this.file = file;
+		this.sampleRate = sampleRate;
+		this.channels = channels;
+		this.bitRate = bitRate;
+	}
+
+	@Override
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	public void write(short[] samples, int count) throws IOException {
+		int byteLength = PcmEncoder.byteLength(count);
+		if (sampleBuffer.capacity() < byteLength) {
+			sampleBuffer = ByteBuffer.allocate(byteLength);
+		}
+
+		sampleBuffer.clear();
+		PcmEncoder.toLittleEndian(samples, count, sampleBuffer.array());
+		sampleBuffer.limit(byteLength);
+		write(sampleBuffer);
+	}
+
+	@Override
+	public void write(ByteBuffer pcm) throws IOException {
+		try {
+			open();
+
+			while (pcm.hasRemaining()) {
+				int index = codec.dequeueInputBuffer(TIMEOUT_US);
+				if (index < 0) {
+					// Encoder is busy, collect its output to make room
+					drain(false);
+					continue;
+				}
+
+				ByteBuffer input = codec.getInputBuffer(index);
+				input.clear();
+
+				// Only queue whole frames
+				int frameSize = channels * 2;
+				int length = Math.min(input.remaining(), pcm.remaining()) / frameSize * frameSize;
+				if (length == 0) {
+					length = Math.min(input.remaining(), pcm.remaining());
+				}
+
+				ByteBuffer slice = pcm.duplicate();
+				slice.limit(pcm.position() + length);
+				input.put(slice);
+				pcm.position(pcm.position() + length);
+
+				codec.queueInputBuffer(index, 0, length, presentationTimeUs(), 0);
+				framesQueued += length / frameSize;
+
+				drain(false);
+			}
+		}
+		catch (IllegalStateException e) {
+			// Including MediaCodec.CodecException, reported like any other write error
+			throw new IOException(e.toString());
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		IOException failure = null;
+		try {
+			open();
+
+			int index;
+			while ((index = codec.dequeueInputBuffer(TIMEOUT_US)) < 0) {
+				drain(false);
+			}
+			codec.queueInputBuffer(index, 0, 0, presentationTimeUs(), MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+			drain(true);
+		}
+		catch (IOException e) {
+			failure = e;
+		}
+		catch (IllegalStateException e) {
+			failure = new IOException(e.toString());
+		}
+
+		if (codec != null) {
+			try {
+				codec.stop();
+			}
+			catch (IllegalStateException e) {
+				// Failed already, released all the same
+			}
+			codec.release();
+		}
+
+		if (muxer != null) {
+			try {
+				// A muxer can only be stopped once started, which it is with the first frame
+				if (track >= 0) {
+					muxer.stop();
+				}
+			}
+			catch (IllegalStateException e) {
+				if (failure == null) {
+					failure = new IOException(e.toString());
+				}
+			}
+			finally {
+				muxer.release();
+			}
+
+			if (track < 0) {
+				// Not a valid file without a track
+				file.delete();
+				if (failure == null) {
+					failure = new IOException("No audio was encoded to " + file);
+				}
+			}
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Create the muxer and start the encoder, the first time only.
+	 */
+	private void open() throws IOException {
+		if (opened) {
+			if (codec == null) {
+				throw new IOException("The AAC encoder could not be started");
+			}
+			return;
+		}
+		opened = true;
+
+		MediaFormat format = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AAC, sampleRate, channels);
+		format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+		format.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
+		format.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, BackgroundFileWriter.BATCH_SIZE);
+
+		muxer = new MediaMuxer(file.getPath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+		MediaCodec encoder = MediaCodec.createEncoderByType(MediaFormat.MIMETYPE_AUDIO_AAC);
+		try {
+			encoder.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+			encoder.start();
+		}
+		catch (IllegalStateException e) {
+			encoder.release();
+			throw new IOException(e.toString());
+		}
+		codec = encoder;
+	}
+
+	private long presentationTimeUs() {
+		return framesQueued * 1000000L / sampleRate;
+	}
+
+	/**
+	 * Move encoded output to the muxer. Returns when no output is ready, or at end of stream if endOfStream is set.
+	 */
+	private void drain(boolean endOfStream) {
+		while (true) {
+			int index = codec.dequeueOutputBuffer(bufferInfo, TIMEOUT_US);
+
+			if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+				if (!endOfStream) {
+					return;
+				}
+			}
+			else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+				outputFormat = codec.getOutputFormat();
+			}
+			else if (index >= 0) {
+				ByteBuffer output = codec.getOutputBuffer(index);
+
+				// The codec config is passed to the muxer through the output format instead
+				boolean config = (bufferInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+				if (!config && bufferInfo.size > 0 && outputFormat != null) {
+					if (track < 0) {
+						// Started with the first frame, so that a muxer is only started when it gets samples
+						track = muxer.addTrack(outputFormat);
+						muxer.start();
+					}
+					output.position(bufferInfo.offset);
+					output.limit(bufferInfo.offset + bufferInfo.size);
+					muxer.writeSampleData(track, output, bufferInfo);
+				}
+				codec.releaseOutputBuffer(index, false);
+
+				if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+					return;
+				}
+			}
+		}
+	}
+}
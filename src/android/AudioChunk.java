@@ -0,0 +1,64 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * A preallocated block of captured 16 bit samples, owned by an AudioChunkPool.
+ * Whoever receives a chunk must call release() once it's done with it.
+ */
+public final class AudioChunk {
+
+	public final short[] samples;
+
+	// Number of valid samples
+	public int length;
+
+	// Number of valid frames, length divided by the channel count
+	public int frames;
+
+	// System.nanoTime() at which the samples were handed over by the capture loop
+	public long timestamp;
+
+	// Number of the chunk in its session, counting chunks that were dropped, so a missing number is a dropped chunk
+	public long sequence;
+
+	// Position of the first frame since the start of the session, counting lost and paused frames
+	public long framePosition;
+
+	// System.nanoTime() at which the first frame was captured
+	public long captureTime;
+
+	private final AudioChunkPool pool;
+
+	AudioChunk(AudioChunkPool pool, int capacity) {
+		this.pool = pool;
+		this.samples = new short[capacity];
+	}
+
+	/**
+	 * Hand the chunk back to its pool so that the capture loop can reuse it.
+	 */
+	public void release() {
+		length = 0;
+		frames = 0;
+		pool.release(this);
+	}
+}
@@ -0,0 +1,64 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * Fixed set of chunks that the capture thread fills and the consumer hands back.
+ * acquire() must only be called from the capture thread and release() from a single consumer thread.
+ */
+public final class AudioChunkPool {
+
+	private final SpscQueue<AudioChunk> free;
+	private final int chunkCount;
+	private final int chunkSize;
+
+	public AudioChunkPool(int chunkCount, int chunkSize) {
+		this.free = new SpscQueue<AudioChunk>(chunkCount);
+		this.chunkCount = chunkCount;
+		this.chunkSize = chunkSize;
+
+		for (int i = 0; i < chunkCount; i++) {
+			free.offer(new AudioChunk(this, chunkSize));
+		}
+	}
+
+	/**
+	 * Returns a free chunk, or null if every chunk is still held by the consumer.
+	 */
+	public AudioChunk acquire() {
+		return free.poll();
+	}
+
+	void release(AudioChunk chunk) {
+		free.offer(chunk);
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Number of chunks currently held by the consumer.
+	 */
+	public int inUse() {
+		return chunkCount - free.size();
+	}
+}
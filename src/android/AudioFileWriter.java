@@ -0,0 +1,49 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Incrementally writes captured 16 bit PCM to a file in some container format, while recording continues.
+ * Implementations are used from a single thread.
+ */
+public interface AudioFileWriter {
+
+	File getFile();
+
+	/**
+	 * Append the first count interleaved samples.
+	 */
+	void write(short[] samples, int count) throws IOException;
+
+	/**
+	 * Append interleaved little-endian PCM, from the buffer's position to its limit.
+	 */
+	void write(ByteBuffer pcm) throws IOException;
+
+	/**
+	 * Finish any pending encoding and complete the file. Must not re-read what was already written.
+	 */
+	void close() throws IOException;
+}
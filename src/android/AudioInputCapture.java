@@ -28,12 +28,26 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import java.lang.ref.WeakReference;
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
 import android.util.Log;
+import android.content.Context;
 import android.content.pm.PackageManager;
+import android.media.AudioManager;
 import org.apache.cordova.PermissionHelper;
 import android.Manifest;
 
@@ -41,6 +55,7 @@ import android.Manifest;
 public class AudioInputCapture extends CordovaPlugin
 {
     private static final String LOG_TAG = "AudioInputCapture";
+    private static final String UPLOAD_DIRECTORY = "audioinput-uploads";
 
     private CallbackContext callbackContext = null;
     private CallbackContext getPermissionCallbackContext = null;
@@ -53,13 +68,84 @@ public class AudioInputCapture extends CordovaPlugin
     public static final int INVALID_URL_ERROR = 30;
     public static final int INVALID_STATE_ERROR = 40;
 
+    // Used when the device doesn't tell its burst size, and how many bursts the low-latency recording buffer holds
+    private static final int DEFAULT_FRAMES_PER_BUFFER = 256;
+    private static final int LOW_LATENCY_BUFFER_BURSTS = 4;
+
+    // Limits of what one getWavPeaks or getWavSamples call returns, as it crosses the bridge in one piece
+    private static final int MAX_WAV_PEAKS = 65536;
+    private static final int MAX_WAV_SAMPLE_BYTES = 16 * 1024 * 1024;
+
     private boolean initialized = false;
     private int sampleRate = 44100;
+    // In bytes, so half as many 16 bit samples are read at a time
     private int bufferSize = 4096;
     private int channels = 1;
     private String format = null;
     private int audioSource = 0;
     private URI fileUrl = null;
+    private String dataEncoding = AudioInputReceiver.DATA_ENCODING_JSON;
+    private String fileFormat = AudioInputReceiver.FILE_FORMAT_WAV;
+    private float normalizationFactor = 32767.0f;
+    private int outputSampleRate = 0;
+    private int outputChannels = 0;
+    private boolean vadEnabled = false;
+    private double vadThreshold = -45;
+    private double vadHysteresis = 6;
+    private int vadPreRoll = 300;
+    private int vadHangover = 500;
+    private int vadSilenceInterval = 1000;
+    private boolean vadSkipSilence = false;
+    private int meteringRate = 0;
+    private int spectrumSize = 0;
+    private boolean meteringOnly = false;
+    private String features = null;
+    private double featureWindow = 25;
+    private double featureHop = 10;
+    private int melBands = 40;
+    private int mfccCount = 13;
+    private double melMinFrequency = 20;
+    private double melMaxFrequency = 0;
+    private int featureBatch = 10;
+    private boolean featuresOnly = false;
+    private int batchLatency = 0;
+    private int maxBatchChunks = 8;
+    private double gapTolerance = 10;
+    private double ringBufferSeconds = 0;
+    private boolean streamWhileRecording = false;
+    private boolean lowLatency = false;
+    private double segmentDuration = 0;
+    private long segmentSize = 0;
+    private double checkpointInterval = 0;
+    private boolean peakIndex = false;
+    private double highPassFrequency = 0;
+    private boolean noiseGate = false;
+    private double noiseGateThreshold = -50;
+    private boolean agc = false;
+    private double agcTarget = -18;
+    private double agcMaxGain = 24;
+    private boolean limiter = false;
+    private double limiterCeiling = -1;
+    private boolean streamServerEnabled = false;
+    private int streamServerPort = 0;
+    // Serves the audio on localhost when the streamServer option is set
+    private LoopbackStreamServer streamServer = null;
+    private String uploadUrl = null;
+    private int uploadSegmentSize = 0;
+    private Map<String, String> uploadHeaders = null;
+    // Sends recordings to uploadUrl, and what is left of them after a restart
+    private ChunkedUploader uploader = null;
+    private boolean uploadsResumed = false;
+    // Runs the segments of processWav jobs, on as many threads as there are cores
+    private ForkJoinPool processingPool = null;
+    private final List<WavPostProcessor> processing = new ArrayList<WavPostProcessor>();
+    // Set by "prepare": the receiver is kept, recording, between sessions until "release"
+    private boolean enginePrepared = false;
+    // Capture settings the receiver was created with, it is only reused for the same ones
+    private String engineFormat = null;
+    // The recording last read by the getWav actions, kept open as they are usually called many times in a row
+    private WavFileReader wavReader = null;
+    private PeakFile wavPeaks = null;
    
     @Override
     public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
@@ -75,6 +161,7 @@ public class AudioInputCapture extends CordovaPlugin
 				this.channels = args.getInt(2);
 				this.format = args.getString(3);
 				this.audioSource = args.getInt(4);
+				readOptions(args.optJSONObject(6));
 
 				if (args.isNull(5))  {
 					this.fileUrl = null;
@@ -115,10 +202,62 @@ public class AudioInputCapture extends CordovaPlugin
 				return false;
 			}
 
+			try {
+				updateStreamServer();
+			}
+			catch (IOException e) {
+				Log.e(LOG_TAG, e.getMessage(), e);
+				this.callbackContext.error(e.toString());
+				return false;
+			}
+
 			if (action.equals("initialize")) {
-				// Invoke callback
-				PluginResult result = new PluginResult(PluginResult.Status.OK);
-				callbackContext.sendPluginResult(result);
+				final JSONObject info = new JSONObject();
+				if (streamServer != null) {
+					info.put("streamUrl", streamServer.getUrl());
+					info.put("webSocketUrl", streamServer.getWebSocketUrl());
+				}
+
+				// Uploads interrupted by the app being closed carry on, once per run. Those of this run are left alone.
+				final ChunkedUploader resumingUploader = uploadsResumed ? null : getUploader();
+				uploadsResumed = true;
+
+				if (this.fileUrl == null && resumingUploader == null) {
+					// Invoke callback
+					PluginResult result = new PluginResult(PluginResult.Status.OK, info);
+					callbackContext.sendPluginResult(result);
+					return true;
+				}
+
+				// Segments cut off by the app being killed while recording are repaired, and reported in the callback.
+				// One that is being recorded right now is left alone. Both read the disk, so not on this thread.
+				final String recoverUrl = this.fileUrl;
+				final CallbackContext initializeContext = callbackContext;
+				cordova.getThreadPool().execute(new Runnable() {
+					public void run() {
+						try {
+							if (resumingUploader != null) {
+								info.put("resumedUploads", new JSONArray(resumingUploader.resume()));
+							}
+
+							if (recoverUrl != null) {
+								File location = new File(recoverUrl);
+								File directory = location.isDirectory() ? location : location.getParentFile();
+								JSONArray recovered = new JSONArray();
+								if (directory != null) {
+									for (File file : SegmentedFileWriter.recover(directory)) {
+										recovered.put(file.toURI().toString());
+									}
+								}
+								info.put("recoveredFiles", recovered);
+							}
+							initializeContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, info));
+						}
+						catch (JSONException e) {
+							initializeContext.error(e.toString());
+						}
+					}
+				});
 				return true;
 			}
         } // Allow fall-through through to "start"...
@@ -164,6 +303,7 @@ public class AudioInputCapture extends CordovaPlugin
 				this.channels = args.getInt(2);
 				this.format = args.getString(3);
 				this.audioSource = args.getInt(4);
+				readOptions(args.optJSONObject(6));
 
 				if (args.isNull(5))  {
 					this.fileUrl = null;
@@ -216,14 +356,7 @@ public class AudioInputCapture extends CordovaPlugin
 		if (action.equals("stop")) {
 			if (receiver != null)
 			{
-				receiver.interrupt();
-
-				// Only do this if we're not saving to a file,
-				// Otherwise we won't get the event about the file being complete
-				if (fileUrl == null) {
-					this.sendUpdate(new JSONObject(), false); // Release status callback in JS side
-					this.callbackContext = null;
-				}
+				stopSession();
 				callbackContext.success();
 
 				return true;
@@ -237,34 +370,714 @@ public class AudioInputCapture extends CordovaPlugin
 			}
 		}
 
+		if (action.equals("prepare")) {
+			if (receiver != null && receiver.isCapturing()) {
+				callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, INVALID_STATE_ERROR));
+				return false;
+			}
+			if (!PermissionHelper.hasPermission(this, permissions[RECORD_AUDIO])) {
+				callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, PERMISSION_DENIED_ERROR));
+				return false;
+			}
+
+			this.sampleRate = args.getInt(0);
+			this.bufferSize = args.getInt(1);
+			this.channels = args.getInt(2);
+			this.format = args.getString(3);
+			this.audioSource = args.getInt(4);
+			readOptions(args.optJSONObject(6));
+
+			try {
+				enginePrepared = true;
+				prepareEngine();
+			}
+			catch (Exception e) {
+				enginePrepared = false;
+				Log.e(LOG_TAG, e.getMessage(), e);
+				callbackContext.error(e.toString());
+				return false;
+			}
+
+			callbackContext.success();
+			return true;
+		}
+
+		if (action.equals("pause") || action.equals("resume")) {
+			boolean changed = receiver != null
+				&& (action.equals("pause") ? receiver.pauseSession() : receiver.resumeSession());
+
+			if (!changed) {
+				callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, INVALID_STATE_ERROR));
+				return false;
+			}
+
+			callbackContext.success();
+			return true;
+		}
+
+		if (action.equals("release")) {
+			if (receiver != null) {
+				if (receiver.isCapturing()) {
+					stopSession();
+				}
+				receiver.release();
+			}
+			enginePrepared = false;
+			callbackContext.success();
+			return true;
+		}
+
+		if (action.equals("getStats")) {
+			callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, getStats()));
+			return true;
+		}
+
+		if (action.equals("snapshot")) {
+			final PcmRingBuffer ringBuffer = receiver != null ? receiver.getRingBuffer() : null;
+			if (ringBuffer == null) {
+				callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, INVALID_STATE_ERROR));
+				return false;
+			}
+
+			final double seconds = args.getDouble(0);
+			final URI snapshotUrl;
+			try {
+				snapshotUrl = args.isNull(1) ? null : new URI(args.getString(1));
+			}
+			catch (URISyntaxException e) {
+				callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, INVALID_URL_ERROR));
+				return false;
+			}
+
+			// Copying and writing can take a while for long snapshots, capture carries on meanwhile
+			final CallbackContext snapshotCallback = callbackContext;
+			cordova.getThreadPool().execute(new Runnable() {
+				@Override
+				public void run() {
+					snapshot(ringBuffer, seconds, snapshotUrl, snapshotCallback);
+				}
+			});
+			return true;
+		}
+
+		if (action.equals("getWavInfo") || action.equals("getWavPeaks") || action.equals("getWavSamples")) {
+			final File wavFile;
+			try {
+				wavFile = new File(new URI(args.getString(0)));
+			}
+			catch (URISyntaxException e) {
+				callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, INVALID_URL_ERROR));
+				return false;
+			}
+			catch (IllegalArgumentException e) { // Not a file URL
+				callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, INVALID_URL_ERROR));
+				return false;
+			}
+
+			// Building the peaks of a long recording for the first time takes a while
+			final String wavAction = action;
+			final JSONArray wavArgs = args;
+			final CallbackContext wavCallback = callbackContext;
+			cordova.getThreadPool().execute(new Runnable() {
+				@Override
+				public void run() {
+					readWav(wavAction, wavFile, wavArgs, wavCallback);
+				}
+			});
+			return true;
+		}
+
+		if (action.equals("processWav")) {
+			final File inputFile;
+			final File outputFile;
+			try {
+				inputFile = new File(new URI(args.getString(0)));
+				outputFile = new File(new URI(args.getString(1)));
+			}
+			catch (URISyntaxException e) {
+				callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, INVALID_URL_ERROR));
+				return false;
+			}
+			catch (IllegalArgumentException e) { // Not a file URL
+				callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, INVALID_URL_ERROR));
+				return false;
+			}
+
+			JSONObject options = args.optJSONObject(2);
+			if (options == null) {
+				options = new JSONObject();
+			}
+			if (processingPool == null) {
+				processingPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+			}
+
+			final WavPostProcessor processor = new WavPostProcessor(processingPool, inputFile, outputFile);
+			processor.setTrim(options.isNull("trimThreshold") ? Double.NaN : options.optDouble("trimThreshold", Double.NaN),
+				options.optDouble("trimPadding", 0.1));
+			processor.setNormalize(options.isNull("normalize") ? Double.NaN : options.optDouble("normalize", Double.NaN));
+			processor.setOutputFormat(options.optString("outputFormat", AudioInputReceiver.FILE_FORMAT_WAV),
+				options.optInt("outputSampleRate", 0));
+
+			final CallbackContext processCallback = callbackContext;
+			cordova.getThreadPool().execute(new Runnable() {
+				@Override
+				public void run() {
+					process(processor, outputFile, processCallback);
+				}
+			});
+			return true;
+		}
+
+		if (action.equals("cancelProcessing")) {
+			synchronized (processing) {
+				for (WavPostProcessor processor : processing) {
+					processor.cancel();
+				}
+			}
+			callbackContext.success();
+			return true;
+		}
+
         return false;
     }
 
+    /**
+     * Counters and timings of the current or last capture session, for diagnosing choppy audio.
+     */
+    private JSONObject getStats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        AudioInputReceiver current = receiver;
+
+        stats.put("capturing", current != null && current.isCapturing());
+        stats.put("enginePrepared", enginePrepared && current != null && current.isAlive());
+        if (current == null) {
+            return stats;
+        }
+
+        stats.put("paused", current.isPaused());
+        long firstChunk = current.getTimeToFirstChunkNanos();
+        if (firstChunk >= 0) {
+            stats.put("timeToFirstChunkMs", firstChunk / 1000000.0);
+        }
+
+        CaptureStats capture = current.getCaptureStats();
+        stats.put("reads", capture.getReads());
+        stats.put("framesCaptured", capture.getFramesCaptured());
+        stats.put("shortReads", capture.getShortReads());
+        stats.put("emptyReads", capture.getEmptyReads());
+        stats.put("failedReads", capture.getFailedReads());
+
+        JSONObject errors = new JSONObject();
+        for (int code = -1; code >= -7; code--) {
+            if (capture.getErrorCount(code) > 0) {
+                errors.put(Integer.toString(code), capture.getErrorCount(code));
+            }
+        }
+        stats.put("readErrors", errors);
+        stats.put("readLatencyUs", percentiles(capture.getReadLatency()));
+        stats.put("overruns", capture.getOverruns());
+        stats.put("estimatedLostFrames", capture.getEstimatedLostFrames());
+
+        CaptureClock clock = current.getCaptureClock();
+        if (clock != null) {
+            JSONObject clockInfo = new JSONObject();
+            clockInfo.put("timestamps", clock.hasTimestamps());
+            if (!Double.isNaN(clock.getDriftPpm())) {
+                clockInfo.put("driftPpm", clock.getDriftPpm());
+            }
+            clockInfo.put("gaps", clock.getGaps());
+            clockInfo.put("lostFrames", clock.getLostFrames());
+            stats.put("clock", clockInfo);
+        }
+
+        stats.put("droppedChunks", current.getDroppedChunks());
+        stats.put("droppedLevelReports", current.getDroppedLevelReports());
+        stats.put("droppedFeatureReports", current.getDroppedFeatureReports());
+        stats.put("suppressedChunks", current.getSuppressedChunks());
+
+        DeliveryStats delivery = handler.deliveryStats;
+        JSONObject deliveryInfo = new JSONObject();
+        deliveryInfo.put("results", delivery.getBatches());
+        deliveryInfo.put("chunks", delivery.getChunks());
+        deliveryInfo.put("chunksPerResultP50", delivery.getBatchSizePercentile(0.5));
+        deliveryInfo.put("chunksPerResultMax", delivery.getBatchSizePercentile(1));
+        deliveryInfo.put("latencyMsP50", delivery.getLatencyPercentile(0.5));
+        deliveryInfo.put("latencyMsP99", delivery.getLatencyPercentile(0.99));
+        deliveryInfo.put("queueDelayUs", percentiles(delivery.getQueueDelay()));
+        stats.put("delivery", deliveryInfo);
+
+        LoopbackStreamServer server = streamServer;
+        if (server != null) {
+            JSONObject serverInfo = new JSONObject();
+            serverInfo.put("connected", server.hasClient());
+            serverInfo.put("clients", server.getClients());
+            serverInfo.put("chunksSent", server.getChunksSent());
+            serverInfo.put("bytesSent", server.getBytesSent());
+            serverInfo.put("droppedChunks", server.getDroppedChunks());
+            serverInfo.put("droppedFrames", server.getDroppedFrames());
+            serverInfo.put("latencyUs", percentiles(server.getLatency()));
+            stats.put("streamServer", serverInfo);
+        }
+
+        ChunkedUploader currentUploader = uploader;
+        if (currentUploader != null) {
+            JSONObject upload = new JSONObject();
+            upload.put("uploadId", currentUploader.getCurrentUploadId());
+            upload.put("bytesUploaded", currentUploader.getBytesUploaded());
+            upload.put("segmentsUploaded", currentUploader.getSegmentsUploaded());
+            upload.put("segmentsPending", currentUploader.getPendingSegments());
+            upload.put("uploadsCompleted", currentUploader.getUploadsCompleted());
+            upload.put("uploadsFailed", currentUploader.getUploadsFailed());
+            upload.put("retries", currentUploader.getRetries());
+            upload.put("lastError", currentUploader.getLastError());
+            BackgroundFileWriter spool = current.getUploadWriter();
+            if (spool != null) {
+                upload.put("droppedChunks", spool.getDroppedChunks());
+            }
+            stats.put("upload", upload);
+        }
+
+        BackgroundFileWriter writer = current.getFileWriter();
+        if (writer != null) {
+            JSONObject file = new JSONObject();
+            file.put("chunksWritten", writer.getChunksWritten());
+            file.put("droppedChunks", writer.getDroppedChunks());
+            file.put("queueDepth", writer.getQueueDepth());
+            file.put("queueHighWaterMark", writer.getHighWaterMark());
+            stats.put("file", file);
+        }
+
+        return stats;
+    }
+
+    private static JSONObject percentiles(LatencyHistogram histogram) throws JSONException {
+        JSONObject percentiles = new JSONObject();
+        percentiles.put("count", histogram.getCount());
+        percentiles.put("p50", histogram.getPercentileMicros(0.5));
+        percentiles.put("p90", histogram.getPercentileMicros(0.9));
+        percentiles.put("p99", histogram.getPercentileMicros(0.99));
+        percentiles.put("max", histogram.getMaxMicros());
+        return percentiles;
+    }
+
+    /**
+     * Save the most recent audio to a WAV file, or send it back as the bytes of a WAV file if url is null.
+     */
+    private void snapshot(PcmRingBuffer ringBuffer, double seconds, URI url, CallbackContext callbackContext) {
+        short[] samples = ringBuffer.snapshot(seconds);
+
+        try {
+            if (url != null) {
+                File file = new File(url);
+                WavFileWriter writer = new WavFileWriter(file, ringBuffer.getSampleRate(), ringBuffer.getChannelCount());
+                try {
+                    writer.write(samples, samples.length);
+                }
+                finally {
+                    writer.close();
+                }
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, file.toURI().toString()));
+            }
+            else {
+                ByteBuffer wav = ByteBuffer.allocate(WavFileWriter.HEADER_SIZE + PcmEncoder.byteLength(samples.length));
+                WavFileWriter.writeHeader(wav, ringBuffer.getSampleRate(), ringBuffer.getChannelCount(), PcmEncoder.byteLength(samples.length));
+                wav.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(samples);
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, wav.array()));
+            }
+        }
+        catch (IllegalArgumentException e) { // Not a file URL
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, INVALID_URL_ERROR));
+        }
+        catch (IOException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            callbackContext.error(e.toString());
+        }
+    }
+
+    /**
+     * Answer one of the getWav actions from a memory mapping of the file, without loading it.
+     * Peaks and samples are returned as an ArrayBuffer of little-endian 16 bit values.
+     */
+    private synchronized void readWav(String action, File file, JSONArray args, CallbackContext callbackContext) {
+        try {
+            if (wavReader == null || !wavReader.getFile().equals(file) || wavReader.isStale()) {
+                if (wavReader != null) {
+                    wavReader.close();
+                }
+                wavReader = null;
+                wavPeaks = null;
+                wavReader = new WavFileReader(file);
+            }
+            long frameCount = wavReader.getFrameCount();
+
+            if (action.equals("getWavInfo")) {
+                JSONObject info = new JSONObject();
+                info.put("sampleRate", wavReader.getSampleRate());
+                info.put("channels", wavReader.getChannelCount());
+                info.put("frames", frameCount);
+                info.put("duration", (double) frameCount / wavReader.getSampleRate());
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, info));
+                return;
+            }
+
+            long startFrame = args.getLong(1);
+            if (action.equals("getWavPeaks")) {
+                long endFrame = args.isNull(2) ? frameCount : Math.min(args.getLong(2), frameCount);
+                int count = args.getInt(3);
+                if (startFrame < 0 || startFrame > endFrame || count <= 0 || count > MAX_WAV_PEAKS) {
+                    callbackContext.error("Invalid range or count of peaks");
+                    return;
+                }
+
+                if (wavPeaks == null) {
+                    wavPeaks = PeakFile.open(wavReader);
+                }
+                short[] peaks = new short[3 * count];
+                wavPeaks.readPeaks(wavReader, startFrame, endFrame, count, peaks);
+
+                ByteBuffer out = ByteBuffer.allocate(peaks.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+                out.asShortBuffer().put(peaks);
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, out.array()));
+            }
+            else {
+                long frames = Math.min(args.getLong(2), frameCount - startFrame);
+                if (startFrame < 0 || frames < 0 || PcmEncoder.byteLength(wavReader.getChannelCount()) * frames > MAX_WAV_SAMPLE_BYTES) {
+                    callbackContext.error("Invalid range of samples, at most " + MAX_WAV_SAMPLE_BYTES + " bytes can be read at once");
+                    return;
+                }
+
+                ByteBuffer out = ByteBuffer.allocate((int) (PcmEncoder.byteLength(wavReader.getChannelCount()) * frames));
+                wavReader.readFrames(startFrame, (int) frames, out);
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, out.array()));
+            }
+        }
+        catch (IOException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            callbackContext.error(e.toString());
+        }
+        catch (JSONException e) {
+            callbackContext.error(e.toString());
+        }
+    }
+
+    /**
+     * Run a processWav job, sending its progress to the callback until it ends with the result.
+     */
+    private void process(WavPostProcessor processor, File outputFile, final CallbackContext callbackContext) {
+        synchronized (processing) {
+            processing.add(processor);
+        }
+
+        try {
+            WavPostProcessor.Result result = processor.run(new WavPostProcessor.ProgressListener() {
+                @Override
+                public void onProgress(double fraction) {
+                    try {
+                        JSONObject progress = new JSONObject();
+                        progress.put("progress", fraction);
+                        sendUpdate(callbackContext, progress, true);
+                    }
+                    catch (JSONException e) {
+                        Log.e(LOG_TAG, e.getMessage(), e);
+                    }
+                }
+            });
+
+            JSONObject info = new JSONObject();
+            info.put("done", true);
+            info.put("fileUrl", outputFile.toURI().toString());
+            info.put("duration", (double) result.outputFrames / result.outputSampleRate);
+            info.put("segments", result.segments);
+            info.put("gain", result.gain);
+            // Silence has no level, which JSON can't hold as -Infinity
+            if (!Double.isInfinite(result.peak)) {
+                info.put("peak", result.peak);
+            }
+            if (!Double.isInfinite(result.loudness)) {
+                info.put("loudness", result.loudness);
+            }
+            info.put("trimStart", (double) result.trimStartFrame / result.inputSampleRate);
+            info.put("trimEnd", (double) result.trimEndFrame / result.inputSampleRate);
+            sendUpdate(callbackContext, info, false);
+        }
+        catch (CancellationException e) {
+            try {
+                JSONObject info = new JSONObject();
+                info.put("cancelled", true);
+                sendUpdate(callbackContext, info, false);
+            }
+            catch (JSONException jsonException) {
+                callbackContext.error(jsonException.toString());
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            callbackContext.error(e.toString());
+        }
+        catch (JSONException e) {
+            callbackContext.error(e.toString());
+        }
+        finally {
+            synchronized (processing) {
+                processing.remove(processor);
+            }
+        }
+    }
+
+    /**
+     * Start or stop the local stream server to match the options. A running one is kept, so its URL stays valid.
+     */
+    private void updateStreamServer() throws IOException {
+        if (streamServer != null && (!streamServerEnabled
+            || (streamServerPort != 0 && streamServerPort != streamServer.getPort()))) {
+            streamServer.close();
+            streamServer = null;
+        }
+
+        if (streamServerEnabled && streamServer == null) {
+            streamServer = new LoopbackStreamServer(streamServerPort);
+            streamServer.start();
+        }
+    }
+
+    /**
+     * The uploader, spooling to the app's private files so that uploads survive a restart.
+     */
+    private ChunkedUploader getUploader() {
+        if (uploader == null) {
+            uploader = new ChunkedUploader(new File(cordova.getActivity().getFilesDir(), UPLOAD_DIRECTORY));
+        }
+        return uploader;
+    }
+
     public void onDestroy() {
+        enginePrepared = false;
+        if (streamServer != null) {
+            streamServer.close();
+            streamServer = null;
+        }
+        if (uploader != null) {
+            // What hasn't been sent yet is resumed the next time the app runs
+            uploader.shutdown();
+            uploader = null;
+        }
+        synchronized (processing) {
+            for (WavPostProcessor processor : processing) {
+                processor.cancel();
+            }
+        }
+        if (processingPool != null) {
+            processingPool.shutdown();
+            processingPool = null;
+        }
         if (receiver != null && !receiver.isInterrupted()) {
             receiver.interrupt();
         }
     }
 
     public void onReset() {
+        enginePrepared = false;
+        if (streamServer != null) {
+            streamServer.close();
+            streamServer = null;
+        }
         if (receiver != null && !receiver.isInterrupted()) {
             receiver.interrupt();
         }
     }
 
+    /**
+     * End the current session. Unless the engine was prepared, the receiver is released along with it, which
+     * lets the session complete its file before the capture thread exits.
+     */
+    private void stopSession() {
+        receiver.stopSession();
+        if (!enginePrepared) {
+            receiver.release();
+        }
+
+        // Only do this if we're not saving to a file,
+        // Otherwise we won't get the event about the file being complete
+        if (fileUrl == null) {
+            // The handler delivers the chunks it still has first, then releases the callback
+            handler.sendMessage(handler.obtainMessage(AudioInputCaptureHandler.MSG_STREAM_STOPPED, this.callbackContext));
+        }
+    }
+
+    /**
+     * Read the optional native capture options, passed as an object after the fileUrl argument
+     */
+    private void readOptions(JSONObject options) {
+        if (options == null) {
+            options = new JSONObject();
+        }
+
+        this.dataEncoding = options.optString("dataEncoding", AudioInputReceiver.DATA_ENCODING_JSON);
+        this.normalizationFactor = (float) options.optDouble("normalizationFactor", 32767.0);
+        this.fileFormat = options.optString("fileFormat", AudioInputReceiver.FILE_FORMAT_WAV);
+        this.outputSampleRate = options.optInt("outputSampleRate", 0);
+        this.outputChannels = options.optInt("outputChannels", 0);
+        this.vadEnabled = options.optBoolean("vad", false);
+        this.vadThreshold = options.optDouble("vadThreshold", -45);
+        this.vadHysteresis = options.optDouble("vadHysteresis", 6);
+        this.vadPreRoll = options.optInt("vadPreRoll", 300);
+        this.vadHangover = options.optInt("vadHangover", 500);
+        this.vadSilenceInterval = options.optInt("vadSilenceInterval", 1000);
+        this.vadSkipSilence = options.optBoolean("vadSkipSilence", false);
+        this.meteringRate = options.optInt("meteringRate", 0);
+        this.spectrumSize = options.optInt("spectrumSize", 0);
+        this.meteringOnly = options.optBoolean("meteringOnly", false);
+        this.features = options.isNull("features") ? null : options.optString("features", null);
+        this.featureWindow = options.optDouble("featureWindow", 25);
+        this.featureHop = options.optDouble("featureHop", 10);
+        this.melBands = options.optInt("melBands", 40);
+        this.mfccCount = options.optInt("mfccCount", 13);
+        this.melMinFrequency = options.optDouble("melMinFrequency", 20);
+        this.melMaxFrequency = options.optDouble("melMaxFrequency", 0);
+        this.featureBatch = options.optInt("featureBatch", 10);
+        this.featuresOnly = options.optBoolean("featuresOnly", false);
+        this.batchLatency = options.optInt("batchLatency", 0);
+        this.maxBatchChunks = Math.max(options.optInt("maxBatchChunks", 8), 1);
+        this.gapTolerance = options.optDouble("gapTolerance", 10);
+        this.ringBufferSeconds = options.optDouble("ringBufferSeconds", 0);
+        this.streamWhileRecording = options.optBoolean("streamWhileRecording", false);
+        this.lowLatency = options.optBoolean("lowLatency", false);
+        this.segmentDuration = options.optDouble("segmentDuration", 0);
+        this.segmentSize = options.optLong("segmentSize", 0);
+        this.checkpointInterval = options.optDouble("checkpointInterval", 0);
+        this.peakIndex = options.optBoolean("peakIndex", false);
+        this.highPassFrequency = options.optDouble("highPassFrequency", 0);
+        this.noiseGate = options.optBoolean("noiseGate", false);
+        this.noiseGateThreshold = options.optDouble("noiseGateThreshold", -50);
+        this.agc = options.optBoolean("agc", false);
+        this.agcTarget = options.optDouble("agcTarget", -18);
+        this.agcMaxGain = options.optDouble("agcMaxGain", 24);
+        this.limiter = options.optBoolean("limiter", false);
+        this.limiterCeiling = options.optDouble("limiterCeiling", -1);
+        this.streamServerEnabled = options.optBoolean("streamServer", false);
+        this.streamServerPort = options.optInt("streamServerPort", 0);
+        this.uploadUrl = options.isNull("uploadUrl") ? null : options.optString("uploadUrl", null);
+        this.uploadSegmentSize = options.optInt("uploadSegmentSize", 0);
+
+        this.uploadHeaders = new HashMap<String, String>();
+        JSONObject headers = options.optJSONObject("uploadHeaders");
+        if (headers != null) {
+            Iterator<String> names = headers.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                this.uploadHeaders.put(name, headers.optString(name, ""));
+            }
+        }
+    }
+
     /**
      * Create a new plugin result and send it back to JavaScript
      */
     private void sendUpdate(JSONObject info, boolean keepCallback) {
-        if (this.callbackContext != null) {
+        sendUpdate(this.callbackContext, info, keepCallback);
+    }
+
+    private static void sendUpdate(CallbackContext callbackContext, JSONObject info, boolean keepCallback) {
+        if (callbackContext != null) {
             PluginResult result = new PluginResult(PluginResult.Status.OK, info);
             result.setKeepCallback(keepCallback);
-            this.callbackContext.sendPluginResult(result);
+            callbackContext.sendPluginResult(result);
+        }
+    }
+
+    /**
+     * Passes what the capture thread produces on to the handler, to be dealt with on the main thread.
+     */
+    private static class HandlerListener implements AudioInputReceiver.Listener {
+        private final Handler handler;
+
+        HandlerListener(Handler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void onChunk(AudioChunk chunk) {
+            handler.sendMessage(handler.obtainMessage(AudioInputCaptureHandler.MSG_CHUNK, chunk));
+        }
+
+        @Override
+        public void onSilence(int silentMillis) {
+            handler.sendMessage(handler.obtainMessage(AudioInputCaptureHandler.MSG_SILENCE, silentMillis, 0, null));
+        }
+
+        @Override
+        public void onLevels(LevelReport report) {
+            handler.sendMessage(handler.obtainMessage(AudioInputCaptureHandler.MSG_LEVELS, report));
+        }
+
+        @Override
+        public void onFeatures(FeatureReport report) {
+            handler.sendMessage(handler.obtainMessage(AudioInputCaptureHandler.MSG_FEATURES, report));
+        }
+
+        @Override
+        public void onGap(long framePosition, long lostFrames, double duration, boolean estimated) {
+            Bundle gap = new Bundle();
+            gap.putLong("framePosition", framePosition);
+            gap.putLong("lostFrames", lostFrames);
+            gap.putDouble("duration", duration);
+            gap.putBoolean("estimated", estimated);
+            send(handler.obtainMessage(AudioInputCaptureHandler.MSG_GAP), gap);
+        }
+
+        @Override
+        public void onFileRecorded(String fileUrl, String[] segmentUrls) {
+            Bundle file = new Bundle();
+            file.putString("file", fileUrl);
+            if (segmentUrls != null) {
+                file.putStringArray("segments", segmentUrls);
+            }
+            send(handler.obtainMessage(), file);
+        }
+
+        @Override
+        public void onError(String message) {
+            Bundle error = new Bundle();
+            error.putString("error", message);
+            send(handler.obtainMessage(), error);
+        }
+
+        private void send(Message message, Bundle data) {
+            message.setData(data);
+            handler.sendMessage(message);
         }
     }
 
     private static class AudioInputCaptureHandler extends Handler {
+        // Messages sent by the capture thread through a HandlerListener
+        static final int MSG_CHUNK = 1;
+        static final int MSG_SILENCE = 2;
+        static final int MSG_LEVELS = 3;
+        static final int MSG_FEATURES = 4;
+        static final int MSG_GAP = 5;
+
+        // Messages sent by the plugin itself
+        static final int MSG_FLUSH = 100;
+        static final int MSG_STREAM_STOPPED = 101;
+        static final int MSG_SESSION_STARTED = 102;
+
+        // How far batching may back off when the main thread falls behind, as a multiple of the batch latency
+        private static final int MAX_BACKOFF = 8;
+        // Number of timely batches before backing off is halved again
+        private static final int RECOVERY_BATCHES = 16;
+
         private final WeakReference<AudioInputCapture> mActivity;
+        // Reused for every chunk, since all messages are handled on the same thread
+        private final ChunkEncoder encoder = new ChunkEncoder();
+
+        // Coalescing of chunks when a batch latency is set
+        private final ChunkBatch batch = new ChunkBatch();
+        private final DeliveryStats deliveryStats = new DeliveryStats();
+        private boolean flushScheduled = false;
+        private int backoff = 1;
+        private int timelyBatches = 0;
+        private long batchMaxLag = 0;
+        private long lastDroppedChunks = 0;
 
         public AudioInputCaptureHandler(AudioInputCapture activity) {
             mActivity = new WeakReference<AudioInputCapture>(activity);
@@ -272,6 +1085,142 @@ public class AudioInputCapture extends CordovaPlugin
 
         @Override
         public void handleMessage(Message msg) {
+            if (msg.what == MSG_CHUNK) {
+                AudioChunk chunk = (AudioChunk) msg.obj;
+                deliveryStats.recordQueueDelay(System.nanoTime() - chunk.timestamp);
+
+                try {
+                    AudioInputCapture activity = mActivity.get();
+                    if (activity != null && activity.batchLatency > 0) {
+                        addToBatch(activity, chunk);
+                    }
+                    else if (activity != null) {
+                        JSONObject info = encodeSamples(chunk.samples, chunk.length, activity.dataEncoding, activity.normalizationFactor);
+                        putPosition(info, chunk.sequence, chunk.framePosition, chunk.captureTime);
+                        activity.sendUpdate(info, true);
+                        deliveryStats.record(1, System.nanoTime() - chunk.timestamp);
+                    }
+                }
+                finally {
+                    // Give the chunk back to the capture loop
+                    chunk.release();
+                }
+
+                return;
+            }
+
+            if (msg.what == MSG_SILENCE) {
+                AudioInputCapture activity = mActivity.get();
+                if (activity != null && activity.receiver != null) {
+                    JSONObject info = new JSONObject();
+
+                    try {
+                        info.put("silence", msg.arg1);
+                        info.put("suppressedChunks", activity.receiver.getSuppressedChunks());
+                        info.put("suppressedBytes", activity.receiver.getSuppressedBytes());
+                    }
+                    catch (JSONException e) {
+                        Log.e(LOG_TAG, e.getMessage(), e);
+                    }
+
+                    activity.sendUpdate(info, true);
+                }
+
+                return;
+            }
+
+            if (msg.what == MSG_GAP) {
+                AudioInputCapture activity = mActivity.get();
+                if (activity != null) {
+                    // The chunks before the gap go out first
+                    flushBatch(activity);
+
+                    JSONObject info = new JSONObject();
+                    try {
+                        JSONObject gap = new JSONObject();
+                        gap.put("framePosition", msg.getData().getLong("framePosition"));
+                        gap.put("lostFrames", msg.getData().getLong("lostFrames"));
+                        gap.put("duration", msg.getData().getDouble("duration"));
+                        gap.put("estimated", msg.getData().getBoolean("estimated"));
+                        info.put("gap", gap);
+                    }
+                    catch (JSONException e) {
+                        Log.e(LOG_TAG, e.getMessage(), e);
+                    }
+
+                    activity.sendUpdate(info, true);
+                }
+
+                return;
+            }
+
+            if (msg.what == MSG_FLUSH) {
+                flushScheduled = false;
+                AudioInputCapture activity = mActivity.get();
+                if (activity != null) {
+                    flushBatch(activity);
+                }
+                return;
+            }
+
+            if (msg.what == MSG_SESSION_STARTED) {
+                // Start counting afresh, but keep the counts of the previous session until now for getStats
+                deliveryStats.reset();
+                batch.clear();
+                backoff = 1;
+                timelyBatches = 0;
+                lastDroppedChunks = 0;
+                return;
+            }
+
+            if (msg.what == MSG_STREAM_STOPPED) {
+                // The callback of the stopped session, a new one may have been started already
+                CallbackContext stopped = (CallbackContext) msg.obj;
+                AudioInputCapture activity = mActivity.get();
+                if (activity != null) {
+                    flushBatch(activity, stopped);
+                    sendUpdate(stopped, new JSONObject(), false); // Release status callback in JS side
+                    if (activity.callbackContext == stopped) {
+                        activity.callbackContext = null;
+                    }
+                }
+
+                finishDelivery();
+                return;
+            }
+
+            if (msg.what == MSG_LEVELS) {
+                LevelReport report = (LevelReport) msg.obj;
+
+                try {
+                    AudioInputCapture activity = mActivity.get();
+                    if (activity != null) {
+                        activity.sendUpdate(encodeLevels(report), true);
+                    }
+                }
+                finally {
+                    report.release();
+                }
+
+                return;
+            }
+
+            if (msg.what == MSG_FEATURES) {
+                FeatureReport report = (FeatureReport) msg.obj;
+
+                try {
+                    AudioInputCapture activity = mActivity.get();
+                    if (activity != null) {
+                        activity.sendUpdate(encodeFeatures(report, activity.features), true);
+                    }
+                }
+                finally {
+                    report.release();
+                }
+
+                return;
+            }
+
             AudioInputCapture activity = mActivity.get();
             if (activity != null) {
                 JSONObject info = new JSONObject();
@@ -291,10 +1240,18 @@ public class AudioInputCapture extends CordovaPlugin
                 }
 
 				if (activity.fileUrl != null) {
+				   // Chunks streamed while recording go out before the file
+				   flushBatch(activity);
+
 				   try {
 				      info.put("file", msg.getData().getString("file"));
+				      String[] segments = msg.getData().getStringArray("segments");
+				      if (segments != null) {
+				         info.put("segments", new JSONArray(Arrays.asList(segments)));
+				      }
 				      activity.sendUpdate(info, false); // Release status callback in JS side
 				      activity.callbackContext = null;
+				      finishDelivery();
 				   }
 				   catch (JSONException e) {
 				      Log.e(LOG_TAG, e.getMessage(), e);
@@ -305,6 +1262,159 @@ public class AudioInputCapture extends CordovaPlugin
 				}
             }
         }
+
+        /**
+         * Log how the chunks of the capture session that just ended were delivered.
+         */
+        private void finishDelivery() {
+            if (deliveryStats.getBatches() > 0) {
+                Log.i(LOG_TAG, "Delivered " + deliveryStats.getChunks() + " chunks in " + deliveryStats.getBatches()
+                    + " results, chunks per result p50/p90/max " + deliveryStats.getBatchSizePercentile(0.5)
+                    + "/" + deliveryStats.getBatchSizePercentile(0.9) + "/" + deliveryStats.getBatchSizePercentile(1)
+                    + ", latency ms p50/p90/p99 " + deliveryStats.getLatencyPercentile(0.5)
+                    + "/" + deliveryStats.getLatencyPercentile(0.9) + "/" + deliveryStats.getLatencyPercentile(0.99));
+            }
+        }
+
+        /**
+         * Add the chunk to the current batch, delivering the batch once it's full or its latency has passed.
+         */
+        private void addToBatch(AudioInputCapture activity, AudioChunk chunk) {
+            if (!batch.isContiguous(chunk)) {
+                // A batch is one stretch of audio, so that its position and capture time hold for all of it
+                flushBatch(activity);
+            }
+
+            batch.append(chunk);
+            batchMaxLag = Math.max(batchMaxLag, System.nanoTime() - chunk.timestamp);
+
+            if (batch.getChunkCount() >= activity.maxBatchChunks * backoff) {
+                flushBatch(activity);
+            }
+            else if (!flushScheduled) {
+                flushScheduled = true;
+                sendEmptyMessageDelayed(MSG_FLUSH, (long) activity.batchLatency * backoff);
+            }
+        }
+
+        private void flushBatch(AudioInputCapture activity) {
+            flushBatch(activity, activity.callbackContext);
+        }
+
+        private void flushBatch(AudioInputCapture activity, CallbackContext callbackContext) {
+            if (batch.getChunkCount() == 0) {
+                return;
+            }
+
+            JSONObject info = encodeSamples(batch.getSamples(), batch.getLength(), activity.dataEncoding, activity.normalizationFactor);
+            long latency = System.nanoTime() - batch.getOldestTimestamp();
+
+            try {
+                info.put("chunks", batch.getChunkCount());
+                info.put("latency", latency / 1000000);
+            }
+            catch (JSONException e) {
+                Log.e(LOG_TAG, e.getMessage(), e);
+            }
+            putPosition(info, batch.getFirstSequence(), batch.getFirstFramePosition(), batch.getFirstCaptureTime());
+
+            sendUpdate(callbackContext, info, true);
+            deliveryStats.record(batch.getChunkCount(), latency);
+
+            // Back off while chunks reach this thread later than the target latency or get dropped for lack of
+            // free chunks, since then this thread and the WebView can't keep up with the rate of deliveries
+            long droppedChunks = activity.receiver != null ? activity.receiver.getDroppedChunks() : 0;
+            if (batchMaxLag > activity.batchLatency * 1000000L || droppedChunks > lastDroppedChunks) {
+                backoff = Math.min(backoff * 2, MAX_BACKOFF);
+                timelyBatches = 0;
+            }
+            else if (backoff > 1 && ++timelyBatches >= RECOVERY_BATCHES) {
+                backoff /= 2;
+                timelyBatches = 0;
+            }
+
+            lastDroppedChunks = droppedChunks;
+            batchMaxLag = 0;
+            batch.clear();
+
+            if (flushScheduled) {
+                removeMessages(MSG_FLUSH);
+                flushScheduled = false;
+            }
+        }
+
+        /**
+         * Add where the samples in info belong: the sequence number of their first chunk, the position of their
+         * first frame in the session, and when that frame was captured, in ms since the epoch.
+         */
+        private static void putPosition(JSONObject info, long sequence, long framePosition, long captureNanos) {
+            try {
+                info.put("sequence", sequence);
+                info.put("framePosition", framePosition);
+                info.put("captureTime", System.currentTimeMillis() - (System.nanoTime() - captureNanos) / 1000000.0);
+            }
+            catch (JSONException e) {
+                Log.e(LOG_TAG, e.getMessage(), e);
+            }
+        }
+
+        private JSONObject encodeSamples(short[] samples, int length, String dataEncoding, float normalizationFactor) {
+            try {
+                return encoder.encodeSamples(samples, length, dataEncoding, normalizationFactor);
+            }
+            catch (JSONException e) {
+                Log.e(LOG_TAG, e.getMessage(), e);
+                return new JSONObject();
+            }
+        }
+
+        private JSONObject encodeLevels(LevelReport report) {
+            JSONObject info = new JSONObject();
+
+            try {
+                JSONObject levels = new JSONObject();
+                levels.put("rms", report.rms);
+                levels.put("peak", report.peak);
+                levels.put("clipped", report.clipped);
+
+                if (report.spectrum != null) {
+                    JSONArray spectrum = new JSONArray();
+                    for (float magnitude : report.spectrum) {
+                        spectrum.put(Math.round(magnitude * 10) / 10.0);
+                    }
+                    levels.put("spectrum", spectrum);
+                }
+
+                info.put("levels", levels);
+            }
+            catch (JSONException e) {
+                Log.e(LOG_TAG, e.getMessage(), e);
+            }
+
+            return info;
+        }
+
+        /**
+         * The frames of the report as base64 little-endian floats, a row of report.size values per frame.
+         */
+        private JSONObject encodeFeatures(FeatureReport report, String type) {
+            JSONObject info = new JSONObject();
+
+            try {
+                JSONObject features = new JSONObject();
+                features.put("type", type);
+                features.put("data", encoder.encodeFloats(report.values, report.frames * report.size));
+                features.put("frames", report.frames);
+                features.put("size", report.size);
+                features.put("firstFrame", report.firstFrame);
+                info.put("features", features);
+            }
+            catch (JSONException e) {
+                Log.e(LOG_TAG, e.getMessage(), e);
+            }
+
+            return info;
+        }
     }
 
     /**
@@ -318,17 +1428,98 @@ public class AudioInputCapture extends CordovaPlugin
      * Ensure that we have gotten record audio permission
      */
     private void promptForRecord() {
+		if(PermissionHelper.hasPermission(this, permissions[RECORD_AUDIO])) {
+			prepareEngine();
+
+			int receiverOutputRate = this.outputSampleRate;
+			if (this.lowLatency && receiverOutputRate <= 0) {
+				// Captured at the device's rate, so convert to the requested one unless another was asked for
+				receiverOutputRate = this.sampleRate;
+			}
+
+			handler.sendEmptyMessage(AudioInputCaptureHandler.MSG_SESSION_STARTED);
+			receiver.setFileUrl(this.fileUrl);
+			receiver.setDataEncoding(this.dataEncoding);
+			receiver.setFileFormat(this.fileFormat);
+			receiver.setOutputFormat(receiverOutputRate, this.outputChannels);
+			receiver.setVoiceActivityDetection(this.vadEnabled, this.vadThreshold, this.vadHysteresis, this.vadPreRoll,
+				this.vadHangover, this.vadSilenceInterval, this.vadSkipSilence);
+			receiver.setMetering(this.meteringRate, this.spectrumSize, this.meteringOnly);
+			receiver.setFeatures(this.features, this.featureWindow, this.featureHop, this.melBands, this.mfccCount,
+				this.melMinFrequency, this.melMaxFrequency, this.featureBatch, this.featuresOnly);
+			receiver.setRingBuffer(this.ringBufferSeconds);
+			receiver.setGapTolerance(this.gapTolerance);
+			receiver.setStreamWhileRecording(this.streamWhileRecording);
+			receiver.setSegments(this.segmentDuration, this.segmentSize, this.checkpointInterval);
+			receiver.setPeakIndex(this.peakIndex);
+			receiver.setStreamServer(this.streamServer);
+			receiver.setUpload(this.uploadUrl != null ? getUploader() : null, this.uploadUrl, this.uploadHeaders,
+				this.uploadSegmentSize);
+			receiver.setDsp(this.highPassFrequency, this.noiseGate, this.noiseGateThreshold, this.agc,
+				this.agcTarget, this.agcMaxGain, this.limiter, this.limiterCeiling);
+			receiver.startSession();
+		}
+		else {
+			// If we've already got a receiver, stop it
+			if (receiver != null) receiver.interrupt();
+			getMicPermission(RECORD_AUDIO);
+		}
+    }
+
+    /**
+     * Make sure there is a receiver for the current capture settings, reusing the prepared one if it matches.
+     */
+    private void prepareEngine() {
+		String format = this.sampleRate + "/" + this.bufferSize + "/" + this.channels + "/" + this.audioSource + "/" + this.lowLatency;
+
+		if (receiver != null && receiver.isAlive() && !receiver.isCapturing() && format.equals(engineFormat)) {
+			receiver.setKeepWarm(enginePrepared);
+			return;
+		}
+
 		// If we've already got a receiver, stop it
 		if (receiver != null) receiver.interrupt();
 
-		if(PermissionHelper.hasPermission(this, permissions[RECORD_AUDIO])) {
-			receiver = new AudioInputReceiver(this.sampleRate, this.bufferSize, this.channels, this.format, this.audioSource, this.fileUrl);
-			receiver.setHandler(handler);
-			receiver.start();
+		if (this.lowLatency) {
+			receiver = createLowLatencyReceiver();
 		}
 		else {
-			getMicPermission(RECORD_AUDIO);
+			receiver = new AudioInputReceiver(this.sampleRate, this.bufferSize, this.channels, this.format, this.audioSource, this.fileUrl);
 		}
+
+		engineFormat = format;
+		receiver.setListener(new HandlerListener(handler));
+		receiver.setKeepWarm(enginePrepared);
+		receiver.start();
+    }
+
+    /**
+     * Capture at the device's native sample rate, so that the audio framework doesn't resample, reading one burst
+     * of the device's audio pipeline at a time from a buffer of a few bursts.
+     */
+    private AudioInputReceiver createLowLatencyReceiver() {
+        AudioManager audioManager = (AudioManager) cordova.getActivity().getSystemService(Context.AUDIO_SERVICE);
+        int nativeSampleRate = parseProperty(audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE), this.sampleRate);
+        int framesPerBuffer = parseProperty(audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER), DEFAULT_FRAMES_PER_BUFFER);
+
+        int channelCount = this.channels == 2 ? 2 : 1;
+        int burstBytes = framesPerBuffer * channelCount * 2;
+        AudioRecordSource source = new AudioRecordSource(this.audioSource, nativeSampleRate, channelCount,
+            burstBytes, burstBytes * LOW_LATENCY_BUFFER_BURSTS);
+
+        AudioInputReceiver lowLatencyReceiver = new AudioInputReceiver(source, Math.max(this.bufferSize / 2, 1), this.fileUrl);
+        lowLatencyReceiver.setLowLatency(framesPerBuffer * channelCount);
+        return lowLatencyReceiver;
+    }
+
+    private static int parseProperty(String value, int defaultValue) {
+        try {
+            int parsed = value != null ? Integer.parseInt(value) : 0;
+            return parsed > 0 ? parsed : defaultValue;
+        }
+        catch (NumberFormatException e) {
+            return defaultValue;
+        }
     }
 
     /**
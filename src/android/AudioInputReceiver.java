@@ -20,282 +20,1166 @@ DEALINGS IN THE SOFTWARE.
 
 package com.exelerus.cordova.audioinputcapture;
 
-import android.media.AudioFormat;
-import android.media.AudioRecord;
 import android.media.MediaRecorder;
-import android.util.Base64;
-import android.os.Bundle;
-import android.os.Handler;
-import android.os.Message;
+import android.os.Process;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.BufferedOutputStream;
-import java.io.DataOutputStream;
-import java.io.FileInputStream;
-import java.io.OutputStream;
 import java.io.IOException;
 import java.net.URI;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 
 public class AudioInputReceiver extends Thread {
 
-	private final int RECORDING_BUFFER_FACTOR = 5;
-	private int channelConfig = AudioFormat.CHANNEL_IN_MONO;
-	private int audioFormat = AudioFormat.ENCODING_PCM_16BIT;
+	// How captured chunks are encoded in the "data" field sent to the web layer
+	public static final String DATA_ENCODING_JSON = "json";
+	public static final String DATA_ENCODING_BASE64 = "base64";
+	public static final String DATA_ENCODING_FLOAT32 = "float32";
+
+	// Container format of file recordings
+	public static final String FILE_FORMAT_WAV = "wav";
+	public static final String FILE_FORMAT_FLAC = "flac";
+	public static final String FILE_FORMAT_AAC = "aac";
+
+	// States of the capture engine
+	public static final int STATE_IDLE = 0;
+	public static final int STATE_CAPTURING = 1;
+	public static final int STATE_PAUSED = 2;
+	public static final int STATE_RELEASED = 3;
+
+	// Number of chunks that can be in flight to the listener at once
+	private final int CHUNK_POOL_SIZE = 16;
+	// How much audio can wait for the file writer before it gets dropped
+	private final int FILE_QUEUE_SECONDS = 4;
+	private final int FILE_QUEUE_MIN_CHUNKS = 16;
+	private int channels = 1;
 	private int sampleRateInHz = 44100;
-	private int audioSource = 0;
+	// Format of the emitted chunks and files, after downmixing and resampling
+	private int outputChannels = 1;
+	private int outputSampleRate = 44100;
 
-	// Recording buffer
-	private int minBufferSize = AudioRecord.getMinBufferSize(sampleRateInHz, channelConfig, audioFormat);
-	private int recordingBufferSize = minBufferSize * RECORDING_BUFFER_FACTOR;
+	// Reading from the source, samples per read
+	private int readBufferSize;
+	private int captureLength;
+	private short captureBuffer[];
+	private PcmConverter converter;
+	private short convertBuffer[];
+	// The samples of the last block read, and the largest number it can hold
+	private short block[];
+	private int maxBlockLength;
 
-	// Reading from the AudioRecord buffer
-	private int readBufferSize = minBufferSize;
+	private PcmSource source;
+	private volatile CaptureStats captureStats;
 
-	private AudioRecord recorder;
-	private Handler handler;
-	private Message message;
-	private Bundle messageBundle = new Bundle();
+	// Engine state, changed by the session methods and by the capture thread when a session ends
+	private final Object stateLock = new Object();
+	private volatile int state = STATE_IDLE;
+	private long sessionRequestedAt;
+	// Sessions started so far, and those the capture thread has run, so that none is missed if it's stopped at once
+	private volatile long sessionsStarted = 0;
+	private long sessionsRun = 0;
+	private volatile long timeToFirstChunkNanos = -1;
+	private volatile boolean keepWarm = false;
+	// Only touched by the capture thread
+	private boolean sourceRecording = false;
+	private AudioChunkPool streamPool;
+	private Listener listener;
 	private URI fileUrl;
+	private String dataEncoding = DATA_ENCODING_JSON;
+	private String fileFormat = FILE_FORMAT_WAV;
+	private volatile long droppedChunks = 0;
+
+	// Processing applied to every block before it goes anywhere
+	private double highPassFrequency = 0;
+	private boolean agcEnabled = false;
+	private double agcTarget = -18;
+	private double agcMaxGain = 24;
+	private boolean noiseGateEnabled = false;
+	private double noiseGateThreshold = -50;
+	private boolean limiterEnabled = false;
+	private double limiterCeiling = -1;
+	private DspChain dsp = null;
+
+	// Serves the chunks on localhost instead of sending them to the listener, when set
+	private volatile LoopbackStreamServer streamServer = null;
+
+	// Upload while recording
+	private ChunkedUploader uploader = null;
+	private String uploadUrl = null;
+	private Map<String, String> uploadHeaders = null;
+	private int uploadSegmentSize = ChunkedUploader.DEFAULT_SEGMENT_SIZE;
+	private volatile BackgroundFileWriter uploadWriter = null;
+
+	// Segmented, checkpointed WAV recording
+	private double segmentSeconds = 0;
+	private long segmentBytes = 0;
+	private double checkpointSeconds = 0;
+	private boolean peakIndex = false;
+
+	// Voice activity gating
+	private boolean vadEnabled = false;
+	private boolean vadSkipSilence = false;
+	private double vadThreshold = -45;
+	private double vadHysteresis = 6;
+	private int vadPreRoll = 300;
+	private int vadHangover = 500;
+	private int vadSilenceInterval = 1000;
+	private volatile VoiceActivityGate gate = null;
+	private volatile BackgroundFileWriter fileWriter = null;
+
+	// Level metering
+	private int meteringRate = 0;
+	private int spectrumSize = 0;
+	private boolean meteringOnly = false;
+	private volatile LevelMeter meter = null;
+
+	// Feature extraction
+	private String featureType = null;
+	private double featureWindow = 25;
+	private double featureHop = 10;
+	private int melBands = 40;
+	private int mfccCount = 13;
+	private double melMinFrequency = 20;
+	private double melMaxFrequency = 0;
+	private int featureBatch = 10;
+	private boolean featuresOnly = false;
+	private volatile FeatureExtractor features = null;
+
+	// Recent audio kept for snapshots, in the output format
+	private double ringBufferSeconds = 0;
+	private volatile PcmRingBuffer ringBuffer = null;
+
+	// Also stream the audio to the listener while recording to fileUrl
+	private boolean streamWhileRecording = false;
+
+	// Samples per read in low-latency mode, 0 when it's off
+	private int lowLatencyReadLength = 0;
+	private long handledOverruns = 0;
+
+	// Capture times and gaps. Positions count output frames since the session started, including lost ones.
+	private double gapTolerance = 10;
+	private volatile CaptureClock clock = null;
+	private final FrameTimestamp frameTimestamp = new FrameTimestamp();
+	private long sourcePosition = 0;
+	private long reportedLostFrames = 0;
+	private long framePosition = 0;
+	private long blockFramePosition = 0;
+	private long blockCaptureNanos = 0;
+	private long chunkSequence = 0;
+
+	/**
+	 * Receives what a capture session produces. It's called on the capture thread, so it must hand things over
+	 * without blocking. Chunks and reports must be released once the listener is done with them, on any thread.
+	 */
+	public interface Listener extends LevelMeter.Listener, FeatureExtractor.Listener {
+		void onChunk(AudioChunk chunk);
+
+		/**
+		 * The gate has held back silentMillis ms of silence so far.
+		 */
+		void onSilence(int silentMillis);
+
+		/**
+		 * lostFrames frames of audio went missing at framePosition, duration ms of it.
+		 *
+		 * @param estimated Whether the loss was estimated from read timings, for lack of source timestamps.
+		 */
+		void onGap(long framePosition, long lostFrames, double duration, boolean estimated);
+
+		/**
+		 * A recording is complete.
+		 *
+		 * @param segmentUrls The files it was written to if it was split into segments, null otherwise.
+		 */
+		void onFileRecorded(String fileUrl, String[] segmentUrls);
+
+		void onError(String message);
+	}
 
 	public AudioInputReceiver() {
-		recorder = new AudioRecord(MediaRecorder.AudioSource.DEFAULT, sampleRateInHz, channelConfig, audioFormat, minBufferSize * RECORDING_BUFFER_FACTOR);
+		this(new AudioRecordSource(MediaRecorder.AudioSource.DEFAULT, 44100, 1, AudioRecordSource.getMinBufferSize(44100, 1)),
+			Math.max(AudioRecordSource.getMinBufferSize(44100, 1) / 2, 1), null);
 	}
 
+	/**
+	 * The format is always 16 bit PCM; PCM_8BIT was never actually selected since the
+	 * format string used to be compared by reference.
+	 *
+	 * @param bufferSizeInBytes The plugin's bufferSize: bytes of 16 bit samples per read, and so per streamed chunk.
+	 */
 	public AudioInputReceiver(int sampleRate, int bufferSizeInBytes, int channels, String format, int audioSource, URI fileUrl) {
-		sampleRateInHz = sampleRate;
+		this(new AudioRecordSource(audioSource, sampleRate, channels, bufferSizeInBytes), Math.max(bufferSizeInBytes / 2, 1),
+			fileUrl);
+	}
+
+	/**
+	 * Capture from any source, for instance one of the synthetic sources when running off-device.
+	 *
+	 * @param readBufferSize Samples per read.
+	 */
+	public AudioInputReceiver(PcmSource source, int readBufferSize, URI fileUrl) {
+		this.source = source;
+		this.sampleRateInHz = source.getSampleRate();
+		this.channels = source.getChannelCount();
+		this.outputSampleRate = sampleRateInHz;
+		this.outputChannels = channels;
+		this.readBufferSize = readBufferSize;
+		this.fileUrl = fileUrl;
+		this.captureStats = new CaptureStats(sampleRateInHz, channels, source.getBufferFrames());
+		setName("AudioInputReceiver");
+	}
+
+	public void setFileUrl(URI fileUrl) {
+		this.fileUrl = fileUrl;
+	}
 
-		switch (channels) {
-		    case 2:
-		        channelConfig = AudioFormat.CHANNEL_IN_STEREO;
-		        break;
-		    case 1:
-		    default:
-		        channelConfig = AudioFormat.CHANNEL_IN_MONO;
-		        break;
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	public void setDataEncoding(String dataEncoding) {
+		if (DATA_ENCODING_BASE64.equals(dataEncoding) || DATA_ENCODING_FLOAT32.equals(dataEncoding)) {
+			this.dataEncoding = dataEncoding;
 		}
-		if(format == "PCM_8BIT") {
-		    audioFormat = AudioFormat.ENCODING_PCM_8BIT;
+		else {
+			this.dataEncoding = DATA_ENCODING_JSON;
+		}
+	}
+
+	public String getDataEncoding() {
+		return dataEncoding;
+	}
+
+	/**
+	 * Emit a different sample rate and/or fewer channels than captured, 0 keeps the captured value.
+	 */
+	public void setOutputFormat(int sampleRate, int channels) {
+		this.outputSampleRate = sampleRate > 0 ? sampleRate : sampleRateInHz;
+		this.outputChannels = channels > 0 ? Math.min(channels, this.channels) : this.channels;
+	}
+
+	/**
+	 * Hold back silent blocks. When streaming, silent stretches are only reported every silenceInterval ms
+	 * (0 for never); when recording, silence is only left out of the file if skipSilence is set.
+	 *
+	 * @param threshold Level in dBFS above which audio counts as speech.
+	 * @param hysteresis How many dB the level may drop below the threshold before speech ends.
+	 * @param preRoll Milliseconds of audio before the start of speech to include.
+	 * @param hangover Milliseconds of audio after the end of speech to include.
+	 */
+	public void setVoiceActivityDetection(boolean enabled, double threshold, double hysteresis, int preRoll,
+		int hangover, int silenceInterval, boolean skipSilence) {
+
+		this.vadEnabled = enabled;
+		this.vadThreshold = threshold;
+		this.vadHysteresis = hysteresis;
+		this.vadPreRoll = preRoll;
+		this.vadHangover = hangover;
+		this.vadSilenceInterval = silenceInterval;
+		this.vadSkipSilence = skipSilence;
+	}
+
+	/**
+	 * Process the audio natively before it is streamed, recorded, metered or gated, in this order: a high-pass
+	 * filter at highPassFrequency Hz (0 to leave it out), a noise gate opening above noiseGateThreshold dBFS,
+	 * automatic gain control towards agcTarget dBFS RMS with at most agcMaxGain dB of gain, and a limiter that
+	 * keeps peaks below limiterCeiling dBFS.
+	 */
+	public void setDsp(double highPassFrequency, boolean noiseGate, double noiseGateThreshold, boolean agc,
+		double agcTarget, double agcMaxGain, boolean limiter, double limiterCeiling) {
+
+		this.highPassFrequency = Math.max(highPassFrequency, 0);
+		this.noiseGateEnabled = noiseGate;
+		this.noiseGateThreshold = noiseGateThreshold;
+		this.agcEnabled = agc;
+		this.agcTarget = agcTarget;
+		this.agcMaxGain = agcMaxGain;
+		this.limiterEnabled = limiter;
+		this.limiterCeiling = limiterCeiling;
+	}
+
+	/**
+	 * Stream the chunks through a local server instead of the listener, or null to use the listener.
+	 */
+	public void setStreamServer(LoopbackStreamServer streamServer) {
+		this.streamServer = streamServer;
+	}
+
+	/**
+	 * Upload the audio to url while it is captured, in segments of segmentSize bytes, or pass a null url not to.
+	 */
+	public void setUpload(ChunkedUploader uploader, String url, Map<String, String> headers, int segmentSize) {
+		this.uploader = uploader;
+		this.uploadUrl = url;
+		this.uploadHeaders = headers;
+		this.uploadSegmentSize = segmentSize > 0 ? segmentSize : ChunkedUploader.DEFAULT_SEGMENT_SIZE;
+	}
+
+	/**
+	 * Number of blocks held back by the voice activity gate, 0 if it isn't used.
+	 */
+	public long getSuppressedChunks() {
+		VoiceActivityGate current = gate;
+		return current != null ? current.getSuppressedBlocks() : 0;
+	}
+
+	/**
+	 * Number of bytes of 16 bit samples held back by the voice activity gate, 0 if it isn't used.
+	 */
+	public long getSuppressedBytes() {
+		VoiceActivityGate current = gate;
+		return current != null ? PcmEncoder.byteLength(1) * current.getSuppressedSamples() : 0;
+	}
+
+	/**
+	 * Report levels meteringRate times per second, 0 to disable metering.
+	 *
+	 * @param spectrumSize Frames per magnitude spectrum, a power of two, or 0 for no spectrum.
+	 * @param meteringOnly Send only the levels and no audio data when streaming.
+	 */
+	public void setMetering(int meteringRate, int spectrumSize, boolean meteringOnly) {
+		this.meteringRate = Math.max(meteringRate, 0);
+		this.spectrumSize = spectrumSize;
+		this.meteringOnly = meteringOnly && this.meteringRate > 0;
+	}
+
+	/**
+	 * Compute log-mel or MFCC frames of windowMs over the audio every hopMs, and send them in batches of
+	 * batchFrames. A null type disables feature extraction.
+	 *
+	 * @param type FeatureExtractor.TYPE_LOG_MEL or TYPE_MFCC.
+	 * @param maxFrequency Upper edge of the mel filterbank in Hz, 0 for half the sample rate.
+	 * @param featuresOnly Send only the features and no audio data when streaming.
+	 */
+	public void setFeatures(String type, double windowMs, double hopMs, int bands, int mfccCount, double minFrequency,
+		double maxFrequency, int batchFrames, boolean featuresOnly) {
+
+		this.featureType = FeatureExtractor.TYPE_LOG_MEL.equals(type) || FeatureExtractor.TYPE_MFCC.equals(type) ? type : null;
+		this.featureWindow = windowMs;
+		this.featureHop = hopMs;
+		this.melBands = bands;
+		this.mfccCount = mfccCount;
+		this.melMinFrequency = minFrequency;
+		this.melMaxFrequency = maxFrequency;
+		this.featureBatch = batchFrames;
+		this.featuresOnly = featuresOnly && this.featureType != null;
+	}
+
+	/**
+	 * Number of feature reports skipped because the listener hadn't released any, 0 if features aren't used.
+	 */
+	public long getDroppedFeatureReports() {
+		FeatureExtractor current = features;
+		return current != null ? current.getDroppedReports() : 0;
+	}
+
+	/**
+	 * Number of level reports skipped because the listener hadn't released any, 0 if metering isn't used.
+	 */
+	public long getDroppedLevelReports() {
+		LevelMeter current = meter;
+		return current != null ? current.getDroppedReports() : 0;
+	}
+
+	/**
+	 * Keep the most recent seconds of audio in memory, so that they can be saved with getRingBuffer().snapshot()
+	 * while capturing. 0 disables the ring buffer.
+	 */
+	public void setRingBuffer(double seconds) {
+		this.ringBufferSeconds = Math.max(seconds, 0);
+	}
+
+	/**
+	 * The ring buffer of recent audio, null if it isn't used or capture hasn't started yet.
+	 * It stays available after capture stops.
+	 */
+	public PcmRingBuffer getRingBuffer() {
+		return ringBuffer;
+	}
+
+	public void setFileFormat(String fileFormat) {
+		if (FILE_FORMAT_FLAC.equals(fileFormat) || FILE_FORMAT_AAC.equals(fileFormat)) {
+			this.fileFormat = fileFormat;
 		}
 		else {
-		    audioFormat = AudioFormat.ENCODING_PCM_16BIT;
+			this.fileFormat = FILE_FORMAT_WAV;
+		}
+	}
+
+	/**
+	 * Record WAV files in segments of at most segmentSeconds of audio or segmentBytes of sample data, whichever
+	 * is reached first, 0 for no limit; with both 0 a single file is written. Every checkpointSeconds of audio the
+	 * header of the file being written is completed and the file synced to storage, 0 to only do that at the end.
+	 */
+	public void setSegments(double segmentSeconds, long segmentBytes, double checkpointSeconds) {
+		this.segmentSeconds = Math.max(segmentSeconds, 0);
+		this.segmentBytes = Math.max(segmentBytes, 0);
+		this.checkpointSeconds = Math.max(checkpointSeconds, 0);
+	}
+
+	/**
+	 * Build the peak pyramid of WAV recordings while writing them, saved as a PeakFile next to each file.
+	 * This happens on the file writer thread, not the capture thread.
+	 */
+	public void setPeakIndex(boolean peakIndex) {
+		this.peakIndex = peakIndex;
+	}
+
+	/**
+	 * Send chunks to the listener while recording to a file too, like when no file is given.
+	 */
+	public void setStreamWhileRecording(boolean streamWhileRecording) {
+		this.streamWhileRecording = streamWhileRecording;
+	}
+
+	/**
+	 * Capture at urgent audio priority in reads of readLength samples, ideally a burst of the device's audio
+	 * pipeline, and grow the source's buffer whenever overruns are detected. 0 turns low-latency mode off.
+	 */
+	public void setLowLatency(int readLength) {
+		this.lowLatencyReadLength = Math.max(readLength, 0);
+	}
+
+	/**
+	 * How far, in ms, the capture times of consecutive reads may jitter before the difference counts as lost audio.
+	 */
+	public void setGapTolerance(double gapTolerance) {
+		this.gapTolerance = gapTolerance;
+	}
+
+	/**
+	 * Capture times, drift and gaps of this capture session.
+	 */
+	public CaptureClock getCaptureClock() {
+		return clock;
+	}
+
+	/**
+	 * Counters and read timings of this capture session.
+	 */
+	public CaptureStats getCaptureStats() {
+		return captureStats;
+	}
+
+	/**
+	 * Number of chunks dropped because the listener hadn't released any of the pooled chunks.
+	 */
+	public long getDroppedChunks() {
+		return droppedChunks;
+	}
+
+	/**
+	 * The writer used when recording to a file, for its queue and drop counters. Null in streaming mode.
+	 */
+	public BackgroundFileWriter getFileWriter() {
+		return fileWriter;
+	}
+
+	/**
+	 * The writer spooling the current or last session for upload, or null if it wasn't uploaded.
+	 */
+	public BackgroundFileWriter getUploadWriter() {
+		return uploadWriter;
+	}
+
+	/**
+	 * Start capturing into a new session, using the settings made so far. The capture thread must have been
+	 * started, and the previous session stopped.
+	 */
+	public void startSession() {
+		synchronized (stateLock) {
+			if (state == STATE_RELEASED) {
+				throw new IllegalStateException("The capture engine has been released");
+			}
+			sessionRequestedAt = System.nanoTime();
+			sessionsStarted++;
+			state = STATE_CAPTURING;
+			stateLock.notifyAll();
 		}
+	}
 
-		readBufferSize = bufferSizeInBytes;
+	/**
+	 * Stop passing on audio without ending the session, so that resumeSession() continues right away.
+	 * The source keeps recording meanwhile.
+	 *
+	 * @return False if no session was capturing.
+	 */
+	public boolean pauseSession() {
+		synchronized (stateLock) {
+			if (state != STATE_CAPTURING) {
+				return false;
+			}
+			state = STATE_PAUSED;
+			return true;
+		}
+	}
 
-		// Get the minimum recording buffer size for the specified configuration
-		minBufferSize = AudioRecord.getMinBufferSize(sampleRateInHz, channelConfig, audioFormat);
+	/**
+	 * @return False if the session wasn't paused.
+	 */
+	public boolean resumeSession() {
+		synchronized (stateLock) {
+			if (state != STATE_PAUSED) {
+				return false;
+			}
+			state = STATE_CAPTURING;
+			return true;
+		}
+	}
 
-		// We use a recording buffer size larger than the one used for reading to avoid buffer underrun.
-		recordingBufferSize = readBufferSize * RECORDING_BUFFER_FACTOR;
+	/**
+	 * End the current session; a file being recorded is completed and reported to the listener. The capture thread
+	 * then waits for the next session, keeping the source and buffers.
+	 */
+	public void stopSession() {
+		synchronized (stateLock) {
+			if (state == STATE_CAPTURING || state == STATE_PAUSED) {
+				state = STATE_IDLE;
+			}
+			stateLock.notifyAll();
+		}
+	}
 
-		// Ensure that the given recordingBufferSize isn't lower than the minimum buffer size allowed for the current configuration
-		//
-		if (recordingBufferSize < minBufferSize) {
-		    recordingBufferSize = minBufferSize;
+	/**
+	 * End any session and let the capture thread release the source and exit. A session being stopped is completed
+	 * first, its file included, as the thread isn't interrupted; interrupting it ends the session and the thread
+	 * as well, for when they must not wait for the source.
+	 */
+	public void release() {
+		synchronized (stateLock) {
+			state = STATE_RELEASED;
+			stateLock.notifyAll();
 		}
+	}
 
-		recorder = new AudioRecord(audioSource, sampleRateInHz, channelConfig, audioFormat, recordingBufferSize);
-		this.fileUrl = fileUrl;
+	/**
+	 * Keep the source recording while no session is running, from as soon as the capture thread has started,
+	 * so that sessions start without the source's startup delay. What is captured between sessions is discarded.
+	 */
+	public void setKeepWarm(boolean keepWarm) {
+		synchronized (stateLock) {
+			this.keepWarm = keepWarm;
+			stateLock.notifyAll();
+		}
 	}
 
-	public void setHandler(Handler handler) {
-		this.handler = handler;
+	/**
+	 * Whether a session is capturing or paused.
+	 */
+	public boolean isCapturing() {
+		int current = state;
+		return current == STATE_CAPTURING || current == STATE_PAUSED;
 	}
 
+	public boolean isPaused() {
+		return state == STATE_PAUSED;
+	}
+
+	/**
+	 * Time from the last startSession() until the first block of audio was captured, -1 before that.
+	 */
+	public long getTimeToFirstChunkNanos() {
+		return timeToFirstChunkNanos;
+	}
+
+	/**
+	 * Runs sessions as they are started until released, then releases the source.
+	 */
 	@Override
 	public void run() {
-		if (fileUrl == null) {
-
-			// Forward audio data to Cordova Web app
-			//
-
-			int numReadBytes = 0;
-			short audioBuffer[] = new short[readBufferSize];
-			synchronized(this) {
-			    recorder.startRecording();
-
-				try
-				{
-					while (!isInterrupted()) {
-						numReadBytes = recorder.read(audioBuffer, 0, readBufferSize);
-
-						if (numReadBytes > 0) {
-							try {
-								String decoded = Arrays.toString(audioBuffer);
-
-								message = handler.obtainMessage();
-								messageBundle = new Bundle();
-								messageBundle.putString("data", decoded);
-								message.setData(messageBundle);
-								handler.sendMessage(message);
-							}
-							catch(Exception ex) {
-								message = handler.obtainMessage();
-								messageBundle = new Bundle();
-								messageBundle.putString("error", ex.toString());
-								message.setData(messageBundle);
-								handler.sendMessage(message);
-							}
-						}
-					}
+		if (lowLatencyReadLength > 0) {
+			Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+		}
 
-					if (recorder.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
-						recorder.stop();
-					}
+		try
+		{
+			while (awaitSession()) {
+				runSession();
+			}
+		}
+		catch(Throwable ex)
+		{
+			listener.onError(ex.toString());
+		}
+		finally
+		{
+			if (sourceRecording) {
+				source.stop();
+				sourceRecording = false;
+			}
+			source.release();
+			source = null;
+
+			synchronized (stateLock) {
+				state = STATE_RELEASED;
+			}
+		}
+	}
+
+	/**
+	 * Wait until a session is started, keeping the source recording meanwhile if it's kept warm.
+	 *
+	 * @return False if released instead.
+	 */
+	private boolean awaitSession() {
+		while (true) {
+			synchronized (stateLock) {
+				if (state == STATE_RELEASED || isInterrupted()) {
+					return false;
 				}
-				catch(Exception ex)
-				{
-					message = handler.obtainMessage();
-					messageBundle = new Bundle();
-					messageBundle.putString("error", ex.toString());
-					message.setData(messageBundle);
-					handler.sendMessage(message);
+				if (sessionsStarted > sessionsRun) {
+					sessionsRun = sessionsStarted;
+					return true;
 				}
 
-			    recorder.release();
-			    recorder = null;
+				if (!keepWarm && !sourceRecording) {
+					try {
+						stateLock.wait();
+					}
+					catch (InterruptedException e) {
+						return false;
+					}
+					continue;
+				}
+			}
+
+			if (!keepWarm) {
+				source.stop();
+				sourceRecording = false;
+				continue;
+			}
+
+			if (!sourceRecording) {
+				prepareBlocks(readLength());
+				startSource();
+			}
+
+			// Keep reading so that the source's buffer holds fresh audio when the next session starts, in short
+			// reads so a session waits for at most one of them
+			int read = source.read(captureBuffer, 0, Math.min(captureLength, Math.max(channels, sampleRateInHz / 100 * channels)));
+			if (read > 0) {
+				sourcePosition += read / channels;
 			}
 		}
-		else
+	}
+
+	private void startSource() {
+		source.start();
+		sourceRecording = true;
+		sourcePosition = 0;
+	}
+
+	private void runSession() {
+		URI finalUrl = fileUrl; // Even if the member changes, we use what we were originally given
+		boolean streaming = finalUrl == null || streamWhileRecording;
+
+		captureStats = new CaptureStats(sampleRateInHz, channels, source.getBufferFrames());
+		droppedChunks = 0;
+		handledOverruns = 0;
+		timeToFirstChunkNanos = -1;
+		clock = new CaptureClock(sampleRateInHz, gapTolerance);
+		reportedLostFrames = 0;
+		framePosition = 0;
+		chunkSequence = 0;
+		fileWriter = null;
+		uploadWriter = null;
+		// Consumers with a thread of their own, in the order they were started
+		List<BackgroundFileWriter> started = new ArrayList<BackgroundFileWriter>();
+
+		try
 		{
+			prepareBlocks(readLength());
+
+			if (!sourceRecording) {
+				startSource();
+			}
+
+			// Every block goes to each consumer that is enabled. None of them ever blocks the capture loop:
+			// each hands blocks over through its own bounded queue or pool and drops them when that is full.
+			// One that fails is reported and dropped, and the others carry on.
+			List<BlockSink> sinks = new ArrayList<BlockSink>();
+			List<BlockSink> gatedSinks = new ArrayList<BlockSink>();
+
+			createDsp();
+			createRingBuffer();
+			if (ringBuffer != null) {
+				sinks.add(ringBufferSink(ringBuffer));
+			}
+
+			createMeter();
+			if (meter != null) {
+				sinks.add(meterSink(meter));
+			}
+
+			createFeatureExtractor();
+			if (features != null) {
+				sinks.add(featureSink(features));
+			}
+
+			// Forward audio data to Cordova Web app, unless only the levels are wanted
+			boolean streamChunks = streaming && !meteringOnly && !featuresOnly;
+			if (streamChunks) {
+				LoopbackStreamServer server = streamServer;
+				if (server != null) {
+					server.setFormat(outputSampleRate, outputChannels);
+				}
+				(vadEnabled ? gatedSinks : sinks).add(server != null ? serverSink(server) : streamSink());
+			}
+
 			// Recording to fileUrl
-			//
-			int numReadBytes = 0;
-			byte audioBuffer[] = new byte[readBufferSize];
-
-			synchronized(this) {
-				URI finalUrl = fileUrl; // Even if the member changes, we use what we were originally given
-				recorder.startRecording();
-
-				try
-				{
-					File audioFile = File.createTempFile("AudioInputReceiver-", ".pcm");
-					FileOutputStream os = new FileOutputStream(audioFile.getPath());
-
-					while (!isInterrupted()) {
-						numReadBytes = recorder.read(audioBuffer, 0, readBufferSize);
-
-						if (numReadBytes > 0) {
-							try {
-								os.write(audioBuffer, 0, numReadBytes);
-							}
-							catch(Exception ex) {
-								message = handler.obtainMessage();
-								messageBundle = new Bundle();
-								messageBundle.putString("error", ex.toString());
-								message.setData(messageBundle);
-								handler.sendMessage(message);
-							}
-						}
-					}
+			int queueCapacity = Math.max(FILE_QUEUE_MIN_CHUNKS,
+				(FILE_QUEUE_SECONDS * outputSampleRate * outputChannels + maxBlockLength - 1) / maxBlockLength);
+			AudioFileWriter output = null;
+			BackgroundFileWriter writer = null;
+			if (finalUrl != null) {
+				// Samples are encoded straight into the final file as they arrive.
+				// The writes are made by a separate thread so that slow storage can't stall the reads.
+				output = createFileWriter(new File(finalUrl));
+				writer = new BackgroundFileWriter(output, maxBlockLength, queueCapacity);
+				fileWriter = writer;
+				writer.start();
+				started.add(writer);
+
+				(vadEnabled && vadSkipSilence ? gatedSinks : sinks).add(fileSink(writer));
+			}
+
+			// Uploading to uploadUrl: spooled into segments on another thread, which the uploader sends on its own
+			BackgroundFileWriter upload = null;
+			if (uploader != null && uploadUrl != null) {
+				upload = new BackgroundFileWriter(uploader.startUpload(uploadUrl, uploadHeaders, outputSampleRate,
+					outputChannels, uploadSegmentSize), maxBlockLength, queueCapacity);
+				uploadWriter = upload;
+				upload.start();
+				started.add(upload);
+
+				(vadEnabled && vadSkipSilence ? gatedSinks : sinks).add(fileSink(upload));
+			}
+
+			captureLoop(sinks.toArray(new BlockSink[sinks.size()]), gatedSinks.toArray(new BlockSink[gatedSinks.size()]),
+				createGate(!gatedSinks.isEmpty()), streamChunks);
 
-					os.close();
-					File wav = new File(finalUrl);
-					addWavHeader(audioFile, wav);
-					audioFile.delete();
+			if (features != null) {
+				features.flush(listener);
+			}
 
-					message = handler.obtainMessage();
-					messageBundle = new Bundle();
-					messageBundle.putString("file", wav.toURI().toString());
-					message.setData(messageBundle);
-					handler.sendMessage(message);
+			if (writer != null) {
+				writer.finish();
+				File recorded = output.getFile();
 
-					if (recorder.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
-						recorder.stop();
+				String[] segmentUrls = null;
+				if (output instanceof SegmentedFileWriter) {
+					List<File> segments = ((SegmentedFileWriter) output).getSegments();
+					segmentUrls = new String[segments.size()];
+					for (int i = 0; i < segmentUrls.length; i++) {
+						segmentUrls[i] = segments.get(i).toURI().toString();
 					}
 				}
-				catch(Throwable ex)
-				{
-					message = handler.obtainMessage();
-					messageBundle = new Bundle();
-					messageBundle.putString("error", ex.toString());
-					message.setData(messageBundle);
-					handler.sendMessage(message);
+				listener.onFileRecorded(recorded.toURI().toString(), segmentUrls);
+			}
+
+			if (upload != null) {
+				upload.finish();
+			}
+		}
+		catch(Throwable ex)
+		{
+			listener.onError(ex.toString());
+		}
+		finally
+		{
+			// After a failure, also while setting up, the consumers already started are still completed, so that
+			// their threads end and what they got is a valid file or spooled upload. Their errors come second to
+			// the one reported.
+			for (BackgroundFileWriter writer : started) {
+				finishQuietly(writer);
+			}
+
+			synchronized (stateLock) {
+				// A session started while this one was winding down keeps its state
+				if (state != STATE_RELEASED && sessionsStarted == sessionsRun) {
+					state = STATE_IDLE;
 				}
+			}
 
-				recorder.release();
-				recorder = null;
+			if (sourceRecording && (!keepWarm || isInterrupted())) {
+				source.stop();
+				sourceRecording = false;
 			}
 		}
 	}
 
-	private File addWavHeader(File fPCM, File wav) {
+	private static void finishQuietly(BackgroundFileWriter writer) {
+		if (writer == null) {
+			return;
+		}
 		try {
-			long mySubChunk1Size = 16;
-			int myBitsPerSample= audioFormat==AudioFormat.ENCODING_PCM_8BIT?8:16;
-			int myFormat = 1;
-			long myChannels = channelConfig==AudioFormat.CHANNEL_IN_STEREO?2:1;
-			long mySampleRate = sampleRateInHz;
-			long myByteRate = mySampleRate * myChannels * myBitsPerSample/8;
-			int myBlockAlign = (int) (myChannels * myBitsPerSample/8);
-
-			long myDataSize = fPCM.length();
-			long myChunk2Size =  myDataSize * myChannels * myBitsPerSample/8;
-			long myChunkSize = 36 + myChunk2Size;
-
-			OutputStream os = new FileOutputStream(wav);
-			BufferedOutputStream bos = new BufferedOutputStream(os);
-			DataOutputStream outFile = new DataOutputStream(bos);
-
-			outFile.writeBytes("RIFF");                                     // 00 - RIFF
-			outFile.write(intToByteArray((int)myChunkSize), 0, 4);          // 04 - how big is the rest of this file?
-			outFile.writeBytes("WAVE");                                     // 08 - WAVE
-			outFile.writeBytes("fmt ");                                     // 12 - fmt
-			outFile.write(intToByteArray((int)mySubChunk1Size), 0, 4);      // 16 - size of this chunk
-			outFile.write(shortToByteArray((short)myFormat), 0, 2);         // 20 - what is the audio format? 1 for PCM = Pulse Code Modulation
-			outFile.write(shortToByteArray((short)myChannels), 0, 2);       // 22 - mono or stereo? 1 or 2?  (or 5 or ???)
-			outFile.write(intToByteArray((int)mySampleRate), 0, 4);         // 24 - samples per second (numbers per second)
-			outFile.write(intToByteArray((int)myByteRate), 0, 4);           // 28 - bytes per second
-			outFile.write(shortToByteArray((short)myBlockAlign), 0, 2);     // 32 - # of bytes in one sample, for all channels
-			outFile.write(shortToByteArray((short)myBitsPerSample), 0, 2);  // 34 - how many bits in a sample(number)?  usually 16 or 24
-			outFile.writeBytes("data");                                     // 36 - data
-			outFile.write(intToByteArray((int)myDataSize), 0, 4);           // 40 - how big is this data chunk
-            // 44 - the actual data itself - is written in loop below
-
-			FileInputStream pcmIn = new FileInputStream(fPCM);
-			byte buffer[] = new byte[1024];
-			int iBytesRead = pcmIn.read(buffer);
-
-			while (iBytesRead > 0)
-			{
-				outFile.write(buffer, 0, iBytesRead);
-				iBytesRead = pcmIn.read(buffer);
-			}
-
-			pcmIn.close();
-
-			outFile.flush();
-			outFile.close();
-
+			writer.finish();
 		}
 		catch (IOException e) {
-			e.printStackTrace();
+			// The session already failed
 		}
+	}
 
-		fPCM.delete();
-		return wav;
+	/**
+	 * Samples per read: a burst in low-latency mode, otherwise the buffer size, whether streaming or only recording.
+	 */
+	private int readLength() {
+		if (lowLatencyReadLength > 0) {
+			return lowLatencyReadLength;
+		}
+		return readBufferSize;
 	}
 
-	private static byte[] intToByteArray(int i)
-	{
-		byte[] b = new byte[4];
-		b[0] = (byte) (i & 0x00FF);
-		b[1] = (byte) ((i >> 8) & 0x000000FF);
-		b[2] = (byte) ((i >> 16) & 0x000000FF);
-		b[3] = (byte) ((i >> 24) & 0x000000FF);
-		return b;
+	/**
+	 * A consumer of the blocks read by captureLoop().
+	 */
+	private interface BlockSink {
+		void write(short[] samples, int length);
 	}
 
-	// Convert a short to a byte array
-	public static byte[] shortToByteArray(short data)
-	{
-		/*
- 		 * NB have also tried: return new byte[]{(byte)(data & 0xff),(byte)((data >> 8) & 0xff)};
-		 *
-		 */
+	/**
+	 * Copies blocks into pooled chunks for the listener. Chunks are reused once the listener has released them,
+	 * so that the steady state capture loop doesn't allocate anything.
+	 */
+	private BlockSink streamSink() {
+		// Kept for the next session, chunks the listener still holds come back to it all the same
+		if (streamPool == null || streamPool.getChunkSize() != maxBlockLength) {
+			streamPool = new AudioChunkPool(CHUNK_POOL_SIZE, maxBlockLength);
+		}
+		final AudioChunkPool pool = streamPool;
+
+		return new BlockSink() {
+			@Override
+			public void write(short[] samples, int length) {
+				// Dropped chunks use up their number too
+				long sequence = chunkSequence++;
+
+				AudioChunk chunk = pool.acquire();
+				if (chunk == null) {
+					// The handler is holding on to every pooled chunk
+					droppedChunks++;
+					return;
+				}
+
+				System.arraycopy(samples, 0, chunk.samples, 0, length);
+				chunk.length = length;
+				chunk.frames = length / outputChannels;
+				chunk.timestamp = System.nanoTime();
+				chunk.sequence = sequence;
+				chunk.framePosition = blockFramePosition;
+				chunk.captureTime = blockCaptureNanos;
+				listener.onChunk(chunk);
+			}
+		};
+	}
+
+	private static BlockSink fileSink(final BackgroundFileWriter writer) {
+		return new BlockSink() {
+			@Override
+			public void write(short[] samples, int length) {
+				// Null when every chunk is waiting to be written, then the block is dropped
+				AudioChunk chunk = writer.acquire();
+				if (chunk != null) {
+					System.arraycopy(samples, 0, chunk.samples, 0, length);
+					chunk.length = length;
+					writer.submit(chunk);
+				}
+			}
+		};
+	}
+
+	private BlockSink serverSink(final LoopbackStreamServer server) {
+		return new BlockSink() {
+			@Override
+			public void write(short[] samples, int length) {
+				server.offer(samples, length, blockFramePosition);
+			}
+		};
+	}
+
+	private BlockSink meterSink(final LevelMeter meter) {
+		return new BlockSink() {
+			@Override
+			public void write(short[] samples, int length) {
+				meter.process(samples, length, listener);
+			}
+		};
+	}
+
+	private BlockSink featureSink(final FeatureExtractor features) {
+		return new BlockSink() {
+			@Override
+			public void write(short[] samples, int length) {
+				features.process(samples, length, listener);
+			}
+		};
+	}
+
+	private static BlockSink ringBufferSink(final PcmRingBuffer ringBuffer) {
+		return new BlockSink() {
+			@Override
+			public void write(short[] samples, int length) {
+				ringBuffer.write(samples, length);
+			}
+		};
+	}
+
+	/**
+	 * Pass a block to each consumer. One that throws is told to the listener and left out for the rest of the
+	 * session, so that a failing consumer doesn't end the capture for the others.
+	 */
+	private void writeAll(BlockSink[] sinks, short[] samples, int length) {
+		for (int i = 0; i < sinks.length; i++) {
+			BlockSink sink = sinks[i];
+			if (sink == null) {
+				continue;
+			}
+			try {
+				sink.write(samples, length);
+			}
+			catch (RuntimeException ex) {
+				sinks[i] = null;
+				listener.onError(ex.toString());
+			}
+		}
+	}
+
+	/**
+	 * Read and convert blocks until the session ends or the thread is interrupted, discarding them while paused.
+	 * Every block is written to each of sinks, and those that aren't held back by the gate to each of gatedSinks.
+	 *
+	 * @param gate Voice activity gate, or null to pass every block to gatedSinks too.
+	 * @param silenceEvents Whether to tell the listener about silent stretches every vadSilenceInterval ms.
+	 */
+	private void captureLoop(BlockSink[] sinks, BlockSink[] gatedSinks, VoiceActivityGate gate, boolean silenceEvents) {
+		long nextSilenceEvent = vadSilenceInterval;
+
+		while (!isInterrupted()) {
+			int current = state;
+			if ((current != STATE_CAPTURING && current != STATE_PAUSED) || sessionsStarted != sessionsRun) {
+				// Stopped, or stopped and started again already
+				break;
+			}
+
+			int length = readBlock();
+
+			if (lowLatencyReadLength > 0 && captureStats.getOverruns() > handledOverruns) {
+				// Trade some latency for not losing audio again
+				handledOverruns = captureStats.getOverruns();
+				if (source.growBuffer()) {
+					captureStats.setBufferFrames(source.getBufferFrames());
+				}
+			}
+
+			if (length <= 0 || current == STATE_PAUSED) {
+				continue;
+			}
+
+			if (dsp != null) {
+				dsp.process(block, length);
+			}
+
+			if (timeToFirstChunkNanos < 0) {
+				timeToFirstChunkNanos = System.nanoTime() - sessionRequestedAt;
+			}
+
+			writeAll(sinks, block, length);
+
+			if (gatedSinks.length == 0) {
+				continue;
+			}
+
+			if (gate != null) {
+				int state = gate.process(block, length);
+
+				if (state == VoiceActivityGate.SILENT) {
+					long silentMillis = gate.getSilentMillis();
+					if (silenceEvents && vadSilenceInterval > 0 && silentMillis >= nextSilenceEvent) {
+						listener.onSilence((int) Math.min(silentMillis, Integer.MAX_VALUE));
+						nextSilenceEvent = silentMillis + vadSilenceInterval;
+					}
+					continue;
+				}
+
+				nextSilenceEvent = vadSilenceInterval;
+
+				if (state == VoiceActivityGate.STARTED) {
+					// Emit the audio just before speech started, which ends where this block begins
+					long position = blockFramePosition;
+					long captureNanos = blockCaptureNanos;
+					long preRollFrames = 0;
+					for (int i = 0; i < gate.getPreRollCount(); i++) {
+						preRollFrames += gate.getPreRollLength(i) / outputChannels;
+					}
+
+					for (int i = 0; i < gate.getPreRollCount(); i++) {
+						blockFramePosition = position - preRollFrames;
+						blockCaptureNanos = captureNanos - preRollFrames * 1000000000L / outputSampleRate;
+						writeAll(gatedSinks, gate.getPreRollBlock(i), gate.getPreRollLength(i));
+						preRollFrames -= gate.getPreRollLength(i) / outputChannels;
+					}
+					gate.clearPreRoll();
+
+					blockFramePosition = position;
+					blockCaptureNanos = captureNanos;
+				}
+			}
+
+			writeAll(gatedSinks, block, length);
+		}
+	}
+
+	private VoiceActivityGate createGate(boolean enabled) {
+		if (!enabled) {
+			gate = null;
+			return null;
+		}
+
+		gate = new VoiceActivityGate(outputSampleRate, outputChannels, vadThreshold, vadHysteresis,
+			vadPreRoll, vadHangover, maxBlockLength);
+		return gate;
+	}
+
+	private void createRingBuffer() {
+		ringBuffer = ringBufferSeconds > 0
+			? new PcmRingBuffer(outputSampleRate, outputChannels, ringBufferSeconds, maxBlockLength)
+			: null;
+	}
+
+	private void createDsp() {
+		List<DspStage> stages = new ArrayList<DspStage>();
+		if (highPassFrequency > 0) {
+			stages.add(new BiquadHighPass(outputSampleRate, outputChannels, highPassFrequency));
+		}
+		if (noiseGateEnabled) {
+			stages.add(new NoiseGate(outputSampleRate, outputChannels, noiseGateThreshold));
+		}
+		if (agcEnabled) {
+			stages.add(new AutomaticGainControl(outputSampleRate, outputChannels, agcTarget, agcMaxGain));
+		}
+		if (limiterEnabled) {
+			stages.add(new Limiter(outputSampleRate, outputChannels, limiterCeiling));
+		}
+		dsp = stages.isEmpty() ? null : new DspChain(stages.toArray(new DspStage[stages.size()]));
+	}
+
+	private void createMeter() {
+		meter = meteringRate > 0 ? new LevelMeter(outputSampleRate, outputChannels, meteringRate, spectrumSize) : null;
+	}
+
+	private void createFeatureExtractor() {
+		if (featureType == null) {
+			features = null;
+			return;
+		}
+
+		int window = Math.max((int) Math.round(featureWindow * outputSampleRate / 1000), 2);
+		int hop = Math.max((int) Math.round(featureHop * outputSampleRate / 1000), 1);
+		features = new FeatureExtractor(featureType, outputSampleRate, outputChannels, window, hop, melBands, mfccCount,
+			melMinFrequency, melMaxFrequency, featureBatch);
+	}
+
+	/**
+	 * Allocate the buffers used by readBlock(), for reads of readLength samples.
+	 */
+	private void prepareBlocks(int readLength) {
+		// The buffers of the previous session are kept if they fit
+		captureLength = readLength;
+		if (captureBuffer == null || captureBuffer.length != readLength) {
+			captureBuffer = new short[readLength];
+		}
+
+		if (PcmConverter.isNeeded(sampleRateInHz, channels, outputSampleRate, outputChannels)) {
+			converter = new PcmConverter(sampleRateInHz, channels, outputSampleRate, outputChannels);
+			maxBlockLength = converter.maxOutputLength(readLength);
+			if (convertBuffer == null || convertBuffer.length != maxBlockLength) {
+				convertBuffer = new short[maxBlockLength];
+			}
+		}
+		else {
+			converter = null;
+			maxBlockLength = readLength;
+		}
+	}
+
+	/**
+	 * Read the next block from the source and convert it to the output format. The result is left in block, and
+	 * its position and capture time in blockFramePosition and blockCaptureNanos.
+	 *
+	 * @return The number of samples in block, or the source's result if nothing was read.
+	 */
+	private int readBlock() {
+		long start = System.nanoTime();
+		int read = source.read(captureBuffer, 0, captureLength);
+		long end = System.nanoTime();
+		captureStats.recordRead(captureLength, read, start, end);
+
+		if (read <= 0) {
+			block = captureBuffer;
+			return read;
+		}
+
+		int frames = read / channels;
+		boolean timestamped = source.getTimestamp(frameTimestamp);
+		long estimatedLostFrames = captureStats.getEstimatedLostFrames();
+		// Without timestamps the frames lost to overruns can only be estimated, but the clock must skip them all the same
+		long position = timestamped || clock.hasTimestamps() ? sourcePosition : sourcePosition + estimatedLostFrames;
+		long lost = clock.update(position, frames, timestamped ? frameTimestamp : null, end);
+		sourcePosition += frames;
+
+		boolean estimated = !clock.hasTimestamps();
+		if (estimated) {
+			lost = estimatedLostFrames - reportedLostFrames;
+		}
+		reportedLostFrames = estimatedLostFrames;
+
+		if (lost > 0) {
+			long outputLost = lost * outputSampleRate / sampleRateInHz;
+			listener.onGap(framePosition, outputLost, outputLost * 1000.0 / outputSampleRate, estimated);
+			framePosition += outputLost;
+		}
+		blockFramePosition = framePosition;
+		blockCaptureNanos = clock.getCaptureNanos();
+
+		int length;
+		if (converter == null) {
+			block = captureBuffer;
+			length = read;
+		}
+		else {
+			block = convertBuffer;
+			length = converter.process(captureBuffer, read, convertBuffer);
+		}
+
+		framePosition += length / outputChannels;
+		return length;
+	}
+
+	private AudioFileWriter createFileWriter(File file) throws IOException {
+		if (FILE_FORMAT_FLAC.equals(fileFormat)) {
+			return new FlacFileWriter(file, outputSampleRate, outputChannels);
+		}
+		if (FILE_FORMAT_AAC.equals(fileFormat)) {
+			return new AacFileWriter(file, outputSampleRate, outputChannels, AacFileWriter.DEFAULT_BIT_RATE);
+		}
+
+		long bytesPerSecond = (long) outputSampleRate * PcmEncoder.byteLength(outputChannels);
+		long checkpointInterval = (long) (checkpointSeconds * bytesPerSecond);
+		long segmentSize = segmentSeconds > 0 ? (long) (segmentSeconds * bytesPerSecond) : 0;
+		if (segmentBytes > 0 && (segmentSize == 0 || segmentBytes < segmentSize)) {
+			segmentSize = segmentBytes;
+		}
+
+		if (segmentSize > 0) {
+			SegmentedFileWriter writer = new SegmentedFileWriter(file, outputSampleRate, outputChannels, segmentSize, checkpointInterval);
+			writer.setPeakIndex(peakIndex);
+			return writer;
+		}
 
-		return new byte[]{(byte)(data & 0xff),(byte)((data >>> 8) & 0xff)};
+		WavFileWriter writer = new WavFileWriter(file, outputSampleRate, outputChannels);
+		writer.setCheckpointInterval(checkpointInterval);
+		writer.setPeakIndex(peakIndex);
+		return writer;
 	}
 }
@@ -0,0 +1,172 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.AudioTimestamp;
+import android.os.Build;
+
+/**
+ * Reads samples from the device microphone through an AudioRecord.
+ */
+public class AudioRecordSource implements PcmSource {
+
+	private static final int RECORDING_BUFFER_FACTOR = 5;
+	// growBuffer() doesn't go beyond this much audio
+	private static final int MAX_BUFFER_MILLIS = 1000;
+
+	private final int audioSource;
+	private final int sampleRateInHz;
+	private final int channelCount;
+	private final int channelConfig;
+	private AudioRecord recorder;
+	private int recordingBufferSize;
+	private final AudioTimestamp audioTimestamp = new AudioTimestamp();
+	// Frames read since start(), and how many of them came from recorders replaced by growBuffer()
+	private long framesRead = 0;
+	private long positionBase = 0;
+
+	/**
+	 * @param readBufferSize The size of the reads that will be made, used to size the recording buffer.
+	 */
+	public AudioRecordSource(int audioSource, int sampleRate, int channels, int readBufferSize) {
+		this(audioSource, sampleRate, channels, readBufferSize, readBufferSize * RECORDING_BUFFER_FACTOR);
+	}
+
+	/**
+	 * @param readBufferSize The size of the reads that will be made, in bytes.
+	 * @param recordingBufferSize The size of the AudioRecord buffer in bytes, raised to the minimum if needed.
+	 */
+	public AudioRecordSource(int audioSource, int sampleRate, int channels, int readBufferSize, int recordingBufferSize) {
+		this.audioSource = audioSource;
+		sampleRateInHz = sampleRate;
+		channelCount = channels == 2 ? 2 : 1;
+		channelConfig = channelCount == 2 ? AudioFormat.CHANNEL_IN_STEREO : AudioFormat.CHANNEL_IN_MONO;
+
+		// Get the minimum recording buffer size for the specified configuration
+		int minBufferSize = AudioRecord.getMinBufferSize(sampleRateInHz, channelConfig, AudioFormat.ENCODING_PCM_16BIT);
+
+		// Ensure that the given recordingBufferSize isn't lower than the minimum buffer size allowed for the current configuration,
+		// nor smaller than a read
+		//
+		this.recordingBufferSize = Math.max(Math.max(recordingBufferSize, minBufferSize), readBufferSize);
+		recorder = createRecorder();
+	}
+
+	/**
+	 * Minimum AudioRecord buffer size in bytes for the given configuration.
+	 */
+	public static int getMinBufferSize(int sampleRate, int channels) {
+		return AudioRecord.getMinBufferSize(sampleRate,
+			channels == 2 ? AudioFormat.CHANNEL_IN_STEREO : AudioFormat.CHANNEL_IN_MONO,
+			AudioFormat.ENCODING_PCM_16BIT);
+	}
+
+	public AudioRecord getRecorder() {
+		return recorder;
+	}
+
+	@Override
+	public int getSampleRate() {
+		return sampleRateInHz;
+	}
+
+	@Override
+	public int getChannelCount() {
+		return channelCount;
+	}
+
+	@Override
+	public int getBufferFrames() {
+		return recordingBufferSize / (2 * channelCount);
+	}
+
+	/**
+	 * Replace the AudioRecord by one with twice the buffer, picking up where the old one was.
+	 */
+	@Override
+	public boolean growBuffer() {
+		int maxBufferSize = sampleRateInHz / 1000 * MAX_BUFFER_MILLIS * 2 * channelCount;
+		if (recordingBufferSize >= maxBufferSize) {
+			return false;
+		}
+
+		boolean recording = recorder.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING;
+		recorder.release();
+
+		recordingBufferSize = Math.min(recordingBufferSize * 2, maxBufferSize);
+		recorder = createRecorder();
+		// The new recorder counts its frames from 0
+		positionBase = framesRead;
+		if (recording) {
+			recorder.startRecording();
+		}
+		return true;
+	}
+
+	@Override
+	public void start() {
+		recorder.startRecording();
+		framesRead = 0;
+		positionBase = 0;
+	}
+
+	@Override
+	public int read(short[] buffer, int offset, int length) {
+		int read = recorder.read(buffer, offset, length);
+		if (read > 0) {
+			framesRead += read / channelCount;
+		}
+		return read;
+	}
+
+	/**
+	 * The recorder's timestamp, available from Android 7.0 on, on the same clock as System.nanoTime().
+	 */
+	@Override
+	public boolean getTimestamp(FrameTimestamp timestamp) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N
+			|| recorder.getTimestamp(audioTimestamp, AudioTimestamp.TIMEBASE_MONOTONIC) != AudioRecord.SUCCESS) {
+			return false;
+		}
+
+		timestamp.framePosition = positionBase + audioTimestamp.framePosition;
+		timestamp.nanoTime = audioTimestamp.nanoTime;
+		return true;
+	}
+
+	@Override
+	public void stop() {
+		if (recorder.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
+			recorder.stop();
+		}
+	}
+
+	@Override
+	public void release() {
+		recorder.release();
+	}
+
+	private AudioRecord createRecorder() {
+		return new AudioRecord(audioSource, sampleRateInHz, channelConfig, AudioFormat.ENCODING_PCM_16BIT, recordingBufferSize);
+	}
+}
@@ -0,0 +1,124 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * Automatic gain control: brings the RMS level towards a target, with at most maxGainDb of boost or cut.
+ * Near the boost limit the gain curve bends over a soft knee instead of stopping abruptly, so quiet passages
+ * aren't pumped up to the noise floor. The gain falls within attackMs when the level rises and recovers over
+ * releaseMs, and is recomputed every CONTROL_FRAMES frames and ramped in between.
+ */
+public class AutomaticGainControl implements DspStage {
+
+	private static final int CONTROL_FRAMES = 32;
+	private static final double KNEE_DB = 10;
+	// Below this level the gain is held, rather than raised on silence
+	private static final double SILENCE_DB = -70;
+
+	private final int channels;
+	private final double targetDb;
+	private final double maxGainDb;
+	private final float levelSmoothing;
+	private final float attack;
+	private final float release;
+
+	private float meanSquare = 0;
+	private float gainDb = 0;
+	private float gain = 1;
+	private float gainStep = 0;
+	private int framesToControl = 0;
+
+	public AutomaticGainControl(int sampleRate, int channels, double targetDb, double maxGainDb,
+		double attackMs, double releaseMs) {
+
+		this.channels = channels;
+		this.targetDb = targetDb;
+		this.maxGainDb = Math.max(maxGainDb, 0);
+		// The level is measured over about 100 ms, like a VU meter
+		this.levelSmoothing = DspChain.smoothing(100, sampleRate);
+		// The gain only changes once per control period
+		this.attack = DspChain.smoothing(attackMs / CONTROL_FRAMES, sampleRate);
+		this.release = DspChain.smoothing(releaseMs / CONTROL_FRAMES, sampleRate);
+	}
+
+	public AutomaticGainControl(int sampleRate, int channels, double targetDb, double maxGainDb) {
+		this(sampleRate, channels, targetDb, maxGainDb, 20, 1000);
+	}
+
+	@Override
+	public void process(short[] samples, int length) {
+		for (int frame = 0; frame + channels <= length; frame += channels) {
+			if (framesToControl == 0) {
+				control();
+			}
+			framesToControl--;
+			gain += gainStep;
+
+			float squares = 0;
+			for (int i = frame; i < frame + channels; i++) {
+				float sample = samples[i];
+				squares += sample * sample;
+				samples[i] = DspChain.clip(sample * gain);
+			}
+			meanSquare += (squares / channels - meanSquare) * levelSmoothing;
+		}
+	}
+
+	@Override
+	public void reset() {
+		meanSquare = 0;
+		gainDb = 0;
+		gain = 1;
+		gainStep = 0;
+		framesToControl = 0;
+	}
+
+	/**
+	 * Choose the gain to reach by the end of the next control period.
+	 */
+	private void control() {
+		double levelDb = 10 * Math.log10(Math.max(meanSquare, 1e-10) / ((double) Short.MAX_VALUE * Short.MAX_VALUE));
+
+		if (levelDb > SILENCE_DB) {
+			double wanted = softLimit(targetDb - levelDb, maxGainDb);
+			wanted = -softLimit(-wanted, maxGainDb);
+			gainDb += (wanted - gainDb) * (wanted < gainDb ? attack : release);
+		}
+
+		float next = DspChain.dbToLinear(gainDb);
+		gainStep = (next - gain) / CONTROL_FRAMES;
+		framesToControl = CONTROL_FRAMES;
+	}
+
+	/**
+	 * x, bent over a quadratic knee of KNEE_DB towards limit, and limit above that.
+	 */
+	private static double softLimit(double x, double limit) {
+		if (x <= limit - KNEE_DB / 2) {
+			return x;
+		}
+		if (x >= limit + KNEE_DB / 2) {
+			return limit;
+		}
+		double over = x - limit + KNEE_DB / 2;
+		return x - over * over / (2 * KNEE_DB);
+	}
+}
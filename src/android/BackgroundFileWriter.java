@@ -0,0 +1,224 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves file I/O off the capture thread. The capture thread fills chunks from acquire() and hands them
+ * over with submit(), which never blocks; this thread batches them into large writes to the AudioFileWriter.
+ * If storage falls so far behind that no chunk is free, the capture thread drops the data instead of waiting.
+ */
+public class BackgroundFileWriter extends Thread {
+
+	// Size of the writes made to storage, a multiple of the usual flash page and file system block sizes
+	public static final int BATCH_SIZE = 64 * 1024;
+	// How long the writer sleeps when there is nothing to write
+	private static final long IDLE_PARK_NANOS = 2000000L;
+
+	private final AudioFileWriter writer;
+	private final AudioChunkPool pool;
+	private final SpscQueue<AudioChunk> queue;
+	private final ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+	private volatile boolean finishing = false;
+	private volatile IOException error = null;
+	// Capture thread only
+	private boolean finished = false;
+
+	// Counters, written by the capture thread
+	private volatile int highWaterMark = 0;
+	private volatile long droppedChunks = 0;
+	// Counters, written by this thread
+	private volatile long chunksWritten = 0;
+
+	public BackgroundFileWriter(AudioFileWriter writer, int chunkSize, int queueCapacity) {
+		super("AudioInputFileWriter");
+		this.writer = writer;
+		this.pool = new AudioChunkPool(queueCapacity, chunkSize);
+		this.queue = new SpscQueue<AudioChunk>(queueCapacity);
+	}
+
+	/**
+	 * Capture thread: get an empty chunk to read into, or null if every chunk is waiting to be written.
+	 * In that case the data has to be dropped, which is counted.
+	 */
+	public AudioChunk acquire() {
+		AudioChunk chunk = pool.acquire();
+		if (chunk == null) {
+			droppedChunks++;
+		}
+		return chunk;
+	}
+
+	/**
+	 * Capture thread: queue a filled chunk for writing.
+	 */
+	public void submit(AudioChunk chunk) {
+		// Can't fail, the queue holds as many chunks as the pool
+		queue.offer(chunk);
+
+		int depth = queue.size();
+		if (depth > highWaterMark) {
+			highWaterMark = depth;
+		}
+	}
+
+	/**
+	 * Capture thread: have this thread write everything still queued and close the file, and wait for it. Calling
+	 * it again does nothing, and it also works if the thread was never started. The file is closed by this thread,
+	 * as the capture thread may have been interrupted to stop, which would make its FileChannel writes fail.
+	 *
+	 * @throws IOException The first error that occurred while writing.
+	 */
+	public void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		finished = true;
+		finishing = true;
+		if (getState() == State.NEW) {
+			start();
+		}
+		LockSupport.unpark(this);
+
+		boolean interrupted = false;
+		try {
+			while (isAlive()) {
+				try {
+					join();
+				}
+				catch (InterruptedException e) {
+					// The capture thread is usually interrupted to stop, make sure the file is still completed
+					interrupted = true;
+				}
+			}
+
+			if (error != null) {
+				throw error;
+			}
+		}
+		finally {
+			// Only once the file has been closed, as FileChannel refuses to write on an interrupted thread
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	public int getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	public long getDroppedChunks() {
+		return droppedChunks;
+	}
+
+	public long getChunksWritten() {
+		return chunksWritten;
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			// Read the flag before draining, so nothing submitted before finish() is missed
+			boolean done = finishing;
+			AudioChunk chunk = queue.poll();
+
+			if (chunk == null) {
+				if (done) {
+					break;
+				}
+				LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+				continue;
+			}
+
+			try {
+				if (error == null) {
+					append(chunk);
+				}
+			}
+			catch (IOException e) {
+				// Keep draining so that the capture thread gets its chunks back
+				error = e;
+			}
+			finally {
+				chunk.release();
+			}
+			chunksWritten++;
+		}
+
+		try {
+			if (error == null) {
+				flush();
+			}
+		}
+		catch (IOException e) {
+			error = e;
+		}
+
+		try {
+			writer.close();
+		}
+		catch (IOException e) {
+			if (error == null) {
+				error = e;
+			}
+		}
+	}
+
+	private void append(AudioChunk chunk) throws IOException {
+		int byteLength = PcmEncoder.byteLength(chunk.length);
+
+		if (byteLength > batch.capacity()) {
+			flush();
+			writer.write(chunk.samples, chunk.length);
+			return;
+		}
+
+		if (byteLength > batch.remaining()) {
+			// Top up the batch so that every write but the last is exactly BATCH_SIZE
+			int fitting = batch.remaining() / 2;
+			batch.asShortBuffer().put(chunk.samples, 0, fitting);
+			batch.position(batch.position() + fitting * 2);
+			flush();
+			batch.asShortBuffer().put(chunk.samples, fitting, chunk.length - fitting);
+			batch.position(batch.position() + (chunk.length - fitting) * 2);
+			return;
+		}
+
+		batch.asShortBuffer().put(chunk.samples, 0, chunk.length);
+		batch.position(batch.position() + byteLength);
+	}
+
+	private void flush() throws IOException {
+		batch.flip();
+		writer.write(batch);
+		batch.clear();
+	}
+}
@@ -0,0 +1,79 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * Second order Butterworth high-pass filter, removing DC offset and low rumble such as handling noise or wind.
+ * A biquad with the coefficients of the Audio EQ Cookbook, in transposed direct form II, per channel.
+ */
+public class BiquadHighPass implements DspStage {
+
+	private final int channels;
+	private final float b0, b1, b2, a1, a2;
+	// Filter memory of each channel
+	private final float[] z1;
+	private final float[] z2;
+
+	public BiquadHighPass(int sampleRate, int channels, double cutoffHz) {
+		this.channels = channels;
+		this.z1 = new float[channels];
+		this.z2 = new float[channels];
+
+		double w0 = 2 * Math.PI * Math.min(cutoffHz, sampleRate * 0.45) / sampleRate;
+		double alpha = Math.sin(w0) / (2 * Math.sqrt(0.5));
+		double cos = Math.cos(w0);
+		double a0 = 1 + alpha;
+
+		b0 = (float) ((1 + cos) / 2 / a0);
+		b1 = (float) (-(1 + cos) / a0);
+		b2 = b0;
+		a1 = (float) (-2 * cos / a0);
+		a2 = (float) ((1 - alpha) / a0);
+	}
+
+	@Override
+	public void process(short[] samples, int length) {
+		for (int channel = 0; channel < channels; channel++) {
+			float s1 = z1[channel];
+			float s2 = z2[channel];
+
+			for (int i = channel; i < length; i += channels) {
+				float x = samples[i];
+				float y = b0 * x + s1;
+				s1 = b1 * x - a1 * y + s2;
+				s2 = b2 * x - a2 * y;
+				samples[i] = DspChain.clip(y);
+			}
+
+			// Keep denormals out of the memory during silence
+			z1[channel] = Math.abs(s1) < 1e-15f ? 0 : s1;
+			z2[channel] = Math.abs(s2) < 1e-15f ? 0 : s2;
+		}
+	}
+
+	@Override
+	public void reset() {
+		for (int channel = 0; channel < channels; channel++) {
+			z1[channel] = 0;
+			z2[channel] = 0;
+		}
+	}
+}
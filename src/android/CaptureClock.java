@@ -0,0 +1,181 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * Works out when the frames read from a source were captured, and detects where audio went missing.
+ *
+ * With source timestamps, the offset between a frame's capture time and its position at the sample rate is
+ * constant as long as no frames are lost, apart from the slow drift between the sample clock and
+ * System.nanoTime(). Frames the source drops show up as a jump of that offset by their duration, which is
+ * reported as a gap. The drift is the slope of the offset, fitted by least squares since the last gap.
+ *
+ * Without timestamps a read's completion time stands in: a read that had to wait for its frames returns right
+ * after the newest was captured, while one served from the buffer returns later, so the smallest offset seen is
+ * used. It is allowed to rise slowly to follow the drift. Gaps can't be measured then, and are left to the
+ * overrun estimate of CaptureStats.
+ */
+public class CaptureClock {
+
+	// Largest drift between the sample clock and System.nanoTime() followed without timestamps
+	private static final double MAX_DRIFT = 200e-6;
+	// Time the offset has to be measured over before the drift is reported
+	private static final long MIN_DRIFT_NANOS = 5000000000L;
+
+	private final int sampleRate;
+	private final long toleranceNanos;
+
+	private boolean timestamps = false;
+	private boolean hasOffset = false;
+	// Capture time minus position at the sample rate, in ns
+	private double offset;
+	private long offsetNanoTime;
+
+	// Least squares fit of the offset in us against time in s since the fit began
+	private long fitStart;
+	private double fitOrigin;
+	private int fitCount;
+	private double sumT, sumO, sumTT, sumTO;
+	private double driftPpm = Double.NaN;
+
+	private long captureNanos;
+	private long gaps = 0;
+	private long lostFrames = 0;
+
+	/**
+	 * @param toleranceMillis How far the offset may jitter before a jump counts as a gap.
+	 */
+	public CaptureClock(int sampleRate, double toleranceMillis) {
+		this.sampleRate = sampleRate;
+		this.toleranceNanos = (long) (toleranceMillis * 1000000);
+	}
+
+	/**
+	 * Account for a read.
+	 *
+	 * @param position Position of the first frame read, as counted by the source.
+	 * @param frames Number of frames read.
+	 * @param timestamp The source's latest timestamp, or null if it has none.
+	 * @param readEndNanos System.nanoTime() when the read returned.
+	 * @return The number of frames lost before this read, 0 if none were.
+	 */
+	public long update(long position, int frames, FrameTimestamp timestamp, long readEndNanos) {
+		long lost = 0;
+
+		if (timestamp != null) {
+			double measured = timestamp.nanoTime - toNanos(timestamp.framePosition);
+			if (!timestamps || !hasOffset) {
+				// The read end estimate isn't comparable with timestamps
+				timestamps = true;
+				startFit(timestamp.nanoTime, measured);
+			}
+			else if (measured - offset > toleranceNanos) {
+				lost = Math.round((measured - offset) * sampleRate / 1e9);
+				gaps++;
+				lostFrames += lost;
+				startFit(timestamp.nanoTime, measured);
+			}
+			else if (offset - measured > toleranceNanos) {
+				// The source's clock was corrected, no audio is missing
+				startFit(timestamp.nanoTime, measured);
+			}
+
+			offset = measured;
+			offsetNanoTime = timestamp.nanoTime;
+			hasOffset = true;
+			fit(timestamp.nanoTime, measured);
+		}
+		else if (!timestamps) {
+			// Offset of the newest frame read, which was captured at the latest when the read returned
+			double measured = readEndNanos - toNanos(position + frames);
+			if (!hasOffset) {
+				startFit(readEndNanos, measured);
+				offset = measured;
+			}
+			else {
+				double rise = (readEndNanos - offsetNanoTime) * MAX_DRIFT;
+				offset = Math.min(measured, offset + Math.max(rise, 0));
+			}
+			offsetNanoTime = readEndNanos;
+			hasOffset = true;
+		}
+
+		captureNanos = Math.round(offset + toNanos(position));
+		return lost;
+	}
+
+	/**
+	 * System.nanoTime() at which the first frame of the last read was captured.
+	 */
+	public long getCaptureNanos() {
+		return captureNanos;
+	}
+
+	/**
+	 * Whether capture times come from the source's timestamps rather than read completion times.
+	 */
+	public boolean hasTimestamps() {
+		return timestamps;
+	}
+
+	public long getGaps() {
+		return gaps;
+	}
+
+	public long getLostFrames() {
+		return lostFrames;
+	}
+
+	/**
+	 * How much faster the sample clock runs than System.nanoTime(), in parts per million, or NaN until enough
+	 * timestamps have been seen.
+	 */
+	public double getDriftPpm() {
+		return driftPpm;
+	}
+
+	private double toNanos(long frames) {
+		return frames * 1e9 / sampleRate;
+	}
+
+	private void startFit(long nanoTime, double measured) {
+		fitStart = nanoTime;
+		fitOrigin = measured;
+		fitCount = 0;
+		sumT = sumO = sumTT = sumTO = 0;
+	}
+
+	private void fit(long nanoTime, double measured) {
+		double t = (nanoTime - fitStart) / 1e9;
+		double o = (measured - fitOrigin) / 1000;
+		fitCount++;
+		sumT += t;
+		sumO += o;
+		sumTT += t * t;
+		sumTO += t * o;
+
+		double denominator = fitCount * sumTT - sumT * sumT;
+		if (nanoTime - fitStart >= MIN_DRIFT_NANOS && denominator > 0) {
+			// The offset shrinks by the drift per second, in us per s, when the sample clock runs fast
+			driftPpm = -(fitCount * sumTO - sumT * sumO) / denominator;
+		}
+	}
+}
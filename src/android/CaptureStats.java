@@ -0,0 +1,153 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * Health of the reads from the source: how much was captured, reads that came back short or failed, how long reads
+ * blocked, and overruns. Recorded from the capture thread; reads from other threads may be slightly out of date.
+ *
+ * An overrun is assumed whenever the capture thread stayed away from the source for longer than the source can
+ * buffer, in which case the frames that didn't fit are estimated as lost.
+ */
+public class CaptureStats {
+
+	// Counts of the AudioRecord error codes -1 to -7, anything else counts as -1 (ERROR)
+	private static final int ERROR_CODES = 7;
+
+	private final int sampleRate;
+	private final int channels;
+	private long bufferNanos;
+
+	private long reads = 0;
+	private long framesCaptured = 0;
+	private long shortReads = 0;
+	private long emptyReads = 0;
+	private long failedReads = 0;
+	private final long[] errors = new long[ERROR_CODES];
+	private long overruns = 0;
+	private long estimatedLostFrames = 0;
+	private final LatencyHistogram readLatency = new LatencyHistogram();
+
+	// When the last read returned, 0 before the first one
+	private long lastReadEnd = 0;
+
+	/**
+	 * @param bufferFrames Frames the source can buffer, 0 if it never loses any.
+	 */
+	public CaptureStats(int sampleRate, int channels, int bufferFrames) {
+		this.sampleRate = sampleRate;
+		this.channels = Math.max(channels, 1);
+		this.bufferNanos = bufferFrames > 0 ? bufferFrames * 1000000000L / sampleRate : 0;
+	}
+
+	/**
+	 * @param requested The number of samples asked for.
+	 * @param result What the source's read returned.
+	 * @param startNanos System.nanoTime() before the read.
+	 * @param endNanos System.nanoTime() after the read.
+	 */
+	public void recordRead(int requested, int result, long startNanos, long endNanos) {
+		reads++;
+		readLatency.record(endNanos - startNanos);
+
+		if (result > 0) {
+			framesCaptured += result / channels;
+			if (result < requested) {
+				shortReads++;
+			}
+		}
+		else if (result == 0) {
+			emptyReads++;
+		}
+		else {
+			failedReads++;
+			errors[result >= -ERROR_CODES ? -result - 1 : 0]++;
+		}
+
+		if (bufferNanos > 0 && lastReadEnd != 0) {
+			long away = startNanos - lastReadEnd;
+			if (away > bufferNanos) {
+				overruns++;
+				estimatedLostFrames += (away - bufferNanos) * sampleRate / 1000000000L;
+			}
+		}
+		lastReadEnd = endNanos;
+	}
+
+	/**
+	 * The source's buffer has changed size; the time spent changing it doesn't count as an overrun.
+	 */
+	public void setBufferFrames(int bufferFrames) {
+		bufferNanos = bufferFrames > 0 ? bufferFrames * 1000000000L / sampleRate : 0;
+		lastReadEnd = 0;
+	}
+
+	public long getReads() {
+		return reads;
+	}
+
+	public long getFramesCaptured() {
+		return framesCaptured;
+	}
+
+	/**
+	 * Reads that returned fewer samples than asked for, but some.
+	 */
+	public long getShortReads() {
+		return shortReads;
+	}
+
+	/**
+	 * Reads that returned no samples at all.
+	 */
+	public long getEmptyReads() {
+		return emptyReads;
+	}
+
+	/**
+	 * Reads that returned an error code.
+	 */
+	public long getFailedReads() {
+		return failedReads;
+	}
+
+	/**
+	 * How many reads returned the given (negative) AudioRecord error code.
+	 */
+	public long getErrorCount(int code) {
+		return code < 0 && code >= -ERROR_CODES ? errors[-code - 1] : 0;
+	}
+
+	public long getOverruns() {
+		return overruns;
+	}
+
+	public long getEstimatedLostFrames() {
+		return estimatedLostFrames;
+	}
+
+	/**
+	 * How long reads blocked.
+	 */
+	public LatencyHistogram getReadLatency() {
+		return readLatency;
+	}
+}
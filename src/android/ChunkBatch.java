@@ -0,0 +1,111 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * Samples of several chunks gathered into one buffer, so that they can be delivered to the web layer at once.
+ */
+public final class ChunkBatch {
+
+	private short[] samples = new short[0];
+	private int length = 0;
+	private int chunks = 0;
+	private long oldestTimestamp = 0;
+	private long firstSequence = 0;
+	private long firstFramePosition = 0;
+	private long firstCaptureTime = 0;
+	private long nextSequence = 0;
+	private long nextFramePosition = 0;
+
+	/**
+	 * Copy the samples of chunk to the end of the batch. The chunk can be released afterwards.
+	 */
+	public void append(AudioChunk chunk) {
+		if (length + chunk.length > samples.length) {
+			short[] grown = new short[Math.max(length + chunk.length, samples.length * 2)];
+			System.arraycopy(samples, 0, grown, 0, length);
+			samples = grown;
+		}
+
+		if (chunks == 0) {
+			oldestTimestamp = chunk.timestamp;
+			firstSequence = chunk.sequence;
+			firstFramePosition = chunk.framePosition;
+			firstCaptureTime = chunk.captureTime;
+		}
+		nextSequence = chunk.sequence + 1;
+		nextFramePosition = chunk.framePosition + chunk.frames;
+
+		System.arraycopy(chunk.samples, 0, samples, length, chunk.length);
+		length += chunk.length;
+		chunks++;
+	}
+
+	/**
+	 * Whether chunk carries on right where the batch ends, without chunks or frames missing in between.
+	 * An empty batch can take any chunk.
+	 */
+	public boolean isContiguous(AudioChunk chunk) {
+		return chunks == 0 || (chunk.sequence == nextSequence && chunk.framePosition == nextFramePosition);
+	}
+
+	public short[] getSamples() {
+		return samples;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public int getChunkCount() {
+		return chunks;
+	}
+
+	/**
+	 * System.nanoTime() at which the first chunk in the batch was captured.
+	 */
+	public long getOldestTimestamp() {
+		return oldestTimestamp;
+	}
+
+	public long getFirstSequence() {
+		return firstSequence;
+	}
+
+	/**
+	 * Position of the first frame in the batch since the start of the session.
+	 */
+	public long getFirstFramePosition() {
+		return firstFramePosition;
+	}
+
+	/**
+	 * System.nanoTime() at which the first frame in the batch was captured.
+	 */
+	public long getFirstCaptureTime() {
+		return firstCaptureTime;
+	}
+
+	public void clear() {
+		length = 0;
+		chunks = 0;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import android.util.Base64;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Encodes samples and feature values into the results sent to the web layer. The byte buffer used for the binary
+ * encodings is reused, so an encoder must only be used by one thread.
+ */
+public final class ChunkEncoder {
+
+	private byte[] encodeBuffer;
+
+	/**
+	 * The samples as the "data" of a result, in the given AudioInputReceiver.DATA_ENCODING_*, along with the
+	 * "encoding" for the binary ones.
+	 *
+	 * @param normalizationFactor What the samples are divided by in the float32 encoding.
+	 */
+	public JSONObject encodeSamples(short[] samples, int length, String dataEncoding, float normalizationFactor)
+		throws JSONException {
+
+		JSONObject info = new JSONObject();
+
+		if (AudioInputReceiver.DATA_ENCODING_BASE64.equals(dataEncoding)) {
+			// Little-endian PCM, only the samples actually read
+			int byteLength = PcmEncoder.byteLength(length);
+			ensureEncodeBuffer(byteLength);
+
+			PcmEncoder.toLittleEndian(samples, length, encodeBuffer);
+			info.put("data", Base64.encodeToString(encodeBuffer, 0, byteLength, Base64.NO_WRAP));
+			info.put("encoding", AudioInputReceiver.DATA_ENCODING_BASE64);
+		}
+		else if (AudioInputReceiver.DATA_ENCODING_FLOAT32.equals(dataEncoding)) {
+			// Normalized little-endian floats, ready to be used as Web Audio samples
+			int byteLength = PcmEncoder.floatByteLength(length);
+			ensureEncodeBuffer(byteLength);
+
+			PcmEncoder.toFloat32LittleEndian(samples, length, normalizationFactor, encodeBuffer);
+			info.put("data", Base64.encodeToString(encodeBuffer, 0, byteLength, Base64.NO_WRAP));
+			info.put("encoding", AudioInputReceiver.DATA_ENCODING_FLOAT32);
+		}
+		else {
+			info.put("data", Arrays.toString(length == samples.length ? samples : Arrays.copyOf(samples, length)));
+		}
+
+		return info;
+	}
+
+	/**
+	 * The first length values as base64 little-endian floats.
+	 */
+	public String encodeFloats(float[] values, int length) {
+		int byteLength = length * 4;
+		ensureEncodeBuffer(byteLength);
+		ByteBuffer.wrap(encodeBuffer).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().put(values, 0, length);
+		return Base64.encodeToString(encodeBuffer, 0, byteLength, Base64.NO_WRAP);
+	}
+
+	private void ensureEncodeBuffer(int byteLength) {
+		if (encodeBuffer == null || encodeBuffer.length < byteLength) {
+			encodeBuffer = new byte[byteLength];
+		}
+	}
+}
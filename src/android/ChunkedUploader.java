@@ -0,0 +1,635 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Uploads recordings in fixed-size segments while they are still being captured, and resumes unfinished
+ * uploads after the app restarts.
+ *
+ * Each upload has a spool directory under the root holding its settings and the segments that haven't been
+ * acknowledged yet, written by an UploadSpoolWriter. A segment is sent as the body of a POST to the upload URL
+ * with these headers:
+ *  X-Upload-Id        identifies the recording, the same for all of its requests
+ *  X-Upload-Offset    position of the segment's first byte in the recording
+ *  X-Upload-Crc32     CRC-32 of the segment, in hex
+ *  X-Audio-Format     s16le, X-Audio-Sample-Rate and X-Audio-Channels describe the PCM
+ * Segments are sent in order, one at a time, and deleted once the server answers with 2xx, so a segment may be
+ * sent again after a failure or a restart and the server should treat it as idempotent by offset. After the
+ * last one, a request without a body carries X-Upload-Complete: true and the total length in X-Upload-Length.
+ *
+ * All of it runs on one thread of its own. Failures are retried with exponential backoff; a 4xx answer other
+ * than 408 or 429 fails the upload, which is then not retried and its spool deleted, as soon as its recording
+ * has ended. The end of the acknowledged segments is kept in the spool too, so that an upload resumed after they
+ * were all deleted still reports its full length.
+ */
+public class ChunkedUploader {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 256 * 1024;
+
+	private static final String SETTINGS_FILE = "upload.properties";
+	private static final String FAILED_FILE = "failed";
+	private static final String ACKNOWLEDGED_FILE = "acknowledged";
+	private static final String HEADER_PREFIX = "header.";
+	private static final long DEFAULT_MIN_RETRY_DELAY_MS = 1000;
+	private static final long DEFAULT_MAX_RETRY_DELAY_MS = 60000;
+	private static final int CONNECT_TIMEOUT_MS = 15000;
+	private static final int READ_TIMEOUT_MS = 30000;
+
+	private final File root;
+	private final ScheduledThreadPoolExecutor executor;
+	// At most one drain and one retry are queued at a time, so the executor's queue stays bounded
+	private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+	private final Runnable drain = new Runnable() {
+		@Override
+		public void run() {
+			drainScheduled.set(false);
+			// Segments spooled meanwhile wait for the retry
+			if (!backingOff) {
+				drainAll();
+			}
+		}
+	};
+	private final Runnable retryDrain = new Runnable() {
+		@Override
+		public void run() {
+			backingOff = false;
+			drainAll();
+		}
+	};
+
+	// Uploads spooled by this run, which resume() leaves alone
+	private final Set<String> startedUploads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private volatile long minRetryDelay = DEFAULT_MIN_RETRY_DELAY_MS;
+	private volatile long maxRetryDelay = DEFAULT_MAX_RETRY_DELAY_MS;
+
+	// Only used on the upload thread
+	private int failures = 0;
+	private boolean backingOff = false;
+	private volatile String currentUploadId = null;
+	private volatile long bytesUploaded = 0;
+	private volatile long segmentsUploaded = 0;
+	private volatile long uploadsCompleted = 0;
+	private volatile long uploadsFailed = 0;
+	private volatile long retries = 0;
+	private volatile String lastError = null;
+
+	public ChunkedUploader(File root) {
+		this.root = root;
+		this.executor = new ScheduledThreadPoolExecutor(1);
+		this.executor.setMaximumPoolSize(1);
+	}
+
+	/**
+	 * Delay before the first retry, doubled for each further failure up to maxMillis.
+	 */
+	public void setRetryDelays(long minMillis, long maxMillis) {
+		this.minRetryDelay = Math.max(minMillis, 1);
+		this.maxRetryDelay = Math.max(maxMillis, this.minRetryDelay);
+	}
+
+	/**
+	 * Start spooling a new upload. The returned writer is closed when the recording ends.
+	 *
+	 * @param headers Extra request headers, e.g. for authorization. They are stored with the spool.
+	 */
+	public UploadSpoolWriter startUpload(String url, Map<String, String> headers, int sampleRate, int channels,
+		int segmentSize) throws IOException {
+
+		String uploadId = UUID.randomUUID().toString();
+		startedUploads.add(uploadId);
+		File directory = new File(root, uploadId);
+		if (!directory.mkdirs()) {
+			throw new IOException("Could not create " + directory);
+		}
+
+		Properties settings = new Properties();
+		settings.setProperty("url", url);
+		settings.setProperty("sampleRate", Integer.toString(sampleRate));
+		settings.setProperty("channels", Integer.toString(channels));
+		settings.setProperty("created", Long.toString(System.currentTimeMillis()));
+		if (headers != null) {
+			for (Map.Entry<String, String> header : headers.entrySet()) {
+				settings.setProperty(HEADER_PREFIX + header.getKey(), header.getValue());
+			}
+		}
+		store(settings, new File(directory, SETTINGS_FILE));
+
+		currentUploadId = uploadId;
+		return new UploadSpoolWriter(directory, channels, segmentSize, this);
+	}
+
+	/**
+	 * Pick up the uploads left behind by an earlier run of the app. Their unfinished segments are kept as far as
+	 * they were written, and they are completed with what was recorded. Uploads started since this uploader was
+	 * created are left alone. Waits for the upload thread, which does the work between requests, so don't call
+	 * this on a thread that mustn't block.
+	 *
+	 * @return Ids of the uploads that will be resumed.
+	 */
+	public List<String> resume() {
+		try {
+			return executor.submit(new Callable<List<String>>() {
+				@Override
+				public List<String> call() {
+					return recoverAll();
+				}
+			}).get();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return Collections.emptyList();
+		}
+		catch (RejectedExecutionException | CancellationException ex) {
+			// Shut down, they are resumed by the next run
+			return Collections.emptyList();
+		}
+		catch (ExecutionException ex) {
+			throw new IllegalStateException(ex.getCause());
+		}
+	}
+
+	private List<String> recoverAll() {
+		List<String> resumed = new ArrayList<String>();
+		for (File directory : uploadDirectories()) {
+			if (startedUploads.contains(directory.getName())) {
+				continue;
+			}
+			try {
+				if (new File(directory, FAILED_FILE).exists()) {
+					// Nothing is being recorded to it any more
+					deleteDirectory(directory);
+					continue;
+				}
+				recover(directory);
+				resumed.add(directory.getName());
+			}
+			catch (IOException ex) {
+				lastError = redact(ex.toString());
+			}
+		}
+
+		if (!resumed.isEmpty()) {
+			segmentReady();
+		}
+		return resumed;
+	}
+
+	/**
+	 * Called when a segment or the end of an upload has been spooled.
+	 */
+	void segmentReady() {
+		if (drainScheduled.compareAndSet(false, true)) {
+			executor.execute(drain);
+		}
+	}
+
+	public void shutdown() {
+		// Cancelled rather than only dropped, so that a resume() waiting for its turn returns
+		for (Runnable queued : executor.shutdownNow()) {
+			if (queued instanceof Future) {
+				((Future<?>) queued).cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Wait for a request in progress to end after shutdown().
+	 */
+	boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+
+	public String getCurrentUploadId() {
+		return currentUploadId;
+	}
+
+	public long getBytesUploaded() {
+		return bytesUploaded;
+	}
+
+	public long getSegmentsUploaded() {
+		return segmentsUploaded;
+	}
+
+	public long getUploadsCompleted() {
+		return uploadsCompleted;
+	}
+
+	/**
+	 * Uploads the server refused, whose audio was discarded.
+	 */
+	public long getUploadsFailed() {
+		return uploadsFailed;
+	}
+
+	public long getRetries() {
+		return retries;
+	}
+
+	/**
+	 * The last failure, with the query and user info left out of the URL, as they may hold credentials.
+	 */
+	public String getLastError() {
+		return lastError;
+	}
+
+	/**
+	 * Number of segments spooled but not yet acknowledged, across all uploads.
+	 */
+	public int getPendingSegments() {
+		int pending = 0;
+		for (File directory : uploadDirectories()) {
+			pending += segmentFiles(directory).length;
+		}
+		return pending;
+	}
+
+	/**
+	 * Send whatever has been spooled, oldest upload first, until it's all sent or a request fails.
+	 */
+	private void drainAll() {
+		for (File directory : uploadDirectories()) {
+			if (new File(directory, FAILED_FILE).exists()) {
+				discardFailed(directory);
+				continue;
+			}
+
+			try {
+				if (!drain(directory)) {
+					// The next uploads wait for this one
+					return;
+				}
+			}
+			catch (IOException ex) {
+				lastError = redact(ex.toString());
+				retry();
+				return;
+			}
+		}
+		failures = 0;
+	}
+
+	/**
+	 * @return Whether the upload was finished; false if its recording is still going on.
+	 */
+	private boolean drain(File directory) throws IOException {
+		Properties settings = load(new File(directory, SETTINGS_FILE));
+		String uploadId = directory.getName();
+
+		for (File segment : segmentFiles(directory)) {
+			long offset = Long.parseLong(segment.getName().substring(0, segment.getName().indexOf('.')), 16);
+			byte[] data = readFully(segment);
+			CRC32 crc = new CRC32();
+			crc.update(data, 0, data.length);
+
+			HttpURLConnection connection = open(settings, uploadId);
+			connection.setRequestProperty("X-Upload-Offset", Long.toString(offset));
+			connection.setRequestProperty("X-Upload-Crc32", String.format("%08x", crc.getValue()));
+			if (!send(connection, data, directory)) {
+				return false;
+			}
+
+			// Recorded before the segment is deleted, so that a restart in between still knows how far it got
+			Properties acknowledged = new Properties();
+			acknowledged.setProperty("offset", Long.toString(offset + data.length));
+			store(acknowledged, new File(directory, ACKNOWLEDGED_FILE));
+			if (!segment.delete()) {
+				throw new IOException("Could not delete " + segment);
+			}
+			bytesUploaded += data.length;
+			segmentsUploaded++;
+			failures = 0;
+		}
+
+		File complete = new File(directory, UploadSpoolWriter.COMPLETE_FILE);
+		if (!complete.exists()) {
+			return false;
+		}
+
+		HttpURLConnection connection = open(settings, uploadId);
+		connection.setRequestProperty("X-Upload-Complete", "true");
+		connection.setRequestProperty("X-Upload-Length", load(complete).getProperty("length", "0"));
+		if (!send(connection, new byte[0], directory)) {
+			return false;
+		}
+
+		deleteDirectory(directory);
+		uploadsCompleted++;
+		return true;
+	}
+
+	private static HttpURLConnection open(Properties settings, String uploadId) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(settings.getProperty("url")).openConnection();
+		connection.setRequestMethod("POST");
+		connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+		connection.setReadTimeout(READ_TIMEOUT_MS);
+		connection.setDoOutput(true);
+		connection.setUseCaches(false);
+
+		for (String name : settings.stringPropertyNames()) {
+			if (name.startsWith(HEADER_PREFIX)) {
+				connection.setRequestProperty(name.substring(HEADER_PREFIX.length()), settings.getProperty(name));
+			}
+		}
+		connection.setRequestProperty("Content-Type", "application/octet-stream");
+		connection.setRequestProperty("X-Upload-Id", uploadId);
+		connection.setRequestProperty("X-Audio-Format", "s16le");
+		connection.setRequestProperty("X-Audio-Sample-Rate", settings.getProperty("sampleRate"));
+		connection.setRequestProperty("X-Audio-Channels", settings.getProperty("channels"));
+		return connection;
+	}
+
+	/**
+	 * Make the request. Failures that can go away are retried later; any other fails the upload.
+	 *
+	 * @return Whether the server accepted it.
+	 */
+	private boolean send(HttpURLConnection connection, byte[] body, File directory) throws IOException {
+		int status;
+		try {
+			connection.setFixedLengthStreamingMode(body.length);
+			OutputStream out = connection.getOutputStream();
+			try {
+				out.write(body);
+			}
+			finally {
+				out.close();
+			}
+
+			status = connection.getResponseCode();
+			discard(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+		}
+		finally {
+			connection.disconnect();
+		}
+
+		if (status >= 200 && status < 300) {
+			return true;
+		}
+
+		lastError = redact("HTTP " + status + " from " + connection.getURL());
+		if (status >= 400 && status < 500 && status != 408 && status != 429) {
+			new FileOutputStream(new File(directory, FAILED_FILE)).close();
+			uploadsFailed++;
+			// Discard it and go on with the next upload
+			segmentReady();
+		}
+		else {
+			retry();
+		}
+		return false;
+	}
+
+	private void retry() {
+		retries++;
+		long delay = Math.min(minRetryDelay << Math.min(failures, 16), maxRetryDelay);
+		failures++;
+		backingOff = true;
+		executor.schedule(retryDrain, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Finish the segment a killed recording was writing, and the recording itself.
+	 */
+	private static void recover(File directory) throws IOException {
+		File[] partials = directory.listFiles();
+		long length = 0;
+		int frameSize = PcmEncoder.byteLength(Integer.parseInt(load(new File(directory, SETTINGS_FILE)).getProperty("channels", "1")));
+
+		for (File file : partials != null ? partials : new File[0]) {
+			String name = file.getName();
+			if (!name.endsWith(UploadSpoolWriter.SEGMENT_SUFFIX) && !name.endsWith(UploadSpoolWriter.PARTIAL_SUFFIX)) {
+				continue;
+			}
+
+			long offset = Long.parseLong(name.substring(0, name.indexOf('.')), 16);
+			long size = file.length() / frameSize * frameSize;
+			if (name.endsWith(UploadSpoolWriter.PARTIAL_SUFFIX)) {
+				if (size == 0) {
+					file.delete();
+					continue;
+				}
+				RandomAccessFile partial = new RandomAccessFile(file, "rw");
+				try {
+					partial.setLength(size);
+				}
+				finally {
+					partial.close();
+				}
+				File segment = new File(directory, name.substring(0, name.length() - UploadSpoolWriter.PARTIAL_SUFFIX.length()));
+				if (!file.renameTo(segment)) {
+					throw new IOException("Could not rename " + file);
+				}
+			}
+			length = Math.max(length, offset + size);
+		}
+
+		// Segments acknowledged before the restart are gone, but they all came before the ones left
+		File acknowledged = new File(directory, ACKNOWLEDGED_FILE);
+		if (acknowledged.exists()) {
+			length = Math.max(length, Long.parseLong(load(acknowledged).getProperty("offset", "0")));
+		}
+
+		File complete = new File(directory, UploadSpoolWriter.COMPLETE_FILE);
+		if (!complete.exists()) {
+			Properties marker = new Properties();
+			marker.setProperty("length", Long.toString(length));
+			store(marker, complete);
+		}
+	}
+
+	private List<File> uploadDirectories() {
+		File[] directories = root.listFiles();
+		List<File> uploads = new ArrayList<File>();
+		if (directories == null) {
+			return uploads;
+		}
+
+		for (File directory : directories) {
+			if (new File(directory, SETTINGS_FILE).exists()) {
+				uploads.add(directory);
+			}
+		}
+
+		// Oldest first
+		final Map<File, Long> created = new HashMap<File, Long>();
+		for (File directory : uploads) {
+			try {
+				created.put(directory, Long.parseLong(load(new File(directory, SETTINGS_FILE)).getProperty("created", "0")));
+			}
+			catch (IOException | NumberFormatException ex) {
+				created.put(directory, 0L);
+			}
+		}
+		Collections.sort(uploads, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return Long.compare(created.get(a), created.get(b));
+			}
+		});
+		return uploads;
+	}
+
+	/**
+	 * The finished segments of an upload, in order of their offsets.
+	 */
+	private static File[] segmentFiles(File directory) {
+		File[] segments = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(UploadSpoolWriter.SEGMENT_SUFFIX);
+			}
+		});
+		if (segments == null) {
+			return new File[0];
+		}
+		// Names are zero-padded hex offsets
+		Arrays.sort(segments);
+		return segments;
+	}
+
+	private static byte[] readFully(File file) throws IOException {
+		byte[] data = new byte[(int) file.length()];
+		InputStream in = new FileInputStream(file);
+		try {
+			int read = 0;
+			while (read < data.length) {
+				int count = in.read(data, read, data.length - read);
+				if (count < 0) {
+					throw new IOException("Unexpected end of " + file);
+				}
+				read += count;
+			}
+		}
+		finally {
+			in.close();
+		}
+		return data;
+	}
+
+	private static void discard(InputStream in) throws IOException {
+		if (in == null) {
+			return;
+		}
+		try {
+			byte[] buffer = new byte[4096];
+			while (in.read(buffer) >= 0) {
+			}
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private static Properties load(File file) throws IOException {
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			properties.load(in);
+		}
+		finally {
+			in.close();
+		}
+		return properties;
+	}
+
+	private static void store(Properties properties, File file) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			properties.store(out, null);
+			out.getFD().sync();
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Delete what a failed upload has spooled. Its directory stays until the recording has ended, as segments are
+	 * still written to it until then, and those are deleted by the next drain.
+	 */
+	private static void discardFailed(File directory) {
+		if (new File(directory, UploadSpoolWriter.COMPLETE_FILE).exists()) {
+			try {
+				deleteDirectory(directory);
+			}
+			catch (IOException ex) {
+				// Tried again by the next drain
+			}
+		}
+		else {
+			for (File segment : segmentFiles(directory)) {
+				segment.delete();
+			}
+		}
+	}
+
+	/**
+	 * The message without the user info, query and fragment of the URLs in it.
+	 */
+	private static String redact(String message) {
+		return message.replaceAll("(\\w+://)[^/?#\\s@]*@", "$1").replaceAll("(\\w+://[^?#\\s]*)[?#]\\S*", "$1");
+	}
+
+	private static void deleteDirectory(File directory) throws IOException {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		if (!directory.delete()) {
+			throw new IOException("Could not delete " + directory);
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.util.Arrays;
+
+/**
+ * Histograms of the size of delivered batches and of the time from capture to delivery of their oldest chunk,
+ * and of how long chunks waited in the handler's queue.
+ * Recorded from the handler thread; reads from other threads may be slightly out of date.
+ */
+public class DeliveryStats {
+
+	// Latencies are counted per millisecond up to this, anything slower in the last bucket
+	private static final int MAX_LATENCY_MS = 5000;
+	private static final int MAX_BATCH_CHUNKS = 256;
+
+	private final long[] latencies = new long[MAX_LATENCY_MS + 1];
+	private final long[] batchSizes = new long[MAX_BATCH_CHUNKS + 1];
+	private long batches = 0;
+	private long chunks = 0;
+	private final LatencyHistogram queueDelay = new LatencyHistogram();
+
+	/**
+	 * @param chunkCount Number of chunks delivered together.
+	 * @param latencyNanos Time between capturing the oldest of them and delivering the batch.
+	 */
+	public void record(int chunkCount, long latencyNanos) {
+		int latencyMs = (int) Math.min(Math.max(latencyNanos / 1000000, 0), MAX_LATENCY_MS);
+
+		latencies[latencyMs]++;
+		batchSizes[Math.min(chunkCount, MAX_BATCH_CHUNKS)]++;
+		batches++;
+		chunks += chunkCount;
+	}
+
+	/**
+	 * @param delayNanos Time between capturing a chunk and the handler receiving it.
+	 */
+	public void recordQueueDelay(long delayNanos) {
+		queueDelay.record(delayNanos);
+	}
+
+	public LatencyHistogram getQueueDelay() {
+		return queueDelay;
+	}
+
+	public long getBatches() {
+		return batches;
+	}
+
+	public long getChunks() {
+		return chunks;
+	}
+
+	/**
+	 * Latency in ms that the given fraction (0-1) of the batches were delivered within, 0 before any batch.
+	 */
+	public int getLatencyPercentile(double fraction) {
+		return percentile(latencies, fraction);
+	}
+
+	/**
+	 * Number of chunks that the given fraction (0-1) of the batches held at most, 0 before any batch.
+	 */
+	public int getBatchSizePercentile(double fraction) {
+		return percentile(batchSizes, fraction);
+	}
+
+	public void reset() {
+		Arrays.fill(latencies, 0);
+		Arrays.fill(batchSizes, 0);
+		batches = 0;
+		chunks = 0;
+		queueDelay.reset();
+	}
+
+	private int percentile(long[] histogram, double fraction) {
+		if (batches == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(Math.min(Math.max(fraction, 0), 1) * batches);
+		long count = 0;
+
+		for (int i = 0; i < histogram.length; i++) {
+			count += histogram[i];
+			if (count >= Math.max(rank, 1)) {
+				return i;
+			}
+		}
+		return histogram.length - 1;
+	}
+}
@@ -0,0 +1,66 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * Runs captured blocks through a series of DspStages, in place, before they go to any consumer.
+ */
+public class DspChain implements DspStage {
+
+	private final DspStage[] stages;
+
+	public DspChain(DspStage... stages) {
+		this.stages = stages;
+	}
+
+	public boolean isEmpty() {
+		return stages.length == 0;
+	}
+
+	@Override
+	public void process(short[] samples, int length) {
+		for (DspStage stage : stages) {
+			stage.process(samples, length);
+		}
+	}
+
+	@Override
+	public void reset() {
+		for (DspStage stage : stages) {
+			stage.reset();
+		}
+	}
+
+	/**
+	 * Coefficient of a one-pole smoother that covers about 63% of a step in timeMs at the given rate.
+	 */
+	static float smoothing(double timeMs, int sampleRate) {
+		return timeMs <= 0 ? 1f : (float) (1 - Math.exp(-1000.0 / (timeMs * sampleRate)));
+	}
+
+	static float dbToLinear(double db) {
+		return (float) Math.pow(10, db / 20);
+	}
+
+	static short clip(float sample) {
+		return sample >= Short.MAX_VALUE ? Short.MAX_VALUE : sample <= Short.MIN_VALUE ? Short.MIN_VALUE : (short) Math.round(sample);
+	}
+}
@@ -0,0 +1,265 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.util.Arrays;
+
+/**
+ * Computes log-mel spectrogram or MFCC frames of the captured audio as it arrives, for on-device models, and
+ * reports them in batches instead of the samples.
+ *
+ * A frame is taken every hop frames over the last windowLength frames, mixed down to mono and scaled to
+ * [-1, 1). It is weighted by a periodic Hann window, zero-padded to a power of two and transformed; the power
+ * spectrum goes through triangular filters spaced evenly on the HTK mel scale between minFrequency and
+ * maxFrequency, and the log-mel values are the natural log of their outputs, floored at 1e-10. MFCCs are the
+ * first mfccCount coefficients of the orthonormal DCT-II of the log-mel values.
+ * The window, filterbank, DCT matrix and all buffers are computed up front, so process() doesn't allocate.
+ */
+public class FeatureExtractor {
+
+	public static final String TYPE_LOG_MEL = "logmel";
+	public static final String TYPE_MFCC = "mfcc";
+
+	/**
+	 * Receives each completed report, on the thread calling process().
+	 */
+	public interface Listener {
+		void onFeatures(FeatureReport report);
+	}
+
+	// Reports that can be waiting for the consumer at once
+	private static final int REPORT_POOL_SIZE = 4;
+	private static final double LOG_FLOOR = 1e-10;
+
+	private final int channels;
+	private final int windowLength;
+	private final int hop;
+	private final int bands;
+	private final int size;
+	private final int framesPerReport;
+	private final SpscQueue<FeatureReport> pool;
+
+	private final Fft fft;
+	private final float[] window;
+	private final float[] re;
+	private final float[] im;
+	// Triangle of band b: weights of the bins from filterStart[b] on
+	private final int[] filterStart;
+	private final float[][] filterWeights;
+	private final float[] melEnergies;
+	// Row c holds the DCT-II basis function of coefficient c, or null for log-mel
+	private final float[][] dct;
+
+	// Mono samples of the current window, the oldest first
+	private final float[] buffer;
+	private int buffered = 0;
+	private long framesComputed = 0;
+	private FeatureReport report = null;
+
+	private volatile long droppedReports = 0;
+
+	/**
+	 * @param type TYPE_LOG_MEL or TYPE_MFCC.
+	 * @param windowLength Frames per feature frame.
+	 * @param hop Frames between the starts of consecutive feature frames.
+	 * @param bands Number of mel bands.
+	 * @param mfccCount Coefficients per MFCC frame, at most bands. Ignored for log-mel.
+	 * @param maxFrequency Upper edge of the filterbank in Hz, 0 for half the sample rate.
+	 * @param framesPerReport Feature frames in each report.
+	 */
+	public FeatureExtractor(String type, int sampleRate, int channels, int windowLength, int hop, int bands,
+		int mfccCount, double minFrequency, double maxFrequency, int framesPerReport) {
+
+		this.channels = Math.max(channels, 1);
+		this.windowLength = Math.max(windowLength, 2);
+		this.hop = Math.min(Math.max(hop, 1), this.windowLength);
+		this.bands = Math.max(bands, 1);
+		this.framesPerReport = Math.max(framesPerReport, 1);
+		this.buffer = new float[this.windowLength];
+
+		int fftSize = Integer.highestOneBit(this.windowLength - 1) << 1;
+		fft = new Fft(fftSize);
+		re = new float[fftSize];
+		im = new float[fftSize];
+		window = new float[this.windowLength];
+		for (int i = 0; i < this.windowLength; i++) {
+			window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / this.windowLength));
+		}
+
+		double nyquist = sampleRate / 2.0;
+		double top = maxFrequency > 0 ? Math.min(maxFrequency, nyquist) : nyquist;
+		double bottom = Math.min(Math.max(minFrequency, 0), top);
+		filterStart = new int[this.bands];
+		filterWeights = new float[this.bands][];
+		melEnergies = new float[this.bands];
+
+		double melBottom = toMel(bottom);
+		double melStep = (toMel(top) - melBottom) / (this.bands + 1);
+		double binWidth = (double) sampleRate / fftSize;
+		for (int b = 0; b < this.bands; b++) {
+			double left = toHz(melBottom + b * melStep);
+			double center = toHz(melBottom + (b + 1) * melStep);
+			double right = toHz(melBottom + (b + 2) * melStep);
+
+			int first = (int) Math.ceil(left / binWidth);
+			int last = Math.min((int) Math.floor(right / binWidth), fftSize / 2);
+			filterStart[b] = first;
+			filterWeights[b] = new float[Math.max(last - first + 1, 0)];
+			for (int k = first; k <= last; k++) {
+				double f = k * binWidth;
+				double weight = f <= center ? (f - left) / (center - left) : (right - f) / (right - center);
+				filterWeights[b][k - first] = (float) Math.max(weight, 0);
+			}
+		}
+
+		if (TYPE_MFCC.equals(type)) {
+			int coefficients = Math.min(Math.max(mfccCount, 1), this.bands);
+			dct = new float[coefficients][this.bands];
+			for (int c = 0; c < coefficients; c++) {
+				double scale = Math.sqrt((c == 0 ? 1.0 : 2.0) / this.bands);
+				for (int b = 0; b < this.bands; b++) {
+					dct[c][b] = (float) (scale * Math.cos(Math.PI * c * (b + 0.5) / this.bands));
+				}
+			}
+			size = coefficients;
+		}
+		else {
+			dct = null;
+			size = this.bands;
+		}
+
+		pool = new SpscQueue<FeatureReport>(REPORT_POOL_SIZE);
+		for (int i = 0; i < REPORT_POOL_SIZE; i++) {
+			pool.offer(new FeatureReport(pool, this.framesPerReport, size));
+		}
+	}
+
+	/**
+	 * Values per feature frame.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Add a block of interleaved samples, calling listener for every report it completes.
+	 */
+	public void process(short[] samples, int length, Listener listener) {
+		int end = length - length % channels;
+
+		for (int i = 0; i < end; i += channels) {
+			int mix = 0;
+			for (int c = 0; c < channels; c++) {
+				mix += samples[i + c];
+			}
+			buffer[buffered++] = mix / (channels * 32768f);
+
+			if (buffered == windowLength) {
+				computeFrame(listener);
+				// Keep the overlap with the next window
+				System.arraycopy(buffer, hop, buffer, 0, windowLength - hop);
+				buffered = windowLength - hop;
+			}
+		}
+	}
+
+	/**
+	 * Report the frames of an unfinished batch, e.g. at the end of a session.
+	 */
+	public void flush(Listener listener) {
+		if (report != null && report.frames > 0) {
+			listener.onFeatures(report);
+			report = null;
+		}
+	}
+
+	/**
+	 * Number of reports skipped because the consumer hadn't released any.
+	 */
+	public long getDroppedReports() {
+		return droppedReports;
+	}
+
+	private void computeFrame(Listener listener) {
+		long index = framesComputed++;
+		if (report == null) {
+			report = pool.poll();
+			if (report == null) {
+				// The consumer is holding on to every report, skip this frame
+				droppedReports++;
+				return;
+			}
+			report.frames = 0;
+			report.firstFrame = index;
+		}
+
+		for (int i = 0; i < windowLength; i++) {
+			re[i] = buffer[i] * window[i];
+		}
+		Arrays.fill(re, windowLength, re.length, 0);
+		Arrays.fill(im, 0);
+		fft.transform(re, im);
+
+		// Power spectrum, in place in re
+		for (int k = 0; k <= re.length / 2; k++) {
+			re[k] = re[k] * re[k] + im[k] * im[k];
+		}
+
+		for (int b = 0; b < bands; b++) {
+			float[] weights = filterWeights[b];
+			int start = filterStart[b];
+			float energy = 0;
+			for (int k = 0; k < weights.length; k++) {
+				energy += weights[k] * re[start + k];
+			}
+			melEnergies[b] = (float) Math.log(Math.max(energy, LOG_FLOOR));
+		}
+
+		float[] values = report.values;
+		int offset = report.frames * size;
+		if (dct == null) {
+			System.arraycopy(melEnergies, 0, values, offset, bands);
+		}
+		else {
+			for (int c = 0; c < size; c++) {
+				float[] basis = dct[c];
+				float sum = 0;
+				for (int b = 0; b < bands; b++) {
+					sum += basis[b] * melEnergies[b];
+				}
+				values[offset + c] = sum;
+			}
+		}
+
+		if (++report.frames == framesPerReport) {
+			listener.onFeatures(report);
+			report = null;
+		}
+	}
+
+	private static double toMel(double hz) {
+		return 2595 * Math.log10(1 + hz / 700);
+	}
+
+	private static double toHz(double mel) {
+		return 700 * (Math.pow(10, mel / 2595) - 1);
+	}
+}
@@ -0,0 +1,50 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * A batch of consecutive feature frames, owned by the FeatureExtractor that filled it.
+ * Whoever receives a report must call release() once it's done with it.
+ */
+public final class FeatureReport {
+
+	// frames rows of size values each
+	public final float[] values;
+	public final int size;
+	public int frames;
+	// Index of the first frame since the start of the session
+	public long firstFrame;
+
+	private final SpscQueue<FeatureReport> pool;
+
+	FeatureReport(SpscQueue<FeatureReport> pool, int maxFrames, int size) {
+		this.pool = pool;
+		this.size = size;
+		this.values = new float[maxFrames * size];
+	}
+
+	/**
+	 * Hand the report back so that the extractor can reuse it.
+	 */
+	public void release() {
+		pool.offer(this);
+	}
+}
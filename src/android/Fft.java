@@ -0,0 +1,95 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * In-place iterative radix-2 FFT of a fixed size. The twiddle factors and bit-reversal permutation are computed
+ * once, so transforms don't allocate.
+ */
+public final class Fft {
+
+	private final int size;
+	private final int[] reversed;
+	private final float[] cos;
+	private final float[] sin;
+
+	/**
+	 * @param size Number of points, a power of two.
+	 */
+	public Fft(int size) {
+		if (size < 2 || (size & (size - 1)) != 0) {
+			throw new IllegalArgumentException("FFT size must be a power of two: " + size);
+		}
+
+		this.size = size;
+		this.reversed = new int[size];
+		this.cos = new float[size / 2];
+		this.sin = new float[size / 2];
+
+		int bits = Integer.numberOfTrailingZeros(size);
+		for (int i = 0; i < size; i++) {
+			reversed[i] = Integer.reverse(i) >>> (32 - bits);
+		}
+
+		for (int i = 0; i < size / 2; i++) {
+			double angle = -2 * Math.PI * i / size;
+			cos[i] = (float) Math.cos(angle);
+			sin[i] = (float) Math.sin(angle);
+		}
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Forward transform of re + i*im, in place.
+	 */
+	public void transform(float[] re, float[] im) {
+		for (int i = 0; i < size; i++) {
+			int j = reversed[i];
+			if (j > i) {
+				float t = re[i]; re[i] = re[j]; re[j] = t;
+				t = im[i]; im[i] = im[j]; im[j] = t;
+			}
+		}
+
+		for (int half = 1; half < size; half <<= 1) {
+			int step = size / (half * 2);
+
+			for (int start = 0; start < size; start += half * 2) {
+				for (int k = 0; k < half; k++) {
+					float wr = cos[k * step];
+					float wi = sin[k * step];
+					int a = start + k;
+					int b = a + half;
+
+					float tr = re[b] * wr - im[b] * wi;
+					float ti = re[b] * wi + im[b] * wr;
+					re[b] = re[a] - tr;
+					im[b] = im[a] - ti;
+					re[a] += tr;
+					im[a] += ti;
+				}
+			}
+		}
+	}
+}
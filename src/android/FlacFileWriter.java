@@ -0,0 +1,507 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Pure Java FLAC encoder for 16 bit PCM. Each block of BLOCK_SIZE frames is encoded as soon as it's complete,
+ * using the best fixed linear predictor per channel and partitioned Rice coding of the residual. The
+ * STREAMINFO header is reserved up front and patched on close, like the sizes of a WAV file.
+ */
+public class FlacFileWriter implements AudioFileWriter {
+
+	public static final int BLOCK_SIZE = 4096;
+
+	private static final int BITS_PER_SAMPLE = 16;
+	private static final int STREAMINFO_OFFSET = 8;
+	private static final int STREAMINFO_SIZE = 34;
+	private static final int MAX_FIXED_ORDER = 4;
+	private static final int MAX_PARTITION_ORDER = 6;
+	private static final int MAX_RICE_PARAMETER = 14;
+
+	private static final int[] CRC8_TABLE = new int[256];
+	private static final int[] CRC16_TABLE = new int[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			int crc8 = i;
+			int crc16 = i << 8;
+			for (int j = 0; j < 8; j++) {
+				crc8 = (crc8 & 0x80) != 0 ? (crc8 << 1) ^ 0x07 : crc8 << 1;
+				crc16 = (crc16 & 0x8000) != 0 ? (crc16 << 1) ^ 0x8005 : crc16 << 1;
+			}
+			CRC8_TABLE[i] = crc8 & 0xff;
+			CRC16_TABLE[i] = crc16 & 0xffff;
+		}
+	}
+
+	private final File file;
+	private final int sampleRate;
+	private final int channels;
+	private final RandomAccessFile randomAccessFile;
+	private final FileChannel channel;
+	private final MessageDigest md5;
+
+	// Samples of the block being collected, per channel
+	private final int[][] block;
+	private int blockFill = 0;
+	private int nextChannel = 0;
+
+	private final int[] residual = new int[BLOCK_SIZE];
+	private final BitWriter bits = new BitWriter(BLOCK_SIZE * 4);
+	private final byte[] md5Buffer = new byte[BLOCK_SIZE * 2];
+
+	private long frameNumber = 0;
+	private long totalFrames = 0;
+	private int minFrameSize = Integer.MAX_VALUE;
+	private int maxFrameSize = 0;
+	private long encodedSize = 0;
+
+	public FlacFileWriter(File file, int sampleRate, int channels) throws IOException {
+		this.file = file;
+		this.sampleRate = sampleRate;
+		this.channels = channels;
+		this.block = new int[channels][BLOCK_SIZE];
+
+		try {
+			md5 = MessageDigest.getInstance("MD5");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IOException(e.toString());
+		}
+
+		randomAccessFile = new RandomAccessFile(file, "rw");
+		randomAccessFile.setLength(0);
+		channel = randomAccessFile.getChannel();
+
+		ByteBuffer header = ByteBuffer.allocate(STREAMINFO_OFFSET + STREAMINFO_SIZE);
+		header.put((byte) 'f').put((byte) 'L').put((byte) 'a').put((byte) 'C');
+		// Last metadata block, type STREAMINFO
+		header.put((byte) 0x80).put((byte) 0).put((byte) 0).put((byte) STREAMINFO_SIZE);
+		putStreamInfo(header);
+		header.flip();
+		writeFully(header);
+	}
+
+	@Override
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Number of bytes of encoded frames written so far.
+	 */
+	public long getEncodedSize() {
+		return encodedSize;
+	}
+
+	@Override
+	public void write(short[] samples, int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			put(samples[i]);
+		}
+	}
+
+	@Override
+	public void write(ByteBuffer pcm) throws IOException {
+		ByteBuffer samples = pcm.slice().order(ByteOrder.LITTLE_ENDIAN);
+		int count = samples.remaining() / 2;
+
+		for (int i = 0; i < count; i++) {
+			put(samples.getShort(i * 2));
+		}
+		pcm.position(pcm.position() + count * 2);
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (blockFill > 0) {
+				encodeFrame(blockFill);
+			}
+
+			ByteBuffer streamInfo = ByteBuffer.allocate(STREAMINFO_SIZE);
+			putStreamInfo(streamInfo);
+			streamInfo.flip();
+			channel.write(streamInfo, STREAMINFO_OFFSET);
+		}
+		finally {
+			randomAccessFile.close();
+		}
+	}
+
+	private void put(short sample) throws IOException {
+		block[nextChannel][blockFill] = sample;
+
+		if (++nextChannel == channels) {
+			nextChannel = 0;
+			if (++blockFill == BLOCK_SIZE) {
+				encodeFrame(BLOCK_SIZE);
+			}
+		}
+	}
+
+	private void putStreamInfo(ByteBuffer out) {
+		int blockSize = frameNumber > 1 ? BLOCK_SIZE : (int) Math.max(totalFrames, 16);
+		BitWriter info = new BitWriter(STREAMINFO_SIZE);
+
+		info.write(blockSize, 16);                                  // minimum block size
+		info.write(blockSize, 16);                                  // maximum block size
+		info.write(maxFrameSize > 0 ? minFrameSize : 0, 24);        // minimum frame size, 0 if unknown
+		info.write(maxFrameSize, 24);                               // maximum frame size, 0 if unknown
+		info.write(sampleRate, 20);
+		info.write(channels - 1, 3);
+		info.write(BITS_PER_SAMPLE - 1, 5);
+		info.write(totalFrames >>> 32, 4);                          // total samples per channel, 36 bits
+		info.write(totalFrames & 0xffffffffL, 32);
+
+		out.put(info.buffer(), 0, info.length());
+		// MD5 of the unencoded audio, all zeros if not known yet
+		out.put(maxFrameSize > 0 ? md5.digest() : new byte[16]);
+	}
+
+	private void encodeFrame(int blockSize) throws IOException {
+		updateMd5(blockSize);
+
+		bits.reset();
+		bits.write(0xfff8, 16);                     // sync code, fixed block size stream
+		bits.write(0x7, 4);                         // block size - 1 follows as 16 bits
+		bits.write(0x0, 4);                         // sample rate from STREAMINFO
+		bits.write(channels - 1, 4);                // independent channels
+		bits.write(0x4, 3);                         // 16 bits per sample
+		bits.write(0, 1);
+		writeUtf8(frameNumber);
+		bits.write(blockSize - 1, 16);
+		bits.write(crc8(bits.buffer(), bits.length()), 8);
+
+		for (int c = 0; c < channels; c++) {
+			encodeSubframe(block[c], blockSize);
+		}
+
+		bits.alignToByte();
+		bits.write(crc16(bits.buffer(), bits.length()), 16);
+
+		writeFully(ByteBuffer.wrap(bits.buffer(), 0, bits.length()));
+
+		int frameSize = bits.length();
+		minFrameSize = Math.min(minFrameSize, frameSize);
+		maxFrameSize = Math.max(maxFrameSize, frameSize);
+		encodedSize += frameSize;
+		totalFrames += blockSize;
+		frameNumber++;
+		blockFill = 0;
+	}
+
+	private void encodeSubframe(int[] x, int n) {
+		boolean constant = true;
+		for (int i = 1; i < n && constant; i++) {
+			constant = x[i] == x[0];
+		}
+
+		if (constant) {
+			bits.write(0x00, 8);                    // CONSTANT
+			bits.write(x[0] & 0xffff, BITS_PER_SAMPLE);
+			return;
+		}
+
+		int order = bestFixedOrder(x, n);
+		computeResidual(x, n, order);
+
+		long fixedBits = order * BITS_PER_SAMPLE + residualBits(n, order, false);
+		if (fixedBits >= (long) n * BITS_PER_SAMPLE) {
+			bits.write(0x02, 8);                    // VERBATIM
+			for (int i = 0; i < n; i++) {
+				bits.write(x[i] & 0xffff, BITS_PER_SAMPLE);
+			}
+			return;
+		}
+
+		bits.write(0x10 | (order << 1), 8);         // FIXED with the given predictor order
+		for (int i = 0; i < order; i++) {
+			bits.write(x[i] & 0xffff, BITS_PER_SAMPLE);
+		}
+		residualBits(n, order, true);
+	}
+
+	/**
+	 * The fixed predictor order giving the smallest sum of absolute residuals.
+	 */
+	private static int bestFixedOrder(int[] x, int n) {
+		int maxOrder = Math.min(MAX_FIXED_ORDER, n - 1);
+		long[] error = new long[MAX_FIXED_ORDER + 1];
+
+		for (int i = MAX_FIXED_ORDER; i < n; i++) {
+			int e0 = x[i];
+			int e1 = e0 - x[i - 1];
+			int e2 = e1 - (x[i - 1] - x[i - 2]);
+			int e3 = e2 - (x[i - 1] - 2 * x[i - 2] + x[i - 3]);
+			int e4 = e3 - (x[i - 1] - 3 * x[i - 2] + 3 * x[i - 3] - x[i - 4]);
+			error[0] += Math.abs(e0);
+			error[1] += Math.abs(e1);
+			error[2] += Math.abs(e2);
+			error[3] += Math.abs(e3);
+			error[4] += Math.abs(e4);
+		}
+
+		int best = 0;
+		for (int order = 1; order <= maxOrder; order++) {
+			if (error[order] < error[best]) {
+				best = order;
+			}
+		}
+		return best;
+	}
+
+	private void computeResidual(int[] x, int n, int order) {
+		for (int i = order; i < n; i++) {
+			switch (order) {
+				case 0:
+					residual[i] = x[i];
+					break;
+				case 1:
+					residual[i] = x[i] - x[i - 1];
+					break;
+				case 2:
+					residual[i] = x[i] - 2 * x[i - 1] + x[i - 2];
+					break;
+				case 3:
+					residual[i] = x[i] - 3 * x[i - 1] + 3 * x[i - 2] - x[i - 3];
+					break;
+				default:
+					residual[i] = x[i] - 4 * x[i - 1] + 6 * x[i - 2] - 4 * x[i - 3] + x[i - 4];
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Size in bits of the Rice coded residual with the best partition order, written to the frame if emit is set.
+	 */
+	private long residualBits(int n, int order, boolean emit) {
+		int bestPartitionOrder = 0;
+		long bestBits = Long.MAX_VALUE;
+
+		for (int p = 0; p <= MAX_PARTITION_ORDER; p++) {
+			int partitionSize = n >> p;
+			if ((partitionSize << p) != n || partitionSize <= order) {
+				break;
+			}
+
+			long total = 6;
+			for (int part = 0, start = order; part < (1 << p); part++) {
+				int end = (part + 1) * partitionSize;
+				total += 4 + riceBits(start, end, riceParameter(start, end));
+				start = end;
+			}
+
+			if (total < bestBits) {
+				bestBits = total;
+				bestPartitionOrder = p;
+			}
+		}
+
+		if (emit) {
+			int partitionSize = n >> bestPartitionOrder;
+			bits.write(0, 2);                       // Rice coding with 4 bit parameters
+			bits.write(bestPartitionOrder, 4);
+
+			for (int part = 0, start = order; part < (1 << bestPartitionOrder); part++) {
+				int end = (part + 1) * partitionSize;
+				int k = riceParameter(start, end);
+				bits.write(k, 4);
+				for (int i = start; i < end; i++) {
+					int u = (residual[i] << 1) ^ (residual[i] >> 31);
+					bits.writeUnary(u >>> k);
+					if (k > 0) {
+						bits.write(u & ((1 << k) - 1), k);
+					}
+				}
+				start = end;
+			}
+		}
+
+		return bestBits;
+	}
+
+	private int riceParameter(int start, int end) {
+		long sum = 0;
+		for (int i = start; i < end; i++) {
+			sum += (residual[i] << 1) ^ (residual[i] >> 31);
+		}
+
+		// Estimate from the mean, then settle on the cheapest neighbour
+		int count = Math.max(end - start, 1);
+		int k = 0;
+		while (k < MAX_RICE_PARAMETER && ((long) count << (k + 1)) < sum) {
+			k++;
+		}
+
+		long bitsAtK = riceBits(start, end, k);
+		if (k > 0 && riceBits(start, end, k - 1) < bitsAtK) {
+			return k - 1;
+		}
+		if (k < MAX_RICE_PARAMETER && riceBits(start, end, k + 1) < bitsAtK) {
+			return k + 1;
+		}
+		return k;
+	}
+
+	private long riceBits(int start, int end, int k) {
+		long total = (long) (end - start) * (k + 1);
+		for (int i = start; i < end; i++) {
+			total += ((residual[i] << 1) ^ (residual[i] >> 31)) >>> k;
+		}
+		return total;
+	}
+
+	private void updateMd5(int blockSize) {
+		// The MD5 covers the interleaved little-endian samples
+		int j = 0;
+		for (int i = 0; i < blockSize; i++) {
+			for (int c = 0; c < channels; c++) {
+				if (j == md5Buffer.length) {
+					md5.update(md5Buffer, 0, j);
+					j = 0;
+				}
+				int sample = block[c][i];
+				md5Buffer[j++] = (byte) sample;
+				md5Buffer[j++] = (byte) (sample >> 8);
+			}
+		}
+		md5.update(md5Buffer, 0, j);
+	}
+
+	private void writeUtf8(long value) {
+		if (value < 0x80) {
+			bits.write(value, 8);
+			return;
+		}
+
+		int continuationBytes = value < 0x800 ? 1 : value < 0x10000 ? 2 : value < 0x200000 ? 3
+			: value < 0x4000000 ? 4 : value < 0x80000000L ? 5 : 6;
+		int lead = (0xff00 >> (continuationBytes + 1)) & 0xff;
+
+		bits.write(lead | (value >>> (6 * continuationBytes)), 8);
+		for (int i = continuationBytes - 1; i >= 0; i--) {
+			bits.write(0x80 | ((value >>> (6 * i)) & 0x3f), 8);
+		}
+	}
+
+	private static int crc8(byte[] data, int length) {
+		int crc = 0;
+		for (int i = 0; i < length; i++) {
+			crc = CRC8_TABLE[(crc ^ data[i]) & 0xff];
+		}
+		return crc;
+	}
+
+	private static int crc16(byte[] data, int length) {
+		int crc = 0;
+		for (int i = 0; i < length; i++) {
+			crc = ((crc << 8) ^ CRC16_TABLE[((crc >> 8) ^ data[i]) & 0xff]) & 0xffff;
+		}
+		return crc;
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * MSB first bit packing into a growable byte array.
+	 */
+	private static final class BitWriter {
+
+		private byte[] buffer;
+		private int length = 0;
+		private long accumulator = 0;
+		private int accumulated = 0;
+
+		BitWriter(int capacity) {
+			buffer = new byte[capacity];
+		}
+
+		void reset() {
+			length = 0;
+			accumulator = 0;
+			accumulated = 0;
+		}
+
+		/**
+		 * Append the count (at most 32) low bits of value.
+		 */
+		void write(long value, int count) {
+			accumulator = (accumulator << count) | (value & ((1L << count) - 1));
+			accumulated += count;
+			while (accumulated >= 8) {
+				accumulated -= 8;
+				put((byte) (accumulator >>> accumulated));
+			}
+		}
+
+		/**
+		 * Append count zero bits followed by a one bit.
+		 */
+		void writeUnary(int count) {
+			while (count >= 32) {
+				write(0, 32);
+				count -= 32;
+			}
+			write(1, count + 1);
+		}
+
+		void alignToByte() {
+			if (accumulated > 0) {
+				write(0, 8 - accumulated);
+			}
+		}
+
+		/**
+		 * Number of complete bytes written.
+		 */
+		int length() {
+			return length;
+		}
+
+		byte[] buffer() {
+			return buffer;
+		}
+
+		private void put(byte b) {
+			if (length == buffer.length) {
+				byte[] grown = new byte[buffer.length * 2];
+				System.arraycopy(buffer, 0, grown, 0, length);
+				buffer = grown;
+			}
+			buffer[length++] = b;
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of durations in power of two microsecond buckets, cheap enough to record on every read.
+ * Recorded from one thread; reads from other threads may be slightly out of date.
+ */
+public class LatencyHistogram {
+
+	// Bucket i counts durations below 2^i us, and at least 2^(i-1) us
+	private static final int BUCKETS = 40;
+
+	private final long[] counts = new long[BUCKETS];
+	private long count = 0;
+	private long maxNanos = 0;
+
+	public void record(long nanos) {
+		long micros = Math.max(nanos / 1000, 0);
+		int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+
+		counts[bucket]++;
+		count++;
+		if (nanos > maxNanos) {
+			maxNanos = nanos;
+		}
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMaxMicros() {
+		return maxNanos / 1000;
+	}
+
+	/**
+	 * Upper bound in us of the durations that the given fraction (0-1) of the recorded ones were within,
+	 * 0 before anything was recorded.
+	 */
+	public long getPercentileMicros(double fraction) {
+		if (count == 0) {
+			return 0;
+		}
+
+		long rank = Math.max((long) Math.ceil(Math.min(Math.max(fraction, 0), 1) * count), 1);
+		long seen = 0;
+
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(1L << i, getMaxMicros());
+			}
+		}
+		return getMaxMicros();
+	}
+
+	public void reset() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		maxNanos = 0;
+	}
+}
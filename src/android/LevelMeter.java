@@ -0,0 +1,179 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * Computes RMS, peak, clip count and optionally a magnitude spectrum of the captured audio, reporting them a fixed
+ * number of times per second instead of passing the samples on. The spectrum is taken over the most recent
+ * fftSize frames, mixed down to mono and Hann windowed. Everything is allocated up front.
+ */
+public class LevelMeter {
+
+	/**
+	 * Receives each completed report, on the thread calling process().
+	 */
+	public interface Listener {
+		void onLevels(LevelReport report);
+	}
+
+	// Reports that can be waiting for the consumer at once
+	private static final int REPORT_POOL_SIZE = 4;
+	// Floor of the spectrum, in dBFS
+	private static final float MIN_DB = -160;
+
+	private final int channels;
+	private final int framesPerReport;
+	private final SpscQueue<LevelReport> pool;
+
+	// Accumulated over the current interval
+	private int frames = 0;
+	private double sumSquares = 0;
+	private int peak = 0;
+	private int clipped = 0;
+
+	// Mono history for the spectrum, the newest frame just before historyPosition
+	private final Fft fft;
+	private final float[] history;
+	private final float[] window;
+	private final float[] re;
+	private final float[] im;
+	private final float magnitudeScale;
+	private int historyPosition = 0;
+
+	private volatile long droppedReports = 0;
+
+	/**
+	 * @param reportRate Reports per second.
+	 * @param fftSize Frames per spectrum, a power of two, or 0 for no spectrum.
+	 */
+	public LevelMeter(int sampleRate, int channels, int reportRate, int fftSize) {
+		this.channels = Math.max(channels, 1);
+		this.framesPerReport = Math.max(sampleRate / Math.max(reportRate, 1), 1);
+
+		if (fftSize > 0) {
+			fft = new Fft(fftSize);
+			history = new float[fftSize];
+			window = new float[fftSize];
+			re = new float[fftSize];
+			im = new float[fftSize];
+
+			double windowSum = 0;
+			for (int i = 0; i < fftSize; i++) {
+				window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / fftSize));
+				windowSum += window[i];
+			}
+			// A full scale sine shows as 0 dB
+			magnitudeScale = (float) (2 / (windowSum * 32768.0));
+		}
+		else {
+			fft = null;
+			history = null;
+			window = null;
+			re = null;
+			im = null;
+			magnitudeScale = 0;
+		}
+
+		pool = new SpscQueue<LevelReport>(REPORT_POOL_SIZE);
+		for (int i = 0; i < REPORT_POOL_SIZE; i++) {
+			pool.offer(new LevelReport(pool, fftSize / 2));
+		}
+	}
+
+	/**
+	 * Meter a block of interleaved samples, calling listener for every interval it completes.
+	 */
+	public void process(short[] samples, int length, Listener listener) {
+		int end = length - length % channels;
+
+		for (int i = 0; i < end; i += channels) {
+			int mix = 0;
+
+			for (int c = 0; c < channels; c++) {
+				int sample = samples[i + c];
+				int magnitude = sample < 0 ? -sample : sample;
+
+				sumSquares += (double) sample * sample;
+				if (magnitude > peak) {
+					peak = magnitude;
+				}
+				if (magnitude >= Short.MAX_VALUE) {
+					clipped++;
+				}
+				mix += sample;
+			}
+
+			if (history != null) {
+				history[historyPosition] = (float) mix / channels;
+				historyPosition = (historyPosition + 1) % history.length;
+			}
+
+			if (++frames == framesPerReport) {
+				report(listener);
+			}
+		}
+	}
+
+	/**
+	 * Number of reports skipped because the consumer hadn't released any.
+	 */
+	public long getDroppedReports() {
+		return droppedReports;
+	}
+
+	private void report(Listener listener) {
+		LevelReport report = pool.poll();
+
+		if (report == null) {
+			droppedReports++;
+		}
+		else {
+			report.rms = (float) (Math.sqrt(sumSquares / ((long) frames * channels)) / 32768.0);
+			report.peak = peak / 32768.0f;
+			report.clipped = clipped;
+			if (report.spectrum != null) {
+				spectrum(report.spectrum);
+			}
+			listener.onLevels(report);
+		}
+
+		frames = 0;
+		sumSquares = 0;
+		peak = 0;
+		clipped = 0;
+	}
+
+	private void spectrum(float[] out) {
+		int size = history.length;
+
+		for (int i = 0; i < size; i++) {
+			re[i] = history[(historyPosition + i) % size] * window[i];
+			im[i] = 0;
+		}
+
+		fft.transform(re, im);
+
+		for (int i = 0; i < out.length; i++) {
+			float magnitude = (float) Math.sqrt(re[i] * re[i] + im[i] * im[i]) * magnitudeScale;
+			out[i] = magnitude > 0 ? Math.max((float) (20 * Math.log10(magnitude)), MIN_DB) : MIN_DB;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * Levels of one metering interval, owned by the LevelMeter that filled it.
+ * Whoever receives a report must call release() once it's done with it.
+ */
+public final class LevelReport {
+
+	// RMS and peak of all samples, relative to full scale
+	public float rms;
+	public float peak;
+	// Number of samples at full scale
+	public int clipped;
+	// Magnitude in dBFS of each frequency bin, from 0 Hz up to just below half the sample rate. Null without FFT.
+	public final float[] spectrum;
+
+	private final SpscQueue<LevelReport> pool;
+
+	LevelReport(SpscQueue<LevelReport> pool, int bins) {
+		this.pool = pool;
+		this.spectrum = bins > 0 ? new float[bins] : null;
+	}
+
+	/**
+	 * Hand the report back so that the meter can reuse it.
+	 */
+	public void release() {
+		pool.offer(this);
+	}
+}
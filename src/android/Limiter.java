@@ -0,0 +1,68 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * Keeps peaks below a ceiling without clipping. The gain drops at once to what the loudest channel of a frame
+ * needs, so nothing exceeds the ceiling, and recovers over releaseMs. There is no look-ahead, so no latency.
+ */
+public class Limiter implements DspStage {
+
+	private final int channels;
+	private final float ceiling;
+	private final float release;
+
+	private float gain = 1;
+
+	public Limiter(int sampleRate, int channels, double ceilingDb, double releaseMs) {
+		this.channels = channels;
+		this.ceiling = DspChain.dbToLinear(Math.min(ceilingDb, 0)) * Short.MAX_VALUE;
+		this.release = DspChain.smoothing(releaseMs, sampleRate);
+	}
+
+	public Limiter(int sampleRate, int channels, double ceilingDb) {
+		this(sampleRate, channels, ceilingDb, 50);
+	}
+
+	@Override
+	public void process(short[] samples, int length) {
+		for (int frame = 0; frame + channels <= length; frame += channels) {
+			int peak = 0;
+			for (int i = frame; i < frame + channels; i++) {
+				peak = Math.max(peak, Math.abs(samples[i]));
+			}
+
+			float needed = peak > ceiling ? ceiling / peak : 1;
+			gain = needed < gain ? needed : gain + (needed - gain) * release;
+
+			if (gain < 1) {
+				for (int i = frame; i < frame + channels; i++) {
+					samples[i] = (short) (samples[i] * gain);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void reset() {
+		gain = 1;
+	}
+}
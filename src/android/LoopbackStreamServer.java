@@ -0,0 +1,593 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import android.util.Base64;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Serves the captured audio on 127.0.0.1, so the web app can read it with fetch() or a WebSocket, e.g. in a
+ * worker, instead of through the plugin bridge. GET /audio?token=... answers with the raw 16 bit little-endian
+ * PCM as a chunked HTTP response, or, when it asks for a WebSocket upgrade, with one binary message per chunk
+ * that starts with the position of its first frame as a 64 bit little-endian integer, so that a client can
+ * tell where audio went missing. The token is random, so other apps on the device can't listen in.
+ *
+ * One client is streamed to at a time, a new one replaces it. The capture thread hands chunks over with
+ * offer(), which never blocks: if the client reads too slowly, TCP holds up the sending thread, the queue
+ * fills up and further chunks are dropped and counted until it catches up. Each connection gets a thread
+ * that reads its request and then, for a WebSocket, answers its pings and close.
+ */
+public class LoopbackStreamServer extends Thread {
+
+	public static final String PATH = "/audio";
+
+	// Samples per queued chunk, larger blocks are split
+	private static final int CHUNK_SAMPLES = 8192;
+	// About 2 seconds of 48 kHz stereo
+	private static final int QUEUE_CHUNKS = 24;
+	private static final int MAX_REQUEST_SIZE = 8192;
+	private static final int REQUEST_TIMEOUT_MS = 5000;
+	// Bytes of frame position in front of the samples of a WebSocket message
+	private static final int POSITION_BYTES = 8;
+	// Control frames carry at most 125 bytes
+	private static final int MAX_CONTROL_PAYLOAD = 125;
+	// The sender is woken by offer(), this only bounds how long a missed wake-up can delay it
+	private static final long IDLE_PARK_NANOS = 2000000L;
+	private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private final ServerSocket serverSocket;
+	private final String token;
+	private final AudioChunkPool pool = new AudioChunkPool(QUEUE_CHUNKS, CHUNK_SAMPLES);
+	private final SpscQueue<AudioChunk> queue = new SpscQueue<AudioChunk>(QUEUE_CHUNKS);
+
+	private volatile int sampleRate = 0;
+	private volatile int channels = 0;
+	private volatile boolean closed = false;
+	private volatile Sender sender = null;
+
+	// Counters, written by the capture thread
+	private volatile long droppedChunks = 0;
+	private volatile long droppedFrames = 0;
+	// Counters, written by the sending thread
+	private volatile long chunksSent = 0;
+	private volatile long bytesSent = 0;
+	private volatile int clients = 0;
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	/**
+	 * @param port The port to listen on, 0 for any free one.
+	 */
+	public LoopbackStreamServer(int port) throws IOException {
+		super("AudioInputStreamServer");
+		setDaemon(true);
+		serverSocket = new ServerSocket(port, 4, InetAddress.getByName("127.0.0.1"));
+
+		byte[] random = new byte[16];
+		new SecureRandom().nextBytes(random);
+		StringBuilder hex = new StringBuilder();
+		for (byte b : random) {
+			hex.append(String.format(Locale.US, "%02x", b & 0xff));
+		}
+		token = hex.toString();
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * URL for fetch(), including the token.
+	 */
+	public String getUrl() {
+		return "http://127.0.0.1:" + getPort() + PATH + "?token=" + token;
+	}
+
+	/**
+	 * URL for a WebSocket, including the token.
+	 */
+	public String getWebSocketUrl() {
+		return "ws://127.0.0.1:" + getPort() + PATH + "?token=" + token;
+	}
+
+	/**
+	 * The format of the audio that follows, sent in the headers of the next responses.
+	 */
+	public void setFormat(int sampleRate, int channels) {
+		this.sampleRate = sampleRate;
+		this.channels = channels;
+	}
+
+	public boolean hasClient() {
+		return sender != null;
+	}
+
+	public long getDroppedChunks() {
+		return droppedChunks;
+	}
+
+	/**
+	 * Frames that were dropped because the client read too slowly.
+	 */
+	public long getDroppedFrames() {
+		return droppedFrames;
+	}
+
+	public long getChunksSent() {
+		return chunksSent;
+	}
+
+	public long getBytesSent() {
+		return bytesSent;
+	}
+
+	public int getClients() {
+		return clients;
+	}
+
+	/**
+	 * Time from offer() until the chunk was written to the client.
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Capture thread: queue the first length samples for the client, if there is one. Never blocks.
+	 *
+	 * @param framePosition Position of the first frame in the session, sent along with it to WebSocket clients.
+	 */
+	public void offer(short[] samples, int length, long framePosition) {
+		Sender current = sender;
+		if (current == null) {
+			return;
+		}
+
+		long now = System.nanoTime();
+		int frameSize = Math.max(channels, 1);
+		for (int offset = 0; offset < length; offset += CHUNK_SAMPLES) {
+			int chunkLength = Math.min(CHUNK_SAMPLES, length - offset);
+			AudioChunk chunk = pool.acquire();
+			if (chunk == null) {
+				droppedChunks++;
+				droppedFrames += chunkLength / frameSize;
+				continue;
+			}
+
+			chunk.length = chunkLength;
+			chunk.timestamp = now;
+			chunk.framePosition = framePosition + offset / frameSize;
+			System.arraycopy(samples, offset, chunk.samples, 0, chunkLength);
+			queue.offer(chunk);
+		}
+
+		// Wake the sender rather than waiting for it to poll again
+		LockSupport.unpark(current);
+	}
+
+	/**
+	 * Stop listening and disconnect the client.
+	 */
+	public void close() {
+		closed = true;
+		try {
+			serverSocket.close();
+		}
+		catch (IOException e) {
+			// Closing anyway
+		}
+		replaceSender(null);
+	}
+
+	@Override
+	public void run() {
+		while (!closed) {
+			try {
+				// The request is read on its own thread, so that a client that doesn't send one holds up no other
+				new Connection(serverSocket.accept()).start();
+			}
+			catch (IOException e) {
+				// Closed, or a connection that failed before it was accepted
+			}
+		}
+	}
+
+	/**
+	 * Answer a request, returning the Sender that streams to it, or null if it was refused.
+	 */
+	private Sender respond(Socket socket) throws IOException {
+		String request = readRequest(socket.getInputStream());
+		String[] requestLine = request.substring(0, Math.max(request.indexOf("\r\n"), 0)).split(" ");
+		OutputStream out = socket.getOutputStream();
+
+		if (requestLine.length < 2 || !requestLine[0].equals("GET") || !requestLine[1].startsWith(PATH + "?")
+			|| !MessageDigest.isEqual(queryParameter(requestLine[1], "token").getBytes(ASCII), token.getBytes(ASCII))) {
+			out.write(("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\nConnection: close\r\n"
+				+ "Access-Control-Allow-Origin: *\r\n\r\n").getBytes(ASCII));
+			socket.close();
+			return null;
+		}
+
+		String format = "X-Audio-Sample-Rate: " + sampleRate + "\r\nX-Audio-Channels: " + channels + "\r\n"
+			+ "X-Audio-Format: s16le\r\nAccess-Control-Allow-Origin: *\r\n"
+			+ "Access-Control-Expose-Headers: X-Audio-Sample-Rate, X-Audio-Channels, X-Audio-Format\r\n";
+		String key = header(request, "Sec-WebSocket-Key");
+		boolean webSocket = key != null && "websocket".equalsIgnoreCase(header(request, "Upgrade"));
+
+		if (webSocket) {
+			out.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+				+ "Sec-WebSocket-Accept: " + webSocketAccept(key) + "\r\n" + format + "\r\n").getBytes(ASCII));
+		}
+		else {
+			out.write(("HTTP/1.1 200 OK\r\nContent-Type: application/octet-stream\r\nTransfer-Encoding: chunked\r\n"
+				+ "Cache-Control: no-store\r\nConnection: close\r\n" + format + "\r\n").getBytes(ASCII));
+		}
+		out.flush();
+
+		socket.setSoTimeout(0);
+		socket.setTcpNoDelay(true);
+		return new Sender(socket, webSocket);
+	}
+
+	/**
+	 * Disconnect the current client, if any, and wait for its thread, so only one thread ever polls the queue.
+	 */
+	private synchronized void replaceSender(Sender next) {
+		Sender previous = sender;
+		sender = null;
+		if (previous != null) {
+			previous.disconnect();
+			boolean interrupted = false;
+			while (previous.isAlive()) {
+				try {
+					previous.join();
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		// Whatever was queued for the previous client is stale
+		AudioChunk stale;
+		while ((stale = queue.poll()) != null) {
+			stale.release();
+		}
+
+		if (next != null && !closed) {
+			clients++;
+			sender = next;
+			next.start();
+		}
+		else if (next != null) {
+			next.disconnect();
+		}
+	}
+
+	/**
+	 * Reads the request of one client, and then, for a WebSocket, the frames it sends, until it disconnects.
+	 */
+	private class Connection extends Thread {
+
+		private final Socket socket;
+
+		Connection(Socket socket) {
+			super("AudioInputStreamConnection");
+			setDaemon(true);
+			this.socket = socket;
+		}
+
+		@Override
+		public void run() {
+			try {
+				socket.setSoTimeout(REQUEST_TIMEOUT_MS);
+				Sender next = respond(socket);
+				if (next != null) {
+					replaceSender(next);
+					if (next.webSocket) {
+						next.receive();
+					}
+				}
+			}
+			catch (IOException e) {
+				closeQuietly(socket);
+			}
+		}
+	}
+
+	private static String readRequest(InputStream in) throws IOException {
+		byte[] buffer = new byte[MAX_REQUEST_SIZE];
+		int length = 0;
+		while (length < 4 || buffer[length - 4] != '\r' || buffer[length - 3] != '\n'
+			|| buffer[length - 2] != '\r' || buffer[length - 1] != '\n') {
+
+			if (length == buffer.length) {
+				throw new IOException("Request too large");
+			}
+			int read = in.read(buffer, length, 1);
+			if (read < 0) {
+				throw new IOException("Connection closed");
+			}
+			length += read;
+		}
+		return new String(buffer, 0, length, ASCII);
+	}
+
+	private static String header(String request, String name) {
+		for (String line : request.split("\r\n")) {
+			int colon = line.indexOf(':');
+			if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase(name)) {
+				return line.substring(colon + 1).trim();
+			}
+		}
+		return null;
+	}
+
+	private static String queryParameter(String target, String name) {
+		String query = target.substring(target.indexOf('?') + 1);
+		for (String parameter : query.split("&")) {
+			if (parameter.startsWith(name + "=")) {
+				return parameter.substring(name.length() + 1);
+			}
+		}
+		return "";
+	}
+
+	private static String webSocketAccept(String key) throws IOException {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest((key + WEBSOCKET_GUID).getBytes(ASCII));
+			return Base64.encodeToString(digest, Base64.NO_WRAP);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IOException(e.toString());
+		}
+	}
+
+	private static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+		for (int offset = 0; offset < length; ) {
+			int read = in.read(buffer, offset, length - offset);
+			if (read < 0) {
+				throw new IOException("Connection closed");
+			}
+			offset += read;
+		}
+	}
+
+	private static void closeQuietly(Socket socket) {
+		if (socket != null) {
+			try {
+				socket.close();
+			}
+			catch (IOException e) {
+				// Already gone
+			}
+		}
+	}
+
+	/**
+	 * Writes the queued chunks to one client, until it disconnects or is replaced.
+	 */
+	private class Sender extends Thread {
+
+		private final Socket socket;
+		final boolean webSocket;
+		// Frame header, frame position, samples and chunk trailer, written with one call per chunk
+		private final byte[] frame = new byte[16 + POSITION_BYTES + PcmEncoder.byteLength(CHUNK_SAMPLES)];
+		// Held while writing a whole frame, so that control frames don't end up in the middle of one
+		private final Object writeLock = new Object();
+		private volatile boolean connected = true;
+
+		Sender(Socket socket, boolean webSocket) {
+			super("AudioInputStreamSender");
+			setDaemon(true);
+			this.socket = socket;
+			this.webSocket = webSocket;
+		}
+
+		void disconnect() {
+			connected = false;
+			LockSupport.unpark(this);
+			closeQuietly(socket);
+		}
+
+		@Override
+		public void run() {
+			try {
+				OutputStream out = socket.getOutputStream();
+				while (connected) {
+					AudioChunk chunk = queue.poll();
+					if (chunk == null) {
+						LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+						continue;
+					}
+
+					int length;
+					long captured;
+					try {
+						length = encode(chunk);
+						captured = chunk.timestamp;
+					}
+					finally {
+						chunk.release();
+					}
+
+					synchronized (writeLock) {
+						out.write(frame, 0, length);
+					}
+					latency.record(System.nanoTime() - captured);
+					chunksSent++;
+					bytesSent += length;
+				}
+			}
+			catch (IOException e) {
+				// The client went away
+			}
+			finally {
+				closeQuietly(socket);
+				if (sender == this) {
+					sender = null;
+				}
+			}
+		}
+
+		/**
+		 * Connection thread: read the frames of the WebSocket client, answering its pings and its close, until
+		 * it or the sender disconnects. Its messages are ignored.
+		 */
+		void receive() {
+			byte[] header = new byte[8];
+			byte[] mask = new byte[4];
+			byte[] payload = new byte[MAX_CONTROL_PAYLOAD];
+			try {
+				InputStream in = socket.getInputStream();
+				while (connected) {
+					readFully(in, header, 2);
+					int opcode = header[0] & 0x0f;
+					boolean masked = (header[1] & 0x80) != 0;
+					long length = header[1] & 0x7f;
+					if (length == 126) {
+						readFully(in, header, 2);
+						length = ((header[0] & 0xff) << 8) | (header[1] & 0xff);
+					}
+					else if (length == 127) {
+						readFully(in, header, 8);
+						length = 0;
+						for (int i = 0; i < 8; i++) {
+							length = (length << 8) | (header[i] & 0xff);
+						}
+					}
+					if (!masked || length < 0 || (opcode >= 0x8 && length > MAX_CONTROL_PAYLOAD)) {
+						// A protocol error, clients must mask their frames
+						sendControl(0x8, new byte[] {0x03, (byte) 0xea}, 2);
+						break;
+					}
+					readFully(in, mask, 4);
+
+					if (opcode < 0x8) {
+						// A message from the client, which isn't expected
+						for (long skipped = 0; skipped < length; ) {
+							int read = in.read(payload, 0, (int) Math.min(payload.length, length - skipped));
+							if (read < 0) {
+								throw new IOException("Connection closed");
+							}
+							skipped += read;
+						}
+						continue;
+					}
+
+					readFully(in, payload, (int) length);
+					for (int i = 0; i < length; i++) {
+						payload[i] ^= mask[i & 3];
+					}
+					if (opcode == 0x9) {
+						sendControl(0xa, payload, (int) length);
+					}
+					else if (opcode == 0x8) {
+						// Echo the status code, which completes the closing handshake
+						sendControl(0x8, payload, Math.min((int) length, 2));
+						break;
+					}
+				}
+			}
+			catch (IOException e) {
+				// The client went away
+			}
+			finally {
+				disconnect();
+			}
+		}
+
+		private void sendControl(int opcode, byte[] payload, int length) throws IOException {
+			byte[] control = new byte[2 + length];
+			control[0] = (byte) (0x80 | opcode);
+			control[1] = (byte) length;
+			System.arraycopy(payload, 0, control, 2, length);
+			synchronized (writeLock) {
+				OutputStream out = socket.getOutputStream();
+				out.write(control);
+				out.flush();
+			}
+		}
+
+		/**
+		 * Put the chunk in frame as a WebSocket binary message or an HTTP chunk.
+		 *
+		 * @return The number of bytes of frame to write.
+		 */
+		private int encode(AudioChunk chunk) {
+			int payload = PcmEncoder.byteLength(chunk.length);
+			int offset;
+
+			if (webSocket) {
+				payload += POSITION_BYTES;
+				frame[0] = (byte) 0x82; // Final fragment of a binary message
+				if (payload < 126) {
+					frame[1] = (byte) payload;
+					offset = 2;
+				}
+				else {
+					frame[1] = 126;
+					frame[2] = (byte) (payload >> 8);
+					frame[3] = (byte) payload;
+					offset = 4;
+				}
+				payload -= POSITION_BYTES;
+
+				long position = chunk.framePosition;
+				for (int i = 0; i < POSITION_BYTES; i++) {
+					frame[offset++] = (byte) (position >> (8 * i));
+				}
+			}
+			else {
+				// Chunk size in hex
+				offset = 0;
+				for (int shift = 28 - (Integer.numberOfLeadingZeros(payload) / 4) * 4; shift >= 0; shift -= 4) {
+					frame[offset++] = (byte) Character.forDigit((payload >> shift) & 0xf, 16);
+				}
+				frame[offset++] = '\r';
+				frame[offset++] = '\n';
+			}
+
+			PcmEncoder.toLittleEndian(chunk.samples, chunk.length, frame, offset);
+			offset += payload;
+
+			if (!webSocket) {
+				frame[offset++] = '\r';
+				frame[offset++] = '\n';
+			}
+			return offset;
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * Mutes the audio while its level stays below a threshold, so that background noise between words isn't heard.
+ * The gate opens within attackMs once the peak level of any channel rises above the threshold, stays open for
+ * holdMs after it falls below threshold - hysteresis, and then closes over releaseMs down to rangeDb.
+ */
+public class NoiseGate implements DspStage {
+
+	private static final double HYSTERESIS_DB = 6;
+
+	private final int channels;
+	private final float openThreshold;
+	private final float closeThreshold;
+	private final float closedGain;
+	private final float envelopeRelease;
+	private final float attack;
+	private final float release;
+	private final int holdFrames;
+
+	private float envelope = 0;
+	private float gain = 0;
+	private boolean open = false;
+	private int framesBelow = 0;
+
+	/**
+	 * @param rangeDb Gain while closed, e.g. -80, or a milder -20 to only lower the noise.
+	 */
+	public NoiseGate(int sampleRate, int channels, double thresholdDb, double rangeDb,
+		double attackMs, double holdMs, double releaseMs) {
+
+		this.channels = channels;
+		this.openThreshold = DspChain.dbToLinear(thresholdDb) * Short.MAX_VALUE;
+		this.closeThreshold = DspChain.dbToLinear(thresholdDb - HYSTERESIS_DB) * Short.MAX_VALUE;
+		this.closedGain = DspChain.dbToLinear(Math.min(rangeDb, 0));
+		this.envelopeRelease = DspChain.smoothing(20, sampleRate);
+		this.attack = DspChain.smoothing(attackMs, sampleRate);
+		this.release = DspChain.smoothing(releaseMs, sampleRate);
+		this.holdFrames = (int) (holdMs * sampleRate / 1000);
+		this.gain = closedGain;
+	}
+
+	public NoiseGate(int sampleRate, int channels, double thresholdDb) {
+		this(sampleRate, channels, thresholdDb, -80, 1, 100, 150);
+	}
+
+	@Override
+	public void process(short[] samples, int length) {
+		for (int frame = 0; frame + channels <= length; frame += channels) {
+			int peak = 0;
+			for (int i = frame; i < frame + channels; i++) {
+				peak = Math.max(peak, Math.abs(samples[i]));
+			}
+
+			// Peak envelope: rises at once, decays smoothly
+			envelope = peak > envelope ? peak : envelope + (peak - envelope) * envelopeRelease;
+
+			if (envelope > openThreshold) {
+				open = true;
+				framesBelow = 0;
+			}
+			else if (open && envelope < closeThreshold && ++framesBelow > holdFrames) {
+				open = false;
+			}
+
+			gain += open ? (1 - gain) * attack : (closedGain - gain) * release;
+			for (int i = frame; i < frame + channels; i++) {
+				samples[i] = DspChain.clip(samples[i] * gain);
+			}
+		}
+	}
+
+	@Override
+	public void reset() {
+		envelope = 0;
+		gain = closedGain;
+		open = false;
+		framesBelow = 0;
+	}
+}
@@ -0,0 +1,111 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * Delivers the samples of another source no faster than its sample rate, the way a real
+ * microphone would, by blocking each read until the wall clock has caught up.
+ */
+public class PacedSource implements PcmSource {
+
+	private final PcmSource source;
+	private final long samplesPerSecond;
+
+	private long startNanos;
+	private long samplesDelivered;
+
+	public PacedSource(PcmSource source) {
+		this.source = source;
+		this.samplesPerSecond = (long) source.getSampleRate() * source.getChannelCount();
+	}
+
+	@Override
+	public int getSampleRate() {
+		return source.getSampleRate();
+	}
+
+	@Override
+	public int getChannelCount() {
+		return source.getChannelCount();
+	}
+
+	@Override
+	public int getBufferFrames() {
+		return source.getBufferFrames();
+	}
+
+	@Override
+	public boolean growBuffer() {
+		return source.growBuffer();
+	}
+
+	@Override
+	public void start() {
+		source.start();
+		startNanos = System.nanoTime();
+		samplesDelivered = 0;
+	}
+
+	@Override
+	public int read(short[] buffer, int offset, int length) {
+		int read = source.read(buffer, offset, length);
+		if (read <= 0) {
+			return read;
+		}
+
+		samplesDelivered += read;
+		long dueNanos = startNanos + samplesDelivered * 1000000000L / samplesPerSecond;
+		long waitNanos = dueNanos - System.nanoTime();
+
+		if (waitNanos > 0) {
+			try {
+				Thread.sleep(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+			}
+			catch (InterruptedException e) {
+				// Keep the interrupt, the capture loop uses it to stop
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		return read;
+	}
+
+	/**
+	 * Frames count as captured when they are due, as if the wall clock were the sample clock.
+	 */
+	@Override
+	public boolean getTimestamp(FrameTimestamp timestamp) {
+		long frames = samplesDelivered / source.getChannelCount();
+		timestamp.framePosition = frames;
+		timestamp.nanoTime = startNanos + frames * 1000000000L / source.getSampleRate();
+		return true;
+	}
+
+	@Override
+	public void stop() {
+		source.stop();
+	}
+
+	@Override
+	public void release() {
+		source.release();
+	}
+}
@@ -0,0 +1,85 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * Converts captured blocks to the output channel layout and sample rate requested by the app,
+ * before they are sent anywhere. Stereo is mixed down to mono first, so the resampler has less to do.
+ */
+public class PcmConverter {
+
+	private final int inputChannels;
+	private final int outputChannels;
+	private final PolyphaseResampler resampler;
+
+	// Holds the downmixed block when both the channels and the rate change
+	private short[] mixBuffer = new short[0];
+
+	public PcmConverter(int inputRate, int inputChannels, int outputRate, int outputChannels) {
+		this.inputChannels = inputChannels;
+		this.outputChannels = Math.min(outputChannels, inputChannels);
+		this.resampler = inputRate != outputRate ? new PolyphaseResampler(inputRate, outputRate, this.outputChannels) : null;
+	}
+
+	/**
+	 * Whether the output format differs from the input format at all.
+	 */
+	public static boolean isNeeded(int inputRate, int inputChannels, int outputRate, int outputChannels) {
+		return inputRate != outputRate || outputChannels < inputChannels;
+	}
+
+	public int maxOutputLength(int inputLength) {
+		int mixed = inputLength / inputChannels * outputChannels;
+		return resampler != null ? resampler.maxOutputLength(mixed) : mixed;
+	}
+
+	/**
+	 * Convert count samples from input into output, which must hold maxOutputLength(count) samples.
+	 *
+	 * @return The number of samples written to output.
+	 */
+	public int process(short[] input, int count, short[] output) {
+		if (outputChannels == inputChannels) {
+			return resampler.process(input, count, output);
+		}
+
+		if (resampler == null) {
+			return downmix(input, count, output);
+		}
+
+		if (mixBuffer.length < count) {
+			mixBuffer = new short[count];
+		}
+		int mixed = downmix(input, count, mixBuffer);
+		return resampler.process(mixBuffer, mixed, output);
+	}
+
+	/**
+	 * Average interleaved stereo frames into mono.
+	 */
+	private static int downmix(short[] input, int count, short[] output) {
+		int frames = count / 2;
+		for (int i = 0, j = 0; i < frames; i++, j += 2) {
+			output[i] = (short) ((input[j] + input[j + 1]) >> 1);
+		}
+		return frames;
+	}
+}
@@ -0,0 +1,82 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * Conversions of captured PCM samples into the representations sent across the Cordova bridge.
+ */
+public final class PcmEncoder {
+
+	private PcmEncoder() {
+	}
+
+	/**
+	 * Number of bytes needed to hold the given number of 16 bit samples.
+	 */
+	public static int byteLength(int sampleCount) {
+		return sampleCount * 2;
+	}
+
+	/**
+	 * Write the first count samples as little-endian 16 bit PCM into out, which must hold at least
+	 * byteLength(count) bytes. Returns the number of bytes written.
+	 */
+	public static int toLittleEndian(short[] samples, int count, byte[] out) {
+		return toLittleEndian(samples, count, out, 0);
+	}
+
+	/**
+	 * Like toLittleEndian(samples, count, out), starting at offset in out.
+	 */
+	public static int toLittleEndian(short[] samples, int count, byte[] out, int offset) {
+		int j = offset;
+		for (int i = 0; i < count; i++) {
+			short s = samples[i];
+			out[j++] = (byte) (s & 0xff);
+			out[j++] = (byte) ((s >>> 8) & 0xff);
+		}
+		return j - offset;
+	}
+
+	/**
+	 * Write the first count samples, divided by normalizationFactor, as little-endian 32 bit floats into out,
+	 * which must hold at least floatByteLength(count) bytes. Returns the number of bytes written.
+	 */
+	public static int toFloat32LittleEndian(short[] samples, int count, float normalizationFactor, byte[] out) {
+		float scale = 1.0f / normalizationFactor;
+		int j = 0;
+		for (int i = 0; i < count; i++) {
+			int bits = Float.floatToRawIntBits(samples[i] * scale);
+			out[j++] = (byte) bits;
+			out[j++] = (byte) (bits >>> 8);
+			out[j++] = (byte) (bits >>> 16);
+			out[j++] = (byte) (bits >>> 24);
+		}
+		return j;
+	}
+
+	/**
+	 * Number of bytes needed to hold the given number of samples as 32 bit floats.
+	 */
+	public static int floatByteLength(int sampleCount) {
+		return sampleCount * 4;
+	}
+}
@@ -0,0 +1,158 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-size ring of the most recent interleaved 16 bit samples, written by the capture thread and copied out by
+ * any number of other threads without locking.
+ *
+ * Positions are counted in samples since the start. Before copying a block in, the writer claims the positions it
+ * is about to overwrite; after copying, it publishes the new end. A snapshot copies up to the published end and then
+ * checks the claimed end, discarding the oldest part of the copy if the writer got to it in the meantime.
+ */
+public class PcmRingBuffer {
+
+	private final short[] ring;
+	private final int sampleRate;
+	private final int channels;
+
+	// End of the samples that are complete, and end of those the writer may be overwriting
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong claimed = new AtomicLong();
+
+	/**
+	 * @param seconds How much audio snapshots must be able to return.
+	 * @param maxBlockLength The largest block that will be passed to write(). Room for one more block is allocated,
+	 * so that the full time is still available while a block is being written.
+	 * @throws IllegalArgumentException If the ring would take more than a quarter of the maximum heap size.
+	 */
+	public PcmRingBuffer(int sampleRate, int channels, double seconds, int maxBlockLength) {
+		this.sampleRate = sampleRate;
+		this.channels = channels;
+
+		long frames = (long) Math.ceil(seconds * sampleRate) + (maxBlockLength + channels - 1) / channels;
+		long bytes = frames * PcmEncoder.byteLength(channels);
+		// Refused up front rather than risking an OutOfMemoryError that takes the app down with it
+		if (bytes > Runtime.getRuntime().maxMemory() / 4 || frames * channels > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Ring buffer of " + seconds + " s (" + bytes / (1024 * 1024)
+				+ " MB) doesn't fit in the heap");
+		}
+		ring = new short[(int) (frames * channels)];
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	public int getChannelCount() {
+		return channels;
+	}
+
+	/**
+	 * Number of samples that snapshots can return at most.
+	 */
+	public int getCapacity() {
+		return ring.length;
+	}
+
+	/**
+	 * Total number of samples written so far.
+	 */
+	public long getWritten() {
+		return written.get();
+	}
+
+	/**
+	 * Append a block of whole frames. Must only be called from one thread.
+	 */
+	public void write(short[] samples, int length) {
+		long end = written.get();
+		int offset = 0;
+
+		// Only the last capacity samples of a larger block can be kept
+		if (length > ring.length) {
+			offset = length - ring.length;
+			end += offset;
+		}
+
+		// Makes the claim visible before any of the samples are overwritten
+		claimed.getAndSet(end + length - offset);
+
+		int position = (int) (end % ring.length);
+		int remaining = length - offset;
+		int first = Math.min(remaining, ring.length - position);
+		System.arraycopy(samples, offset, ring, position, first);
+		System.arraycopy(samples, offset + first, ring, 0, remaining - first);
+
+		written.lazySet(end + remaining);
+	}
+
+	/**
+	 * Copy the most recent samples, oldest first, without holding up the writer. Fewer than requested are returned
+	 * if not enough have been captured yet, or if the writer overtook the copy.
+	 *
+	 * @param dest Receives the samples, must hold at least maxSamples.
+	 * @param maxSamples How many samples to copy at most, rounded down to whole frames.
+	 * @return The number of samples at the start of dest.
+	 */
+	public int snapshot(short[] dest, int maxSamples) {
+		long end = written.get();
+		int count = (int) Math.min(Math.min(maxSamples, ring.length), end);
+		count -= count % channels;
+		long start = end - count;
+
+		int position = (int) (start % ring.length);
+		int first = Math.min(count, ring.length - position);
+		System.arraycopy(ring, position, dest, 0, first);
+		System.arraycopy(ring, 0, dest, first, count - first);
+
+		// The read-modify-write keeps the copy above from being reordered after this check
+		long overwrittenBelow = claimed.getAndAdd(0) - ring.length;
+		if (overwrittenBelow <= start) {
+			return count;
+		}
+
+		// Drop the samples the writer may have replaced while they were copied, keeping whole frames
+		int skip = (int) Math.min(overwrittenBelow - start, count);
+		skip += (channels - skip % channels) % channels;
+		skip = Math.min(skip, count);
+		System.arraycopy(dest, skip, dest, 0, count - skip);
+		return count - skip;
+	}
+
+	/**
+	 * Copy up to the given duration of the most recent audio into a new array.
+	 */
+	public short[] snapshot(double seconds) {
+		long samples = (long) Math.ceil(Math.max(seconds, 0) * sampleRate) * channels;
+		short[] dest = new short[(int) Math.min(samples, ring.length)];
+		int count = snapshot(dest, dest.length);
+
+		if (count == dest.length) {
+			return dest;
+		}
+		short[] trimmed = new short[count];
+		System.arraycopy(dest, 0, trimmed, 0, count);
+		return trimmed;
+	}
+}
@@ -0,0 +1,70 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * Where AudioInputReceiver gets its samples from. The default implementation wraps an Android AudioRecord,
+ * the others don't depend on Android so that the capture pipeline can be exercised on a plain JVM.
+ *
+ * Samples are always interleaved 16 bit PCM.
+ */
+public interface PcmSource {
+
+	int getSampleRate();
+
+	int getChannelCount();
+
+	/**
+	 * How many frames the source holds on to while it isn't being read, before new ones get lost.
+	 * 0 if it never loses any, like the synthetic sources.
+	 */
+	int getBufferFrames();
+
+	/**
+	 * Buffer more frames from now on, after overruns were detected. Samples may be lost while this happens.
+	 *
+	 * @return False if the buffer can't grow any further.
+	 */
+	boolean growBuffer();
+
+	void start();
+
+	/**
+	 * Blocks until samples are available and reads at most length samples into buffer.
+	 *
+	 * @return The number of samples read, 0 if none were available or a negative AudioRecord error code.
+	 */
+	int read(short[] buffer, int offset, int length);
+
+	/**
+	 * Fill timestamp with the capture time of a recent frame, if the source knows it.
+	 *
+	 * @return False if it doesn't.
+	 */
+	boolean getTimestamp(FrameTimestamp timestamp);
+
+	void stop();
+
+	/**
+	 * Releases any underlying resources, the source can't be used afterwards.
+	 */
+	void release();
+}
@@ -0,0 +1,220 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The peak pyramid of a WAV file, kept in a .peaks file next to it: the minimum, maximum and RMS of every
+ * FRAMES_PER_PEAK frames over all channels, and levels above that which each halve the resolution of the one
+ * below. It is written by PeakIndexBuilder while recording, or built by one pass over the file the first time
+ * it is needed, and mapped when opened, so any zoom level of a long recording is answered in time proportional
+ * to the number of peaks asked for.
+ */
+public class PeakFile {
+
+	public static final int FRAMES_PER_PEAK = 256;
+	public static final String SUFFIX = ".peaks";
+	// Bytes per entry: min, max and RMS as 16 bit values
+	public static final int ENTRY_SIZE = 6;
+
+	private static final int MAGIC = 0x4b414550; // PEAK
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 40;
+	// Samples read per pass when building from the file
+	private static final int BUILD_SAMPLES = 64 * 1024;
+
+	private final MappedByteBuffer entries;
+	private final long[] levelOffsets;
+
+	private PeakFile(MappedByteBuffer entries, long[] levelOffsets) {
+		this.entries = entries;
+		this.levelOffsets = levelOffsets;
+	}
+
+	/**
+	 * The .peaks file belonging to a recording.
+	 */
+	public static File fileFor(File recording) {
+		return new File(recording.getPath() + SUFFIX);
+	}
+
+	/**
+	 * Open the peaks of the reader's file, building them first if they are missing or out of date.
+	 */
+	public static PeakFile open(WavFileReader reader) throws IOException {
+		File file = fileFor(reader.getFile());
+
+		PeakFile peakFile = file.exists() ? map(file, reader) : null;
+		if (peakFile == null) {
+			PeakIndexBuilder builder = new PeakIndexBuilder(reader.getChannelCount());
+			long totalSamples = reader.getFrameCount() * reader.getChannelCount();
+			short[] samples = new short[BUILD_SAMPLES];
+			for (long index = 0; index < totalSamples; index += samples.length) {
+				int length = (int) Math.min(samples.length, totalSamples - index);
+				reader.readSamples(index, samples, 0, length);
+				builder.add(samples, 0, length);
+			}
+			builder.write(file, reader.getFileLength(), reader.getLastModified());
+
+			peakFile = map(file, reader);
+			if (peakFile == null) {
+				throw new IOException("Could not build " + file);
+			}
+		}
+		return peakFile;
+	}
+
+	public int getLevelCount() {
+		return levelOffsets.length - 1;
+	}
+
+	/**
+	 * Number of entries of a level, each of which covers FRAMES_PER_PEAK << level frames.
+	 */
+	public long getEntryCount(int level) {
+		return levelOffsets[level + 1] - levelOffsets[level];
+	}
+
+	/**
+	 * Put the minimum, maximum and RMS of each of count equal parts of the frames from startFrame to endFrame
+	 * into out, as count triples. Each part is taken from the level with the coarsest entries that still
+	 * split it in two or more, the minimum and maximum rounded out to whole entries, or from the samples when
+	 * it is smaller than that.
+	 */
+	public void readPeaks(WavFileReader reader, long startFrame, long endFrame, int count, short[] out) {
+		int channels = reader.getChannelCount();
+		long frames = endFrame - startFrame;
+		short[] samples = null;
+
+		for (int i = 0; i < count; i++) {
+			long from = startFrame + frames * i / count;
+			long to = Math.max(startFrame + frames * (i + 1) / count, Math.min(from + 1, endFrame));
+			int min = 0;
+			int max = 0;
+			double meanSquare = 0;
+
+			if (to - from >= 2 * FRAMES_PER_PEAK) {
+				int level = 0;
+				while (level + 1 < getLevelCount() && (long) FRAMES_PER_PEAK << (level + 1) <= (to - from) / 2) {
+					level++;
+				}
+
+				long span = (long) FRAMES_PER_PEAK << level;
+				long first = from / span;
+				long last = Math.min((to + span - 1) / span, getEntryCount(level));
+				double weights = 0;
+				min = Short.MAX_VALUE;
+				max = Short.MIN_VALUE;
+				for (long entry = first; entry < last; entry++) {
+					int position = (int) ((levelOffsets[level] + entry) * ENTRY_SIZE);
+					min = Math.min(min, entries.getShort(position));
+					max = Math.max(max, entries.getShort(position + 2));
+
+					// The RMS counts the entries at the edges for the part they overlap
+					double weight = Math.min(to, (entry + 1) * span) - Math.max(from, entry * span);
+					double rms = entries.getShort(position + 4);
+					meanSquare += rms * rms * weight;
+					weights += weight;
+				}
+				meanSquare /= Math.max(weights, 1);
+			}
+			else if (to > from) {
+				int length = (int) (to - from) * channels;
+				if (samples == null) {
+					samples = new short[2 * FRAMES_PER_PEAK * channels];
+				}
+				reader.readSamples(from * channels, samples, 0, length);
+
+				min = Short.MAX_VALUE;
+				max = Short.MIN_VALUE;
+				for (int j = 0; j < length; j++) {
+					min = Math.min(min, samples[j]);
+					max = Math.max(max, samples[j]);
+					meanSquare += samples[j] * samples[j];
+				}
+				meanSquare /= length;
+			}
+
+			out[3 * i] = (short) min;
+			out[3 * i + 1] = (short) max;
+			out[3 * i + 2] = (short) Math.min(Math.round(Math.sqrt(meanSquare)), Short.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * Put the header of a peaks file at the buffer's position.
+	 */
+	static void writeHeader(ByteBuffer out, int levels, long sourceLength, long sourceModified, long frameCount) {
+		out.putInt(MAGIC).putInt(VERSION).putInt(FRAMES_PER_PEAK).putInt(levels);
+		out.putLong(sourceLength).putLong(sourceModified).putLong(frameCount);
+	}
+
+	/**
+	 * Where each level starts, in entries, followed by the total number of entries.
+	 */
+	private static long[] levelOffsets(long frameCount, int levels) {
+		long[] offsets = new long[levels + 1];
+		long count = (frameCount + FRAMES_PER_PEAK - 1) / FRAMES_PER_PEAK;
+		for (int level = 0; level < levels; level++) {
+			offsets[level + 1] = offsets[level] + count;
+			count = (count + 1) / 2;
+		}
+		return offsets;
+	}
+
+	private static PeakFile map(File file, WavFileReader reader) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			if (channel.size() < HEADER_SIZE) {
+				return null;
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			randomAccessFile.readFully(header.array());
+			int levels = header.getInt(12);
+			if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != FRAMES_PER_PEAK
+				|| levels < 1 || levels > 64 || header.getLong(16) != reader.getFileLength()
+				|| header.getLong(24) != reader.getLastModified() || header.getLong(32) != reader.getFrameCount()) {
+				return null; // Made for another version of the recording
+			}
+
+			long[] offsets = levelOffsets(reader.getFrameCount(), levels);
+			if (channel.size() != HEADER_SIZE + offsets[levels] * ENTRY_SIZE) {
+				return null;
+			}
+
+			MappedByteBuffer entries = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, offsets[levels] * ENTRY_SIZE);
+			entries.order(ByteOrder.LITTLE_ENDIAN);
+			return new PeakFile(entries, offsets);
+		}
+		finally {
+			randomAccessFile.close();
+		}
+	}
+}
@@ -0,0 +1,225 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Builds the peak pyramid of a recording while its samples go by: the minimum, maximum and RMS of every
+ * PeakFile.FRAMES_PER_PEAK frames over all channels, and above that levels that each combine two entries of
+ * the one below, until a level has a single entry. Every entry is completed as soon as its frames are in,
+ * so adding samples costs a few operations per sample, and writing the index at the end only its size.
+ */
+public class PeakIndexBuilder {
+
+	private final int channels;
+	private final int samplesPerPeak;
+
+	// Entries of each level, as min, max, mean square
+	private short[][] mins = new short[1][64];
+	private short[][] maxs = new short[1][64];
+	private float[][] meanSquares = new float[1][64];
+	private int[] counts = new int[1];
+	private double[] lastWeights = new double[1];
+	private int levels = 1;
+
+	// The level 0 entry being filled
+	private int min = Short.MAX_VALUE;
+	private int max = Short.MIN_VALUE;
+	private long sumSquares = 0;
+	private int samples = 0;
+	private long frames = 0;
+
+	public PeakIndexBuilder(int channels) {
+		this.channels = channels;
+		this.samplesPerPeak = PeakFile.FRAMES_PER_PEAK * channels;
+	}
+
+	public void add(short[] data, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			addSample(data[i]);
+		}
+	}
+
+	/**
+	 * Add the little-endian PCM from the buffer's position to its limit, without moving the position.
+	 */
+	public void add(ByteBuffer pcm) {
+		for (int i = pcm.position(); i + 1 < pcm.limit(); i += 2) {
+			addSample((short) ((pcm.get(i) & 0xff) | (pcm.get(i + 1) << 8)));
+		}
+	}
+
+	public long getFrameCount() {
+		return frames + samples / channels;
+	}
+
+	/**
+	 * Complete the last entries and write the index for a recording of the given length and modification
+	 * time, to a temporary file that then replaces peakFile.
+	 */
+	public void write(File peakFile, long sourceLength, long sourceModified) throws IOException {
+		if (samples > 0) {
+			frames += samples / channels;
+			completeEntry();
+		}
+		finishLevels();
+
+		File partial = new File(peakFile.getPath() + ".tmp");
+		RandomAccessFile randomAccessFile = new RandomAccessFile(partial, "rw");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			channel.truncate(0);
+
+			ByteBuffer out = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+			PeakFile.writeHeader(out, levels, sourceLength, sourceModified, frames);
+			for (int level = 0; level < levels; level++) {
+				for (int i = 0; i < counts[level]; i++) {
+					if (out.remaining() < PeakFile.ENTRY_SIZE) {
+						out.flip();
+						writeFully(channel, out);
+						out.clear();
+					}
+					out.putShort(mins[level][i]).putShort(maxs[level][i])
+						.putShort((short) Math.min(Math.round(Math.sqrt(meanSquares[level][i])), Short.MAX_VALUE));
+				}
+			}
+			out.flip();
+			writeFully(channel, out);
+		}
+		finally {
+			randomAccessFile.close();
+		}
+
+		if (peakFile.exists()) {
+			peakFile.delete();
+		}
+		if (!partial.renameTo(peakFile)) {
+			throw new IOException("Could not rename " + partial + " to " + peakFile);
+		}
+	}
+
+	private void addSample(short sample) {
+		if (sample < min) min = sample;
+		if (sample > max) max = sample;
+		sumSquares += sample * sample;
+
+		if (++samples == samplesPerPeak) {
+			frames += PeakFile.FRAMES_PER_PEAK;
+			completeEntry();
+		}
+	}
+
+	private void completeEntry() {
+		append(0, (short) min, (short) max, (float) ((double) sumSquares / samples), (double) samples / samplesPerPeak);
+		min = Short.MAX_VALUE;
+		max = Short.MIN_VALUE;
+		sumSquares = 0;
+		samples = 0;
+	}
+
+	/**
+	 * Add an entry to a level, weight being the part of an entry's span it covers: only the last entry of a
+	 * recording can cover less than all of it.
+	 */
+	private void append(int level, short entryMin, short entryMax, float meanSquare, double weight) {
+		if (level == levels) {
+			growLevels();
+		}
+		int count = counts[level];
+		if (count == mins[level].length) {
+			mins[level] = copyOf(mins[level], count * 2);
+			maxs[level] = copyOf(maxs[level], count * 2);
+			float[] grown = new float[count * 2];
+			System.arraycopy(meanSquares[level], 0, grown, 0, count);
+			meanSquares[level] = grown;
+		}
+
+		mins[level][count] = entryMin;
+		maxs[level][count] = entryMax;
+		meanSquares[level][count] = meanSquare;
+		lastWeights[level] = weight;
+		counts[level] = ++count;
+
+		// Each completed pair makes an entry of the level above
+		if ((count & 1) == 0) {
+			int first = count - 2;
+			append(level + 1,
+				(short) Math.min(entryMin, mins[level][first]),
+				(short) Math.max(entryMax, maxs[level][first]),
+				(float) ((meanSquares[level][first] + meanSquare * weight) / (1 + weight)),
+				(1 + weight) / 2);
+		}
+	}
+
+	/**
+	 * Give a lone last entry of each level its entry in the level above, up to a level with a single entry.
+	 */
+	private void finishLevels() {
+		for (int level = 0; counts[level] > 1 || level + 1 < levels; level++) {
+			int last = counts[level] - 1;
+			if ((last & 1) == 0) {
+				append(level + 1, mins[level][last], maxs[level][last], meanSquares[level][last], lastWeights[level] / 2);
+			}
+		}
+	}
+
+	private void growLevels() {
+		int grown = levels + 1;
+		short[][] newMins = new short[grown][];
+		short[][] newMaxs = new short[grown][];
+		float[][] newMeanSquares = new float[grown][];
+		int[] newCounts = new int[grown];
+		double[] newLastWeights = new double[grown];
+		System.arraycopy(mins, 0, newMins, 0, levels);
+		System.arraycopy(maxs, 0, newMaxs, 0, levels);
+		System.arraycopy(meanSquares, 0, newMeanSquares, 0, levels);
+		System.arraycopy(counts, 0, newCounts, 0, levels);
+		System.arraycopy(lastWeights, 0, newLastWeights, 0, levels);
+		newMins[levels] = new short[64];
+		newMaxs[levels] = new short[64];
+		newMeanSquares[levels] = new float[64];
+
+		mins = newMins;
+		maxs = newMaxs;
+		meanSquares = newMeanSquares;
+		counts = newCounts;
+		lastWeights = newLastWeights;
+		levels = grown;
+	}
+
+	private static short[] copyOf(short[] array, int length) {
+		short[] copy = new short[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * Streaming rational sample rate converter. The rate ratio is reduced to up/down factors L/M and a Kaiser windowed
+ * sinc low-pass prototype is split into L phases, so each output sample costs tapsPerPhase() multiply-adds per
+ * channel. Filter state is kept between calls, so blocks can have any length.
+ *
+ * The filter passes up to 0.45 times the lower of the two rates and rejects everything from half of it by at least
+ * 60 dB, so nothing above the output Nyquist frequency aliases back when downsampling.
+ */
+public class PolyphaseResampler {
+
+	// Taps per phase at ratios up to 1:1, enough for the transition band below at the lower rate
+	public static final int TAPS_PER_PHASE = 96;
+	// Passband and stopband edges as fractions of the lower of the two sample rates
+	private static final double PASSBAND = 0.45;
+	private static final double STOPBAND = 0.5;
+	// Kaiser window for about 70 dB of stopband attenuation
+	private static final double KAISER_BETA = 6.76;
+
+	private final int channels;
+	private final int up;
+	private final int down;
+	private final int taps;
+	// Coefficients of phase p at [p * taps, (p + 1) * taps), newest input first
+	private final float[] coefficients;
+
+	// Per channel: the last taps - 1 input samples of the previous block, followed by the current block
+	private float[][] work;
+	// Position of the next output sample in the upsampled domain, relative to the current block
+	private long position = 0;
+
+	public PolyphaseResampler(int inputRate, int outputRate, int channels) {
+		int gcd = gcd(inputRate, outputRate);
+		this.channels = channels;
+		this.up = outputRate / gcd;
+		this.down = inputRate / gcd;
+		this.taps = tapsPerPhase(inputRate, outputRate);
+		this.coefficients = new float[up * taps];
+		this.work = new float[channels][taps - 1];
+
+		// Cutoff in cycles per upsampled sample, halfway through the transition band
+		double cutoff = (PASSBAND + STOPBAND) / 2 / Math.max(up, down);
+		int length = up * taps;
+		double center = (length - 1) / 2.0;
+		double norm = bessel(KAISER_BETA);
+		double[] prototype = new double[length];
+		double sum = 0;
+
+		for (int k = 0; k < length; k++) {
+			double t = k - center;
+			double sinc = t == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * t) / (Math.PI * t);
+			double r = t / center;
+			double window = bessel(KAISER_BETA * Math.sqrt(Math.max(0, 1 - r * r))) / norm;
+			prototype[k] = sinc * window;
+			sum += prototype[k];
+		}
+
+		for (int k = 0; k < length; k++) {
+			// Gain of up, since only every up'th upsampled sample is non-zero
+			int phase = k % up;
+			int tap = k / up;
+			coefficients[phase * taps + tap] = (float) (up * prototype[k] / sum);
+		}
+	}
+
+	/**
+	 * Input frames each output sample is computed from. Downsampling needs a filter that is longer by the ratio,
+	 * since its transition band is narrow compared to the input rate.
+	 */
+	public static int tapsPerPhase(int inputRate, int outputRate) {
+		if (inputRate <= outputRate) {
+			return TAPS_PER_PHASE;
+		}
+		return (int) Math.ceil((double) TAPS_PER_PHASE * inputRate / outputRate);
+	}
+
+	/**
+	 * Upper bound of the number of samples process() produces for the given number of input samples.
+	 */
+	public int maxOutputLength(int inputLength) {
+		long frames = ((long) (inputLength / channels) * up + down - 1) / down + 1;
+		return (int) frames * channels;
+	}
+
+	/**
+	 * Resample count interleaved samples from input into output, which must hold maxOutputLength(count).
+	 *
+	 * @return The number of samples written to output.
+	 */
+	public int process(short[] input, int count, short[] output) {
+		int frames = count / channels;
+		int history = taps - 1;
+
+		if (work[0].length < history + frames) {
+			float[][] grown = new float[channels][history + frames];
+			for (int c = 0; c < channels; c++) {
+				System.arraycopy(work[c], 0, grown[c], 0, history);
+			}
+			work = grown;
+		}
+
+		for (int c = 0; c < channels; c++) {
+			float[] w = work[c];
+			for (int i = 0, j = c; i < frames; i++, j += channels) {
+				w[history + i] = input[j];
+			}
+		}
+
+		int written = 0;
+		long end = (long) frames * up;
+
+		for (; position < end; position += down) {
+			int frame = (int) (position / up);
+			int offset = (int) (position % up) * taps;
+			int newest = history + frame;
+
+			for (int c = 0; c < channels; c++) {
+				float[] w = work[c];
+				float sum = 0;
+				for (int tap = 0; tap < taps; tap++) {
+					sum += coefficients[offset + tap] * w[newest - tap];
+				}
+				output[written++] = clip(sum);
+			}
+		}
+
+		position -= end;
+
+		for (int c = 0; c < channels; c++) {
+			System.arraycopy(work[c], frames, work[c], 0, history);
+		}
+
+		return written;
+	}
+
+	private static short clip(float value) {
+		if (value >= Short.MAX_VALUE) {
+			return Short.MAX_VALUE;
+		}
+		if (value <= Short.MIN_VALUE) {
+			return Short.MIN_VALUE;
+		}
+		return (short) Math.round(value);
+	}
+
+	/**
+	 * Modified Bessel function of the first kind, order 0.
+	 */
+	private static double bessel(double x) {
+		double sum = 1;
+		double term = 1;
+		for (int k = 1; term > 1e-12 * sum; k++) {
+			term *= (x / (2 * k)) * (x / (2 * k));
+			sum += term;
+		}
+		return sum;
+	}
+
+	private static int gcd(int a, int b) {
+		while (b != 0) {
+			int t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+}
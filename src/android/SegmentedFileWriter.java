@@ -0,0 +1,259 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Records to a series of WAV files of limited length, so that a crash loses at most the audio since the
+ * last header checkpoint of the current segment. For a fileUrl of rec.wav the segments are rec-001.wav,
+ * rec-002.wav and so on. A segment is written as rec-001.wav.part and only renamed once it is complete,
+ * so any .part file found later was cut off and can be repaired with recover(). Segments still being written are
+ * left alone by it.
+ */
+public class SegmentedFileWriter implements AudioFileWriter {
+
+	public static final String PARTIAL_SUFFIX = ".part";
+	// Largest amount of sample data the 32 bit sizes of a WAV header can describe
+	private static final long MAX_WAV_DATA_SIZE = 0xffffffffL - 36;
+	// Segments being written by any writer in this process, also the lock recover() repairs under
+	private static final Set<File> OPEN_SEGMENTS = new HashSet<File>();
+
+	private final File directory;
+	private final String baseName;
+	private final String extension;
+	private final int sampleRate;
+	private final int channels;
+	private final long segmentSize;
+	private final long checkpointInterval;
+	private boolean peakIndex = false;
+	private final List<File> segments = new ArrayList<File>();
+
+	private ByteBuffer sampleBuffer = ByteBuffer.allocate(0);
+	private WavFileWriter current = null;
+
+	/**
+	 * @param segmentSize Bytes of sample data per segment, rounded down to whole frames, 0 for no limit.
+	 * @param checkpointInterval Bytes of sample data between header checkpoints, 0 to only complete segments.
+	 */
+	public SegmentedFileWriter(File file, int sampleRate, int channels, long segmentSize, long checkpointInterval) {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+
+		this.directory = file.getAbsoluteFile().getParentFile();
+		this.baseName = dot > 0 ? name.substring(0, dot) : name;
+		this.extension = dot > 0 ? name.substring(dot) : ".wav";
+		this.sampleRate = sampleRate;
+		this.channels = channels;
+		this.checkpointInterval = checkpointInterval;
+
+		long frameSize = PcmEncoder.byteLength(channels);
+		long maxSize = MAX_WAV_DATA_SIZE / frameSize * frameSize;
+		long size = segmentSize / frameSize * frameSize;
+		this.segmentSize = size > 0 ? Math.min(size, maxSize) : maxSize;
+	}
+
+	/**
+	 * Write the peak pyramid of each segment next to it, see WavFileWriter.setPeakIndex().
+	 */
+	public void setPeakIndex(boolean enabled) {
+		this.peakIndex = enabled;
+	}
+
+	/**
+	 * The first segment.
+	 */
+	@Override
+	public File getFile() {
+		return segments.isEmpty() ? segmentFile(1) : segments.get(0);
+	}
+
+	/**
+	 * The completed segments, in order.
+	 */
+	public List<File> getSegments() {
+		return segments;
+	}
+
+	@Override
+	public void write(short[] samples, int count) throws IOException {
+		int byteLength = PcmEncoder.byteLength(count);
+		if (sampleBuffer.capacity() < byteLength) {
+			sampleBuffer = ByteBuffer.allocate(byteLength);
+		}
+
+		sampleBuffer.clear();
+		PcmEncoder.toLittleEndian(samples, count, sampleBuffer.array());
+		sampleBuffer.limit(byteLength);
+		write(sampleBuffer);
+	}
+
+	@Override
+	public void write(ByteBuffer pcm) throws IOException {
+		int limit = pcm.limit();
+
+		while (pcm.hasRemaining()) {
+			if (current == null) {
+				openSegment();
+			}
+
+			long room = segmentSize - current.getDataSize();
+			if (room <= 0) {
+				closeSegment();
+				continue;
+			}
+
+			// Split the write where the segment is full, the rest goes to the next one
+			pcm.limit((int) Math.min(limit, pcm.position() + room));
+			current.write(pcm);
+			pcm.limit(limit);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (current == null && segments.isEmpty()) {
+			// Nothing was recorded, still leave a valid empty file
+			openSegment();
+		}
+		if (current != null) {
+			closeSegment();
+		}
+	}
+
+	/**
+	 * Repair and complete the segments in a directory that were cut off, e.g. because the app was killed
+	 * while recording. Peak indexes of the repaired segments, and of cut off segments that are gone, are deleted,
+	 * since they no longer match; they are rebuilt when needed.
+	 *
+	 * @return The files that were recovered.
+	 */
+	public static List<File> recover(File directory) {
+		List<File> recovered = new ArrayList<File>();
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return recovered;
+		}
+
+		String orphanSuffix = PARTIAL_SUFFIX + PeakFile.SUFFIX;
+		for (File file : files) {
+			File partial = file.getAbsoluteFile();
+			String name = partial.getName();
+
+			synchronized (OPEN_SEGMENTS) {
+				if (!partial.isFile() || OPEN_SEGMENTS.contains(partial)) {
+					continue;
+				}
+
+				if (name.endsWith(orphanSuffix)) {
+					String segmentName = name.substring(0, name.length() - PeakFile.SUFFIX.length());
+					File segment = new File(partial.getParentFile(), segmentName);
+					if (!segment.exists() && !OPEN_SEGMENTS.contains(segment)) {
+						partial.delete();
+					}
+					continue;
+				}
+				if (!name.endsWith(PARTIAL_SUFFIX)) {
+					continue;
+				}
+
+				String completeName = name.substring(0, name.length() - PARTIAL_SUFFIX.length());
+				File complete = new File(partial.getParentFile(), completeName);
+				try {
+					// Leave anything that isn't one of ours, or would replace an existing file, alone
+					if (!complete.exists() && WavFileWriter.repair(partial) >= 0 && partial.renameTo(complete)) {
+						PeakFile.fileFor(partial).delete();
+						recovered.add(complete);
+					}
+				}
+				catch (IOException e) {
+					// Unreadable, try the others
+				}
+			}
+		}
+		return recovered;
+	}
+
+	private File segmentFile(int number) {
+		return new File(directory, String.format("%s-%03d%s", baseName, number, extension));
+	}
+
+	private void openSegment() throws IOException {
+		File partial = new File(segmentFile(segments.size() + 1).getPath() + PARTIAL_SUFFIX);
+		synchronized (OPEN_SEGMENTS) {
+			OPEN_SEGMENTS.add(partial);
+		}
+		try {
+			current = new WavFileWriter(partial, sampleRate, channels);
+		}
+		catch (IOException | RuntimeException ex) {
+			release(partial);
+			throw ex;
+		}
+		current.setCheckpointInterval(checkpointInterval);
+		current.setPeakIndex(peakIndex);
+	}
+
+	private void closeSegment() throws IOException {
+		WavFileWriter segment = current;
+		File partial = segment.getFile();
+		current = null;
+		try {
+			complete(segment);
+		}
+		finally {
+			release(partial);
+		}
+	}
+
+	private void complete(WavFileWriter segment) throws IOException {
+		segment.close();
+
+		File partial = segment.getFile();
+		File complete = segmentFile(segments.size() + 1);
+		if (complete.exists()) {
+			complete.delete();
+		}
+		if (!partial.renameTo(complete)) {
+			throw new IOException("Could not rename " + partial + " to " + complete);
+		}
+		segments.add(complete);
+
+		// The index was keyed on the segment's length and modification time, which renaming keeps
+		File peaks = PeakFile.fileFor(partial);
+		if (peaks.exists()) {
+			PeakFile.fileFor(complete).delete();
+			peaks.renameTo(PeakFile.fileFor(complete));
+		}
+	}
+
+	private static void release(File partial) {
+		synchronized (OPEN_SEGMENTS) {
+			OPEN_SEGMENTS.remove(partial);
+		}
+	}
+}
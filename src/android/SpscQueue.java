@@ -0,0 +1,90 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free queue for exactly one producer thread and one consumer thread.
+ * Neither offer nor poll allocates, which keeps it usable on the capture thread.
+ */
+public final class SpscQueue<T> {
+
+	private final Object[] items;
+	private final int mask;
+
+	// Next index to poll, only advanced by the consumer
+	private final AtomicLong head = new AtomicLong();
+	// Next index to offer, only advanced by the producer
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * @param capacity Minimum number of items the queue can hold, rounded up to a power of two.
+	 */
+	public SpscQueue(int capacity) {
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		items = new Object[size];
+		mask = size - 1;
+	}
+
+	public int capacity() {
+		return items.length;
+	}
+
+	/**
+	 * Producer side. Returns false, without blocking, if the queue is full.
+	 */
+	public boolean offer(T item) {
+		long t = tail.get();
+		if (t - head.get() == items.length) {
+			return false;
+		}
+		items[(int) (t & mask)] = item;
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	/**
+	 * Consumer side. Returns null if the queue is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public T poll() {
+		long h = head.get();
+		if (h == tail.get()) {
+			return null;
+		}
+		int index = (int) (h & mask);
+		T item = (T) items[index];
+		items[index] = null;
+		head.lazySet(h + 1);
+		return item;
+	}
+
+	/**
+	 * Approximate number of queued items, safe to call from any thread.
+	 */
+	public int size() {
+		return (int) (tail.get() - head.get());
+	}
+}
@@ -0,0 +1,100 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * Synthetic sine tone, generated as fast as it's read. Wrap it in a PacedSource to get it in real time.
+ */
+public class ToneSource implements PcmSource {
+
+	private final int sampleRate;
+	private final int channels;
+	private final double phaseIncrement;
+	private final double amplitude;
+
+	private double phase = 0;
+	// Channel of the next sample, so that reads of any length keep the frames interleaved
+	private int channel = 0;
+	private short current = 0;
+
+	/**
+	 * @param amplitude Peak amplitude between 0.0 and 1.0.
+	 */
+	public ToneSource(int sampleRate, int channels, double frequency, double amplitude) {
+		this.sampleRate = sampleRate;
+		this.channels = channels;
+		this.phaseIncrement = 2 * Math.PI * frequency / sampleRate;
+		this.amplitude = amplitude * Short.MAX_VALUE;
+	}
+
+	@Override
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	@Override
+	public int getChannelCount() {
+		return channels;
+	}
+
+	@Override
+	public int getBufferFrames() {
+		return 0;
+	}
+
+	@Override
+	public boolean growBuffer() {
+		return false;
+	}
+
+	@Override
+	public void start() {
+	}
+
+	@Override
+	public int read(short[] buffer, int offset, int length) {
+		for (int i = 0; i < length; i++) {
+			if (channel == 0) {
+				current = (short) (Math.sin(phase) * amplitude);
+				phase += phaseIncrement;
+				if (phase > 2 * Math.PI) {
+					phase -= 2 * Math.PI;
+				}
+			}
+			buffer[offset + i] = current;
+			channel = (channel + 1) % channels;
+		}
+		return length;
+	}
+
+	@Override
+	public boolean getTimestamp(FrameTimestamp timestamp) {
+		return false;
+	}
+
+	@Override
+	public void stop() {
+	}
+
+	@Override
+	public void release() {
+	}
+}
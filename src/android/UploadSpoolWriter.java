@@ -0,0 +1,158 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Cuts the recorded PCM into fixed-size segment files in an upload's spool directory, for ChunkedUploader to
+ * send while recording continues. A segment is written as <offset>.seg.part, synced and renamed to
+ * <offset>.seg once full, the offset being its position in bytes in the whole recording. close() finishes the
+ * last segment and writes the "complete" marker with the total length.
+ * Used through a BackgroundFileWriter, so none of this happens on the capture thread.
+ */
+public class UploadSpoolWriter implements AudioFileWriter {
+
+	public static final String SEGMENT_SUFFIX = ".seg";
+	public static final String PARTIAL_SUFFIX = ".part";
+	public static final String COMPLETE_FILE = "complete";
+
+	private final File directory;
+	private final long segmentSize;
+	private final ChunkedUploader uploader;
+
+	private ByteBuffer sampleBuffer = ByteBuffer.allocate(0);
+	private RandomAccessFile current = null;
+	private long segmentOffset = 0;
+	private long segmentLength = 0;
+
+	/**
+	 * @param segmentSize Bytes per segment, rounded down to whole frames.
+	 */
+	UploadSpoolWriter(File directory, int channels, long segmentSize, ChunkedUploader uploader) {
+		long frameSize = PcmEncoder.byteLength(channels);
+		this.directory = directory;
+		this.segmentSize = Math.max(segmentSize / frameSize, 1) * frameSize;
+		this.uploader = uploader;
+	}
+
+	/**
+	 * The spool directory of the upload.
+	 */
+	@Override
+	public File getFile() {
+		return directory;
+	}
+
+	public String getUploadId() {
+		return directory.getName();
+	}
+
+	@Override
+	public void write(short[] samples, int count) throws IOException {
+		int byteLength = PcmEncoder.byteLength(count);
+		if (sampleBuffer.capacity() < byteLength) {
+			sampleBuffer = ByteBuffer.allocate(byteLength);
+		}
+
+		sampleBuffer.clear();
+		PcmEncoder.toLittleEndian(samples, count, sampleBuffer.array());
+		sampleBuffer.limit(byteLength);
+		write(sampleBuffer);
+	}
+
+	@Override
+	public void write(ByteBuffer pcm) throws IOException {
+		int limit = pcm.limit();
+
+		while (pcm.hasRemaining()) {
+			if (current == null) {
+				current = new RandomAccessFile(segmentFile(segmentOffset, true), "rw");
+				current.setLength(0);
+			}
+
+			// Split the write where the segment is full, the rest goes to the next one
+			pcm.limit((int) Math.min(limit, pcm.position() + segmentSize - segmentLength));
+			FileChannel channel = current.getChannel();
+			while (pcm.hasRemaining()) {
+				segmentLength += channel.write(pcm);
+			}
+			pcm.limit(limit);
+
+			if (segmentLength == segmentSize) {
+				finishSegment();
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (current != null) {
+			finishSegment();
+		}
+
+		Properties complete = new Properties();
+		complete.setProperty("length", Long.toString(segmentOffset));
+		FileOutputStream out = new FileOutputStream(new File(directory, COMPLETE_FILE));
+		try {
+			complete.store(out, null);
+			out.getFD().sync();
+		}
+		finally {
+			out.close();
+		}
+		uploader.segmentReady();
+	}
+
+	/**
+	 * The segment file at a byte offset of the recording, or the name it has while it is written.
+	 */
+	File segmentFile(long offset, boolean partial) {
+		return new File(directory, String.format(Locale.US, "%016x", offset) + SEGMENT_SUFFIX + (partial ? PARTIAL_SUFFIX : ""));
+	}
+
+	private void finishSegment() throws IOException {
+		try {
+			// Synced before it is offered for upload, so that it survives the app being killed
+			current.getChannel().force(false);
+		}
+		finally {
+			current.close();
+			current = null;
+		}
+
+		File partial = segmentFile(segmentOffset, true);
+		if (!partial.renameTo(segmentFile(segmentOffset, false))) {
+			throw new IOException("Could not rename " + partial);
+		}
+
+		segmentOffset += segmentLength;
+		segmentLength = 0;
+		uploader.segmentReady();
+	}
+}
@@ -0,0 +1,229 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * Energy and zero-crossing based voice activity detection over whole blocks, used to hold back silent blocks.
+ *
+ * A block starts speech when its level exceeds the threshold, and speech continues while the level stays above
+ * the threshold minus the hysteresis. After the last speech block, blocks keep passing for the hang-over time.
+ * While silent, the most recent blocks covering the pre-roll time are kept, so that the start of speech isn't
+ * cut off; they must be emitted before the block that started speech. All buffers are allocated up front.
+ */
+public class VoiceActivityGate {
+
+	// Results of process()
+	public static final int SILENT = 0;
+	public static final int ACTIVE = 1;
+	public static final int STARTED = 2;
+
+	// Blocks crossing zero more often than this are treated as broadband noise rather than speech...
+	private static final double MAX_SPEECH_ZERO_CROSSING_RATE = 0.5;
+	// ...unless they are this much louder than the threshold
+	private static final double NOISE_MARGIN_DB = 10;
+
+	private final int channels;
+	private final double onThresholdDb;
+	private final double offThresholdDb;
+	private final long hangoverSamples;
+	private final double samplesPerMilli;
+
+	// Pre-roll ring of block copies, oldest at preRollStart
+	private final short[][] preRoll;
+	private final int[] preRollLengths;
+	private final long preRollMaxSamples;
+	private int preRollStart = 0;
+	private int preRollCount = 0;
+	private long preRollSamples = 0;
+
+	private boolean active = false;
+	private long samplesSinceSpeech = 0;
+	private long silentSamples = 0;
+
+	// Counters, read from other threads
+	private volatile long suppressedBlocks = 0;
+	private volatile long suppressedSamples = 0;
+
+	/**
+	 * @param thresholdDb Level in dBFS above which a block counts as speech.
+	 * @param hysteresisDb How far the level may fall below the threshold before speech ends.
+	 * @param maxBlockLength The largest block that will be passed to process().
+	 */
+	public VoiceActivityGate(int sampleRate, int channels, double thresholdDb, double hysteresisDb,
+		int preRollMs, int hangoverMs, int maxBlockLength) {
+
+		this.channels = channels;
+		this.onThresholdDb = thresholdDb;
+		this.offThresholdDb = thresholdDb - Math.max(hysteresisDb, 0);
+		this.samplesPerMilli = sampleRate * channels / 1000.0;
+		this.hangoverSamples = (long) (Math.max(hangoverMs, 0) * samplesPerMilli);
+		this.preRollMaxSamples = (long) (Math.max(preRollMs, 0) * samplesPerMilli);
+
+		// One more block than strictly needed, since the oldest one is only partly within the pre-roll time
+		int blocks = preRollMaxSamples > 0 ? (int) ((preRollMaxSamples + maxBlockLength - 1) / maxBlockLength) + 1 : 0;
+		preRoll = new short[blocks][maxBlockLength];
+		preRollLengths = new int[blocks];
+	}
+
+	/**
+	 * Classify the next block.
+	 *
+	 * @return SILENT if the block should be held back, ACTIVE if it should be emitted, or STARTED if speech
+	 * just started, in which case the pre-roll blocks must be emitted first.
+	 */
+	public int process(short[] block, int length) {
+		double levelDb = levelDb(block, length);
+		boolean speech = active ? levelDb > offThresholdDb : levelDb > onThresholdDb;
+
+		if (speech && zeroCrossingRate(block, length) > MAX_SPEECH_ZERO_CROSSING_RATE) {
+			speech = levelDb > onThresholdDb + NOISE_MARGIN_DB;
+		}
+
+		if (speech) {
+			samplesSinceSpeech = 0;
+			silentSamples = 0;
+
+			if (!active) {
+				active = true;
+				return STARTED;
+			}
+			return ACTIVE;
+		}
+
+		if (active) {
+			samplesSinceSpeech += length;
+			if (samplesSinceSpeech <= hangoverSamples) {
+				return ACTIVE;
+			}
+			active = false;
+		}
+
+		silentSamples += length;
+		suppressedBlocks++;
+		suppressedSamples += length;
+		keep(block, length);
+		return SILENT;
+	}
+
+	public boolean isActive() {
+		return active;
+	}
+
+	/**
+	 * How long the current stretch of silence has lasted.
+	 */
+	public long getSilentMillis() {
+		return (long) (silentSamples / samplesPerMilli);
+	}
+
+	public int getPreRollCount() {
+		return preRollCount;
+	}
+
+	/**
+	 * The i'th oldest pre-roll block.
+	 */
+	public short[] getPreRollBlock(int i) {
+		return preRoll[(preRollStart + i) % preRoll.length];
+	}
+
+	public int getPreRollLength(int i) {
+		return preRollLengths[(preRollStart + i) % preRoll.length];
+	}
+
+	/**
+	 * Forget the pre-roll blocks once they've been emitted, so they no longer count as suppressed.
+	 */
+	public void clearPreRoll() {
+		suppressedBlocks -= preRollCount;
+		suppressedSamples -= preRollSamples;
+		preRollStart = 0;
+		preRollCount = 0;
+		preRollSamples = 0;
+	}
+
+	public long getSuppressedBlocks() {
+		return suppressedBlocks;
+	}
+
+	public long getSuppressedSamples() {
+		return suppressedSamples;
+	}
+
+	private void keep(short[] block, int length) {
+		if (preRoll.length == 0) {
+			return;
+		}
+
+		if (preRollCount == preRoll.length) {
+			dropOldest();
+		}
+
+		int index = (preRollStart + preRollCount) % preRoll.length;
+		System.arraycopy(block, 0, preRoll[index], 0, length);
+		preRollLengths[index] = length;
+		preRollCount++;
+		preRollSamples += length;
+
+		// Only keep as many blocks as are needed to cover the pre-roll time
+		while (preRollCount > 1 && preRollSamples - preRollLengths[preRollStart] >= preRollMaxSamples) {
+			dropOldest();
+		}
+	}
+
+	private void dropOldest() {
+		preRollSamples -= preRollLengths[preRollStart];
+		preRollStart = (preRollStart + 1) % preRoll.length;
+		preRollCount--;
+	}
+
+	private static double levelDb(short[] block, int length) {
+		if (length == 0) {
+			return -Double.MAX_VALUE;
+		}
+
+		double sum = 0;
+		for (int i = 0; i < length; i++) {
+			double sample = block[i];
+			sum += sample * sample;
+		}
+
+		double rms = Math.sqrt(sum / length) / 32768.0;
+		return rms > 0 ? 20 * Math.log10(rms) : -Double.MAX_VALUE;
+	}
+
+	/**
+	 * Fraction of consecutive samples of the first channel that change sign.
+	 */
+	private double zeroCrossingRate(short[] block, int length) {
+		int crossings = 0;
+		int samples = 0;
+
+		for (int i = channels; i < length; i += channels) {
+			if ((block[i] >= 0) != (block[i - channels] >= 0)) {
+				crossings++;
+			}
+			samples++;
+		}
+
+		return samples > 0 ? (double) crossings / samples : 0;
+	}
+}
@@ -0,0 +1,218 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Random access to the samples of a 16 bit PCM WAV file through a memory mapping, so reading part of a
+ * long recording neither loads the file onto the heap nor reads more of it from storage than is touched.
+ * The data chunk is mapped in windows of at most 1 GB, as a single mapping is limited to 2 GB.
+ */
+public class WavFileReader implements Closeable {
+
+	private static final int WINDOW_SHIFT = 30;
+	private static final long WINDOW_SIZE = 1L << WINDOW_SHIFT;
+
+	private final File file;
+	private final RandomAccessFile randomAccessFile;
+	private final long fileLength;
+	private final long lastModified;
+	private final int sampleRate;
+	private final int channels;
+	private final long frameCount;
+	private final MappedByteBuffer[] windows;
+
+	public WavFileReader(File file) throws IOException {
+		this.file = file;
+		this.lastModified = file.lastModified();
+		this.randomAccessFile = new RandomAccessFile(file, "r");
+
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			fileLength = channel.size();
+
+			ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, header, 0);
+			if (header.getInt(0) != 0x46464952 || header.getInt(8) != 0x45564157) {
+				throw new IOException("Not a WAV file: " + file);
+			}
+
+			// Walk the chunks up to the data, the fmt chunk comes before it
+			int format = 0;
+			int rate = 0;
+			int channelCount = 0;
+			int bitsPerSample = 0;
+			long dataOffset = -1;
+			long dataSize = 0;
+			long position = 12;
+			ByteBuffer chunk = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+
+			while (position + 8 <= fileLength) {
+				chunk.clear().limit(8);
+				readFully(channel, chunk, position);
+				int id = chunk.getInt(0);
+				long size = chunk.getInt(4) & 0xffffffffL;
+
+				if (id == 0x20746d66) { // fmt
+					chunk.clear().limit(16);
+					readFully(channel, chunk, position + 8);
+					format = chunk.getShort(0) & 0xffff;
+					channelCount = chunk.getShort(2) & 0xffff;
+					rate = chunk.getInt(4);
+					bitsPerSample = chunk.getShort(14) & 0xffff;
+				}
+				else if (id == 0x61746164) { // data
+					dataOffset = position + 8;
+					// A recording that was cut off may still have a size of 0, or a size from an earlier checkpoint
+					dataSize = size == 0 || size > fileLength - dataOffset ? fileLength - dataOffset : size;
+					break;
+				}
+
+				// Chunks are padded to an even size
+				position += 8 + size + (size & 1);
+			}
+
+			// 0xfffe is WAVE_FORMAT_EXTENSIBLE, which is PCM at 16 bits per sample
+			if ((format != 1 && format != 0xfffe) || bitsPerSample != 16 || channelCount <= 0 || dataOffset < 0) {
+				throw new IOException("Not a 16 bit PCM WAV file: " + file);
+			}
+
+			sampleRate = rate;
+			channels = channelCount;
+			frameCount = dataSize / PcmEncoder.byteLength(channels);
+
+			long byteLength = PcmEncoder.byteLength(channels) * frameCount;
+			windows = new MappedByteBuffer[(int) ((byteLength + WINDOW_SIZE - 1) >> WINDOW_SHIFT)];
+			for (int i = 0; i < windows.length; i++) {
+				long start = (long) i << WINDOW_SHIFT;
+				windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + start, Math.min(WINDOW_SIZE, byteLength - start));
+				windows[i].order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+		catch (IOException e) {
+			randomAccessFile.close();
+			throw e;
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Whether the file has changed since it was opened, e.g. because a recording to it carried on.
+	 */
+	public boolean isStale() {
+		return file.length() != fileLength || file.lastModified() != lastModified;
+	}
+
+	public long getFileLength() {
+		return fileLength;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	public int getChannelCount() {
+		return channels;
+	}
+
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * The sample at an index counted over all channels, i.e. frame * channels + channel.
+	 */
+	public short getSample(long index) {
+		long offset = index << 1;
+		return windows[(int) (offset >> WINDOW_SHIFT)].getShort((int) (offset & (WINDOW_SIZE - 1)));
+	}
+
+	/**
+	 * Copy count samples, counted over all channels, from index on into out at offset.
+	 */
+	public void readSamples(long index, short[] out, int offset, int count) {
+		if (index < 0 || count < 0 || index + count > frameCount * channels) {
+			throw new IndexOutOfBoundsException("Samples " + index + "+" + count + " of " + frameCount * channels);
+		}
+
+		long end = index + count;
+		while (index < end) {
+			long byteOffset = index << 1;
+			ByteBuffer window = windows[(int) (byteOffset >> WINDOW_SHIFT)].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			window.position((int) (byteOffset & (WINDOW_SIZE - 1)));
+			int length = (int) Math.min(end - index, window.remaining() >> 1);
+
+			window.asShortBuffer().get(out, offset, length);
+			offset += length;
+			index += length;
+		}
+	}
+
+	/**
+	 * Copy frameCount frames from startFrame on, as interleaved little-endian PCM, to out's position.
+	 */
+	public void readFrames(long startFrame, int count, ByteBuffer out) {
+		if (startFrame < 0 || count < 0 || startFrame + count > frameCount) {
+			throw new IndexOutOfBoundsException("Frames " + startFrame + "+" + count + " of " + frameCount);
+		}
+
+		long offset = startFrame * PcmEncoder.byteLength(channels);
+		long end = offset + (long) count * PcmEncoder.byteLength(channels);
+		while (offset < end) {
+			ByteBuffer window = windows[(int) (offset >> WINDOW_SHIFT)].duplicate();
+			int position = (int) (offset & (WINDOW_SIZE - 1));
+			int length = (int) Math.min(end - offset, window.capacity() - position);
+
+			window.limit(position + length).position(position);
+			out.put(window);
+			offset += length;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		// The mappings stay valid until they are garbage collected, closing only releases the file
+		randomAccessFile.close();
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of file");
+			}
+		}
+	}
+}
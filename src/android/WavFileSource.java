@@ -0,0 +1,213 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Replays the samples of a 16 bit PCM WAV file, optionally looping at the end.
+ * Returns AudioRecord.ERROR (-1) from read once the file is exhausted and looping is off.
+ */
+public class WavFileSource implements PcmSource {
+
+	private static final int ERROR = -1;
+
+	private final File file;
+	private final boolean loop;
+
+	private int sampleRate;
+	private int channels;
+
+	private DataInputStream in;
+	private long dataRemaining;
+	private byte[] readBuffer = new byte[0];
+
+	public WavFileSource(File file, boolean loop) throws IOException {
+		this.file = file;
+		this.loop = loop;
+
+		// Read the header once up front so that the format is known before start()
+		open().close();
+	}
+
+	@Override
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	@Override
+	public int getChannelCount() {
+		return channels;
+	}
+
+	@Override
+	public int getBufferFrames() {
+		return 0;
+	}
+
+	@Override
+	public boolean growBuffer() {
+		return false;
+	}
+
+	@Override
+	public void start() {
+		try {
+			if (in == null) {
+				in = open();
+			}
+		}
+		catch (IOException e) {
+			in = null;
+		}
+	}
+
+	@Override
+	public int read(short[] buffer, int offset, int length) {
+		if (in == null) {
+			return ERROR;
+		}
+
+		try {
+			if (dataRemaining < 2) {
+				in.close();
+				in = null;
+				if (!loop) {
+					return ERROR;
+				}
+				in = open();
+			}
+
+			int byteCount = (int) Math.min((long) length * 2, dataRemaining & ~1L);
+			if (readBuffer.length < byteCount) {
+				readBuffer = new byte[byteCount];
+			}
+
+			in.readFully(readBuffer, 0, byteCount);
+			dataRemaining -= byteCount;
+
+			int count = byteCount / 2;
+			for (int i = 0, j = 0; i < count; i++, j += 2) {
+				buffer[offset + i] = (short) ((readBuffer[j] & 0xff) | (readBuffer[j + 1] << 8));
+			}
+			return count;
+		}
+		catch (IOException e) {
+			return ERROR;
+		}
+	}
+
+	@Override
+	public boolean getTimestamp(FrameTimestamp timestamp) {
+		return false;
+	}
+
+	@Override
+	public void stop() {
+	}
+
+	@Override
+	public void release() {
+		try {
+			if (in != null) {
+				in.close();
+			}
+		}
+		catch (IOException e) {
+			// Nothing more to do
+		}
+		in = null;
+	}
+
+	/**
+	 * Opens the file and positions the stream at the start of the sample data.
+	 */
+	private DataInputStream open() throws IOException {
+		DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+
+		try {
+			if (readTag(stream) != 0x46464952 /* RIFF */) {
+				throw new IOException("Not a RIFF file: " + file);
+			}
+			readInt(stream);
+			if (readTag(stream) != 0x45564157 /* WAVE */) {
+				throw new IOException("Not a WAVE file: " + file);
+			}
+
+			while (true) {
+				int tag = readTag(stream);
+				long size = readInt(stream) & 0xffffffffL;
+
+				if (tag == 0x20746d66 /* fmt  */) {
+					int audioFormat = readShort(stream);
+					channels = readShort(stream);
+					sampleRate = readInt(stream);
+					readInt(stream); // byte rate
+					readShort(stream); // block align
+					int bitsPerSample = readShort(stream);
+
+					if (audioFormat != 1 || bitsPerSample != 16) {
+						throw new IOException("Only 16 bit PCM WAV files are supported: " + file);
+					}
+					skipFully(stream, size - 16 + (size & 1));
+				}
+				else if (tag == 0x61746164 /* data */) {
+					dataRemaining = size;
+					return stream;
+				}
+				else {
+					skipFully(stream, size + (size & 1));
+				}
+			}
+		}
+		catch (IOException e) {
+			stream.close();
+			throw e;
+		}
+	}
+
+	private static int readTag(DataInputStream in) throws IOException {
+		return readInt(in);
+	}
+
+	private static int readInt(DataInputStream in) throws IOException {
+		return Integer.reverseBytes(in.readInt());
+	}
+
+	private static int readShort(DataInputStream in) throws IOException {
+		return Short.reverseBytes(in.readShort()) & 0xffff;
+	}
+
+	private static void skipFully(DataInputStream in, long count) throws IOException {
+		while (count > 0) {
+			long skipped = in.skip(count);
+			if (skipped <= 0) {
+				throw new EOFException();
+			}
+			count -= skipped;
+		}
+	}
+}
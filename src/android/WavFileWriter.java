@@ -0,0 +1,233 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes 16 bit PCM straight into a WAV file. The 44 byte header is reserved when the file is opened
+ * and its RIFF and data sizes are patched in place on close, so finishing a recording takes the same
+ * time no matter how long it is. With a checkpoint interval the sizes are also patched, and the file
+ * synced to storage, every so often while recording, so the file stays playable if the app is killed.
+ */
+public class WavFileWriter implements AudioFileWriter {
+
+	public static final int HEADER_SIZE = 44;
+	public static final int BITS_PER_SAMPLE = 16;
+
+	private final File file;
+	private final int sampleRate;
+	private final int channels;
+	private final RandomAccessFile randomAccessFile;
+	private final FileChannel channel;
+
+	private ByteBuffer sampleBuffer = ByteBuffer.allocate(0);
+	private final ByteBuffer sizes = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+	private long dataSize = 0;
+	private long checkpointInterval = 0;
+	private long checkpointedSize = 0;
+	private PeakIndexBuilder peakIndex = null;
+
+	public WavFileWriter(File file, int sampleRate, int channels) throws IOException {
+		this.file = file;
+		this.sampleRate = sampleRate;
+		this.channels = channels;
+
+		randomAccessFile = new RandomAccessFile(file, "rw");
+		randomAccessFile.setLength(0);
+		channel = randomAccessFile.getChannel();
+
+		// Placeholder header with empty sizes, so that the file is valid from the start
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		writeHeader(header, sampleRate, channels, 0);
+		header.flip();
+		writeFully(header);
+	}
+
+	@Override
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Checkpoint the header after every this many bytes of sample data, 0 to only complete it on close.
+	 */
+	public void setCheckpointInterval(long bytes) {
+		this.checkpointInterval = Math.max(bytes, 0);
+	}
+
+	/**
+	 * Build the peak pyramid while writing, and save it as the file's PeakFile on close.
+	 */
+	public void setPeakIndex(boolean enabled) {
+		this.peakIndex = enabled ? new PeakIndexBuilder(channels) : null;
+	}
+
+	/**
+	 * Number of bytes of sample data written so far.
+	 */
+	public long getDataSize() {
+		return dataSize;
+	}
+
+	/**
+	 * Append the first count samples as little-endian PCM.
+	 */
+	@Override
+	public void write(short[] samples, int count) throws IOException {
+		int byteLength = PcmEncoder.byteLength(count);
+		if (sampleBuffer.capacity() < byteLength) {
+			sampleBuffer = ByteBuffer.allocate(byteLength);
+		}
+
+		sampleBuffer.clear();
+		PcmEncoder.toLittleEndian(samples, count, sampleBuffer.array());
+		sampleBuffer.limit(byteLength);
+		write(sampleBuffer);
+	}
+
+	/**
+	 * Append already encoded little-endian PCM, from the buffer's position to its limit.
+	 */
+	@Override
+	public void write(ByteBuffer pcm) throws IOException {
+		if (peakIndex != null) {
+			peakIndex.add(pcm);
+		}
+		dataSize += writeFully(pcm);
+
+		if (checkpointInterval > 0 && dataSize - checkpointedSize >= checkpointInterval) {
+			checkpoint();
+		}
+	}
+
+	/**
+	 * Patch the header sizes for what was written so far and sync the file to storage.
+	 */
+	public void checkpoint() throws IOException {
+		patchSizes(channel, sizes, dataSize);
+		channel.force(false);
+		checkpointedSize = dataSize;
+	}
+
+	/**
+	 * Patch the header sizes and close the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			patchSizes(channel, sizes, dataSize);
+		}
+		finally {
+			randomAccessFile.close();
+		}
+
+		if (peakIndex != null) {
+			try {
+				peakIndex.write(PeakFile.fileFor(file), file.length(), file.lastModified());
+			}
+			catch (IOException e) {
+				// The recording itself is complete, the index is built from it when it is needed
+			}
+		}
+	}
+
+	/**
+	 * Make a WAV file that was cut off, e.g. because the app was killed while recording, valid again:
+	 * drop a partly written last frame and set the header sizes to the sample data that is there.
+	 *
+	 * @return The number of bytes of sample data kept, or -1 if the file doesn't start with a PCM WAV header.
+	 */
+	public static long repair(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			if (channel.size() < HEADER_SIZE) {
+				return -1;
+			}
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			randomAccessFile.readFully(header.array());
+
+			if (header.getInt(0) != 0x46464952 || header.getInt(8) != 0x45564157
+				|| header.getInt(36) != 0x61746164 || header.getShort(32) <= 0) {
+				return -1; // Not RIFF, WAVE and data where this writer puts them
+			}
+
+			int blockAlign = header.getShort(32);
+			long dataSize = (channel.size() - HEADER_SIZE) / blockAlign * blockAlign;
+			channel.truncate(HEADER_SIZE + dataSize);
+			patchSizes(channel, ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN), dataSize);
+			channel.force(false);
+			return dataSize;
+		}
+		finally {
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * Put a canonical 44 byte PCM WAV header for dataSize bytes of sample data at the buffer's position.
+	 */
+	public static void writeHeader(ByteBuffer out, int sampleRate, int channels, long dataSize) {
+		int blockAlign = channels * BITS_PER_SAMPLE / 8;
+		ByteOrder order = out.order();
+		out.order(ByteOrder.LITTLE_ENDIAN);
+
+		out.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F');  // 00 - RIFF
+		out.putInt((int) Math.min(36 + dataSize, 0xffffffffL));             // 04 - how big is the rest of this file?
+		out.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');  // 08 - WAVE
+		out.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ');  // 12 - fmt
+		out.putInt(16);                                                      // 16 - size of this chunk
+		out.putShort((short) 1);                                             // 20 - 1 for PCM
+		out.putShort((short) channels);                                      // 22 - mono or stereo
+		out.putInt(sampleRate);                                              // 24 - samples per second
+		out.putInt(sampleRate * blockAlign);                                 // 28 - bytes per second
+		out.putShort((short) blockAlign);                                    // 32 - bytes in one frame, for all channels
+		out.putShort((short) BITS_PER_SAMPLE);                               // 34 - bits in a sample
+		out.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a');  // 36 - data
+		out.putInt((int) Math.min(dataSize, 0xffffffffL));                  // 40 - how big is this data chunk
+
+		out.order(order);
+	}
+
+	private static void patchSizes(FileChannel channel, ByteBuffer sizes, long dataSize) throws IOException {
+		sizes.clear();
+		sizes.putInt(0, (int) Math.min(36 + dataSize, 0xffffffffL));
+		channel.write(sizes, 4);
+
+		sizes.clear();
+		sizes.putInt(0, (int) Math.min(dataSize, 0xffffffffL));
+		channel.write(sizes, 40);
+	}
+
+	private int writeFully(ByteBuffer buffer) throws IOException {
+		int written = 0;
+		while (buffer.hasRemaining()) {
+			written += channel.write(buffer);
+		}
+		return written;
+	}
+}
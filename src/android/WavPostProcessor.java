@@ -0,0 +1,575 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Post-processing of a finished WAV recording: trimming the silence at its ends, peak normalization, loudness
+ * measurement and conversion to another sample rate or file format.
+ *
+ * The input is read from a memory mapping and split into segments that are processed in parallel on a
+ * ForkJoinPool, in two passes. The analysis pass finds the peak, the ends of the sound and the K-weighted power
+ * of every 100 ms block, from which the integrated loudness is gated as in ITU-R BS.1770. The render pass
+ * applies the gain and resamples, and its segments are written in order by the output's encoder.
+ *
+ * The filters carry state across segment boundaries, so each segment first runs them over the audio just
+ * before it: long enough for the K-weighting to settle, and for the resampler exactly its history, with render
+ * segments aligned to its phase so that the stitched output is the same as if it were processed in one go.
+ */
+public class WavPostProcessor {
+
+	/**
+	 * Told how far the processing has got, from 0 to 1, on the thread that called run().
+	 */
+	public interface ProgressListener {
+		void onProgress(double fraction);
+	}
+
+	/**
+	 * What was found and done.
+	 */
+	public static class Result {
+		public long trimStartFrame;
+		public long trimEndFrame;
+		public long outputFrames;
+		public int inputSampleRate;
+		public int outputSampleRate;
+		public int segments;
+		// dBFS, -Infinity for silence
+		public double peak;
+		// LUFS of the input, -Infinity when no block passes the absolute gate
+		public double loudness;
+		public double gain;
+	}
+
+	// Length of the blocks whose powers make up the 400 ms gating blocks of the loudness measurement
+	private static final double LOUDNESS_BLOCK_SECONDS = 0.1;
+	private static final int LOUDNESS_BLOCKS_PER_GATE = 4;
+	private static final double ABSOLUTE_GATE = -70;
+	private static final double RELATIVE_GATE = -10;
+	// Blocks the K-weighting filters run over before a segment, they decay far below 16 bit resolution in 500 ms
+	private static final int FILTER_PREROLL_BLOCKS = 5;
+	private static final double MIN_SEGMENT_SECONDS = 1;
+	private static final double MAX_SEGMENT_SECONDS = 30;
+	// Render segments in flight per thread, which bounds the memory held by results waiting to be written
+	private static final int SEGMENTS_AHEAD_PER_THREAD = 2;
+
+	private final ForkJoinPool pool;
+	private final File input;
+	private final File output;
+
+	private double trimThreshold = Double.NaN;
+	private double trimPadding = 0.1;
+	private double normalizePeak = Double.NaN;
+	private String outputFormat = AudioInputReceiver.FILE_FORMAT_WAV;
+	private int outputSampleRate = 0;
+	private long segmentFrames = 0;
+
+	private volatile boolean cancelled = false;
+	private double reported = -1;
+
+	public WavPostProcessor(ForkJoinPool pool, File input, File output) {
+		this.pool = pool;
+		this.input = input;
+		this.output = output;
+	}
+
+	/**
+	 * Trim the ends that stay below thresholdDb dBFS, keeping paddingSeconds around the sound.
+	 */
+	public void setTrim(double thresholdDb, double paddingSeconds) {
+		this.trimThreshold = thresholdDb;
+		this.trimPadding = Math.max(paddingSeconds, 0);
+	}
+
+	/**
+	 * Scale the audio so that its peak is at peakDb dBFS, or NaN to leave the level alone.
+	 */
+	public void setNormalize(double peakDb) {
+		this.normalizePeak = peakDb;
+	}
+
+	/**
+	 * @param format One of the AudioInputReceiver.FILE_FORMAT_ constants.
+	 * @param sampleRate Rate to convert to, 0 to keep the input's.
+	 */
+	public void setOutputFormat(String format, int sampleRate) {
+		this.outputFormat = format;
+		this.outputSampleRate = Math.max(sampleRate, 0);
+	}
+
+	/**
+	 * Frames per segment, rounded up to what the filters need; 0 to divide the input among the pool's threads.
+	 */
+	public void setSegmentFrames(long frames) {
+		this.segmentFrames = Math.max(frames, 0);
+	}
+
+	/**
+	 * Stop as soon as possible. run() then deletes the output and throws a CancellationException.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public Result run(ProgressListener listener) throws IOException {
+		WavFileReader reader = new WavFileReader(input);
+		try {
+			return run(reader, listener);
+		}
+		catch (IOException | RuntimeException ex) {
+			output.delete();
+			throw ex;
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	private Result run(WavFileReader reader, ProgressListener listener) throws IOException {
+		int sampleRate = reader.getSampleRate();
+		int channels = reader.getChannelCount();
+		long frames = reader.getFrameCount();
+		int rate = outputSampleRate > 0 ? outputSampleRate : sampleRate;
+		int gcd = gcd(sampleRate, rate);
+		int up = rate / gcd;
+		int down = sampleRate / gcd;
+
+		int loudnessBlock = Math.max((int) Math.round(sampleRate * LOUDNESS_BLOCK_SECONDS), 1);
+		int history = rate != sampleRate ? PolyphaseResampler.tapsPerPhase(sampleRate, rate) : 0;
+		long segment = segmentFrames(frames, sampleRate, history, lcm(loudnessBlock, down));
+		Result result = new Result();
+		result.inputSampleRate = sampleRate;
+		result.outputSampleRate = rate;
+
+		// Analysis
+		List<Analysis> analyses = new ArrayList<Analysis>();
+		for (long start = 0; start < frames; start += segment) {
+			analyses.add(new Analysis(reader, start, Math.min(start + segment, frames), loudnessBlock));
+		}
+		double work = frames;
+		long done = 0;
+		for (Analysis analysis : analyses) {
+			pool.execute(analysis);
+		}
+		try {
+			for (Analysis analysis : analyses) {
+				analysis.join();
+				checkCancelled();
+				done += analysis.end - analysis.start;
+				// The render pass is about as much work again
+				progress(listener, done / work / 2);
+			}
+		}
+		finally {
+			for (Analysis analysis : analyses) {
+				analysis.cancel(false);
+			}
+		}
+
+		int peak = 0;
+		long first = frames;
+		long last = -1;
+		double[] powers = new double[(int) (frames / loudnessBlock)];
+		for (Analysis analysis : analyses) {
+			peak = Math.max(peak, analysis.peak);
+			if (analysis.first >= 0) {
+				first = Math.min(first, analysis.first);
+				last = Math.max(last, analysis.last);
+			}
+			System.arraycopy(analysis.powers, 0, powers, (int) (analysis.start / loudnessBlock), analysis.powers.length);
+		}
+
+		result.peak = 20 * Math.log10(peak / 32768.0);
+		result.loudness = integratedLoudness(powers);
+		result.gain = Double.isNaN(normalizePeak) || peak == 0 ? 0 : normalizePeak - result.peak;
+		if (Double.isNaN(trimThreshold)) {
+			result.trimStartFrame = 0;
+			result.trimEndFrame = frames;
+		}
+		else if (last < 0) {
+			// Nothing but silence
+			result.trimStartFrame = 0;
+			result.trimEndFrame = 0;
+		}
+		else {
+			long padding = Math.round(trimPadding * sampleRate);
+			result.trimStartFrame = Math.max(first - padding, 0);
+			result.trimEndFrame = Math.min(last + 1 + padding, frames);
+		}
+
+		// Render
+		float gain = (float) Math.pow(10, result.gain / 20);
+		AudioFileWriter writer = createWriter(rate, channels);
+		ArrayDeque<Render> pending = new ArrayDeque<Render>();
+		int ahead = Math.max(pool.getParallelism() * SEGMENTS_AHEAD_PER_THREAD, 2);
+		long next = result.trimStartFrame;
+		long end = result.trimEndFrame;
+		done = 0;
+		work = Math.max(end - next, 1);
+
+		try {
+			while (next < end || !pending.isEmpty()) {
+				while (next < end && pending.size() < ahead) {
+					long stop = Math.min(next + segment, end);
+					Render render = new Render(reader, result.trimStartFrame, next, stop, gain, sampleRate, rate);
+					pool.execute(render);
+					pending.add(render);
+					next = stop;
+					result.segments++;
+				}
+
+				Render render = pending.remove();
+				short[] samples = render.join();
+				checkCancelled();
+				writer.write(samples, samples.length);
+				result.outputFrames += samples.length / channels;
+				done += render.end - render.start;
+				progress(listener, 0.5 + done / work / 2);
+			}
+			writer.close();
+		}
+		catch (IOException | RuntimeException ex) {
+			for (Render render : pending) {
+				render.cancel(false);
+			}
+			try {
+				writer.close();
+			}
+			catch (IOException closing) {
+				// Deleted anyway
+			}
+			throw ex;
+		}
+
+		progress(listener, 1);
+		return result;
+	}
+
+	/**
+	 * Segment length for the pool's threads to have a few segments each, a multiple of alignment.
+	 *
+	 * @param history Frames of resampler history each render segment reads before its start.
+	 */
+	private long segmentFrames(long frames, int sampleRate, int history, long alignment) {
+		long length = segmentFrames;
+		if (length <= 0) {
+			length = frames / (pool.getParallelism() * 4L);
+			length = Math.max(length, (long) (MIN_SEGMENT_SECONDS * sampleRate));
+			length = Math.min(length, (long) (MAX_SEGMENT_SECONDS * sampleRate));
+		}
+		// Render segments also need room for the resampler's history before them
+		length = Math.max(length, history);
+		return (length + alignment - 1) / alignment * alignment;
+	}
+
+	private AudioFileWriter createWriter(int sampleRate, int channels) throws IOException {
+		if (AudioInputReceiver.FILE_FORMAT_FLAC.equals(outputFormat)) {
+			return new FlacFileWriter(output, sampleRate, channels);
+		}
+		if (AudioInputReceiver.FILE_FORMAT_AAC.equals(outputFormat)) {
+			return new AacFileWriter(output, sampleRate, channels, AacFileWriter.DEFAULT_BIT_RATE);
+		}
+		return new WavFileWriter(output, sampleRate, channels);
+	}
+
+	private void checkCancelled() {
+		if (cancelled) {
+			throw new CancellationException("Processing of " + input + " was cancelled");
+		}
+	}
+
+	private void progress(ProgressListener listener, double fraction) {
+		// Whole percents are plenty for a progress bar
+		if (listener != null && (fraction >= reported + 0.01 || (fraction == 1 && reported < 1))) {
+			reported = fraction;
+			listener.onProgress(fraction);
+		}
+	}
+
+	/**
+	 * BS.1770 integrated loudness from the powers of consecutive 100 ms blocks, gated over 400 ms blocks that
+	 * overlap by 75%.
+	 */
+	static double integratedLoudness(double[] powers) {
+		int gates = powers.length - LOUDNESS_BLOCKS_PER_GATE + 1;
+		if (gates <= 0) {
+			return Double.NEGATIVE_INFINITY;
+		}
+
+		double[] gatePowers = new double[gates];
+		double absoluteSum = 0;
+		int absoluteCount = 0;
+		for (int i = 0; i < gates; i++) {
+			double sum = 0;
+			for (int j = 0; j < LOUDNESS_BLOCKS_PER_GATE; j++) {
+				sum += powers[i + j];
+			}
+			gatePowers[i] = sum / LOUDNESS_BLOCKS_PER_GATE;
+			if (loudness(gatePowers[i]) > ABSOLUTE_GATE) {
+				absoluteSum += gatePowers[i];
+				absoluteCount++;
+			}
+		}
+		if (absoluteCount == 0) {
+			return Double.NEGATIVE_INFINITY;
+		}
+
+		double relativeGate = loudness(absoluteSum / absoluteCount) + RELATIVE_GATE;
+		double sum = 0;
+		int count = 0;
+		for (double power : gatePowers) {
+			double level = loudness(power);
+			if (level > ABSOLUTE_GATE && level > relativeGate) {
+				sum += power;
+				count++;
+			}
+		}
+		return loudness(sum / count);
+	}
+
+	private static double loudness(double power) {
+		return -0.691 + 10 * Math.log10(power);
+	}
+
+	/**
+	 * Peak, first and last frame above the trim threshold, and K-weighted block powers of [start, end).
+	 */
+	@SuppressWarnings("serial")
+	private class Analysis extends RecursiveAction {
+		final WavFileReader reader;
+		final long start;
+		final long end;
+		final int blockFrames;
+
+		int peak = 0;
+		long first = -1;
+		long last = -1;
+		double[] powers;
+
+		Analysis(WavFileReader reader, long start, long end, int blockFrames) {
+			this.reader = reader;
+			this.start = start;
+			this.end = end;
+			this.blockFrames = blockFrames;
+		}
+
+		@Override
+		protected void compute() {
+			if (cancelled) {
+				return;
+			}
+
+			int channels = reader.getChannelCount();
+			int sampleRate = reader.getSampleRate();
+			int threshold = Double.isNaN(trimThreshold) ? Integer.MAX_VALUE
+				: (int) Math.ceil(32768 * Math.pow(10, trimThreshold / 20));
+			KWeighting[] filters = new KWeighting[channels];
+			for (int c = 0; c < channels; c++) {
+				filters[c] = new KWeighting(sampleRate);
+			}
+
+			// Only complete blocks count, start is always at the beginning of one
+			powers = new double[(int) ((end - start) / blockFrames)];
+			long from = Math.max(start - (long) FILTER_PREROLL_BLOCKS * blockFrames, 0);
+			short[] samples = new short[blockFrames * channels];
+
+			for (long frame = from; frame < end; frame += blockFrames) {
+				int count = (int) Math.min(blockFrames, end - frame);
+				reader.readSamples(frame * channels, samples, 0, count * channels);
+				boolean preroll = frame < start;
+				double power = 0;
+
+				for (int c = 0; c < channels; c++) {
+					KWeighting filter = filters[c];
+					double sum = 0;
+					for (int i = c; i < count * channels; i += channels) {
+						double weighted = filter.process(samples[i] / 32768.0);
+						sum += weighted * weighted;
+					}
+					power += sum / blockFrames;
+				}
+				if (preroll) {
+					continue;
+				}
+
+				for (int i = 0; i < count * channels; i++) {
+					int magnitude = Math.abs(samples[i]);
+					if (magnitude > peak) {
+						peak = magnitude;
+					}
+					if (magnitude >= threshold) {
+						long at = frame + i / channels;
+						if (first < 0) {
+							first = at;
+						}
+						last = at;
+					}
+				}
+
+				if (count == blockFrames) {
+					powers[(int) ((frame - start) / blockFrames)] = power;
+				}
+
+				if (cancelled) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * [start, end) with the gain applied and resampled, as interleaved samples.
+	 */
+	@SuppressWarnings("serial")
+	private class Render extends RecursiveTask<short[]> {
+		final WavFileReader reader;
+		final long origin;
+		final long start;
+		final long end;
+		final float gain;
+		final int inputRate;
+		final int outputRate;
+
+		/**
+		 * @param origin Where the output begins. Segments start a multiple of the resampler's down factor after it.
+		 */
+		Render(WavFileReader reader, long origin, long start, long end, float gain, int inputRate, int outputRate) {
+			this.reader = reader;
+			this.origin = origin;
+			this.start = start;
+			this.end = end;
+			this.gain = gain;
+			this.inputRate = inputRate;
+			this.outputRate = outputRate;
+		}
+
+		@Override
+		protected short[] compute() {
+			if (cancelled) {
+				return new short[0];
+			}
+
+			int channels = reader.getChannelCount();
+			boolean resample = inputRate != outputRate;
+			int down = inputRate / gcd(inputRate, outputRate);
+			// The resampler only remembers tapsPerPhase - 1 frames, and ends a whole number of down frames
+			// later in the same phase as it began
+			int taps = resample ? PolyphaseResampler.tapsPerPhase(inputRate, outputRate) : 0;
+			long history = resample ? Math.min((taps + down - 1) / down * down, start - origin) : 0;
+
+			short[] samples = new short[(int) ((end - start + history) * channels)];
+			reader.readSamples((start - history) * channels, samples, 0, samples.length);
+			if (gain != 1) {
+				for (int i = 0; i < samples.length; i++) {
+					samples[i] = clip(samples[i] * gain);
+				}
+			}
+			if (!resample) {
+				return samples;
+			}
+
+			PolyphaseResampler resampler = new PolyphaseResampler(inputRate, outputRate, channels);
+			short[] resampled = new short[resampler.maxOutputLength(samples.length)];
+			int length = resampler.process(samples, samples.length, resampled);
+			// What the history produced was already written by the previous segment
+			int skip = (int) (history * outputRate / inputRate) * channels;
+			short[] trimmed = new short[length - skip];
+			System.arraycopy(resampled, skip, trimmed, 0, trimmed.length);
+			return trimmed;
+		}
+	}
+
+	/**
+	 * The BS.1770 pre-filter, a high shelf followed by a high-pass, designed for any sample rate.
+	 */
+	private static class KWeighting {
+		private final double b0, b1, b2, a1, a2;
+		private final double c1, c2;
+		// Shelf input and output, then high-pass output history
+		private double x1, x2, y1, y2, z1, z2;
+
+		KWeighting(int sampleRate) {
+			double k = Math.tan(Math.PI * 1681.974450955533 / sampleRate);
+			double q = 0.7071752369554196;
+			double vh = Math.pow(10, 3.999843853973347 / 20);
+			double vb = Math.pow(vh, 0.4996667741545416);
+			double a0 = 1 + k / q + k * k;
+			b0 = (vh + vb * k / q + k * k) / a0;
+			b1 = 2 * (k * k - vh) / a0;
+			b2 = (vh - vb * k / q + k * k) / a0;
+			a1 = 2 * (k * k - 1) / a0;
+			a2 = (1 - k / q + k * k) / a0;
+
+			k = Math.tan(Math.PI * 38.13547087602444 / sampleRate);
+			q = 0.5003270373238773;
+			a0 = 1 + k / q + k * k;
+			c1 = 2 * (k * k - 1) / a0;
+			c2 = (1 - k / q + k * k) / a0;
+		}
+
+		double process(double x) {
+			double y = b0 * x + b1 * x1 + b2 * x2 - a1 * y1 - a2 * y2;
+			// The high-pass has numerator 1, -2, 1
+			double z = y - 2 * y1 + y2 - c1 * z1 - c2 * z2;
+			x2 = x1;
+			x1 = x;
+			y2 = y1;
+			y1 = y;
+			z2 = z1;
+			z1 = z;
+			return z;
+		}
+	}
+
+	static short clip(float value) {
+		if (value >= Short.MAX_VALUE) {
+			return Short.MAX_VALUE;
+		}
+		if (value <= Short.MIN_VALUE) {
+			return Short.MIN_VALUE;
+		}
+		return (short) Math.round(value);
+	}
+
+	private static int gcd(int a, int b) {
+		while (b != 0) {
+			int t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+	private static long lcm(long a, long b) {
+		return a / gcd((int) a, (int) b) * b;
+	}
+}
@@ -0,0 +1,146 @@
+#!/usr/bin/env python3
+"""
+Writes the golden feature vectors FeatureExtractorTest compares against, to src/test/resources/features.
+
+The features are computed with librosa when it is installed, with the parameters FeatureExtractor uses: a periodic
+Hann window starting each frame and zero-padded to n_fft, no centering, power spectrum, HTK mel filters without area
+normalization, natural log floored at 1e-10 and the orthonormal DCT-II. Without librosa, a plain Python
+implementation of the same librosa formulas in double precision is used instead; the fixture records which one.
+"""
+
+import json
+import math
+import os
+import random
+
+OUTPUT = os.path.join(os.path.dirname(os.path.abspath(__file__)), '..', 'src', 'test', 'resources', 'features')
+
+CASES = [
+    dict(name='logmel-512', type='logmel', sampleRate=16000, windowLength=512, hop=160, bands=40, mfccCount=0,
+         minFrequency=20.0, maxFrequency=7600.0, seed=1),
+    dict(name='mfcc-400', type='mfcc', sampleRate=16000, windowLength=400, hop=160, bands=40, mfccCount=13,
+         minFrequency=0.0, maxFrequency=0.0, seed=2),
+]
+SECONDS = 0.3
+LOG_FLOOR = 1e-10
+
+
+def test_signal(sample_rate, seed):
+    """Two tones, a chirp and quiet noise, so that every mel band has some energy."""
+    rng = random.Random(seed)
+    samples = []
+    for i in range(int(SECONDS * sample_rate)):
+        t = i / sample_rate
+        value = 0.3 * math.sin(2 * math.pi * 440 * t) + 0.2 * math.sin(2 * math.pi * 3150 * t)
+        value += 0.1 * math.sin(2 * math.pi * (200 + 6000 * t) * t) + rng.gauss(0, 0.01)
+        samples.append(max(-32768, min(32767, int(round(value * 32767)))))
+    return samples
+
+
+def fft_size(window_length):
+    size = 1
+    while size < window_length:
+        size *= 2
+    return size
+
+
+def frame_count(length, window_length, hop):
+    # librosa frames n_fft samples, of which the window covers the last n_fft - pad after left padding by pad
+    n_fft = fft_size(window_length)
+    pad = (n_fft - window_length) // 2
+    return 1 + (length + pad - n_fft) // hop
+
+
+def with_librosa(case, samples):
+    import librosa
+    import numpy as np
+    import scipy.fft
+
+    n_fft = fft_size(case['windowLength'])
+    pad = (n_fft - case['windowLength']) // 2
+    # librosa centers the window in the n_fft frame, FeatureExtractor starts it there; padding lines them up
+    y = np.concatenate([np.zeros(pad), np.asarray(samples, dtype=np.float64) / 32768])
+    power = np.abs(librosa.stft(y, n_fft=n_fft, hop_length=case['hop'], win_length=case['windowLength'],
+                                window='hann', center=False)) ** 2
+    fmax = case['maxFrequency'] or case['sampleRate'] / 2
+    mel = librosa.filters.mel(sr=case['sampleRate'], n_fft=n_fft, n_mels=case['bands'], fmin=case['minFrequency'],
+                              fmax=fmax, htk=True, norm=None)
+    features = np.log(np.maximum(mel @ power, LOG_FLOOR))
+    if case['type'] == 'mfcc':
+        features = scipy.fft.dct(features, type=2, norm='ortho', axis=0)[:case['mfccCount']]
+    return features.T.tolist(), 'librosa ' + librosa.__version__
+
+
+def hz_to_mel(hz):
+    return 2595 * math.log10(1 + hz / 700)
+
+
+def mel_to_hz(mel):
+    return 700 * (10 ** (mel / 2595) - 1)
+
+
+def with_reference(case, samples):
+    sample_rate = case['sampleRate']
+    window_length = case['windowLength']
+    n_fft = fft_size(window_length)
+    bins = n_fft // 2 + 1
+    window = [0.5 - 0.5 * math.cos(2 * math.pi * i / window_length) for i in range(window_length)]
+    cos_table = [math.cos(2 * math.pi * i / n_fft) for i in range(n_fft)]
+    sin_table = [math.sin(2 * math.pi * i / n_fft) for i in range(n_fft)]
+
+    # librosa.filters.mel(htk=True, norm=None)
+    fmax = case['maxFrequency'] or sample_rate / 2
+    low, high = hz_to_mel(case['minFrequency']), hz_to_mel(fmax)
+    points = [mel_to_hz(low + (high - low) * i / (case['bands'] + 1)) for i in range(case['bands'] + 2)]
+    freqs = [k * sample_rate / n_fft for k in range(bins)]
+    filters = []
+    for b in range(case['bands']):
+        row = []
+        for f in freqs:
+            lower = (f - points[b]) / (points[b + 1] - points[b])
+            upper = (points[b + 2] - f) / (points[b + 2] - points[b + 1])
+            row.append(max(0.0, min(lower, upper)))
+        filters.append(row)
+
+    frames = []
+    for t in range(frame_count(len(samples), window_length, case['hop'])):
+        start = t * case['hop']
+        x = [samples[start + i] / 32768 * window[i] for i in range(window_length)]
+        power = []
+        for k in range(bins):
+            re = im = 0.0
+            for i, value in enumerate(x):
+                index = (i * k) % n_fft
+                re += value * cos_table[index]
+                im -= value * sin_table[index]
+            power.append(re * re + im * im)
+        logmel = [math.log(max(sum(w * p for w, p in zip(row, power)), LOG_FLOOR)) for row in filters]
+        if case['type'] == 'mfcc':
+            n = len(logmel)
+            logmel = [math.sqrt((1 if c == 0 else 2) / n)
+                      * sum(v * math.cos(math.pi * c * (b + 0.5) / n) for b, v in enumerate(logmel))
+                      for c in range(case['mfccCount'])]
+        frames.append(logmel)
+    return frames, 'reference implementation of the librosa formulas (librosa unavailable)'
+
+
+def main():
+    os.makedirs(OUTPUT, exist_ok=True)
+    for case in CASES:
+        samples = test_signal(case['sampleRate'], case['seed'])
+        try:
+            frames, generator = with_librosa(case, samples)
+        except ImportError:
+            frames, generator = with_reference(case, samples)
+        fixture = {key: value for key, value in case.items() if key not in ('name', 'seed')}
+        fixture['generator'] = generator
+        fixture['samples'] = samples
+        fixture['frames'] = [[round(value, 6) for value in frame] for frame in frames]
+        with open(os.path.join(OUTPUT, case['name'] + '.json'), 'w') as out:
+            json.dump(fixture, out, separators=(',', ':'))
+            out.write('\n')
+        print(case['name'], len(frames), 'frames,', generator)
+
+
+if __name__ == '__main__':
+    main()
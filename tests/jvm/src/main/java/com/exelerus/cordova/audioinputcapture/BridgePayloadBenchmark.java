@@ -0,0 +1,88 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.util.concurrent.TimeUnit;
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A chunk turned into the message a PluginResult carries over the bridge, as JSON array text or base64 PCM.
+ * pcmBytes and bridgeBytes are the audio and message bytes produced per second; run with -prof gc for the
+ * allocations per chunk (gc.alloc.rate.norm).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BridgePayloadBenchmark {
+
+	@Param({"json", "base64"})
+	public String encoding;
+
+	@Param({"16384", "2048"})
+	public int chunkLength;
+
+	private final ChunkEncoder encoder = new ChunkEncoder();
+	private short[] samples;
+
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Bytes {
+		public long pcmBytes;
+		public long bridgeBytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			pcmBytes = 0;
+			bridgeBytes = 0;
+		}
+	}
+
+	@Setup
+	public void setUp() {
+		samples = new short[chunkLength];
+		// Speech level audio, whose JSON text is shorter than that of full scale samples
+		new ToneSource(44100, 1, 440, 0.1).read(samples, 0, chunkLength);
+	}
+
+	@Benchmark
+	public String message(Bytes bytes) throws JSONException {
+		String message = encoder.encodeSamples(samples, chunkLength, encoding, 32767.0f).toString();
+		bytes.pcmBytes += chunkLength * 2;
+		bytes.bridgeBytes += message.length();
+		return message;
+	}
+}
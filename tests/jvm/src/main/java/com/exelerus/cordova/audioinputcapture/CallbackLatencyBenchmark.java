@@ -0,0 +1,113 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Capture-to-callback latency of 48 kHz mono captured in real time, with the default read length and in the
+ * low-latency mode's 4 ms bursts. Each iteration is a session of CHUNKS chunks. How old the newest and the oldest
+ * sample of a chunk are when the listener gets it is printed per iteration, from the capture times the receiver
+ * puts on the chunks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CallbackLatencyBenchmark {
+
+	private static final int SAMPLE_RATE = 48000;
+	private static final int CHUNKS = 200;
+
+	// Samples per read: the default buffer of 2048 and a 192 frame low-latency burst
+	@Param({"2048", "192"})
+	public int readLength;
+
+	// Age of the oldest sample of each chunk of the session, in ns
+	private final long[] latencies = new long[CHUNKS];
+	private long readNanos;
+	private AudioInputReceiver receiver;
+	private volatile CountDownLatch remaining;
+
+	@Setup(Level.Trial)
+	public void startEngine() {
+		readNanos = readLength * 1000000000L / SAMPLE_RATE;
+		receiver = new AudioInputReceiver(new PacedSource(new ToneSource(SAMPLE_RATE, 1, 440, 0.5)), 2048, null);
+		if (readLength < 2048) {
+			receiver.setLowLatency(readLength);
+		}
+		receiver.setListener(new ListenerAdapter() {
+			@Override
+			public void onChunk(AudioChunk chunk) {
+				long latency = System.nanoTime() - chunk.captureTime;
+				chunk.release();
+				long left = remaining.getCount();
+				if (left > 0) {
+					latencies[(int) (CHUNKS - left)] = latency;
+					remaining.countDown();
+				}
+			}
+		});
+		receiver.start();
+	}
+
+	@TearDown(Level.Trial)
+	public void releaseEngine() throws InterruptedException {
+		receiver.release();
+		receiver.join();
+	}
+
+	@TearDown(Level.Iteration)
+	public void print() {
+		long[] sorted = latencies.clone();
+		Arrays.sort(sorted);
+		long p50 = sorted[CHUNKS / 2];
+		long p99 = sorted[CHUNKS * 99 / 100];
+		long max = sorted[CHUNKS - 1];
+		System.out.printf("%nread length %d, newest sample: p50 %d us, p99 %d us, max %d us; oldest sample: p50 %d us%n",
+			readLength, (p50 - readNanos) / 1000, (p99 - readNanos) / 1000, (max - readNanos) / 1000, p50 / 1000);
+	}
+
+	@Benchmark
+	public void session() throws InterruptedException {
+		remaining = new CountDownLatch(CHUNKS);
+		receiver.startSession();
+		remaining.await();
+		receiver.stopSession();
+	}
+}
@@ -0,0 +1,101 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The whole path of a chunk from the source to an encoded result: read by the capture loop, copied into a pooled
+ * chunk, dispatched to the listener, encoded like the plugin's handler does and released again. Reported per chunk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+	private static final int CHUNKS = 1000;
+
+	@Param({"json", "base64", "float32"})
+	public String encoding;
+
+	@Param({"2048"})
+	public int bufferSize;
+
+	private AudioInputReceiver receiver;
+	private volatile CountDownLatch remaining;
+
+	@Setup(Level.Trial)
+	public void startEngine() {
+		final ChunkEncoder encoder = new ChunkEncoder();
+		receiver = new AudioInputReceiver(new ToneSource(44100, 2, 440, 0.5), bufferSize, null);
+		receiver.setDataEncoding(encoding);
+		receiver.setListener(new ListenerAdapter() {
+			@Override
+			public void onChunk(AudioChunk chunk) {
+				try {
+					encoder.encodeSamples(chunk.samples, chunk.length, encoding, 32767.0f);
+				}
+				catch (JSONException e) {
+					throw new IllegalStateException(e);
+				}
+				finally {
+					chunk.release();
+				}
+				remaining.countDown();
+			}
+		});
+		receiver.start();
+	}
+
+	@TearDown(Level.Trial)
+	public void releaseEngine() throws InterruptedException {
+		receiver.release();
+		receiver.join();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CHUNKS)
+	public void dispatch() throws InterruptedException {
+		remaining = new CountDownLatch(CHUNKS);
+		receiver.startSession();
+		remaining.await();
+		receiver.stopSession();
+	}
+}
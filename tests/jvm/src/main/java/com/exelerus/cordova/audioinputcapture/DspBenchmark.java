@@ -0,0 +1,95 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Each DSP stage, and the whole chain in the receiver's order, on 10 ms blocks of 44.1 kHz stereo with the plugin's
+ * default settings. Every block is a fresh copy of the input, which "none" times on its own.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DspBenchmark {
+
+	private static final int SAMPLE_RATE = 44100;
+	private static final int CHANNELS = 2;
+	private static final int BLOCK_LENGTH = 882;
+
+	@Param({"none", "highPass", "noiseGate", "agc", "limiter", "chain"})
+	public String stage;
+
+	private DspStage dsp;
+	private short[] input;
+	private short[] block;
+
+	@Setup
+	public void setUp() {
+		DspStage highPass = new BiquadHighPass(SAMPLE_RATE, CHANNELS, 80);
+		DspStage noiseGate = new NoiseGate(SAMPLE_RATE, CHANNELS, -50);
+		DspStage agc = new AutomaticGainControl(SAMPLE_RATE, CHANNELS, -18, 24);
+		DspStage limiter = new Limiter(SAMPLE_RATE, CHANNELS, -1);
+
+		if ("highPass".equals(stage)) {
+			dsp = highPass;
+		}
+		else if ("noiseGate".equals(stage)) {
+			dsp = noiseGate;
+		}
+		else if ("agc".equals(stage)) {
+			dsp = agc;
+		}
+		else if ("limiter".equals(stage)) {
+			dsp = limiter;
+		}
+		else if ("chain".equals(stage)) {
+			dsp = new DspChain(highPass, noiseGate, agc, limiter);
+		}
+
+		input = new short[BLOCK_LENGTH];
+		new ToneSource(SAMPLE_RATE, CHANNELS, 440, 0.5).read(input, 0, BLOCK_LENGTH);
+		block = new short[BLOCK_LENGTH];
+	}
+
+	@Benchmark
+	public short[] process() {
+		System.arraycopy(input, 0, block, 0, BLOCK_LENGTH);
+		if (dsp != null) {
+			dsp.process(block, BLOCK_LENGTH);
+		}
+		return block;
+	}
+}
@@ -0,0 +1,128 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding chunks of 44.1 kHz stereo to a WAV or FLAC file, as the file writer thread does. pcmBytes is the audio
+ * encoded per second; the size of ten seconds of each format relative to the PCM is printed from setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileFormatBenchmark {
+
+	private static final int SAMPLE_RATE = 44100;
+	private static final int CHANNELS = 2;
+
+	@Param({"wav", "flac"})
+	public String format;
+
+	@Param({"16384"})
+	public int chunkLength;
+
+	private short[] samples;
+	private File file;
+	private AudioFileWriter writer;
+
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Bytes {
+		public long pcmBytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			pcmBytes = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void createSamples() throws IOException {
+		short[] signal = signal(SAMPLE_RATE * CHANNELS * 10);
+		samples = new short[chunkLength];
+		System.arraycopy(signal, 0, samples, 0, chunkLength);
+
+		File sized = File.createTempFile("benchmark", "." + format);
+		AudioFileWriter writer = open(sized);
+		writer.write(signal, signal.length);
+		writer.close();
+		System.out.printf("%n%s is %.3f of the PCM for ten seconds of tone and noise%n", format,
+			(double) sized.length() / (signal.length * 2));
+		sized.delete();
+	}
+
+	@Setup(Level.Iteration)
+	public void open() throws IOException {
+		file = File.createTempFile("benchmark", "." + format);
+		writer = open(file);
+	}
+
+	@TearDown(Level.Iteration)
+	public void close() throws IOException {
+		writer.close();
+		file.delete();
+	}
+
+	@Benchmark
+	public void write(Bytes bytes) throws IOException {
+		writer.write(samples, chunkLength);
+		bytes.pcmBytes += chunkLength * 2;
+	}
+
+	private AudioFileWriter open(File file) throws IOException {
+		return "flac".equals(format) ? new FlacFileWriter(file, SAMPLE_RATE, CHANNELS)
+			: new WavFileWriter(file, SAMPLE_RATE, CHANNELS);
+	}
+
+	/**
+	 * A tone at half scale over noise 40 dB below it, so the encoder has more than a predictable sine to work on.
+	 */
+	private static short[] signal(int length) {
+		short[] signal = new short[length];
+		new ToneSource(SAMPLE_RATE, CHANNELS, 440, 0.5).read(signal, 0, length);
+		Random random = new Random(1);
+		for (int i = 0; i < length; i++) {
+			signal[i] += (short) (random.nextGaussian() * 164);
+		}
+		return signal;
+	}
+}
@@ -0,0 +1,128 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time from asking for a session to the listener getting its first chunk, for 20 ms reads of 48 kHz mono captured
+ * in real time from a source that takes STARTUP_MILLIS to start, like AudioRecord.startRecording() does:
+ *  cold      a new receiver and capture thread per session
+ *  warm      one capture thread, with the source stopped between sessions
+ *  keepWarm  one capture thread, with the source kept recording between sessions
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 4)
+@Fork(1)
+public class FirstChunkBenchmark {
+
+	private static final int SAMPLE_RATE = 48000;
+	private static final int READ_LENGTH = 960;
+	private static final long STARTUP_MILLIS = 20;
+
+	@Param({"cold", "warm", "keepWarm"})
+	public String engine;
+
+	private AudioInputReceiver receiver;
+	private volatile CountDownLatch firstChunk;
+
+	@Setup(Level.Trial)
+	public void startEngine() {
+		if (!"cold".equals(engine)) {
+			receiver = newReceiver();
+			receiver.setKeepWarm("keepWarm".equals(engine));
+			receiver.start();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void releaseEngine() throws InterruptedException {
+		if (receiver != null) {
+			receiver.release();
+			receiver.join();
+			receiver = null;
+		}
+	}
+
+	@TearDown(Level.Invocation)
+	public void stopSession() throws InterruptedException {
+		if ("cold".equals(engine)) {
+			releaseEngine();
+		}
+		else {
+			receiver.stopSession();
+			// Let the source settle into what it does between sessions
+			Thread.sleep(STARTUP_MILLIS * 2);
+		}
+	}
+
+	@Benchmark
+	public void firstChunk() throws InterruptedException {
+		firstChunk = new CountDownLatch(1);
+		if ("cold".equals(engine)) {
+			receiver = newReceiver();
+			receiver.start();
+		}
+		receiver.startSession();
+		firstChunk.await();
+	}
+
+	private AudioInputReceiver newReceiver() {
+		PacedSource source = new PacedSource(new ToneSource(SAMPLE_RATE, 1, 440, 0.5)) {
+			@Override
+			public void start() {
+				try {
+					Thread.sleep(STARTUP_MILLIS);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				super.start();
+			}
+		};
+		AudioInputReceiver created = new AudioInputReceiver(source, READ_LENGTH, null);
+		created.setListener(new ListenerAdapter() {
+			@Override
+			public void onChunk(AudioChunk chunk) {
+				chunk.release();
+				firstChunk.countDown();
+			}
+		});
+		return created;
+	}
+}
@@ -0,0 +1,92 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import android.util.Base64;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A chunk from the samples to normalized floats on the other side of the bridge, before and after the float32
+ * encoding: a JSON array parsed and divided by the normalization factor, or base64 floats decoded in place. The
+ * receiving side stands in for what audioInputCapture.js does. Run with -prof gc for the allocations per chunk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Float32DeliveryBenchmark {
+
+	private static final float NORMALIZATION_FACTOR = 32767.0f;
+
+	@Param({"16384", "882"})
+	public int chunkLength;
+
+	private final ChunkEncoder encoder = new ChunkEncoder();
+	private short[] samples;
+
+	@Setup
+	public void setUp() {
+		samples = new short[chunkLength];
+		new ToneSource(44100, 2, 440, 0.5).read(samples, 0, chunkLength);
+	}
+
+	@Benchmark
+	public float[] json() throws JSONException {
+		String message = encoder.encodeSamples(samples, chunkLength, AudioInputReceiver.DATA_ENCODING_JSON, 1.0f)
+			.toString();
+
+		JSONArray data = new JSONArray(new JSONObject(message).getString("data"));
+		float[] normalized = new float[data.length()];
+		for (int i = 0; i < normalized.length; i++) {
+			normalized[i] = data.getInt(i) / NORMALIZATION_FACTOR;
+		}
+		return normalized;
+	}
+
+	@Benchmark
+	public float[] float32() throws JSONException {
+		String message = encoder.encodeSamples(samples, chunkLength, AudioInputReceiver.DATA_ENCODING_FLOAT32,
+			NORMALIZATION_FACTOR).toString();
+
+		byte[] bytes = Base64.decode(new JSONObject(message).getString("data"), Base64.DEFAULT);
+		float[] normalized = new float[bytes.length / 4];
+		ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(normalized);
+		return normalized;
+	}
+}
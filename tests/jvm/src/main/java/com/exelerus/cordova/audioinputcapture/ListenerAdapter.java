@@ -0,0 +1,60 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+/**
+ * An AudioInputReceiver.Listener that releases what it gets and ignores everything else, to override what's of
+ * interest.
+ */
+public class ListenerAdapter implements AudioInputReceiver.Listener {
+
+	@Override
+	public void onChunk(AudioChunk chunk) {
+		chunk.release();
+	}
+
+	@Override
+	public void onSilence(int silentMillis) {
+	}
+
+	@Override
+	public void onLevels(LevelReport report) {
+		report.release();
+	}
+
+	@Override
+	public void onFeatures(FeatureReport report) {
+		report.release();
+	}
+
+	@Override
+	public void onGap(long framePosition, long lostFrames, double duration, boolean estimated) {
+	}
+
+	@Override
+	public void onFileRecorded(String fileUrl, String[] segmentUrls) {
+	}
+
+	@Override
+	public void onError(String message) {
+		throw new IllegalStateException(message);
+	}
+}
@@ -0,0 +1,106 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of metering on the capture thread: one FFT on its own, and 10 ms blocks of 44.1 kHz stereo through a
+ * LevelMeter reporting 60 times per second, with and without a spectrum.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeteringBenchmark {
+
+	private static final int SAMPLE_RATE = 44100;
+	private static final int BLOCK_LENGTH = 882;
+
+	@State(Scope.Thread)
+	public static class Transform {
+		@Param({"256", "1024", "4096"})
+		public int fftSize;
+
+		private Fft fft;
+		private float[] input;
+		private float[] re;
+		private float[] im;
+
+		@Setup
+		public void setUp() {
+			fft = new Fft(fftSize);
+			short[] samples = new short[fftSize];
+			new ToneSource(SAMPLE_RATE, 1, 440, 0.5).read(samples, 0, fftSize);
+			input = new float[fftSize];
+			for (int i = 0; i < fftSize; i++) {
+				input[i] = samples[i];
+			}
+			re = new float[fftSize];
+			im = new float[fftSize];
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Meter {
+		// 0 for levels only
+		@Param({"0", "1024", "4096"})
+		public int spectrumSize;
+
+		private final ListenerAdapter listener = new ListenerAdapter();
+		private LevelMeter meter;
+		private short[] block;
+
+		@Setup
+		public void setUp() {
+			meter = new LevelMeter(SAMPLE_RATE, 2, 60, spectrumSize);
+			block = new short[BLOCK_LENGTH];
+			new ToneSource(SAMPLE_RATE, 2, 440, 0.5).read(block, 0, BLOCK_LENGTH);
+		}
+	}
+
+	@Benchmark
+	public float[] fft(Transform state) {
+		// Fresh input each time, as transforming in place again would grow without bound
+		System.arraycopy(state.input, 0, state.re, 0, state.fftSize);
+		Arrays.fill(state.im, 0);
+		state.fft.transform(state.re, state.im);
+		return state.re;
+	}
+
+	@Benchmark
+	public void meter(Meter state) {
+		state.meter.process(state.block, BLOCK_LENGTH, state.listener);
+	}
+}
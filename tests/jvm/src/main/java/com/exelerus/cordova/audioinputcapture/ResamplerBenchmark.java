@@ -0,0 +1,88 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.util.concurrent.TimeUnit;
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One second of mono audio resampled in capture-sized blocks and encoded as base64 chunks, so the time is the CPU
+ * each second of audio costs. Setup prints the bytes that second puts on the bridge; the unresampled rates are the
+ * baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResamplerBenchmark {
+
+	@Param({"44100:44100", "44100:16000", "48000:48000", "48000:16000", "48000:8000"})
+	public String rates;
+
+	private static final int BLOCK = 2048;
+
+	private final ChunkEncoder encoder = new ChunkEncoder();
+	private PolyphaseResampler resampler;
+	private short[] input;
+	private short[] output;
+
+	@Setup
+	public void setUp() throws JSONException {
+		String[] parts = rates.split(":");
+		int inputRate = Integer.parseInt(parts[0]);
+		int outputRate = Integer.parseInt(parts[1]);
+		resampler = inputRate != outputRate ? new PolyphaseResampler(inputRate, outputRate, 1) : null;
+		input = new short[inputRate];
+		new ToneSource(inputRate, 1, 440, 0.5).read(input, 0, input.length);
+		output = new short[resampler != null ? resampler.maxOutputLength(BLOCK) : BLOCK];
+		System.out.println("Bridge bytes per second of audio at " + rates + ": " + secondOfAudio());
+	}
+
+	@Benchmark
+	public long secondOfAudio() throws JSONException {
+		short[] block = new short[BLOCK];
+		long bytes = 0;
+		for (int offset = 0; offset < input.length; offset += BLOCK) {
+			int count = Math.min(BLOCK, input.length - offset);
+			System.arraycopy(input, offset, block, 0, count);
+			short[] chunk = block;
+			if (resampler != null) {
+				count = resampler.process(block, count, output);
+				chunk = output;
+			}
+			bytes += encoder.encodeSamples(chunk, count, "base64", 32767.0f).getString("data").length();
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,181 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Load on the LoopbackStreamServer from a client reading over HTTP or a WebSocket. "saturated" offers 10 ms chunks of
+ * 44.1 kHz stereo as fast as the sender takes them, holding back rather than letting the queue overflow, so
+ * pcmBytes is the most the server can stream. "realTime" offers them every 10 ms, as capture does. Each iteration
+ * prints how long chunks took from offer() until they were written to the client, and how many were dropped.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamServerBenchmark {
+
+	private static final int SAMPLE_RATE = 44100;
+	private static final int CHANNELS = 2;
+	private static final int CHUNK_LENGTH = 882;
+	private static final long CHUNK_NANOS = 10000000L;
+	// Chunks offered but not yet sent, below the server's queue of 24
+	private static final int MAX_IN_FLIGHT = 16;
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	@Param({"http", "webSocket"})
+	public String transport;
+
+	@Param({"saturated", "realTime"})
+	public String load;
+
+	private LoopbackStreamServer server;
+	private Socket client;
+	private Thread reader;
+	private volatile long bytesReceived = 0;
+	private short[] chunk;
+	private long offered;
+	private long nextOfferNanos;
+
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Bytes {
+		public long pcmBytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			pcmBytes = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void connect() throws IOException, InterruptedException {
+		chunk = new short[CHUNK_LENGTH];
+		new ToneSource(SAMPLE_RATE, CHANNELS, 440, 0.5).read(chunk, 0, CHUNK_LENGTH);
+
+		server = new LoopbackStreamServer(0);
+		server.setFormat(SAMPLE_RATE, CHANNELS);
+		server.start();
+
+		URL url = new URL(server.getUrl());
+		client = new Socket("127.0.0.1", server.getPort());
+		String upgrade = "webSocket".equals(transport)
+			? "Upgrade: websocket\r\nConnection: Upgrade\r\nSec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+				+ "Sec-WebSocket-Version: 13\r\n"
+			: "";
+		client.getOutputStream().write(("GET " + url.getFile() + " HTTP/1.1\r\nHost: 127.0.0.1\r\n" + upgrade + "\r\n")
+			.getBytes(ASCII));
+
+		final InputStream in = client.getInputStream();
+		reader = new Thread("StreamServerBenchmarkClient") {
+			@Override
+			public void run() {
+				byte[] buffer = new byte[65536];
+				try {
+					int read;
+					while ((read = in.read(buffer)) > 0) {
+						bytesReceived += read;
+					}
+				}
+				catch (IOException e) {
+					// Disconnected at the end of the trial
+				}
+			}
+		};
+		reader.start();
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!server.hasClient()) {
+			if (System.currentTimeMillis() > deadline) {
+				throw new IllegalStateException("The client wasn't accepted");
+			}
+			Thread.sleep(1);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void disconnect() throws IOException, InterruptedException {
+		server.close();
+		client.close();
+		reader.join();
+	}
+
+	@Setup(Level.Iteration)
+	public void resetCounters() {
+		server.getLatency().reset();
+		nextOfferNanos = System.nanoTime();
+	}
+
+	@TearDown(Level.Iteration)
+	public void print() {
+		// Let the sender finish what was offered, so the histogram is only read while it's idle
+		while (server.getChunksSent() + server.getDroppedChunks() < offered) {
+			Thread.yield();
+		}
+		LatencyHistogram latency = server.getLatency();
+		System.out.printf("%n%s %s: %d chunks, offer to write p50 <= %d us, p99 <= %d us, max %d us, %d dropped,"
+			+ " %d bytes received%n", transport, load, latency.getCount(), latency.getPercentileMicros(0.5),
+			latency.getPercentileMicros(0.99), latency.getMaxMicros(), server.getDroppedChunks(), bytesReceived);
+	}
+
+	@Benchmark
+	public void offer(Bytes bytes) {
+		if ("realTime".equals(load)) {
+			nextOfferNanos += CHUNK_NANOS;
+			long wait;
+			while ((wait = nextOfferNanos - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(wait);
+			}
+		}
+		else {
+			while (offered - server.getChunksSent() >= MAX_IN_FLIGHT) {
+				Thread.yield();
+			}
+		}
+
+		server.offer(chunk, CHUNK_LENGTH, offered * (CHUNK_LENGTH / CHANNELS));
+		offered++;
+		bytes.pcmBytes += CHUNK_LENGTH * 2;
+	}
+}
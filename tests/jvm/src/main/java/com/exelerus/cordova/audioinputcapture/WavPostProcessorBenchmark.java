@@ -0,0 +1,122 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Trimming and normalizing a 44.1 kHz mono recording to WAV with WavPostProcessor, as processWav does, with the
+ * input divided among a pool of the given number of threads, and optionally resampled. The number of segments
+ * and of available processors are printed from setup, as more threads than cores only adds overhead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WavPostProcessorBenchmark {
+
+	private static final int SAMPLE_RATE = 44100;
+	// Silence before and after the sound, for the trim to remove
+	private static final int SILENT_SECONDS = 2;
+
+	@Param({"1", "2", "4"})
+	public int threads;
+
+	@Param({"1", "5", "20"})
+	public int minutes;
+
+	// 0 to keep 44.1 kHz
+	@Param({"0", "48000"})
+	public int outputSampleRate;
+
+	private ForkJoinPool pool;
+	private File input;
+	private File output;
+
+	@Setup(Level.Trial)
+	public void createInput() throws IOException {
+		pool = new ForkJoinPool(threads);
+		input = File.createTempFile("benchmark", ".wav");
+		output = File.createTempFile("benchmark", ".wav");
+
+		short[] signal = signal(SAMPLE_RATE * 10);
+		short[] silence = new short[SAMPLE_RATE * SILENT_SECONDS];
+		WavFileWriter writer = new WavFileWriter(input, SAMPLE_RATE, 1);
+		writer.write(silence, silence.length);
+		for (long written = 0; written < minutes * 60L * SAMPLE_RATE; written += signal.length) {
+			writer.write(signal, signal.length);
+		}
+		writer.write(silence, silence.length);
+		writer.close();
+
+		WavPostProcessor.Result result = process();
+		System.out.printf("%n%d min in %d segments on %d threads, %d processors available%n", minutes,
+			result.segments, threads, Runtime.getRuntime().availableProcessors());
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFiles() {
+		pool.shutdown();
+		input.delete();
+		output.delete();
+	}
+
+	@Benchmark
+	public WavPostProcessor.Result process() throws IOException {
+		WavPostProcessor processor = new WavPostProcessor(pool, input, output);
+		processor.setTrim(-50, 0.1);
+		processor.setNormalize(-1);
+		processor.setOutputFormat(AudioInputReceiver.FILE_FORMAT_WAV, outputSampleRate);
+		return processor.run(null);
+	}
+
+	/**
+	 * A tone at half scale over noise 40 dB below it.
+	 */
+	private static short[] signal(int length) {
+		short[] signal = new short[length];
+		new ToneSource(SAMPLE_RATE, 1, 440, 0.5).read(signal, 0, length);
+		Random random = new Random(1);
+		for (int i = 0; i < length; i++) {
+			signal[i] += (short) (random.nextGaussian() * 164);
+		}
+		return signal;
+	}
+}
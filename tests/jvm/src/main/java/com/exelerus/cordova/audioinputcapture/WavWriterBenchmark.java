@@ -0,0 +1,91 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Appending chunks of 44.1 kHz stereo to a WAV file, as the file writer thread does, with and without building the
+ * peak pyramid alongside. The capture thread only queues copies of the chunks for that thread either way.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WavWriterBenchmark {
+
+	@Param({"16384", "882"})
+	public int chunkLength;
+
+	// Complete the header and sync this many bytes, 0 for only at the end
+	@Param({"0", "176400"})
+	public long checkpointInterval;
+
+	@Param({"false", "true"})
+	public boolean peakIndex;
+
+	private short[] samples;
+	private File file;
+	private WavFileWriter writer;
+
+	@Setup(Level.Trial)
+	public void createSamples() {
+		samples = new short[chunkLength];
+		new ToneSource(44100, 2, 440, 0.5).read(samples, 0, chunkLength);
+	}
+
+	@Setup(Level.Iteration)
+	public void open() throws IOException {
+		file = File.createTempFile("benchmark", ".wav");
+		writer = new WavFileWriter(file, 44100, 2);
+		writer.setCheckpointInterval(checkpointInterval);
+		writer.setPeakIndex(peakIndex);
+	}
+
+	@TearDown(Level.Iteration)
+	public void close() throws IOException {
+		writer.close();
+		file.delete();
+		PeakFile.fileFor(file).delete();
+	}
+
+	@Benchmark
+	public void write() throws IOException {
+		writer.write(samples, chunkLength);
+	}
+}
@@ -0,0 +1,63 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package android.media;
+
+/**
+ * Stand-in for the Android class, with the members the plugin uses. There is no microphone off-device, so like the
+ * classes of the Android SDK's android.jar it throws when used; capture from a PcmSource of its own instead.
+ */
+public class AudioRecord {
+	public static final int SUCCESS = 0;
+	public static final int ERROR = -1;
+	public static final int RECORDSTATE_RECORDING = 3;
+
+	public AudioRecord(int audioSource, int sampleRateInHz, int channelConfig, int audioFormat, int bufferSizeInBytes) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public static int getMinBufferSize(int sampleRateInHz, int channelConfig, int audioFormat) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public int getRecordingState() {
+		throw new RuntimeException("Stub!");
+	}
+
+	public void startRecording() {
+		throw new RuntimeException("Stub!");
+	}
+
+	public int read(short[] audioData, int offsetInShorts, int sizeInShorts) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public int getTimestamp(AudioTimestamp outTimestamp, int timebase) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public void stop() {
+		throw new RuntimeException("Stub!");
+	}
+
+	public void release() {
+		throw new RuntimeException("Stub!");
+	}
+}
@@ -0,0 +1,91 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package android.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Stand-in for the Android class, with the members the plugin uses. There are no codecs off-device, so like the
+ * classes of the Android SDK's android.jar it throws when used.
+ */
+public class MediaCodec {
+	public static final int BUFFER_FLAG_CODEC_CONFIG = 2;
+	public static final int BUFFER_FLAG_END_OF_STREAM = 4;
+	public static final int CONFIGURE_FLAG_ENCODE = 1;
+	public static final int INFO_TRY_AGAIN_LATER = -1;
+	public static final int INFO_OUTPUT_FORMAT_CHANGED = -2;
+
+	public static final class BufferInfo {
+		public int offset;
+		public int size;
+		public long presentationTimeUs;
+		public int flags;
+	}
+
+	public static MediaCodec createEncoderByType(String type) throws IOException {
+		throw new RuntimeException("Stub!");
+	}
+
+	public void configure(MediaFormat format, Object surface, Object crypto, int flags) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public void start() {
+		throw new RuntimeException("Stub!");
+	}
+
+	public int dequeueInputBuffer(long timeoutUs) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public ByteBuffer getInputBuffer(int index) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public int dequeueOutputBuffer(BufferInfo info, long timeoutUs) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public MediaFormat getOutputFormat() {
+		throw new RuntimeException("Stub!");
+	}
+
+	public ByteBuffer getOutputBuffer(int index) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public void releaseOutputBuffer(int index, boolean render) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public void stop() {
+		throw new RuntimeException("Stub!");
+	}
+
+	public void release() {
+		throw new RuntimeException("Stub!");
+	}
+}
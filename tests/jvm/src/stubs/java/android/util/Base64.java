@@ -0,0 +1,46 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package android.util;
+
+/**
+ * Stand-in for the Android class, with the members the plugin uses, encoding like it does with java.util.Base64.
+ */
+public class Base64 {
+	public static final int DEFAULT = 0;
+	public static final int NO_WRAP = 2;
+
+	public static String encodeToString(byte[] input, int flags) {
+		return encodeToString(input, 0, input.length, flags);
+	}
+
+	public static String encodeToString(byte[] input, int offset, int len, int flags) {
+		if ((flags & NO_WRAP) == 0) {
+			throw new UnsupportedOperationException("Only NO_WRAP is supported off-device");
+		}
+		byte[] range = new byte[len];
+		System.arraycopy(input, offset, range, 0, len);
+		return java.util.Base64.getEncoder().encodeToString(range);
+	}
+
+	public static byte[] decode(String str, int flags) {
+		return java.util.Base64.getDecoder().decode(str);
+	}
+}
@@ -0,0 +1,318 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AudioInputReceiverTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private AudioInputReceiver receiver;
+
+	@After
+	public void release() throws InterruptedException {
+		if (receiver != null) {
+			receiver.release();
+			receiver.join();
+		}
+	}
+
+	@Test
+	public void streamsEverySampleOfATone() throws Exception {
+		CollectingListener listener = new CollectingListener();
+		receiver = start(new ToneSource(16000, 2, 440, 0.5), 1024, null, listener);
+		listener.awaitSamples(16000);
+		receiver.stopSession();
+
+		short[] streamed = listener.streamed();
+		short[] expected = new short[streamed.length];
+		new ToneSource(16000, 2, 440, 0.5).read(expected, 0, expected.length);
+		assertArrayEquals(expected, streamed);
+		assertTrue(listener.errors.isEmpty());
+
+		long position = 0;
+		for (int i = 0; i < listener.chunks.size(); i++) {
+			CollectingListener.Chunk chunk = listener.chunks.get(i);
+			assertEquals(i, chunk.sequence);
+			assertEquals(position, chunk.framePosition);
+			assertEquals(chunk.samples.length / 2, chunk.frames);
+			position += chunk.frames;
+		}
+	}
+
+	@Test
+	public void replaysAWavFileAtTheSampleRate() throws Exception {
+		short[] ramp = new short[8000];
+		for (int i = 0; i < ramp.length; i++) {
+			ramp[i] = (short) (i - 4000);
+		}
+		File input = folder.newFile("ramp.wav");
+		WavFileWriter writer = new WavFileWriter(input, 16000, 1);
+		writer.write(ramp, ramp.length);
+		writer.close();
+
+		CollectingListener listener = new CollectingListener();
+		long started = System.nanoTime();
+		receiver = start(new PacedSource(new WavFileSource(input, false)), 800, null, listener);
+		listener.awaitSamples(ramp.length);
+		long elapsedMillis = (System.nanoTime() - started) / 1000000;
+		receiver.stopSession();
+
+		assertArrayEquals(ramp, Arrays.copyOf(listener.streamed(), ramp.length));
+		// Half a second of audio, delivered in real time
+		assertTrue("Took " + elapsedMillis + " ms", elapsedMillis >= 450);
+	}
+
+	@Test
+	public void recordsToAWavFile() throws Exception {
+		File output = folder.newFile("recording.wav");
+		CollectingListener listener = new CollectingListener();
+		receiver = start(new PacedSource(new ToneSource(8000, 1, 440, 0.5)), 800, output.toURI(), listener);
+		Thread.sleep(300);
+		receiver.stopSession();
+		listener.awaitFile();
+
+		assertTrue(listener.errors.toString(), listener.errors.isEmpty());
+		assertEquals(output.toURI().toString(), listener.fileUrl);
+
+		WavFileReader reader = new WavFileReader(new File(new URI(listener.fileUrl)));
+		try {
+			assertEquals(8000, reader.getSampleRate());
+			assertTrue(reader.getFrameCount() >= 1600);
+			short[] recorded = new short[(int) reader.getFrameCount()];
+			reader.readSamples(0, recorded, 0, recorded.length);
+			short[] expected = new short[recorded.length];
+			new ToneSource(8000, 1, 440, 0.5).read(expected, 0, expected.length);
+			assertArrayEquals(expected, recorded);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void completesTheFileWhenReleasedRightAfterStopping() throws Exception {
+		// As the plugin's stop does for an engine that isn't kept prepared
+		File wav = folder.newFile("recording.wav");
+		CollectingListener listener = recordThenRelease(wav, AudioInputReceiver.FILE_FORMAT_WAV);
+		assertTrue(listener.errors.toString(), listener.errors.isEmpty());
+		assertEquals(wav.toURI().toString(), listener.fileUrl);
+
+		WavFileReader reader = new WavFileReader(wav);
+		try {
+			assertTrue(reader.getFrameCount() >= 1600);
+			assertEquals(wav.length(), WavFileWriter.HEADER_SIZE + reader.getFrameCount() * 2);
+		}
+		finally {
+			reader.close();
+		}
+
+		File flac = folder.newFile("recording.flac");
+		listener = recordThenRelease(flac, AudioInputReceiver.FILE_FORMAT_FLAC);
+		assertTrue(listener.errors.toString(), listener.errors.isEmpty());
+		assertEquals(flac.toURI().toString(), listener.fileUrl);
+
+		// The MD5 at the end of STREAMINFO is only filled in on close
+		byte[] md5 = Arrays.copyOfRange(Files.readAllBytes(flac.toPath()), 26, 42);
+		assertTrue(Arrays.toString(md5), !Arrays.equals(new byte[16], md5));
+	}
+
+	@Test
+	public void releaseLetsTheStoppedSessionFinish() throws Exception {
+		File output = folder.newFile("recording.wav");
+		final AtomicBoolean interrupted = new AtomicBoolean();
+		CollectingListener listener = new CollectingListener() {
+			@Override
+			public synchronized void onFileRecorded(String fileUrl, String[] segmentUrls) {
+				interrupted.set(Thread.currentThread().isInterrupted());
+				super.onFileRecorded(fileUrl, segmentUrls);
+			}
+		};
+		receiver = new AudioInputReceiver(new PacedSource(new ToneSource(8000, 1, 440, 0.5)), 800, output.toURI());
+		receiver.setListener(listener);
+		receiver.start();
+		receiver.startSession();
+		Thread.sleep(300);
+		receiver.stopSession();
+		receiver.release();
+		receiver.join();
+
+		assertTrue(listener.errors.toString(), listener.errors.isEmpty());
+		assertEquals(output.toURI().toString(), listener.fileUrl);
+		assertFalse(interrupted.get());
+		assertFalse(receiver.isCapturing());
+	}
+
+	@Test
+	public void finishesTheFileWhenTheUploadCantStart() throws Exception {
+		File output = folder.newFile("recording.wav");
+		// The upload spool can't be created under a file
+		ChunkedUploader uploader = new ChunkedUploader(folder.newFile("uploads"));
+		CollectingListener listener = new CollectingListener();
+		receiver = new AudioInputReceiver(new PacedSource(new ToneSource(8000, 1, 440, 0.5)), 800, output.toURI());
+		receiver.setListener(listener);
+		receiver.setUpload(uploader, "http://127.0.0.1:9/upload", null, 1000);
+		receiver.start();
+		receiver.startSession();
+		listener.awaitFile();
+
+		assertEquals(1, listener.errors.size());
+		assertTrue(listener.errors.get(0), listener.errors.get(0).contains("Could not create"));
+		awaitNoThread("AudioInputFileWriter");
+		WavFileReader reader = new WavFileReader(output);
+		assertEquals(0, reader.getFrameCount());
+		reader.close();
+		uploader.shutdown();
+	}
+
+	@Test
+	public void keepsRecordingWhenAnotherConsumerFails() throws Exception {
+		File output = folder.newFile("recording.wav");
+		CollectingListener listener = new CollectingListener() {
+			@Override
+			public synchronized void onChunk(AudioChunk chunk) {
+				chunk.release();
+				throw new IllegalStateException("Consumer failed");
+			}
+		};
+		receiver = new AudioInputReceiver(new PacedSource(new ToneSource(8000, 1, 440, 0.5)), 800, output.toURI());
+		receiver.setListener(listener);
+		receiver.setStreamWhileRecording(true);
+		receiver.start();
+		receiver.startSession();
+		Thread.sleep(300);
+		receiver.stopSession();
+
+		long deadline = System.currentTimeMillis() + 10000;
+		synchronized (listener) {
+			while (listener.fileUrl == null) {
+				assertTrue("No file was recorded in time", System.currentTimeMillis() < deadline);
+				listener.wait(100);
+			}
+		}
+		// Reported once, after which the stream is left out
+		assertEquals(Collections.singletonList(new IllegalStateException("Consumer failed").toString()), listener.errors);
+
+		WavFileReader reader = new WavFileReader(output);
+		try {
+			assertTrue(reader.getFrameCount() >= 1600);
+			short[] recorded = new short[(int) reader.getFrameCount()];
+			reader.readSamples(0, recorded, 0, recorded.length);
+			short[] expected = new short[recorded.length];
+			new ToneSource(8000, 1, 440, 0.5).read(expected, 0, expected.length);
+			assertArrayEquals(expected, recorded);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void streamsWithoutAllocatingOnTheCaptureThread() throws Exception {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		final AtomicLong chunks = new AtomicLong();
+		receiver = start(new ToneSource(16000, 1, 440, 0.5), 320, null, new ListenerAdapter() {
+			@Override
+			public void onChunk(AudioChunk chunk) {
+				chunk.release();
+				chunks.incrementAndGet();
+			}
+		});
+		// Past the pool fill, class loading and compilation
+		awaitChunks(chunks, 20000);
+
+		long firstChunk = chunks.get();
+		long allocated = threads.getThreadAllocatedBytes(receiver.getId());
+		awaitChunks(chunks, firstChunk + 20000);
+		allocated = threads.getThreadAllocatedBytes(receiver.getId()) - allocated;
+		long streamed = chunks.get() - firstChunk;
+		receiver.stopSession();
+
+		assertTrue(allocated + " bytes for " + streamed + " chunks", allocated / streamed < 8);
+	}
+
+	private static void awaitChunks(AtomicLong chunks, long count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (chunks.get() < count) {
+			assertTrue("Only " + chunks.get() + " chunks streamed", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	static void awaitNoThread(String name) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (true) {
+			boolean running = false;
+			for (Thread thread : Thread.getAllStackTraces().keySet()) {
+				running |= thread.getName().equals(name);
+			}
+			if (!running) {
+				return;
+			}
+			assertTrue(name + " still running", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	private CollectingListener recordThenRelease(File output, String format) throws Exception {
+		CollectingListener listener = new CollectingListener();
+		receiver = new AudioInputReceiver(new PacedSource(new ToneSource(8000, 1, 440, 0.5)), 800, output.toURI());
+		receiver.setFileFormat(format);
+		receiver.setListener(listener);
+		receiver.start();
+		receiver.startSession();
+		Thread.sleep(300);
+		receiver.stopSession();
+		receiver.release();
+		receiver.join();
+		receiver = null;
+		return listener;
+	}
+
+	private static AudioInputReceiver start(PcmSource source, int bufferSize, URI fileUrl,
+		AudioInputReceiver.Listener listener) {
+
+		AudioInputReceiver receiver = new AudioInputReceiver(source, bufferSize, fileUrl);
+		receiver.setListener(listener);
+		receiver.setDataEncoding(AudioInputReceiver.DATA_ENCODING_BASE64);
+		receiver.start();
+		receiver.startSession();
+		return receiver;
+	}
+}
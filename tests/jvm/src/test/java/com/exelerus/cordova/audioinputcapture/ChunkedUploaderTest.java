@@ -0,0 +1,329 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * ChunkedUploader against a local stand-in for the upload server.
+ */
+public class ChunkedUploaderTest {
+
+	private static final int SEGMENT_SIZE = 1000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private HttpServer server;
+	private String url;
+	// Status codes to answer the next requests with, 200 when empty
+	private final Queue<Integer> statuses = new LinkedList<Integer>();
+	private final List<Request> requests = new ArrayList<Request>();
+	private final List<ChunkedUploader> uploaders = new ArrayList<ChunkedUploader>();
+
+	static class Request {
+		long time;
+		int status;
+		String offset;
+		String crc;
+		String complete;
+		String length;
+		byte[] body;
+	}
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/upload", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				Request request = new Request();
+				request.time = System.nanoTime();
+				request.offset = exchange.getRequestHeaders().getFirst("X-Upload-Offset");
+				request.crc = exchange.getRequestHeaders().getFirst("X-Upload-Crc32");
+				request.complete = exchange.getRequestHeaders().getFirst("X-Upload-Complete");
+				request.length = exchange.getRequestHeaders().getFirst("X-Upload-Length");
+				request.body = readAll(exchange.getRequestBody());
+				synchronized (requests) {
+					Integer status = statuses.poll();
+					request.status = status != null ? status : 200;
+					requests.add(request);
+					requests.notifyAll();
+				}
+				exchange.sendResponseHeaders(request.status, -1);
+				exchange.close();
+			}
+		});
+		server.start();
+		url = "http://127.0.0.1:" + server.getAddress().getPort() + "/upload";
+	}
+
+	@After
+	public void stop() {
+		for (ChunkedUploader uploader : uploaders) {
+			uploader.shutdown();
+		}
+		server.stop(0);
+	}
+
+	@Test
+	public void retriesWithBackoff() throws Exception {
+		statuses.add(503);
+		statuses.add(500);
+		ChunkedUploader uploader = uploader();
+		byte[] recorded = record(uploader, 2500, true);
+
+		List<Request> received = awaitRequests(6);
+		assertEquals(503, received.get(0).status);
+		assertEquals(500, received.get(1).status);
+		assertEquals(2, uploader.getRetries());
+		// 20 ms, then twice that
+		assertTrue(received.get(1).time - received.get(0).time >= 20000000L);
+		assertTrue(received.get(2).time - received.get(1).time >= 40000000L);
+
+		assertEquals(recorded.length, uploaded(received).length);
+		assertArrayEquals(recorded, uploaded(received));
+		Request last = received.get(received.size() - 1);
+		assertEquals("true", last.complete);
+		assertEquals(Long.toString(recorded.length), last.length);
+		awaitCompleted(uploader, 1);
+	}
+
+	@Test
+	public void failsTheUploadOnAClientError() throws Exception {
+		statuses.add(403);
+		// A credential in the query, which the error mustn't show
+		url += "?key=secret";
+		ChunkedUploader uploader = uploader();
+		record(uploader, 2500, true);
+
+		awaitRequests(1);
+		Thread.sleep(300);
+		synchronized (requests) {
+			assertEquals(1, requests.size());
+		}
+		assertEquals(0, uploader.getRetries());
+		assertEquals(1, uploader.getUploadsFailed());
+		assertTrue(uploader.getLastError(), uploader.getLastError().contains("403"));
+		assertFalse(uploader.getLastError(), uploader.getLastError().contains("secret"));
+
+		// Its spool is deleted, so it isn't picked up again after a restart either
+		assertEquals(0, uploader.getPendingSegments());
+		assertEquals(0, new File(folder.getRoot(), "uploads").list().length);
+		assertTrue(uploader().resume().isEmpty());
+	}
+
+	@Test
+	public void discardsWhatIsRecordedAfterTheUploadFailed() throws Exception {
+		statuses.add(403);
+		ChunkedUploader uploader = uploader();
+		UploadSpoolWriter writer = uploader.startUpload(url, Collections.<String, String>emptyMap(), 16000, 1,
+			SEGMENT_SIZE);
+		short[] samples = new short[SEGMENT_SIZE / 2];
+		writer.write(samples, samples.length);
+		awaitRequests(1);
+
+		// The recording carries on into the failed spool, whose segments don't stay
+		writer.write(samples, samples.length);
+		writer.write(samples, samples.length);
+		awaitPending(uploader, 0);
+		File spool = writer.getFile();
+		assertTrue(spool.exists());
+
+		writer.close();
+		long deadline = System.currentTimeMillis() + 10000;
+		while (spool.exists()) {
+			assertTrue("The spool is still there", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+		synchronized (requests) {
+			assertEquals(1, requests.size());
+		}
+	}
+
+	@Test
+	public void resumesAfterAKill() throws Exception {
+		ChunkedUploader uploader = uploader();
+		// Two segments sent, and a third one cut off by the kill
+		byte[] recorded = record(uploader, 2300, false);
+		awaitRequests(2);
+		awaitPending(uploader, 0);
+		kill(uploader);
+
+		ChunkedUploader restarted = uploader();
+		assertEquals(1, restarted.resume().size());
+		List<Request> received = awaitRequests(4);
+		assertArrayEquals(recorded, uploaded(received));
+		assertEquals(Long.toString(recorded.length), received.get(3).length);
+		awaitCompleted(restarted, 1);
+	}
+
+	@Test
+	public void resumesWithTheLengthOfAcknowledgedSegments() throws Exception {
+		ChunkedUploader uploader = uploader();
+		// Killed after every segment written so far was acknowledged and deleted
+		byte[] recorded = record(uploader, 2000, false);
+		awaitRequests(2);
+		awaitPending(uploader, 0);
+		kill(uploader);
+
+		ChunkedUploader restarted = uploader();
+		assertEquals(1, restarted.resume().size());
+		List<Request> received = awaitRequests(3);
+		assertEquals("true", received.get(2).complete);
+		assertEquals(Long.toString(recorded.length), received.get(2).length);
+		awaitCompleted(restarted, 1);
+	}
+
+	@Test
+	public void resumeLeavesTheUploadsOfThisRunAlone() throws Exception {
+		ChunkedUploader uploader = uploader();
+		UploadSpoolWriter writer = uploader.startUpload(url, Collections.<String, String>emptyMap(), 16000, 1,
+			SEGMENT_SIZE);
+		// Half a segment, still being written
+		short[] samples = new short[SEGMENT_SIZE / 4];
+		writer.write(samples, samples.length);
+
+		assertTrue(uploader.resume().isEmpty());
+		assertTrue(writer.segmentFile(0, true).exists());
+
+		writer.write(samples, samples.length);
+		writer.close();
+		List<Request> received = awaitRequests(2);
+		assertEquals(SEGMENT_SIZE, uploaded(received).length);
+		assertEquals(Integer.toString(SEGMENT_SIZE), received.get(1).length);
+		awaitCompleted(uploader, 1);
+	}
+
+	private ChunkedUploader uploader() {
+		ChunkedUploader uploader = new ChunkedUploader(new File(folder.getRoot(), "uploads"));
+		uploader.setRetryDelays(20, 1000);
+		uploaders.add(uploader);
+		return uploader;
+	}
+
+	/**
+	 * Spool a ramp of mono samples, and finish the recording if close is set.
+	 *
+	 * @return The bytes the server should end up with.
+	 */
+	private byte[] record(ChunkedUploader uploader, int bytes, boolean close) throws IOException {
+		UploadSpoolWriter writer = uploader.startUpload(url, Collections.singletonMap("Authorization", "Bearer x"),
+			16000, 1, SEGMENT_SIZE);
+		short[] samples = new short[bytes / 2];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = (short) i;
+		}
+		writer.write(samples, samples.length);
+		if (close) {
+			writer.close();
+		}
+
+		byte[] expected = new byte[samples.length * 2];
+		PcmEncoder.toLittleEndian(samples, samples.length, expected);
+		return expected;
+	}
+
+	/**
+	 * The bodies of the accepted segment requests, in the order of their offsets.
+	 */
+	private static byte[] uploaded(List<Request> received) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (Request request : received) {
+			if (request.status == 200 && request.offset != null) {
+				assertEquals(Integer.toString(out.size()), request.offset);
+				out.write(request.body, 0, request.body.length);
+			}
+		}
+		return out.toByteArray();
+	}
+
+	private List<Request> awaitRequests(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		synchronized (requests) {
+			while (requests.size() < count) {
+				long left = deadline - System.currentTimeMillis();
+				assertTrue("got " + requests.size() + " of " + count + " requests", left > 0);
+				requests.wait(left);
+			}
+			return new ArrayList<Request>(requests);
+		}
+	}
+
+	private static void awaitCompleted(ChunkedUploader uploader, long count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (uploader.getUploadsCompleted() < count) {
+			assertTrue("uploads completed: " + uploader.getUploadsCompleted(), System.currentTimeMillis() < deadline);
+			Thread.sleep(5);
+		}
+		assertEquals(0, uploader.getPendingSegments());
+	}
+
+	/**
+	 * Stop the uploader as the app being killed would, leaving nothing of it running.
+	 */
+	private static void kill(ChunkedUploader uploader) throws InterruptedException {
+		uploader.shutdown();
+		assertTrue(uploader.awaitTermination(10, TimeUnit.SECONDS));
+	}
+
+	private static void awaitPending(ChunkedUploader uploader, int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (uploader.getPendingSegments() != count) {
+			assertTrue("pending segments: " + uploader.getPendingSegments(), System.currentTimeMillis() < deadline);
+			Thread.sleep(5);
+		}
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		for (int read; (read = in.read(buffer)) > 0; ) {
+			out.write(buffer, 0, read);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+}
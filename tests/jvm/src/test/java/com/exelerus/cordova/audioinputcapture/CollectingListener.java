@@ -0,0 +1,145 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a copy of everything a capture session produces, for tests to wait for and inspect.
+ */
+class CollectingListener implements AudioInputReceiver.Listener {
+
+	static final class Chunk {
+		final short[] samples;
+		final long sequence;
+		final long framePosition;
+		final int frames;
+		final long captureTime;
+
+		Chunk(AudioChunk chunk) {
+			samples = Arrays.copyOf(chunk.samples, chunk.length);
+			sequence = chunk.sequence;
+			framePosition = chunk.framePosition;
+			frames = chunk.frames;
+			captureTime = chunk.captureTime;
+		}
+	}
+
+	static final class Gap {
+		final long framePosition;
+		final long lostFrames;
+		final boolean estimated;
+
+		Gap(long framePosition, long lostFrames, boolean estimated) {
+			this.framePosition = framePosition;
+			this.lostFrames = lostFrames;
+			this.estimated = estimated;
+		}
+	}
+
+	final List<Chunk> chunks = new ArrayList<Chunk>();
+	final List<Gap> gaps = new ArrayList<Gap>();
+	final List<String> errors = new ArrayList<String>();
+	String fileUrl;
+	String[] segmentUrls;
+	int samples;
+
+	@Override
+	public synchronized void onChunk(AudioChunk chunk) {
+		chunks.add(new Chunk(chunk));
+		samples += chunk.length;
+		chunk.release();
+		notifyAll();
+	}
+
+	@Override
+	public void onSilence(int silentMillis) {
+	}
+
+	@Override
+	public void onLevels(LevelReport report) {
+		report.release();
+	}
+
+	@Override
+	public void onFeatures(FeatureReport report) {
+		report.release();
+	}
+
+	@Override
+	public synchronized void onGap(long framePosition, long lostFrames, double duration, boolean estimated) {
+		gaps.add(new Gap(framePosition, lostFrames, estimated));
+	}
+
+	@Override
+	public synchronized void onFileRecorded(String fileUrl, String[] segmentUrls) {
+		this.fileUrl = fileUrl;
+		this.segmentUrls = segmentUrls;
+		notifyAll();
+	}
+
+	@Override
+	public synchronized void onError(String message) {
+		errors.add(message);
+		notifyAll();
+	}
+
+	/**
+	 * Wait until at least count samples have been streamed.
+	 */
+	synchronized void awaitSamples(int count) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (samples < count && errors.isEmpty()) {
+			long left = deadline - System.nanoTime();
+			if (left <= 0) {
+				throw new AssertionError("Got " + samples + " of " + count + " samples in time");
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, left);
+		}
+	}
+
+	synchronized void awaitFile() throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (fileUrl == null && errors.isEmpty()) {
+			long left = deadline - System.nanoTime();
+			if (left <= 0) {
+				throw new AssertionError("No file was recorded in time");
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, left);
+		}
+	}
+
+	/**
+	 * The samples of all chunks so far, in order.
+	 */
+	synchronized short[] streamed() {
+		short[] all = new short[samples];
+		int offset = 0;
+		for (Chunk chunk : chunks) {
+			System.arraycopy(chunk.samples, 0, all, offset, chunk.samples.length);
+			offset += chunk.samples.length;
+		}
+		return all;
+	}
+}
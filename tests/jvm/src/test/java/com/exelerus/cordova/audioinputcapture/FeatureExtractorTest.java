@@ -0,0 +1,108 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * Compares process() with golden vectors from scripts/generate_feature_fixtures.py.
+ */
+public class FeatureExtractorTest {
+
+	// In natural log units, for float arithmetic against the double precision fixtures
+	private static final double TOLERANCE = 1e-4;
+
+	@Test
+	public void logMelMatchesFixture() throws Exception {
+		assertMatchesFixture("logmel-512");
+	}
+
+	@Test
+	public void mfccMatchesFixture() throws Exception {
+		assertMatchesFixture("mfcc-400");
+	}
+
+	private static void assertMatchesFixture(String name) throws Exception {
+		JSONObject fixture = load(name);
+		JSONArray samples = fixture.getJSONArray("samples");
+		JSONArray expected = fixture.getJSONArray("frames");
+
+		FeatureExtractor extractor = new FeatureExtractor(fixture.getString("type"), fixture.getInt("sampleRate"), 1,
+			fixture.getInt("windowLength"), fixture.getInt("hop"), fixture.getInt("bands"),
+			fixture.getInt("mfccCount"), fixture.getDouble("minFrequency"), fixture.getDouble("maxFrequency"), 3);
+		final List<float[]> frames = new ArrayList<float[]>();
+		FeatureExtractor.Listener listener = new FeatureExtractor.Listener() {
+			@Override
+			public void onFeatures(FeatureReport report) {
+				for (int f = 0; f < report.frames; f++) {
+					float[] frame = new float[report.size];
+					System.arraycopy(report.values, f * report.size, frame, 0, report.size);
+					frames.add(frame);
+				}
+				report.release();
+			}
+		};
+
+		// In uneven blocks, as the capture loop would pass them
+		short[] block = new short[337];
+		for (int offset = 0; offset < samples.length(); offset += block.length) {
+			int count = Math.min(block.length, samples.length() - offset);
+			for (int i = 0; i < count; i++) {
+				block[i] = (short) samples.getInt(offset + i);
+			}
+			extractor.process(block, count, listener);
+		}
+		extractor.flush(listener);
+
+		assertEquals(name + " frames", expected.length(), frames.size());
+		for (int f = 0; f < frames.size(); f++) {
+			JSONArray row = expected.getJSONArray(f);
+			assertEquals(row.length(), frames.get(f).length);
+			for (int i = 0; i < row.length(); i++) {
+				assertEquals(name + " frame " + f + " value " + i, row.getDouble(i), frames.get(f)[i], TOLERANCE);
+			}
+		}
+	}
+
+	private static JSONObject load(String name) throws Exception {
+		InputStream in = FeatureExtractorTest.class.getResourceAsStream("/features/" + name + ".json");
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			for (int read; (read = in.read(buffer)) > 0; ) {
+				out.write(buffer, 0, read);
+			}
+			return new JSONObject(new String(out.toByteArray(), StandardCharsets.UTF_8));
+		}
+		finally {
+			in.close();
+		}
+	}
+}
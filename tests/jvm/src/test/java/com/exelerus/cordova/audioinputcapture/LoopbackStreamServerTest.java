@@ -0,0 +1,206 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.Charset;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * LoopbackStreamServer with raw socket clients.
+ */
+public class LoopbackStreamServerTest {
+
+	private static final int CHANNELS = 2;
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private LoopbackStreamServer server;
+
+	static class Frame {
+		int opcode;
+		byte[] payload;
+	}
+
+	@Before
+	public void startServer() throws IOException {
+		server = new LoopbackStreamServer(0);
+		server.setFormat(44100, CHANNELS);
+		server.start();
+	}
+
+	@After
+	public void closeServer() {
+		server.close();
+	}
+
+	@Test
+	public void aSilentConnectionDoesntHoldUpTheNextClient() throws Exception {
+		Socket silent = new Socket("127.0.0.1", server.getPort());
+		try {
+			long start = System.nanoTime();
+			Socket client = connect();
+			long millis = (System.nanoTime() - start) / 1000000;
+			client.close();
+			assertTrue("Answered after " + millis + " ms", millis < 1000);
+		}
+		finally {
+			silent.close();
+		}
+	}
+
+	@Test
+	public void answersPingAndClose() throws Exception {
+		Socket client = connect();
+		try {
+			InputStream in = client.getInputStream();
+
+			sendMasked(client, 0x9, "hello".getBytes(ASCII));
+			Frame pong = readFrame(in);
+			assertEquals(0xa, pong.opcode);
+			assertArrayEquals("hello".getBytes(ASCII), pong.payload);
+
+			// 1000, a normal closure
+			sendMasked(client, 0x8, new byte[] {0x03, (byte) 0xe8});
+			Frame close = readFrame(in);
+			assertEquals(0x8, close.opcode);
+			assertArrayEquals(new byte[] {0x03, (byte) 0xe8}, close.payload);
+			assertEquals("The server closes the connection after the handshake", -1, in.read());
+		}
+		finally {
+			client.close();
+		}
+	}
+
+	@Test
+	public void webSocketMessagesTellWhereFramesWereDropped() throws Exception {
+		Socket client = connect();
+		try {
+			// Blocks larger than the queue, so that the end of each one is likely to find the pool empty
+			short[] block = new short[32 * 8192];
+			InputStream in = client.getInputStream();
+			long offered = 0;
+			long expected = 1000;
+			long received = 0;
+			long gaps = 0;
+			for (int i = 0; i < 4; i++) {
+				server.offer(block, block.length, 1000 + offered);
+				offered += block.length / CHANNELS;
+
+				while (received + server.getDroppedFrames() < offered) {
+					Frame message = readFrame(in);
+					assertEquals(0x2, message.opcode);
+					long position = 0;
+					for (int b = 7; b >= 0; b--) {
+						position = (position << 8) | (message.payload[b] & 0xff);
+					}
+					assertTrue("Position " + position + " before " + expected, position >= expected);
+					gaps += position - expected;
+					long frames = (message.payload.length - 8) / (2 * CHANNELS);
+					received += frames;
+					expected = position + frames;
+				}
+			}
+
+			assertEquals(offered, received + server.getDroppedFrames());
+			// Only frames dropped at the end of the last block have no later message to show the jump
+			assertTrue(gaps <= server.getDroppedFrames());
+			assertEquals(server.getDroppedFrames(), 1000 + offered - expected + gaps);
+		}
+		finally {
+			client.close();
+		}
+	}
+
+	/**
+	 * Open a WebSocket to the server and wait until it streams to it.
+	 */
+	private Socket connect() throws IOException, InterruptedException {
+		Socket client = new Socket("127.0.0.1", server.getPort());
+		client.setSoTimeout(10000);
+		client.getOutputStream().write(("GET " + new URL(server.getUrl()).getFile() + " HTTP/1.1\r\n"
+			+ "Host: 127.0.0.1\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+			+ "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\nSec-WebSocket-Version: 13\r\n\r\n").getBytes(ASCII));
+
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		InputStream in = client.getInputStream();
+		while (!response.toString("US-ASCII").endsWith("\r\n\r\n")) {
+			int read = in.read();
+			if (read < 0) {
+				throw new IOException("No response");
+			}
+			response.write(read);
+		}
+		assertTrue(response.toString("US-ASCII"), response.toString("US-ASCII").startsWith("HTTP/1.1 101 "));
+
+		// The response is written just before the client is handed the stream
+		while (!server.hasClient()) {
+			Thread.sleep(1);
+		}
+		return client;
+	}
+
+	private static void sendMasked(Socket client, int opcode, byte[] payload) throws IOException {
+		byte[] mask = {0x12, 0x34, 0x56, 0x78};
+		byte[] frame = new byte[6 + payload.length];
+		frame[0] = (byte) (0x80 | opcode);
+		frame[1] = (byte) (0x80 | payload.length);
+		System.arraycopy(mask, 0, frame, 2, 4);
+		for (int i = 0; i < payload.length; i++) {
+			frame[6 + i] = (byte) (payload[i] ^ mask[i & 3]);
+		}
+		client.getOutputStream().write(frame);
+	}
+
+	private static Frame readFrame(InputStream in) throws IOException {
+		Frame frame = new Frame();
+		byte[] header = readFully(in, 2);
+		frame.opcode = header[0] & 0x0f;
+		int length = header[1] & 0x7f;
+		if (length == 126) {
+			byte[] extended = readFully(in, 2);
+			length = ((extended[0] & 0xff) << 8) | (extended[1] & 0xff);
+		}
+		frame.payload = readFully(in, length);
+		return frame;
+	}
+
+	private static byte[] readFully(InputStream in, int length) throws IOException {
+		byte[] buffer = new byte[length];
+		for (int offset = 0; offset < length; ) {
+			int read = in.read(buffer, offset, length - offset);
+			if (read < 0) {
+				throw new IOException("Connection closed");
+			}
+			offset += read;
+		}
+		return buffer;
+	}
+}
@@ -0,0 +1,134 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public class PcmRingBufferTest {
+
+	private static final int CHANNELS = 2;
+	private static final int READERS = 4;
+	private static final long SAMPLES = 50000000;
+
+	@Test(expected = IllegalArgumentException.class)
+	public void refusesARingLargerThanTheHeapAllows() {
+		double seconds = Runtime.getRuntime().maxMemory() / 4.0 / (48000 * CHANNELS * 2) + 1;
+		new PcmRingBuffer(48000, CHANNELS, seconds, 512);
+	}
+
+	/**
+	 * One thread writes the sample index as a 16 bit pattern in blocks of varying length, while several others take
+	 * snapshots of varying length. Every snapshot must be a contiguous run of the pattern that starts on a frame.
+	 */
+	@Test
+	public void snapshotsAreContiguousWhileWriting() throws Exception {
+		// A small ring, so that the writer keeps overtaking the snapshots
+		final PcmRingBuffer buffer = new PcmRingBuffer(16000, CHANNELS, 0.01, 512);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final long[] taken = new long[READERS];
+		final long[] partial = new long[READERS];
+
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				Random random = new Random(1);
+				short[] block = new short[512];
+				long next = 0;
+				while (next < SAMPLES && failure.get() == null) {
+					int length = (1 + random.nextInt(block.length / CHANNELS)) * CHANNELS;
+					for (int i = 0; i < length; i++) {
+						block[i] = (short) next++;
+					}
+					buffer.write(block, length);
+				}
+			}
+		};
+
+		List<Thread> readers = new ArrayList<Thread>();
+		for (int r = 0; r < READERS; r++) {
+			final int reader = r;
+			readers.add(new Thread() {
+				@Override
+				public void run() {
+					Random random = new Random(100 + reader);
+					short[] dest = new short[buffer.getCapacity()];
+					try {
+						while (buffer.getWritten() < SAMPLES && failure.get() == null) {
+							int max = 1 + random.nextInt(dest.length);
+							int count = snapshot(buffer, dest, max);
+							taken[reader]++;
+							if (count < max - max % CHANNELS) {
+								partial[reader]++;
+							}
+						}
+					}
+					catch (Throwable ex) {
+						failure.compareAndSet(null, ex);
+					}
+				}
+			});
+		}
+
+		writer.start();
+		for (Thread thread : readers) {
+			thread.start();
+		}
+		writer.join();
+		for (Thread thread : readers) {
+			thread.join();
+		}
+
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		for (int r = 0; r < READERS; r++) {
+			assertTrue("reader " + r + " took " + taken[r] + " snapshots", taken[r] > 1000);
+		}
+		long overtaken = 0;
+		for (long count : partial) {
+			overtaken += count;
+		}
+		assertTrue("no snapshot was overtaken by the writer", overtaken > 0);
+	}
+
+	private static int snapshot(PcmRingBuffer buffer, short[] dest, int max) {
+		int count = buffer.snapshot(dest, max);
+		assertTrue(count >= 0 && count <= max);
+		assertEquals("snapshot of " + count + " samples", 0, count % CHANNELS);
+		if (count == 0) {
+			return 0;
+		}
+		assertEquals("snapshot starts within a frame", 0, dest[0] % CHANNELS);
+		for (int i = 1; i < count; i++) {
+			if ((short) (dest[i - 1] + 1) != dest[i]) {
+				throw new AssertionError("sample " + i + " of " + count + " is " + dest[i] + " after " + dest[i - 1]);
+			}
+		}
+		return count;
+	}
+}
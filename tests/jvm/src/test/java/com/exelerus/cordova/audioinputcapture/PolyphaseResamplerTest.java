@@ -0,0 +1,126 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PolyphaseResamplerTest {
+
+	private static final double AMPLITUDE = 30000;
+
+	@Test
+	public void downsamples44100To16000() {
+		assertFilter(44100, 16000);
+	}
+
+	@Test
+	public void downsamples48000To8000() {
+		assertFilter(48000, 8000);
+	}
+
+	/**
+	 * Tones up to 0.45 of the output rate come through with at most 0.1 dB ripple, and tones from the output
+	 * Nyquist frequency up to the input one are rejected by at least 60 dB.
+	 */
+	private static void assertFilter(int inputRate, int outputRate) {
+		double min = Double.MAX_VALUE;
+		double max = -Double.MAX_VALUE;
+		for (double f = 20; f <= 0.45 * outputRate; f += 0.45 * outputRate / 40) {
+			double gain = passbandGain(inputRate, outputRate, f);
+			min = Math.min(min, gain);
+			max = Math.max(max, gain);
+		}
+		assertTrue("passband ripple " + (max - min) + " dB", max - min < 0.1);
+		assertTrue("passband gain " + min + " to " + max + " dB", min > -0.1 && max < 0.1);
+
+		for (double f = 0.5 * outputRate; f < 0.5 * inputRate; f += 0.5 * (inputRate - outputRate) / 60) {
+			double rejection = stopbandRejection(inputRate, outputRate, f);
+			assertTrue("rejection at " + f + " Hz is " + rejection + " dB", rejection >= 60);
+		}
+	}
+
+	/**
+	 * Gain in dB of a tone, fitted to the output at the tone's frequency.
+	 */
+	private static double passbandGain(int inputRate, int outputRate, double frequency) {
+		double[] output = resampleTone(inputRate, outputRate, frequency);
+		double w = 2 * Math.PI * frequency / outputRate;
+		double ss = 0, sc = 0, cc = 0, ys = 0, yc = 0;
+		for (int i = 0; i < output.length; i++) {
+			double s = Math.sin(w * i);
+			double c = Math.cos(w * i);
+			ss += s * s;
+			sc += s * c;
+			cc += c * c;
+			ys += output[i] * s;
+			yc += output[i] * c;
+		}
+		double det = ss * cc - sc * sc;
+		double a = (ys * cc - yc * sc) / det;
+		double b = (yc * ss - ys * sc) / det;
+		return 20 * Math.log10(Math.hypot(a, b) / AMPLITUDE);
+	}
+
+	/**
+	 * Attenuation in dB of everything the tone leaves in the output.
+	 */
+	private static double stopbandRejection(int inputRate, int outputRate, double frequency) {
+		double[] output = resampleTone(inputRate, outputRate, frequency);
+		double energy = 0;
+		for (double value : output) {
+			energy += value * value;
+		}
+		double rms = Math.sqrt(energy / output.length);
+		return 20 * Math.log10(AMPLITUDE / Math.sqrt(2) / rms);
+	}
+
+	/**
+	 * Half a second of a tone resampled in uneven blocks, without the filter's start-up and tail.
+	 */
+	private static double[] resampleTone(int inputRate, int outputRate, double frequency) {
+		PolyphaseResampler resampler = new PolyphaseResampler(inputRate, outputRate, 1);
+		short[] input = new short[inputRate / 2];
+		for (int i = 0; i < input.length; i++) {
+			input[i] = (short) Math.round(AMPLITUDE * Math.sin(2 * Math.PI * frequency * i / inputRate));
+		}
+
+		short[] output = new short[resampler.maxOutputLength(input.length)];
+		int length = 0;
+		short[] block = new short[1001];
+		for (int offset = 0; offset < input.length; offset += block.length) {
+			int count = Math.min(block.length, input.length - offset);
+			System.arraycopy(input, offset, block, 0, count);
+			short[] out = new short[resampler.maxOutputLength(count)];
+			int written = resampler.process(block, count, out);
+			System.arraycopy(out, 0, output, length, written);
+			length += written;
+		}
+
+		int skip = (int) ((long) PolyphaseResampler.tapsPerPhase(inputRate, outputRate) * outputRate / inputRate) + 1;
+		double[] steady = new double[length - 2 * skip];
+		for (int i = 0; i < steady.length; i++) {
+			steady[i] = output[skip + i];
+		}
+		return steady;
+	}
+}
@@ -0,0 +1,80 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SegmentedFileWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void recoverLeavesTheSegmentBeingWrittenAlone() throws Exception {
+		File directory = folder.getRoot();
+		SegmentedFileWriter writer = new SegmentedFileWriter(new File(directory, "rec.wav"), 16000, 1, 0, 3200);
+		short[] samples = new short[8000];
+		Arrays.fill(samples, (short) 1000);
+		writer.write(samples, samples.length);
+
+		File active = new File(directory, "rec-001.wav.part");
+		assertTrue(active.isFile());
+		long length = active.length();
+
+		// A segment cut off by an earlier run, with its index, and the index of one that is gone
+		File cutOff = new File(directory, "old-001.wav.part");
+		Files.copy(active.toPath(), cutOff.toPath());
+		File cutOffPeaks = PeakFile.fileFor(cutOff);
+		File orphanPeaks = new File(directory, "gone-001.wav.part" + PeakFile.SUFFIX);
+		assertTrue(cutOffPeaks.createNewFile());
+		assertTrue(orphanPeaks.createNewFile());
+
+		List<File> recovered = SegmentedFileWriter.recover(directory);
+
+		assertEquals(Collections.singletonList(new File(directory, "old-001.wav").getAbsoluteFile()), recovered);
+		assertTrue(active.isFile());
+		assertEquals(length, active.length());
+		assertFalse(cutOff.exists());
+		assertFalse(cutOffPeaks.exists());
+		assertFalse(orphanPeaks.exists());
+
+		writer.write(samples, samples.length);
+		writer.close();
+		File complete = new File(directory, "rec-001.wav");
+		assertEquals(Collections.singletonList(complete.getAbsoluteFile()), writer.getSegments());
+		WavFileReader reader = new WavFileReader(complete);
+		assertEquals(16000, reader.getFrameCount());
+		reader.close();
+
+		assertTrue(SegmentedFileWriter.recover(directory).isEmpty());
+	}
+}
@@ -0,0 +1,91 @@
+/*
+License (MIT)
+
+Copyright © 2016 Edin Mujkanovic
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all copies or substantial portions of
+the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+DEALINGS IN THE SOFTWARE.
+*/
+
+package com.exelerus.cordova.audioinputcapture;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WavPostProcessorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static ForkJoinPool pool;
+
+	@BeforeClass
+	public static void createPool() {
+		pool = new ForkJoinPool(4);
+	}
+
+	@AfterClass
+	public static void shutDownPool() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void resamplesInSegmentsLikeInOneGo() throws Exception {
+		assertSegmentedResampling(44100, 16000, 2);
+		assertSegmentedResampling(48000, 8000, 1);
+		assertSegmentedResampling(16000, 44100, 1);
+	}
+
+	private void assertSegmentedResampling(int inputRate, int outputRate, int channels) throws Exception {
+		short[] samples = new short[inputRate * 3 * channels];
+		Random random = new Random(inputRate);
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = (short) (random.nextGaussian() * 4000);
+		}
+		File input = folder.newFile();
+		WavFileWriter writer = new WavFileWriter(input, inputRate, channels);
+		writer.write(samples, samples.length);
+		writer.close();
+
+		File output = folder.newFile();
+		WavPostProcessor processor = new WavPostProcessor(pool, input, output);
+		processor.setOutputFormat(AudioInputReceiver.FILE_FORMAT_WAV, outputRate);
+		processor.setSegmentFrames(inputRate / 10);
+		WavPostProcessor.Result result = processor.run(null);
+
+		PolyphaseResampler resampler = new PolyphaseResampler(inputRate, outputRate, channels);
+		short[] expected = new short[resampler.maxOutputLength(samples.length)];
+		int length = resampler.process(samples, samples.length, expected);
+
+		WavFileReader reader = new WavFileReader(output);
+		short[] rendered = new short[(int) reader.getFrameCount() * channels];
+		reader.readSamples(0, rendered, 0, rendered.length);
+		reader.close();
+
+		assertEquals(outputRate, result.outputSampleRate);
+		assertEquals(length / channels, result.outputFrames);
+		short[] trimmed = new short[length];
+		System.arraycopy(expected, 0, trimmed, 0, length);
+		assertArrayEquals(inputRate + " -> " + outputRate, trimmed, rendered);
+	}
+}
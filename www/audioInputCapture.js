@@ -29,6 +29,27 @@ audioinput.FORMAT = {
     PCM_8BIT: 'PCM_8BIT'
 };
 
+// How audio data is transferred from the native layer (Android only, other platforms always use JSON)
+audioinput.DATA_ENCODING = {
+    JSON: 'json',
+    BASE64: 'base64',
+    FLOAT32: 'float32'
+};
+
+// Container formats for recording to a file (Android only, other platforms always write WAV)
+audioinput.FILE_FORMAT = {
+    WAV: 'wav',
+    FLAC: 'flac',
+    AAC: 'aac'
+};
+
+// Features computed natively for on-device models (Android only)
+audioinput.FEATURES = {
+    NONE: null,
+    LOG_MEL: 'logmel',
+    MFCC: 'mfcc'
+};
+
 // Number of audio channels
 audioinput.CHANNELS = {
     MONO: 1,
@@ -68,11 +89,60 @@ audioinput.DEFAULT = {
     STREAM_TO_WEBAUDIO: false,
     CONCATENATE_MAX_CHUNKS: 10,
     AUDIOSOURCE_TYPE: audioinput.AUDIOSOURCE_TYPE.DEFAULT,
+    DATA_ENCODING: audioinput.DATA_ENCODING.JSON,
+    VAD: false,
+    VAD_THRESHOLD: -45,
+    VAD_HYSTERESIS: 6,
+    VAD_PRE_ROLL: 300,
+    VAD_HANGOVER: 500,
+    VAD_SILENCE_INTERVAL: 1000,
+    VAD_SKIP_SILENCE: false,
+    METERING_RATE: 0,
+    SPECTRUM_SIZE: 0,
+    METERING_ONLY: false,
+    FEATURES: null,
+    FEATURE_WINDOW: 25,
+    FEATURE_HOP: 10,
+    MEL_BANDS: 40,
+    MFCC_COUNT: 13,
+    MEL_MIN_FREQUENCY: 20,
+    MEL_MAX_FREQUENCY: 0,
+    FEATURE_BATCH: 10,
+    FEATURES_ONLY: false,
+    BATCH_LATENCY: 0,
+    MAX_BATCH_CHUNKS: 8,
+    GAP_TOLERANCE: 10,
+    RING_BUFFER_SECONDS: 0,
+    STREAM_WHILE_RECORDING: false,
+    LOW_LATENCY: false,
+    SEGMENT_DURATION: 0,
+    SEGMENT_SIZE: 0,
+    CHECKPOINT_INTERVAL: 0,
+    PEAK_INDEX: false,
+    HIGH_PASS_FREQUENCY: 0,
+    NOISE_GATE: false,
+    NOISE_GATE_THRESHOLD: -50,
+    AGC: false,
+    AGC_TARGET: -18,
+    AGC_MAX_GAIN: 24,
+    LIMITER: false,
+    LIMITER_CEILING: -1,
+    STREAM_SERVER: false,
+    STREAM_SERVER_PORT: 0,
+    UPLOAD_URL: null,
+    UPLOAD_SEGMENT_SIZE: 262144,
+    UPLOAD_HEADERS: null,
+    FILE_FORMAT: audioinput.FILE_FORMAT.WAV,
     DEBUG: false
 };
 
 /**
  * Does any initialization that might be required.
+ * On Android, onComplete gets an object with:
+ *  streamUrl, webSocketUrl (With the streamServer option, where to read the audio from instead of audioinput events)
+ *  recoveredFiles (When cfg has a fileUrl, the recordings in its directory that were cut off by the app being
+ *                  killed, and have been repaired)
+ *  resumedUploads (Ids of the uploads left unfinished by an earlier run of the app, which carry on now)
  *
  * @param cfg
  * @param onComplete
@@ -85,7 +155,8 @@ audioinput.initialize = function (cfg, onComplete) {
             audioinput._cfg.channels,
             audioinput._cfg.format,
             audioinput._cfg.audioSourceType,
-            audioinput._cfg.fileUrl]);
+            audioinput._cfg.fileUrl,
+            audioinput._getNativeOptions()]);
 };
 
 
@@ -123,6 +194,34 @@ audioinput.getMicrophonePermission = function (onComplete) {
  *  audioContext (If no audioContext is given, one will be created)
  *  concatenateMaxChunks (How many packets will be merged each time, low = low latency but can require more resources)
  *  audioSourceType (Use audioinput.AUDIOSOURCE_TYPE)
+ *  dataEncoding (Use audioinput.DATA_ENCODING, 'base64' avoids the JSON text transfer of the audio data,
+ *                'float32' also moves the normalization to the native layer)
+ *  fileFormat (Use audioinput.FILE_FORMAT, the format of the file written when fileUrl is set)
+ *  outputSampleRate (Resample natively to this rate before the data is sent, Android only)
+ *  outputChannels (Mix stereo down to mono natively before the data is sent, Android only)
+ *  vad (Hold back silent chunks natively and fire audioinputsilence events instead, Android only)
+ *  vadThreshold, vadHysteresis, vadPreRoll, vadHangover, vadSilenceInterval, vadSkipSilence (Tuning of vad)
+ *  meteringRate (Fire audioinputlevels events this many times per second, 0 to disable, Android only)
+ *  spectrumSize (Include a magnitude spectrum of this many samples in the levels, a power of two or 0)
+ *  meteringOnly (Only send the levels and no audio data)
+ *  features (Fire audioinputfeatures events with audioinput.FEATURES.LOG_MEL or MFCC frames, Android only)
+ *  featureWindow, featureHop, melBands, mfccCount, melMinFrequency, melMaxFrequency, featureBatch, featuresOnly
+ *                (Tuning of features)
+ *  batchLatency (Gather chunks natively for up to this many ms and send them together, 0 to disable, Android only)
+ *  maxBatchChunks (Send a batch as soon as it holds this many chunks)
+ *  gapTolerance (How many ms capture times may jitter before audioinputgap reports lost audio, Android only)
+ *  ringBufferSeconds (Keep this many seconds of the latest audio natively for audioinput.snapshot, Android only)
+ *  streamWhileRecording (Also fire audioinput events while recording to fileUrl, Android only)
+ *  lowLatency (Capture at high priority in small reads at the device's native rate, Android only)
+ *  segmentDuration, segmentSize (Record WAV files in segments of at most this many seconds or bytes, Android only)
+ *  checkpointInterval (Complete the WAV header and sync the file every this many seconds of audio, Android only)
+ *  peakIndex (Build the peaks for audioinput.getWavPeaks while recording a WAV file, Android only)
+ *  highPassFrequency (Remove DC offset and rumble below this frequency natively, 0 to disable, Android only)
+ *  noiseGate, noiseGateThreshold (Mute the audio natively while it stays below the threshold in dBFS, Android only)
+ *  agc, agcTarget, agcMaxGain (Bring the level natively towards the target in dBFS, Android only)
+ *  limiter, limiterCeiling (Keep peaks natively below the ceiling in dBFS, Android only)
+ *  streamServer, streamServerPort (Serve the audio on localhost instead of firing audioinput events, Android only)
+ *  uploadUrl, uploadSegmentSize, uploadHeaders (Upload the audio in segments while recording, Android only)
  */
 audioinput.start = function (cfg) {
     if (audioinput._capturing) throw "Already capturing!";
@@ -135,7 +234,8 @@ audioinput.start = function (cfg) {
             audioinput._cfg.channels,
             audioinput._cfg.format,
             audioinput._cfg.audioSourceType,
-            audioinput._cfg.fileUrl]);
+            audioinput._cfg.fileUrl,
+            audioinput._getNativeOptions()]);
 
     audioinput._capturing = true;
 
@@ -170,6 +270,171 @@ audioinput.stop = function (onStopped) {
     audioinput._micGainNode = null;
 };
 
+/**
+ * Open the microphone ahead of time (Android only), so that start() with the same sampleRate, bufferSize, channels,
+ * audioSourceType and lowLatency begins delivering audio without the setup delay of the audio input. The engine
+ * keeps recording, and discarding the audio, between captures until release() is called.
+ * On other platforms this is the same as initialize().
+ *
+ * @param cfg The same configuration as for start().
+ * @param onComplete
+ */
+audioinput.prepare = function (cfg, onComplete) {
+    if (!audioinput._isAndroid()) {
+        audioinput.initialize(cfg, onComplete);
+        return;
+    }
+
+    audioinput._handleInputParameters(cfg);
+    exec(onComplete, audioinput._audioInputErrorEvent, "AudioInputCapture", "prepare",
+        [audioinput._cfg.sampleRate,
+            audioinput._cfg.bufferSize,
+            audioinput._cfg.channels,
+            audioinput._cfg.format,
+            audioinput._cfg.audioSourceType,
+            audioinput._cfg.fileUrl,
+            audioinput._getNativeOptions()]);
+};
+
+/**
+ * Pause capturing audio without closing the audio input (Android only). The audio captured while paused is discarded.
+ *
+ * @param onComplete
+ */
+audioinput.pause = function (onComplete) {
+    exec(onComplete, audioinput._audioInputErrorEvent, "AudioInputCapture", "pause", []);
+};
+
+/**
+ * Resume capturing audio after pause() (Android only).
+ *
+ * @param onComplete
+ */
+audioinput.resume = function (onComplete) {
+    exec(onComplete, audioinput._audioInputErrorEvent, "AudioInputCapture", "resume", []);
+};
+
+/**
+ * Close the audio input kept open by prepare() (Android only), stopping the capture first if there is one.
+ *
+ * @param onComplete
+ */
+audioinput.release = function (onComplete) {
+    if (!audioinput._isAndroid()) {
+        audioinput.stop(onComplete);
+        return;
+    }
+
+    if (audioinput._capturing) audioinput.stop();
+    exec(onComplete, audioinput._audioInputErrorEvent, "AudioInputCapture", "release", []);
+};
+
+/**
+ * Save the most recent audio kept by the ringBufferSeconds option as a WAV file, without stopping capture.
+ * Can also be called after capture has stopped, until it is started again.
+ *
+ * @param {number} seconds How much of the recent audio to save, at most ringBufferSeconds.
+ * @param {string} fileUrl The file to write, or null to get the WAV file's contents as an ArrayBuffer instead.
+ * @param onComplete Called with the URL of the file, or with the ArrayBuffer.
+ */
+audioinput.snapshot = function (seconds, fileUrl, onComplete) {
+    exec(onComplete, audioinput._audioInputErrorEvent, "AudioInputCapture", "snapshot",
+        [seconds, fileUrl || null]);
+};
+
+/**
+ * Get the format of a recorded WAV file (Android only): {sampleRate, channels, frames, duration}.
+ *
+ * @param {string} fileUrl
+ * @param onComplete
+ */
+audioinput.getWavInfo = function (fileUrl, onComplete) {
+    exec(onComplete, audioinput._audioInputErrorEvent, "AudioInputCapture", "getWavInfo", [fileUrl]);
+};
+
+/**
+ * Get a waveform overview of part of a recorded WAV file (Android only), at any zoom level. The peaks are kept
+ * in a .peaks file next to the recording, written while recording with the peakIndex option or otherwise built
+ * the first time they are asked for, and read natively from a memory mapping.
+ *
+ * @param {string} fileUrl
+ * @param {number} startFrame The first frame of the part.
+ * @param {number} endFrame The frame after the part, or null for the end of the file.
+ * @param {number} count Into how many equal parts to divide it, e.g. the width in pixels.
+ * @param onComplete Called with an Int16Array of count min, max, RMS triples, over all channels.
+ */
+audioinput.getWavPeaks = function (fileUrl, startFrame, endFrame, count, onComplete) {
+    exec(function (peaks) {
+        onComplete(new Int16Array(peaks));
+    }, audioinput._audioInputErrorEvent, "AudioInputCapture", "getWavPeaks",
+        [fileUrl, startFrame, endFrame === undefined ? null : endFrame, count]);
+};
+
+/**
+ * Get the samples of part of a recorded WAV file (Android only), read natively from a memory mapping.
+ *
+ * @param {string} fileUrl
+ * @param {number} startFrame
+ * @param {number} frameCount At most 16 MB worth of frames.
+ * @param onComplete Called with an Int16Array of the interleaved samples.
+ */
+audioinput.getWavSamples = function (fileUrl, startFrame, frameCount, onComplete) {
+    exec(function (samples) {
+        onComplete(new Int16Array(samples));
+    }, audioinput._audioInputErrorEvent, "AudioInputCapture", "getWavSamples", [fileUrl, startFrame, frameCount]);
+};
+
+/**
+ * Post-process a recorded WAV file natively (Android only), in parallel segments on all cores, into a new file:
+ * trim the silence at its ends, normalize its peak level, measure its loudness and convert it to another sample
+ * rate or file format. The input is left as it is.
+ *
+ * options:
+ *  trimThreshold, trimPadding (Trim the ends that stay below trimThreshold dBFS, keeping trimPadding seconds)
+ *  normalize (Scale the audio so that its peak is at this level in dBFS)
+ *  outputFormat (audioinput.FILE_FORMAT.WAV, FLAC or AAC)
+ *  outputSampleRate (Convert to this sample rate, 0 to keep the input's)
+ *
+ * @param {string} fileUrl
+ * @param {string} outputUrl
+ * @param {object} options
+ * @param onProgress Called with the fraction done, from 0 to 1.
+ * @param onComplete Called with {fileUrl, duration, trimStart, trimEnd, peak, loudness, gain} in seconds, dBFS,
+ *                   LUFS and dB, or with {cancelled: true}.
+ */
+audioinput.processWav = function (fileUrl, outputUrl, options, onProgress, onComplete) {
+    exec(function (result) {
+        if (result.progress !== undefined) {
+            if (onProgress) {
+                onProgress(result.progress);
+            }
+        }
+        else if (onComplete) {
+            onComplete(result);
+        }
+    }, audioinput._audioInputErrorEvent, "AudioInputCapture", "processWav", [fileUrl, outputUrl, options || {}]);
+};
+
+/**
+ * Cancel the processWav calls that are running (Android only). Their output files are deleted.
+ *
+ * @param onComplete
+ */
+audioinput.cancelProcessing = function (onComplete) {
+    exec(onComplete, audioinput._audioInputErrorEvent, "AudioInputCapture", "cancelProcessing", []);
+};
+
+/**
+ * Get counters and timings of the current or last capture session (Android only), to help diagnose choppy audio:
+ * frames captured, short, empty and failed reads with their AudioRecord error codes, how long reads blocked,
+ * estimated overruns, dropped chunks and how long delivery of the data took.
+ *
+ * @param onComplete Called with the stats object.
+ */
+audioinput.getStats = function (onComplete) {
+    exec(onComplete, audioinput._audioInputErrorEvent, "AudioInputCapture", "getStats", []);
+};
+
 /**
  * Connect the audio node
  *
@@ -248,6 +513,53 @@ audioinput._handleInputParameters = function (cfg) {
     audioinput._cfg.concatenateMaxChunks = cfg.concatenateMaxChunks || audioinput.DEFAULT.CONCATENATE_MAX_CHUNKS;
     audioinput._cfg.audioSourceType = cfg.audioSourceType || 0;
     audioinput._cfg.fileUrl = cfg.fileUrl || null;
+    audioinput._cfg.dataEncoding = cfg.dataEncoding || audioinput.DEFAULT.DATA_ENCODING;
+    audioinput._cfg.fileFormat = cfg.fileFormat || audioinput.DEFAULT.FILE_FORMAT;
+    // Native conversion is only done on Android, elsewhere the data keeps the captured format
+    audioinput._cfg.outputSampleRate = (audioinput._isAndroid() && parseInt(cfg.outputSampleRate)) || audioinput._cfg.sampleRate;
+    audioinput._cfg.outputChannels = (audioinput._isAndroid() && parseInt(cfg.outputChannels)) || audioinput._cfg.channels;
+    audioinput._cfg.vad = typeof cfg.vad === 'boolean' ? cfg.vad : audioinput.DEFAULT.VAD;
+    audioinput._cfg.vadThreshold = typeof cfg.vadThreshold === 'number' ? cfg.vadThreshold : audioinput.DEFAULT.VAD_THRESHOLD;
+    audioinput._cfg.vadHysteresis = typeof cfg.vadHysteresis === 'number' ? cfg.vadHysteresis : audioinput.DEFAULT.VAD_HYSTERESIS;
+    audioinput._cfg.vadPreRoll = typeof cfg.vadPreRoll === 'number' ? cfg.vadPreRoll : audioinput.DEFAULT.VAD_PRE_ROLL;
+    audioinput._cfg.vadHangover = typeof cfg.vadHangover === 'number' ? cfg.vadHangover : audioinput.DEFAULT.VAD_HANGOVER;
+    audioinput._cfg.vadSilenceInterval = typeof cfg.vadSilenceInterval === 'number' ? cfg.vadSilenceInterval : audioinput.DEFAULT.VAD_SILENCE_INTERVAL;
+    audioinput._cfg.vadSkipSilence = typeof cfg.vadSkipSilence === 'boolean' ? cfg.vadSkipSilence : audioinput.DEFAULT.VAD_SKIP_SILENCE;
+    audioinput._cfg.meteringRate = (audioinput._isAndroid() && parseInt(cfg.meteringRate)) || audioinput.DEFAULT.METERING_RATE;
+    audioinput._cfg.spectrumSize = parseInt(cfg.spectrumSize) || audioinput.DEFAULT.SPECTRUM_SIZE;
+    audioinput._cfg.meteringOnly = audioinput._cfg.meteringRate > 0 && cfg.meteringOnly === true;
+    audioinput._cfg.features = (audioinput._isAndroid() && cfg.features) || audioinput.DEFAULT.FEATURES;
+    audioinput._cfg.featureWindow = parseFloat(cfg.featureWindow) || audioinput.DEFAULT.FEATURE_WINDOW;
+    audioinput._cfg.featureHop = parseFloat(cfg.featureHop) || audioinput.DEFAULT.FEATURE_HOP;
+    audioinput._cfg.melBands = parseInt(cfg.melBands) || audioinput.DEFAULT.MEL_BANDS;
+    audioinput._cfg.mfccCount = parseInt(cfg.mfccCount) || audioinput.DEFAULT.MFCC_COUNT;
+    audioinput._cfg.melMinFrequency = typeof cfg.melMinFrequency === 'number' ? cfg.melMinFrequency : audioinput.DEFAULT.MEL_MIN_FREQUENCY;
+    audioinput._cfg.melMaxFrequency = parseFloat(cfg.melMaxFrequency) || audioinput.DEFAULT.MEL_MAX_FREQUENCY;
+    audioinput._cfg.featureBatch = parseInt(cfg.featureBatch) || audioinput.DEFAULT.FEATURE_BATCH;
+    audioinput._cfg.featuresOnly = !!audioinput._cfg.features && cfg.featuresOnly === true;
+    audioinput._cfg.batchLatency = (audioinput._isAndroid() && parseInt(cfg.batchLatency)) || audioinput.DEFAULT.BATCH_LATENCY;
+    audioinput._cfg.maxBatchChunks = parseInt(cfg.maxBatchChunks) || audioinput.DEFAULT.MAX_BATCH_CHUNKS;
+    audioinput._cfg.gapTolerance = (audioinput._isAndroid() && parseFloat(cfg.gapTolerance)) || audioinput.DEFAULT.GAP_TOLERANCE;
+    audioinput._cfg.ringBufferSeconds = (audioinput._isAndroid() && parseFloat(cfg.ringBufferSeconds)) || audioinput.DEFAULT.RING_BUFFER_SECONDS;
+    audioinput._cfg.streamWhileRecording = typeof cfg.streamWhileRecording === 'boolean' ? cfg.streamWhileRecording : audioinput.DEFAULT.STREAM_WHILE_RECORDING;
+    audioinput._cfg.lowLatency = typeof cfg.lowLatency === 'boolean' ? cfg.lowLatency : audioinput.DEFAULT.LOW_LATENCY;
+    audioinput._cfg.segmentDuration = (audioinput._isAndroid() && parseFloat(cfg.segmentDuration)) || audioinput.DEFAULT.SEGMENT_DURATION;
+    audioinput._cfg.segmentSize = (audioinput._isAndroid() && parseInt(cfg.segmentSize)) || audioinput.DEFAULT.SEGMENT_SIZE;
+    audioinput._cfg.checkpointInterval = (audioinput._isAndroid() && parseFloat(cfg.checkpointInterval)) || audioinput.DEFAULT.CHECKPOINT_INTERVAL;
+    audioinput._cfg.peakIndex = typeof cfg.peakIndex === 'boolean' ? cfg.peakIndex : audioinput.DEFAULT.PEAK_INDEX;
+    audioinput._cfg.highPassFrequency = (audioinput._isAndroid() && parseFloat(cfg.highPassFrequency)) || audioinput.DEFAULT.HIGH_PASS_FREQUENCY;
+    audioinput._cfg.noiseGate = typeof cfg.noiseGate === 'boolean' ? cfg.noiseGate : audioinput.DEFAULT.NOISE_GATE;
+    audioinput._cfg.noiseGateThreshold = typeof cfg.noiseGateThreshold === 'number' ? cfg.noiseGateThreshold : audioinput.DEFAULT.NOISE_GATE_THRESHOLD;
+    audioinput._cfg.agc = typeof cfg.agc === 'boolean' ? cfg.agc : audioinput.DEFAULT.AGC;
+    audioinput._cfg.agcTarget = typeof cfg.agcTarget === 'number' ? cfg.agcTarget : audioinput.DEFAULT.AGC_TARGET;
+    audioinput._cfg.agcMaxGain = typeof cfg.agcMaxGain === 'number' ? cfg.agcMaxGain : audioinput.DEFAULT.AGC_MAX_GAIN;
+    audioinput._cfg.limiter = typeof cfg.limiter === 'boolean' ? cfg.limiter : audioinput.DEFAULT.LIMITER;
+    audioinput._cfg.limiterCeiling = typeof cfg.limiterCeiling === 'number' ? cfg.limiterCeiling : audioinput.DEFAULT.LIMITER_CEILING;
+    audioinput._cfg.streamServer = typeof cfg.streamServer === 'boolean' ? cfg.streamServer : audioinput.DEFAULT.STREAM_SERVER;
+    audioinput._cfg.streamServerPort = (audioinput._isAndroid() && parseInt(cfg.streamServerPort)) || audioinput.DEFAULT.STREAM_SERVER_PORT;
+    audioinput._cfg.uploadUrl = typeof cfg.uploadUrl === 'string' ? cfg.uploadUrl : audioinput.DEFAULT.UPLOAD_URL;
+    audioinput._cfg.uploadSegmentSize = (audioinput._isAndroid() && parseInt(cfg.uploadSegmentSize)) || audioinput.DEFAULT.UPLOAD_SEGMENT_SIZE;
+    audioinput._cfg.uploadHeaders = typeof cfg.uploadHeaders === 'object' ? cfg.uploadHeaders : audioinput.DEFAULT.UPLOAD_HEADERS;
     audioinput._cfg.debug = typeof cfg.normalize === 'boolean' ? cfg.debug : audioinput.DEFAULT.DEBUG;
     audioinput._onErrorCallback = typeof cfg.onError === 'function' ? cfg.onError : undefined;
 
@@ -260,6 +572,21 @@ audioinput._handleInputParameters = function (cfg) {
         throw "Invalid format (" + audioinput._cfg.format + "). Only 'PCM_8BIT' and 'PCM_16BIT' is" + " supported.";
     }
 
+    if (audioinput._cfg.dataEncoding !== audioinput.DATA_ENCODING.JSON &&
+        audioinput._cfg.dataEncoding !== audioinput.DATA_ENCODING.BASE64 &&
+        audioinput._cfg.dataEncoding !== audioinput.DATA_ENCODING.FLOAT32) {
+        throw "Invalid dataEncoding (" + audioinput._cfg.dataEncoding + "). Use one defined in audioinput.DATA_ENCODING.";
+    }
+
+    if (audioinput._cfg.fileFormat !== audioinput.FILE_FORMAT.WAV &&
+        audioinput._cfg.fileFormat !== audioinput.FILE_FORMAT.FLAC &&
+        audioinput._cfg.fileFormat !== audioinput.FILE_FORMAT.AAC) {
+        throw "Invalid fileFormat (" + audioinput._cfg.fileFormat + "). Use one defined in audioinput.FILE_FORMAT.";
+    }
+
+    // Binary data can only be decoded into typed arrays
+    if (!hasTypedArrays) audioinput._cfg.dataEncoding = audioinput.DATA_ENCODING.JSON;
+
     if (isNaN(audioinput._cfg.bufferSize) || audioinput._cfg.bufferSize <= 0) {
         throw "Invalid bufferSize (" + audioinput._cfg.bufferSize + "). Must be greater than zero.";
     }
@@ -271,6 +598,135 @@ audioinput._handleInputParameters = function (cfg) {
     if (isNaN(audioinput._cfg.sampleRate)) {
         throw "Invalid sampleRate (" + audioinput._cfg.sampleRate + "). Use one defined in audioInput.SAMPLERATE.";
     }
+
+    if (audioinput._cfg.outputSampleRate <= 0) {
+        throw "Invalid outputSampleRate (" + audioinput._cfg.outputSampleRate + "). Must be greater than zero.";
+    }
+
+    if (audioinput._cfg.outputChannels < 1 || audioinput._cfg.outputChannels > audioinput._cfg.channels) {
+        throw "Invalid outputChannels (" + audioinput._cfg.outputChannels + "). Channels can only be mixed down.";
+    }
+
+    if (audioinput._cfg.meteringRate < 0) {
+        throw "Invalid meteringRate (" + audioinput._cfg.meteringRate + "). Must not be negative.";
+    }
+
+    if (audioinput._cfg.features && audioinput._cfg.features !== audioinput.FEATURES.LOG_MEL
+        && audioinput._cfg.features !== audioinput.FEATURES.MFCC) {
+        throw "Invalid features (" + audioinput._cfg.features + "). Must be one of audioinput.FEATURES.";
+    }
+
+    if (audioinput._cfg.featureWindow <= 0 || audioinput._cfg.featureHop <= 0 || audioinput._cfg.featureHop > audioinput._cfg.featureWindow) {
+        throw "Invalid featureWindow or featureHop. Must be greater than zero, and the hop at most the window.";
+    }
+
+    if (audioinput._cfg.melBands <= 0 || audioinput._cfg.mfccCount <= 0 || audioinput._cfg.mfccCount > audioinput._cfg.melBands
+        || audioinput._cfg.featureBatch <= 0) {
+        throw "Invalid melBands, mfccCount or featureBatch. Must be greater than zero, and mfccCount at most melBands.";
+    }
+
+    if (audioinput._cfg.batchLatency < 0) {
+        throw "Invalid batchLatency (" + audioinput._cfg.batchLatency + "). Must not be negative.";
+    }
+
+    if (audioinput._cfg.maxBatchChunks <= 0) {
+        throw "Invalid maxBatchChunks (" + audioinput._cfg.maxBatchChunks + "). Must be greater than zero.";
+    }
+
+    if (audioinput._cfg.gapTolerance <= 0) {
+        throw "Invalid gapTolerance (" + audioinput._cfg.gapTolerance + "). Must be greater than zero.";
+    }
+
+    // The ring is kept on the Java heap, 11.5 MB per minute of 48 kHz stereo
+    if (audioinput._cfg.ringBufferSeconds < 0 || audioinput._cfg.ringBufferSeconds > 300) {
+        throw "Invalid ringBufferSeconds (" + audioinput._cfg.ringBufferSeconds + "). Must be between 0 and 300.";
+    }
+
+    if (audioinput._cfg.segmentDuration < 0 || audioinput._cfg.segmentSize < 0 || audioinput._cfg.checkpointInterval < 0) {
+        throw "Invalid segmentDuration, segmentSize or checkpointInterval. Must not be negative.";
+    }
+
+    if (audioinput._cfg.highPassFrequency < 0) {
+        throw "Invalid highPassFrequency (" + audioinput._cfg.highPassFrequency + "). Must not be negative.";
+    }
+
+    if (audioinput._cfg.agcMaxGain < 0 || audioinput._cfg.agcTarget > 0 || audioinput._cfg.limiterCeiling > 0) {
+        throw "Invalid agcMaxGain, agcTarget or limiterCeiling. Levels are in dBFS, at most 0, and the gain not negative.";
+    }
+
+    var spectrumSize = audioinput._cfg.spectrumSize;
+    if (spectrumSize < 0 || spectrumSize === 1 || (spectrumSize & (spectrumSize - 1)) !== 0) {
+        throw "Invalid spectrumSize (" + spectrumSize + "). Must be a power of two, or 0 for no spectrum.";
+    }
+};
+
+/**
+ * Options that are only interpreted by the native layer, passed after the fileUrl argument.
+ *
+ * @returns {Object}
+ * @private
+ */
+audioinput._getNativeOptions = function () {
+    return {
+        dataEncoding: audioinput._cfg.dataEncoding,
+        // Samples are only divided natively when the float32 encoding is used
+        normalizationFactor: audioinput._cfg.normalize ? audioinput._cfg.normalizationFactor : 1.0,
+        fileFormat: audioinput._cfg.fileFormat,
+        outputSampleRate: audioinput._cfg.outputSampleRate,
+        outputChannels: audioinput._cfg.outputChannels,
+        vad: audioinput._cfg.vad,
+        vadThreshold: audioinput._cfg.vadThreshold,
+        vadHysteresis: audioinput._cfg.vadHysteresis,
+        vadPreRoll: audioinput._cfg.vadPreRoll,
+        vadHangover: audioinput._cfg.vadHangover,
+        vadSilenceInterval: audioinput._cfg.vadSilenceInterval,
+        vadSkipSilence: audioinput._cfg.vadSkipSilence,
+        meteringRate: audioinput._cfg.meteringRate,
+        spectrumSize: audioinput._cfg.spectrumSize,
+        meteringOnly: audioinput._cfg.meteringOnly,
+        features: audioinput._cfg.features,
+        featureWindow: audioinput._cfg.featureWindow,
+        featureHop: audioinput._cfg.featureHop,
+        melBands: audioinput._cfg.melBands,
+        mfccCount: audioinput._cfg.mfccCount,
+        melMinFrequency: audioinput._cfg.melMinFrequency,
+        melMaxFrequency: audioinput._cfg.melMaxFrequency,
+        featureBatch: audioinput._cfg.featureBatch,
+        featuresOnly: audioinput._cfg.featuresOnly,
+        batchLatency: audioinput._cfg.batchLatency,
+        maxBatchChunks: audioinput._cfg.maxBatchChunks,
+        gapTolerance: audioinput._cfg.gapTolerance,
+        ringBufferSeconds: audioinput._cfg.ringBufferSeconds,
+        streamWhileRecording: audioinput._cfg.streamWhileRecording,
+        lowLatency: audioinput._cfg.lowLatency,
+        segmentDuration: audioinput._cfg.segmentDuration,
+        segmentSize: audioinput._cfg.segmentSize,
+        checkpointInterval: audioinput._cfg.checkpointInterval,
+        peakIndex: audioinput._cfg.peakIndex,
+        highPassFrequency: audioinput._cfg.highPassFrequency,
+        noiseGate: audioinput._cfg.noiseGate,
+        noiseGateThreshold: audioinput._cfg.noiseGateThreshold,
+        agc: audioinput._cfg.agc,
+        agcTarget: audioinput._cfg.agcTarget,
+        agcMaxGain: audioinput._cfg.agcMaxGain,
+        limiter: audioinput._cfg.limiter,
+        limiterCeiling: audioinput._cfg.limiterCeiling,
+        streamServer: audioinput._cfg.streamServer,
+        streamServerPort: audioinput._cfg.streamServerPort,
+        uploadUrl: audioinput._cfg.uploadUrl,
+        uploadSegmentSize: audioinput._cfg.uploadSegmentSize,
+        uploadHeaders: audioinput._cfg.uploadHeaders
+    };
+};
+
+/**
+ * Whether the native layer is the Android implementation, which supports the native only options.
+ *
+ * @returns {boolean}
+ * @private
+ */
+audioinput._isAndroid = function () {
+    return typeof cordova !== 'undefined' && cordova.platformId === 'android';
 };
 
 /**
@@ -286,18 +742,72 @@ audioinput._audioInputEvent = function (audioInputData) {
         }
 
         if (audioInputData.data && audioInputData.data.length > 0) {
-            var audioData = audioinput._normalizeAudio(JSON.parse(audioInputData.data));
+            var audioData = audioinput._decodeAudioData(audioInputData);
+
+            // Float32 data has already been normalized by the native layer
+            if (audioInputData.encoding !== audioinput.DATA_ENCODING.FLOAT32) {
+                audioData = audioinput._normalizeAudio(audioData);
+            }
 
             if (audioinput._cfg.streamToWebAudio && audioinput._capturing) {
                 audioinput._enqueueAudioData(audioData);
                 return;
             }
 
-            cordova.fireWindowEvent("audioinput", {data: audioData});
+            // Where the data belongs in the capture, only known on Android
+            cordova.fireWindowEvent("audioinput", {
+                data: audioData,
+                sequence: audioInputData.sequence,
+                framePosition: audioInputData.framePosition,
+                captureTime: audioInputData.captureTime
+            });
+            return;
+        }
+
+        if (audioInputData.levels) {
+            var levels = audioInputData.levels;
+            cordova.fireWindowEvent("audioinputlevels", {
+                rms: levels.rms,
+                peak: levels.peak,
+                clipped: levels.clipped,
+                spectrum: levels.spectrum ? new Float32Array(levels.spectrum) : null
+            });
             return;
         }
 
-        if (audioInputData.file) audioinput._audioInputFinishedEvent(audioInputData.file);
+        if (audioInputData.features) {
+            var features = audioInputData.features;
+            cordova.fireWindowEvent("audioinputfeatures", {
+                type: features.type,
+                features: audioinput._decodeAudioData({data: features.data, encoding: audioinput.DATA_ENCODING.FLOAT32}),
+                frames: features.frames,
+                size: features.size,
+                firstFrame: features.firstFrame
+            });
+            return;
+        }
+
+        if (audioInputData.gap) {
+            var gap = audioInputData.gap;
+            cordova.fireWindowEvent("audioinputgap", {
+                framePosition: gap.framePosition,
+                lostFrames: gap.lostFrames,
+                duration: gap.duration,
+                estimated: gap.estimated
+            });
+            return;
+        }
+
+        if (typeof audioInputData.silence === 'number') {
+            cordova.fireWindowEvent("audioinputsilence", {
+                duration: audioInputData.silence,
+                suppressedChunks: audioInputData.suppressedChunks,
+                suppressedBytes: audioInputData.suppressedBytes
+            });
+            return;
+        }
+
+        if (audioInputData.file) audioinput._audioInputFinishedEvent(audioInputData.file, audioInputData.segments);
 
         if (!audioInputData.error) return;
 
@@ -323,10 +833,11 @@ audioinput._audioInputErrorEvent = function (errorMessage) {
 /**
  * Finished callback for AudioInputCapture start
  * @param fileUrl
+ * @param segments The URLs of all files when recording in segments, otherwise undefined.
  * @private
  */
-audioinput._audioInputFinishedEvent = function (fileUrl) {
-    cordova.fireWindowEvent("audioinputfinished", {file: fileUrl});
+audioinput._audioInputFinishedEvent = function (fileUrl, segments) {
+    cordova.fireWindowEvent("audioinputfinished", {file: fileUrl, segments: segments});
     if (!audioinput._cfg.debug) return;
     console.log("audioinput._audioInputFinishedEvent: " + fileUrl);
 };
@@ -342,12 +853,49 @@ audioinput._audioInputDebugEvent = function (debugMessage) {
     console.log("audioinput._audioInputFinishedEvent: " + debugMessage);
 };
 
+/**
+ * Decodes the data field of an event from the native layer into an array of samples
+ *
+ * @param {Object} audioInputData     keys: data, encoding
+ * @private
+ *
+ * @returns {Int16Array|Float32Array|Array}
+ */
+audioinput._decodeAudioData = function (audioInputData) {
+    if (audioInputData.encoding === audioinput.DATA_ENCODING.BASE64) {
+        // Little-endian 16 bit PCM
+        var binary = atob(audioInputData.data),
+            length = binary.length >> 1,
+            samples = new Int16Array(length);
+
+        for (var i = 0, j = 0; i < length; i++, j += 2) {
+            samples[i] = binary.charCodeAt(j) | (binary.charCodeAt(j + 1) << 8);
+        }
+
+        return samples;
+    }
+
+    if (audioInputData.encoding === audioinput.DATA_ENCODING.FLOAT32) {
+        // Little-endian 32 bit floats, which is the byte order of the devices Android runs on
+        var floatBinary = atob(audioInputData.data),
+            bytes = new Uint8Array(floatBinary.length & ~3);
+
+        for (var k = 0; k < bytes.length; k++) {
+            bytes[k] = floatBinary.charCodeAt(k);
+        }
+
+        return new Float32Array(bytes.buffer);
+    }
+
+    return JSON.parse(audioInputData.data);
+};
+
 /**
  * Returns a typed array, normalizing if needed
- * @param {number[]} pcmData - Array of short integers which came from the plugin
+ * @param {number[]|Int16Array} pcmData - Array of short integers which came from the plugin
  */
 audioinput._normalizeToTyped = function (pcmData) {
-    if (!audioinput._cfg.normalize) return Int16Array.from(pcmData);
+    if (!audioinput._cfg.normalize) return pcmData instanceof Int16Array ? pcmData : Int16Array.from(pcmData);
 
     var out = Float32Array.from(pcmData, function (i) {
         return audioinput._parseAsFloat(i) / audioinput._cfg.normalizationFactor;
@@ -402,13 +950,16 @@ audioinput._getNextToPlay = function () {
             return;
         }
 
-        var concatenatedData = [];
+        var chunks = [],
+            totalLength = 0;
         for (var i = 0; i < audioinput._cfg.concatenateMaxChunks; i++) {
             if (audioinput._audioDataQueue.length === 0) break;
-            concatenatedData = concatenatedData.concat(audioinput._dequeueAudioData());
+            var chunk = audioinput._dequeueAudioData();
+            chunks.push(chunk);
+            totalLength += chunk.length;
         }
         audioinput._timerGetNextAudio = setTimeout(audioinput._getNextToPlay,
-            audioinput._playAudio(concatenatedData) * 1000);
+            audioinput._playAudio(audioinput._concatenateChunks(chunks, totalLength)) * 1000);
 
     } catch (ex) {
         audioinput._audioInputErrorEvent("audioinput._getNextToPlay ex: " + ex);
@@ -416,6 +967,28 @@ audioinput._getNextToPlay = function () {
 };
 
 
+/**
+ * Joins audio chunks into one array, copying typed arrays in bulk
+ *
+ * @param {Array} chunks
+ * @param {number} totalLength
+ * @returns {Float32Array|Array}
+ * @private
+ */
+audioinput._concatenateChunks = function (chunks, totalLength) {
+    if (!hasTypedArrays) return Array.prototype.concat.apply([], chunks);
+
+    var out = new Float32Array(totalLength),
+        offset = 0;
+
+    for (var i = 0; i < chunks.length; i++) {
+        out.set(chunks[i], offset);
+        offset += chunks[i].length;
+    }
+
+    return out;
+};
+
 /**
  * Play audio using the Web Audio API
  * @param data
@@ -425,15 +998,16 @@ audioinput._getNextToPlay = function () {
 audioinput._playAudio = function (data) {
     try {
         if (data && data.length > 0) {
-            var audioBuffer = audioinput._audioContext.createBuffer(audioinput._cfg.channels, (data.length / audioinput._cfg.channels), audioinput._cfg.sampleRate),
+            var channels = audioinput._cfg.outputChannels,
+                audioBuffer = audioinput._audioContext.createBuffer(channels, (data.length / channels), audioinput._cfg.outputSampleRate),
                 chdata = [],
                 index = 0;
 
-            if (audioinput._cfg.channels > 1) {
-                for (var i = 0; i < audioinput._cfg.channels; i++) {
+            if (channels > 1) {
+                for (var i = 0; i < channels; i++) {
                     while (index < data.length) {
                         chdata.push(data[index + i]);
-                        index += parseInt(audioinput._cfg.channels);
+                        index += parseInt(channels);
                     }
 
                     audioBuffer.getChannelData(i).set(new Float32Array(chdata));